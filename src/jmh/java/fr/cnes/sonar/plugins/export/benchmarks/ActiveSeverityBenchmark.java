@@ -0,0 +1,79 @@
+package fr.cnes.sonar.plugins.export.benchmarks;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolution of active severities: with the activations of each page or rule by rule
+ * @author lequal
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActiveSeverityBenchmark {
+
+    /**
+     * Number of rules of the profile
+     */
+    @Param({"100", "2000", "20000"})
+    public int rules;
+
+    /**
+     * Recorded responses with the activations of each page
+     */
+    private RecordedBackend bulk;
+    /**
+     * Recorded responses of a server giving activations rule by rule
+     */
+    private RecordedBackend perRule;
+
+    /**
+     * Record the responses once
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    @Setup
+    public void record() throws IOException, BadSonarQubeRequestException {
+        bulk = Fixtures.record(rules, true);
+        perRule = Fixtures.record(rules, false);
+    }
+
+    /**
+     * Activations given with the pages
+     * @return the profile
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    @Benchmark
+    public QualityProfile bulk() throws IOException, BadSonarQubeRequestException {
+        return Fixtures.newProvider(bulk).getQualityProfile(Fixtures.PROFILE, Fixtures.CSV_FIELDS);
+    }
+
+    /**
+     * Activations requested rule by rule
+     * @return the profile
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    @Benchmark
+    public QualityProfile perRule() throws IOException, BadSonarQubeRequestException {
+        return Fixtures.newProvider(perRule).getQualityProfile(Fixtures.PROFILE, Fixtures.CSV_FIELDS);
+    }
+}
@@ -0,0 +1,91 @@
+package fr.cnes.sonar.plugins.export.benchmarks;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.factory.ProfileFactory;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.providers.DataBackend;
+import fr.cnes.sonar.plugins.export.report.providers.LocalBackend;
+import fr.cnes.sonar.plugins.export.report.providers.RemoteBackend;
+import fr.sonar.plugins.scan.tests.SonarQubeStub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Export of a profile through http and in-process, with the same stubbed server
+ * @author lequal
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BackendBenchmark {
+
+    /**
+     * Number of rules of the profile
+     */
+    @Param({"100", "2000", "20000"})
+    public int rules;
+    /**
+     * Access to the server: remote through http, local through the connector of the web services
+     */
+    @Param({"remote", "local"})
+    public String backend;
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+    /**
+     * Reader of the profile through the chosen backend
+     */
+    private ProfileFactory factory;
+
+    /**
+     * Start the server
+     * @throws IOException when the server can not start
+     */
+    @Setup
+    public void start() throws IOException {
+        server = new SonarQubeStub(rules);
+        server.start();
+        final DataBackend dataBackend = "local".equals(backend) ?
+                new LocalBackend(server.getConnector()) : new RemoteBackend(server.getUrl());
+        factory = new ProfileFactory(dataBackend);
+    }
+
+    /**
+     * Stop the server
+     */
+    @TearDown
+    public void stop() {
+        server.stop();
+    }
+
+    /**
+     * Export the profile with the fields of the csv
+     * @return the number of rules
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    @Benchmark
+    public int export() throws IOException, BadSonarQubeRequestException {
+        try (QualityProfile profile = factory.create(Fixtures.PROFILE, Fixtures.CSV_FIELDS)) {
+            return profile.getRuleList().size();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package fr.cnes.sonar.plugins.export.benchmarks;
+
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.report.cache.ExportCache;
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.exporters.Exporter;
+import fr.cnes.sonar.plugins.export.report.exporters.XlsxExporter;
+import fr.cnes.sonar.plugins.export.tasks.DownloadTask;
+import fr.sonar.plugins.scan.tests.SonarQubeStub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete download of a profile from the stubbed server through http
+ * @author lequal
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+
+    /**
+     * Number of rules of the profile
+     */
+    @Param({"100", "2000", "20000"})
+    public int rules;
+    /**
+     * Whether the export is measured, to compare the overhead of the metrics
+     */
+    @Param({"true", "false"})
+    public boolean metrics;
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+    /**
+     * Task of the download action
+     */
+    private DownloadTask task;
+
+    /**
+     * Start the server
+     * @throws IOException when the server can not start
+     */
+    @Setup
+    public void start() throws IOException {
+        Metrics.getInstance().setEnabled(metrics);
+        server = new SonarQubeStub(rules);
+        server.start();
+        task = new DownloadTask(server.getUrl());
+    }
+
+    /**
+     * Stop the server
+     */
+    @TearDown
+    public void stop() {
+        server.stop();
+    }
+
+    /**
+     * Download as csv
+     * @return the number of written bytes
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    @Benchmark
+    public long csv() throws IOException, BadSonarQubeRequestException {
+        return export(new CsvExporter());
+    }
+
+    /**
+     * Download as workbook
+     * @return the number of written bytes
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    @Benchmark
+    public long xlsx() throws IOException, BadSonarQubeRequestException {
+        return export(new XlsxExporter());
+    }
+
+    /**
+     * Export the profile without using the cache
+     * @param exporter format of the export
+     * @return the number of written bytes
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    private long export(final Exporter exporter) throws IOException, BadSonarQubeRequestException {
+        ExportCache.getInstance().clear();
+        final Fixtures.NullOutputStream output = new Fixtures.NullOutputStream();
+        task.export(Fixtures.PROFILE, exporter, output);
+        return output.getCount();
+    }
+}
@@ -0,0 +1,108 @@
+package fr.cnes.sonar.plugins.export.benchmarks;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.providers.DataBackend;
+import fr.cnes.sonar.plugins.export.report.providers.LocalBackend;
+import fr.cnes.sonar.plugins.export.report.providers.QualityProfileProvider;
+import fr.cnes.sonar.plugins.export.report.providers.RuleReader;
+import fr.sonar.plugins.scan.tests.SonarQubeStub;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+
+/**
+ * Responses of the stubbed server recorded once for all iterations of a benchmark
+ * @author lequal
+ */
+public final class Fixtures {
+
+    /**
+     * Key of the exported profile
+     */
+    public static final String PROFILE = SonarQubeStub.PROFILES[0];
+    /**
+     * Fields of the csv export
+     */
+    public static final Set<String> CSV_FIELDS = new CsvExporter().getFields();
+
+    /**
+     * Private constructor, only static methods
+     */
+    private Fixtures() {
+    }
+
+    /**
+     * Record the responses needed to export the profile with the fields of the csv and with all fields
+     * @param rules number of rules of the profile
+     * @param bulkActives false to record the requests of activations rule by rule
+     * @return a backend giving back the responses
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    public static RecordedBackend record(final int rules, final boolean bulkActives)
+            throws IOException, BadSonarQubeRequestException {
+        final SonarQubeStub server = new SonarQubeStub(rules);
+        server.setBulkActivesSupported(bulkActives);
+        final RecordedBackend backend = new RecordedBackend(new LocalBackend(server.getConnector()));
+        newProvider(backend).getQualityProfile(PROFILE, CSV_FIELDS);
+        newProvider(backend).getQualityProfile(PROFILE, RuleReader.ALL_FIELDS);
+        backend.stopRecording();
+        return backend;
+    }
+
+    /**
+     * Create a provider requesting the same pages as during the recording
+     * @param backend access to the responses
+     * @return the provider
+     */
+    public static QualityProfileProvider newProvider(final DataBackend backend) {
+        final QualityProfileProvider provider = new QualityProfileProvider(backend);
+        // the size of the pages must not depend on the time taken
+        provider.setPageTargetTime(0);
+        return provider;
+    }
+
+    /**
+     * Read a profile with all fields of its rules
+     * @param rules number of rules of the profile
+     * @return the profile
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    public static QualityProfile profile(final int rules) throws IOException, BadSonarQubeRequestException {
+        final SonarQubeStub server = new SonarQubeStub(rules);
+        final QualityProfileProvider provider = newProvider(new LocalBackend(server.getConnector()));
+        return provider.getQualityProfile(PROFILE, RuleReader.ALL_FIELDS);
+    }
+
+    /**
+     * Stream counting the written bytes and dropping them
+     */
+    public static class NullOutputStream extends OutputStream {
+        /**
+         * Number of written bytes
+         */
+        private long count;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+
+        /**
+         * Number of written bytes
+         * @return the count
+         */
+        public long getCount() {
+            return count;
+        }
+    }
+}
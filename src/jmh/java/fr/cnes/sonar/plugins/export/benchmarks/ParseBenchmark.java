@@ -0,0 +1,82 @@
+package fr.cnes.sonar.plugins.export.benchmarks;
+
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.providers.RuleReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading of recorded pages of rules, without network
+ * @author lequal
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    /**
+     * Number of rules of the profile
+     */
+    @Param({"100", "2000", "20000"})
+    public int rules;
+    /**
+     * Whether the export is measured, to compare the overhead of the metrics
+     */
+    @Param({"true", "false"})
+    public boolean metrics;
+
+    /**
+     * Recorded responses
+     */
+    private RecordedBackend fixtures;
+
+    /**
+     * Record the responses once
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    @Setup
+    public void record() throws IOException, BadSonarQubeRequestException {
+        Metrics.getInstance().setEnabled(metrics);
+        fixtures = Fixtures.record(rules, true);
+    }
+
+    /**
+     * Read the fields written by the csv
+     * @return the profile
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    @Benchmark
+    public QualityProfile csvFields() throws IOException, BadSonarQubeRequestException {
+        return Fixtures.newProvider(fixtures).getQualityProfile(Fixtures.PROFILE, Fixtures.CSV_FIELDS);
+    }
+
+    /**
+     * Read all fields, descriptions included
+     * @return the profile
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    @Benchmark
+    public QualityProfile allFields() throws IOException, BadSonarQubeRequestException {
+        return Fixtures.newProvider(fixtures).getQualityProfile(Fixtures.PROFILE, RuleReader.ALL_FIELDS);
+    }
+}
@@ -0,0 +1,101 @@
+package fr.cnes.sonar.plugins.export.benchmarks;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.providers.DataBackend;
+import fr.cnes.sonar.plugins.export.report.providers.RequestManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Backend recording the responses of another one, then giving them back from memory
+ * Benchmarks measure the plugin without the time taken by the server.
+ * @author lequal
+ */
+public class RecordedBackend implements DataBackend {
+
+    /**
+     * Recorded bodies by request
+     */
+    private final Map<String, byte[]> responses = new ConcurrentHashMap<>();
+    /**
+     * Recorded backend, null once the recording is stopped
+     */
+    private volatile DataBackend source;
+    /**
+     * Prefix of the requests
+     */
+    private final String url;
+
+    /**
+     * Constructor
+     * @param pSource backend to record
+     */
+    public RecordedBackend(final DataBackend pSource) {
+        this.source = pSource;
+        this.url = pSource.getUrl();
+    }
+
+    /**
+     * Only give recorded responses from now on
+     */
+    public void stopRecording() {
+        source = null;
+    }
+
+    /**
+     * Total size of the recorded responses
+     * @return a number of bytes
+     */
+    public long getSize() {
+        long size = 0;
+        for (byte[] body : responses.values()) {
+            size += body.length;
+        }
+        return size;
+    }
+
+    @Override
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    @Override
+    public String get(final String request) throws IOException, BadSonarQubeRequestException {
+        return new String(body(request), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T get(final String request, final RequestManager.ContentHandler<T> handler)
+            throws IOException, BadSonarQubeRequestException {
+        return handler.handle(new ByteArrayInputStream(body(request)));
+    }
+
+    /**
+     * Body of the response to a request, recorded if needed
+     * @param request the request
+     * @return the body
+     * @throws IOException when the request was not recorded
+     * @throws BadSonarQubeRequestException when the recorded backend rejects the request
+     */
+    private byte[] body(final String request) throws IOException, BadSonarQubeRequestException {
+        byte[] body = responses.get(request);
+        final DataBackend recorded = source;
+        if (body == null && recorded != null) {
+            body = recorded.get(request).getBytes(StandardCharsets.UTF_8);
+            responses.put(request, body);
+        }
+        if (body == null) {
+            throw new IOException("Request not recorded: " + request);
+        }
+        return body;
+    }
+}
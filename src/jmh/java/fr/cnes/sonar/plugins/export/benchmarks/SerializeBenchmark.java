@@ -0,0 +1,114 @@
+package fr.cnes.sonar.plugins.export.benchmarks;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.exporters.Exporter;
+import fr.cnes.sonar.plugins.export.report.exporters.ProfileWriter;
+import fr.cnes.sonar.plugins.export.report.exporters.XlsxExporter;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing of a profile already read, in each format
+ * @author lequal
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializeBenchmark {
+
+    /**
+     * Number of rules of the profile
+     */
+    @Param({"100", "2000", "20000"})
+    public int rules;
+
+    /**
+     * Profile to write
+     */
+    private QualityProfile profile;
+
+    /**
+     * Read the profile once
+     * @throws IOException on export failure
+     * @throws BadSonarQubeRequestException on export failure
+     */
+    @Setup
+    public void read() throws IOException, BadSonarQubeRequestException {
+        profile = Fixtures.profile(rules);
+    }
+
+    /**
+     * Csv built as a string, as done by the export action
+     * @return the csv
+     */
+    @Benchmark
+    public String csvString() {
+        return new CsvExporter().export(profile);
+    }
+
+    /**
+     * Csv streamed row by row, as done by the download action
+     * @return the number of written bytes
+     * @throws IOException on writing failure
+     */
+    @Benchmark
+    public long csvStream() throws IOException {
+        return write(new CsvExporter());
+    }
+
+    /**
+     * Workbook without descriptions
+     * @return the number of written bytes
+     * @throws IOException on writing failure
+     */
+    @Benchmark
+    public long xlsx() throws IOException {
+        return write(new XlsxExporter(false));
+    }
+
+    /**
+     * Workbook with descriptions
+     * @return the number of written bytes
+     * @throws IOException on writing failure
+     */
+    @Benchmark
+    public long xlsxDescriptions() throws IOException {
+        return write(new XlsxExporter(true));
+    }
+
+    /**
+     * Write the profile in a discarding stream
+     * @param exporter format of the export
+     * @return the number of written bytes
+     * @throws IOException on writing failure
+     */
+    private long write(final Exporter exporter) throws IOException {
+        final Fixtures.NullOutputStream output = new Fixtures.NullOutputStream();
+        final ProfileWriter writer = exporter.newWriter(output);
+        writer.startProfile(profile.getKey());
+        for (Rule rule : profile.getRuleList()) {
+            writer.write(rule);
+        }
+        writer.endProfile();
+        writer.finish();
+        return output.getCount();
+    }
+}
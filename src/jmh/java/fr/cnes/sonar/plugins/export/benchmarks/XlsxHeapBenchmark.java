@@ -0,0 +1,76 @@
+package fr.cnes.sonar.plugins.export.benchmarks;
+
+import fr.cnes.sonar.plugins.export.report.exporters.ProfileWriter;
+import fr.cnes.sonar.plugins.export.report.exporters.XlsxExporter;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap needed to write large workbooks
+ * The fork has a small heap: the writing fails if the rows are kept in memory.
+ * The allocations are given by the gc profiler of the benchmarks profile.
+ * @author lequal
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx64m")
+public class XlsxHeapBenchmark {
+
+    /**
+     * Number of written rules, generated while they are written
+     */
+    @Param({"5000", "50000"})
+    public int rules;
+
+    /**
+     * Workbook with descriptions
+     * @return the number of written bytes
+     * @throws IOException on writing failure
+     */
+    @Benchmark
+    public long xlsxDescriptions() throws IOException {
+        final Fixtures.NullOutputStream output = new Fixtures.NullOutputStream();
+        final ProfileWriter writer = new XlsxExporter(true).newWriter(output);
+        writer.startProfile(Fixtures.PROFILE);
+        for (int i = 0; i < rules; i++) {
+            writer.write(rule(i));
+        }
+        writer.endProfile();
+        writer.finish();
+        return output.getCount();
+    }
+
+    /**
+     * Generate a rule with a description
+     * @param index index of the rule
+     * @return the rule
+     */
+    private static Rule rule(final int index) {
+        final Rule rule = new Rule();
+        rule.setKey("squid:S" + index);
+        rule.setName("Rule number " + index);
+        rule.setLangName("Java");
+        rule.setRepo("squid");
+        rule.setSeverity("MAJOR");
+        rule.setActiveSeverity("MINOR");
+        rule.setType("BUG");
+        rule.setStatus("READY");
+        rule.setHtmlDesc("<p>Description of the rule number " + index + ".</p>");
+        return rule;
+    }
+}
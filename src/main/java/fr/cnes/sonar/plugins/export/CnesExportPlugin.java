@@ -39,5 +39,8 @@ public class CnesExportPlugin implements Plugin {
 
         // export web extensions
         context.addExtension(CnesPluginPageDefinition.class);
+
+        // release resources on server stop
+        context.addExtension(CnesExportStopHandler.class);
     }
 }
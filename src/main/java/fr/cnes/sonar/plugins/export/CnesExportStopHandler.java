@@ -0,0 +1,41 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export;
+
+import fr.cnes.sonar.plugins.export.jobs.JobManager;
+import fr.cnes.sonar.plugins.export.report.providers.RequestManager;
+import org.sonar.api.platform.Server;
+import org.sonar.api.platform.ServerStopHandler;
+import org.sonar.api.server.ServerSide;
+
+/**
+ * Release resources of the plugin when SonarQube stops.
+ * @author lequal
+ */
+@ServerSide
+public class CnesExportStopHandler implements ServerStopHandler {
+
+    /**
+     * Stop background exports and close pooled http connections
+     * @param server the stopping server
+     */
+    @Override
+    public void onServerStop(final Server server) {
+        JobManager.shutdown();
+        RequestManager.shutdown();
+    }
+}
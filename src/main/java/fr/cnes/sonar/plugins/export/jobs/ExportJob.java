@@ -0,0 +1,331 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.jobs;
+
+import fr.cnes.sonar.plugins.export.metrics.ExportTimings;
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.Exporter;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.report.providers.RuleHandler;
+import fr.cnes.sonar.plugins.export.tasks.DownloadTask;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Export of a profile in a temporary file, run in background
+ * @author lequal
+ */
+public class ExportJob implements Runnable {
+
+    /**
+     * Logger of the jobs
+     */
+    private static final Logger LOGGER = Loggers.get(ExportJob.class);
+    /**
+     * Prefix of the temporary files
+     */
+    private static final String FILE_PREFIX = "cnesexport-";
+
+    /**
+     * States of a job
+     */
+    public enum State {
+        /** Waiting for a worker */
+        QUEUED,
+        /** Being exported */
+        RUNNING,
+        /** File ready to be downloaded */
+        DONE,
+        /** Export failed */
+        FAILED
+    }
+
+    /**
+     * Unique identifier of the job
+     */
+    private final String id = UUID.randomUUID().toString();
+    /**
+     * Key of the exported profile
+     */
+    private final String profileKey;
+    /**
+     * Format of the export
+     */
+    private final Exporter exporter;
+    /**
+     * Url of the server to request
+     */
+    private final String url;
+    /**
+     * Current state
+     */
+    private volatile State state = State.QUEUED;
+    /**
+     * Number of received pages of rules
+     */
+    private final AtomicInteger pages = new AtomicInteger();
+    /**
+     * Number of written rules
+     */
+    private final AtomicInteger rules = new AtomicInteger();
+    /**
+     * Total number of rules, known with the first page
+     */
+    private volatile int total;
+    /**
+     * Message of the error which stopped the export
+     */
+    private volatile String error;
+    /**
+     * Exported file
+     */
+    private volatile Path file;
+    /**
+     * Number of downloads reading the file
+     */
+    private int readers;
+    /**
+     * File forgotten while it is downloaded, deleted when the last download ends
+     */
+    private Path deferred;
+    /**
+     * Time at which the export ended, 0 while it is not ended
+     */
+    private volatile long endTime;
+    /**
+     * Durations and counts of the steps of the export
+     */
+    private final ExportTimings timings = new ExportTimings();
+
+    /**
+     * Constructor
+     * @param pProfileKey key of the profile to export
+     * @param pExporter format of the export
+     * @param pUrl url of the server to request
+     */
+    public ExportJob(final String pProfileKey, final Exporter pExporter, final String pUrl) {
+        this.profileKey = pProfileKey;
+        this.exporter = pExporter;
+        this.url = pUrl;
+    }
+
+    /**
+     * Export the profile in a temporary file
+     */
+    @Override
+    public void run() {
+        state = State.RUNNING;
+        Path output = null;
+        try {
+            output = Files.createTempFile(FILE_PREFIX, '.' + exporter.getFormat());
+            try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(output))) {
+                // the connector of the starting request can not be used once it is answered: http is used
+                new DownloadTask(url).export(profileKey, exporter, stream, new RuleHandler() {
+                    @Override
+                    public void handle(final Rule rule) {
+                        rules.incrementAndGet();
+                    }
+
+                    @Override
+                    public void pageReceived(final int page, final int pTotal) {
+                        pages.set(page);
+                        total = pTotal;
+                    }
+                }, timings);
+            }
+            file = output;
+            state = State.DONE;
+        } catch (IOException | BadSonarQubeRequestException | RuntimeException e) {
+            LOGGER.error(e.getMessage(), e);
+            error = e.getMessage();
+            state = State.FAILED;
+            delete(output);
+        } finally {
+            endTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Delete the exported file
+     * A file being downloaded is deleted at the end of its last download.
+     */
+    public synchronized void deleteFile() {
+        final Path output = file;
+        file = null;
+        if (readers > 0) {
+            deferred = output;
+        } else {
+            delete(output);
+        }
+    }
+
+    /**
+     * Open the exported file to download it, the file is kept until the stream is closed
+     * @return the content of the file or null if it is not ready or deleted
+     * @throws IOException when the file can not be opened
+     */
+    public synchronized InputStream openFile() throws IOException {
+        if (file == null) {
+            return null;
+        }
+        final InputStream input = Files.newInputStream(file);
+        readers++;
+        return new FilterInputStream(input) {
+            /**
+             * True once closed, to release the file once
+             */
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!closed) {
+                        closed = true;
+                        release();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * End a download, deleting the file if it was forgotten meanwhile
+     */
+    private synchronized void release() {
+        readers--;
+        if (readers == 0 && deferred != null) {
+            delete(deferred);
+            deferred = null;
+        }
+    }
+
+    /**
+     * Delete a file if it exists
+     * @param path file to delete, may be null
+     */
+    private static void delete(final Path path) {
+        if (path != null) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOGGER.warn(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Getter for id
+     * @return id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Getter for profileKey
+     * @return profileKey
+     */
+    public String getProfileKey() {
+        return profileKey;
+    }
+
+    /**
+     * Getter for exporter
+     * @return exporter
+     */
+    public Exporter getExporter() {
+        return exporter;
+    }
+
+    /**
+     * Getter for state
+     * @return state
+     */
+    public State getState() {
+        return state;
+    }
+
+
+    /**
+     * Getter for pages
+     * @return number of received pages
+     */
+    public int getPages() {
+        return pages.get();
+    }
+
+    /**
+     * Getter for rules
+     * @return number of written rules
+     */
+    public int getRules() {
+        return rules.get();
+    }
+
+    /**
+     * Getter for total
+     * @return total number of rules, 0 while unknown
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Getter for error
+     * @return error message or null
+     */
+    public String getError() {
+        return error;
+    }
+
+
+    /**
+     * Getter for file
+     * @return exported file or null if not ready
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Getter for endTime
+     * @return time at which the export ended, 0 while it is not ended
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+    /**
+     * Getter for timings
+     * @return durations and counts of the steps of the export, filled while it runs
+     */
+    public ExportTimings getTimings() {
+        return timings;
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.jobs;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.Exporter;
+import fr.cnes.sonar.plugins.export.report.providers.AbstractDataProvider;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run exports in background on a bounded number of threads
+ * Finished exports are kept for a while to be downloaded, then deleted.
+ * @author lequal
+ */
+public final class JobManager {
+
+    /**
+     * Name of the property for the number of simultaneous exports
+     */
+    private static final String JOB_WORKERS = "JOB_WORKERS";
+    /**
+     * Name of the property for the number of exports waiting for a worker
+     */
+    private static final String JOB_QUEUE_LIMIT = "JOB_QUEUE_LIMIT";
+    /**
+     * Name of the property for the time during which a finished export is kept
+     */
+    private static final String JOB_TTL = "JOB_TTL";
+
+    /**
+     * Unique instance
+     */
+    private static JobManager ourInstance;
+
+    /**
+     * Threads running the exports
+     */
+    private final ThreadPoolExecutor executor;
+    /**
+     * Known exports indexed by their id
+     */
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    /**
+     * Time (ms) during which a finished export is kept
+     */
+    private final long timeToLive;
+
+    /**
+     * Constructor
+     * @param workers number of simultaneous exports
+     * @param queueLimit number of exports waiting for a worker
+     * @param pTimeToLive time (ms) during which a finished export is kept
+     */
+    public JobManager(final int workers, final int queueLimit, final long pTimeToLive) {
+        this.timeToLive = pTimeToLive;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueLimit), runnable -> {
+                    final Thread thread = new Thread(runnable, "cnesexport-job");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Return the unique instance, limits come from requests.properties
+     * @return the singleton
+     */
+    public static synchronized JobManager getInstance() {
+        if (ourInstance == null) {
+            ourInstance = new JobManager(
+                    Integer.parseInt(AbstractDataProvider.getRequest(JOB_WORKERS).trim()),
+                    Integer.parseInt(AbstractDataProvider.getRequest(JOB_QUEUE_LIMIT).trim()),
+                    Long.parseLong(AbstractDataProvider.getRequest(JOB_TTL).trim()));
+        }
+        return ourInstance;
+    }
+
+    /**
+     * Stop the exports of the singleton, delete their files and release it
+     */
+    public static synchronized void shutdown() {
+        if (ourInstance != null) {
+            ourInstance.close();
+            ourInstance = null;
+        }
+    }
+
+    /**
+     * Queue an export
+     * @param profileKey key of the profile to export
+     * @param exporter format of the export
+     * @param url url of the server to request
+     * @return the queued export
+     * @throws BadSonarQubeRequestException when too many exports are waiting
+     */
+    public ExportJob submit(final String profileKey, final Exporter exporter, final String url)
+            throws BadSonarQubeRequestException {
+        purge();
+        final ExportJob job = new ExportJob(profileKey, exporter, url);
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new BadSonarQubeRequestException("Too many exports are running, please try again later.");
+        }
+        return job;
+    }
+
+    /**
+     * Get an export
+     * @param id id of the export
+     * @return the export
+     * @throws BadSonarQubeRequestException when the export is unknown or expired
+     */
+    public ExportJob get(final String id) throws BadSonarQubeRequestException {
+        purge();
+        final ExportJob job = jobs.get(id);
+        if (job == null) {
+            throw new BadSonarQubeRequestException(String.format("Unknown export '%s'.", id));
+        }
+        return job;
+    }
+
+    /**
+     * Forget the exports finished for too long and delete their files
+     */
+    public void purge() {
+        final long limit = System.currentTimeMillis() - timeToLive;
+        final Iterator<ExportJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            final ExportJob job = iterator.next();
+            if (job.getEndTime() > 0 && job.getEndTime() < limit) {
+                iterator.remove();
+                job.deleteFile();
+            }
+        }
+    }
+
+    /**
+     * Stop the exports and delete all files
+     */
+    public void close() {
+        executor.shutdownNow();
+        for (ExportJob job : jobs.values()) {
+            job.deleteFile();
+        }
+        jobs.clear();
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/**
+ * Jobs' package for the plugin.
+ * Contains classes running exports in background and following their progress.
+ * @author lequal
+ * @version 1.0
+ */
+
+package fr.cnes.sonar.plugins.export.jobs;
@@ -0,0 +1,115 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.metrics;
+
+import org.sonar.api.utils.text.JsonWriter;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durations and counts of one export, given back with its result
+ * @author lequal
+ */
+public class ExportTimings {
+
+    /**
+     * Nanoseconds per millisecond
+     */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /**
+     * Summed durations in nanoseconds by name
+     */
+    private final ConcurrentMap<String, LongAdder> durations = new ConcurrentHashMap<>();
+    /**
+     * Counts by name
+     */
+    private final ConcurrentMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Add a duration
+     * @param name name of the measured operation
+     * @param nanos the duration in nanoseconds
+     */
+    public void add(final String name, final long nanos) {
+        durations.computeIfAbsent(name, k -> new LongAdder()).add(nanos);
+    }
+
+    /**
+     * Add to a count
+     * @param name name of the counter
+     * @param n value to add
+     */
+    public void count(final String name, final long n) {
+        counts.computeIfAbsent(name, k -> new LongAdder()).add(n);
+    }
+
+    /**
+     * Summed duration of an operation
+     * @param name name of the operation
+     * @return the duration in nanoseconds, 0 if never measured
+     */
+    public long getDuration(final String name) {
+        final LongAdder duration = durations.get(name);
+        return duration == null ? 0 : duration.sum();
+    }
+
+    /**
+     * Value of a counter
+     * @param name name of the counter
+     * @return the count, 0 if never counted
+     */
+    public long getCount(final String name) {
+        final LongAdder count = counts.get(name);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Write the durations in milliseconds and the counts as a json object
+     * @param jsonWriter writer positioned where the object goes
+     */
+    public void writeTo(final JsonWriter jsonWriter) {
+        jsonWriter.beginObject();
+        for (Map.Entry<String, LongAdder> duration : new TreeMap<>(durations).entrySet()) {
+            jsonWriter.prop(duration.getKey() + ".ms", duration.getValue().sum() / NANOS_PER_MILLI);
+        }
+        for (Map.Entry<String, LongAdder> count : new TreeMap<>(counts).entrySet()) {
+            jsonWriter.prop(count.getKey(), count.getValue().sum());
+        }
+        jsonWriter.endObject();
+    }
+
+    /**
+     * Durations in milliseconds and counts on a single line, for the logs
+     * @return the breakdown
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, LongAdder> duration : new TreeMap<>(durations).entrySet()) {
+            builder.append(String.format("%s=%.1fms ", duration.getKey(), duration.getValue().sum() / NANOS_PER_MILLI));
+        }
+        for (Map.Entry<String, LongAdder> count : new TreeMap<>(counts).entrySet()) {
+            builder.append(count.getKey()).append('=').append(count.getValue().sum()).append(' ');
+        }
+        return builder.toString().trim();
+    }
+}
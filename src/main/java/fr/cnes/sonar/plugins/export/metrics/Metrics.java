@@ -0,0 +1,302 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.metrics;
+
+import fr.cnes.sonar.plugins.export.report.providers.AbstractDataProvider;
+import org.sonar.api.utils.text.JsonWriter;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers of all exports of the server
+ * Measures are also added to the timings of the current export when one is given.
+ * When disabled, the clock is not read and nothing is recorded.
+ * @author lequal
+ */
+public final class Metrics {
+
+    /**
+     * Time until the headers of an http response are received
+     */
+    public static final String HTTP_LATENCY = "http.latency";
+    /**
+     * Time of a whole http call
+     */
+    public static final String HTTP_CALL = "http.call";
+    /**
+     * Number of bytes received through http
+     */
+    public static final String HTTP_BYTES = "http.bytes";
+    /**
+     * Number of bytes not received through http thanks to compressed responses
+     */
+    public static final String HTTP_BYTES_SAVED = "http.bytes.saved";
+    /**
+     * Prefix of the number of http responses by status class, e.g. http.status.2xx
+     */
+    public static final String HTTP_STATUS = "http.status.";
+    /**
+     * Number of http calls failed without response
+     */
+    public static final String HTTP_ERRORS = "http.errors";
+    /**
+     * Number of retried http requests
+     */
+    public static final String HTTP_RETRIES = "http.retries";
+    /**
+     * Number of http requests refused without being sent by an open circuit breaker
+     */
+    public static final String HTTP_REJECTED = "http.rejected";
+    /**
+     * Time of a request of a provider, whatever the backend
+     */
+    public static final String PROVIDER_REQUEST = "provider.request";
+    /**
+     * Time spent reading and parsing responses
+     */
+    public static final String PROVIDER_PARSE = "provider.parse";
+    /**
+     * Number of bytes of the responses read by providers
+     */
+    public static final String PROVIDER_BYTES = "provider.bytes";
+    /**
+     * Number of requests of providers
+     */
+    public static final String PROVIDER_REQUESTS = "provider.requests";
+    /**
+     * Number of pages of rules received
+     */
+    public static final String RULES_PAGES = "rules.pages";
+    /**
+     * Number of rules received
+     */
+    public static final String RULES_COUNT = "rules.count";
+    /**
+     * Number of pages of rules requested again after a failure
+     */
+    public static final String RULES_PAGES_RETRIED = "rules.pages.retried";
+    /**
+     * Number of pages of rules read from the checkpoint of a failed export
+     */
+    public static final String RULES_PAGES_RESUMED = "rules.pages.resumed";
+    /**
+     * Number of requests on a single rule
+     */
+    public static final String RULES_LOOKUPS = "rules.lookups";
+    /**
+     * Prefix of the time spent writing a file by format, e.g. writer.csv
+     */
+    public static final String WRITER = "writer.";
+    /**
+     * Time of a whole export
+     */
+    public static final String EXPORT_TOTAL = "export.total";
+    /**
+     * Number of exports given from the cache
+     */
+    public static final String EXPORT_CACHE_HITS = "export.cache.hits";
+    /**
+     * Number of exports made from a snapshot and the changes since
+     */
+    public static final String EXPORT_DELTAS = "export.deltas";
+    /**
+     * Number of changelog events applied to snapshots
+     */
+    public static final String DELTA_EVENTS = "delta.events";
+    /**
+     * Number of downloaded files compressed with gzip
+     */
+    public static final String DOWNLOAD_COMPRESSED = "download.compressed";
+    /**
+     * Number of bytes not sent to the users thanks to compressed downloads
+     */
+    public static final String DOWNLOAD_BYTES_SAVED = "download.bytes.saved";
+    /**
+     * Name of the property enabling the metrics
+     */
+    private static final String METRICS_ENABLED = "METRICS_ENABLED";
+    /**
+     * Nanoseconds per millisecond
+     */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /**
+     * Unique instance
+     */
+    private static Metrics instance;
+
+    /**
+     * Timers by name
+     */
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    /**
+     * Counters by name
+     */
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    /**
+     * False to record nothing
+     */
+    private volatile boolean enabled;
+
+    /**
+     * Constructor
+     * @param pEnabled false to record nothing
+     */
+    public Metrics(final boolean pEnabled) {
+        this.enabled = pEnabled;
+    }
+
+    /**
+     * Give the unique instance, enabled as configured in requests.properties
+     * @return the metrics of the server
+     */
+    public static synchronized Metrics getInstance() {
+        if(instance == null) {
+            instance = new Metrics(Boolean.parseBoolean(
+                    AbstractDataProvider.getRequest(METRICS_ENABLED).trim()));
+        }
+        return instance;
+    }
+
+    /**
+     * Tell whether measures are recorded
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable the recording
+     * @param pEnabled false to record nothing
+     */
+    public void setEnabled(final boolean pEnabled) {
+        this.enabled = pEnabled;
+    }
+
+    /**
+     * Start a measure
+     * @return the current time in nanoseconds, 0 when disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * End a measure started with start()
+     * @param name name of the timer
+     * @param start value given by start()
+     * @param timings timings of the current export, may be null
+     */
+    public void stop(final String name, final long start, final ExportTimings timings) {
+        if(enabled) {
+            record(name, System.nanoTime() - start, timings);
+        }
+    }
+
+    /**
+     * Record a duration
+     * @param name name of the timer
+     * @param nanos the duration in nanoseconds
+     * @param timings timings of the current export, may be null
+     */
+    public void record(final String name, final long nanos, final ExportTimings timings) {
+        if(enabled) {
+            getTimer(name).record(nanos);
+            if(timings != null) {
+                timings.add(name, nanos);
+            }
+        }
+    }
+
+    /**
+     * Add to a counter
+     * @param name name of the counter
+     * @param n value to add
+     * @param timings timings of the current export, may be null
+     */
+    public void count(final String name, final long n, final ExportTimings timings) {
+        if(enabled) {
+            counters.computeIfAbsent(name, k -> new LongAdder()).add(n);
+            if(timings != null) {
+                timings.count(name, n);
+            }
+        }
+    }
+
+    /**
+     * Give a timer, created if needed
+     * @param name name of the timer
+     * @return the timer
+     */
+    public Timer getTimer(final String name) {
+        return timers.computeIfAbsent(name, k -> new Timer());
+    }
+
+    /**
+     * Value of a counter
+     * @param name name of the counter
+     * @return the count, 0 if never counted
+     */
+    public long getCount(final String name) {
+        final LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Forget all measures
+     */
+    public void reset() {
+        timers.clear();
+        counters.clear();
+    }
+
+    /**
+     * Write all timers and counters as a json object
+     * Durations are in milliseconds.
+     * @param jsonWriter writer positioned where the object goes
+     */
+    public void writeTo(final JsonWriter jsonWriter) {
+        jsonWriter.beginObject();
+        jsonWriter.prop("enabled", enabled);
+        jsonWriter.name("timers").beginObject();
+        for (Map.Entry<String, Timer> entry : new TreeMap<>(timers).entrySet()) {
+            final Timer timer = entry.getValue();
+            final long count = timer.getCount();
+            jsonWriter.name(entry.getKey()).beginObject();
+            jsonWriter.prop("count", count);
+            jsonWriter.prop("totalMs", timer.getTotal() / NANOS_PER_MILLI);
+            jsonWriter.prop("meanMs", count == 0 ? 0 : timer.getTotal() / NANOS_PER_MILLI / count);
+            jsonWriter.prop("p50Ms", timer.getPercentile(0.5) / NANOS_PER_MILLI);
+            jsonWriter.prop("p95Ms", timer.getPercentile(0.95) / NANOS_PER_MILLI);
+            jsonWriter.prop("p99Ms", timer.getPercentile(0.99) / NANOS_PER_MILLI);
+            jsonWriter.prop("maxMs", timer.getMax() / NANOS_PER_MILLI);
+            jsonWriter.endObject();
+        }
+        jsonWriter.endObject();
+        jsonWriter.name("counters").beginObject();
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            jsonWriter.prop(entry.getKey(), entry.getValue().sum());
+        }
+        jsonWriter.endObject();
+        jsonWriter.endObject();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.metrics;
+
+import fr.cnes.sonar.plugins.export.report.exporters.ProfileWriter;
+import fr.cnes.sonar.plugins.export.report.model.RuleView;
+
+import java.io.IOException;
+
+/**
+ * Writer measuring the time spent by another one
+ * The time of the whole file is recorded once, when it is finished.
+ * @author lequal
+ */
+public class TimedProfileWriter implements ProfileWriter {
+
+    /**
+     * Measured writer
+     */
+    private final ProfileWriter writer;
+    /**
+     * Name of the timer
+     */
+    private final String name;
+    /**
+     * Timings of the current export, may be null
+     */
+    private final ExportTimings timings;
+    /**
+     * Metrics of the server
+     */
+    private final Metrics metrics = Metrics.getInstance();
+    /**
+     * Time spent so far in nanoseconds
+     */
+    private long elapsed;
+
+    /**
+     * Constructor
+     * @param pWriter measured writer
+     * @param format format of the file, appended to the name of the timer
+     * @param pTimings timings of the current export, may be null
+     */
+    public TimedProfileWriter(final ProfileWriter pWriter, final String format, final ExportTimings pTimings) {
+        this.writer = pWriter;
+        this.name = Metrics.WRITER + format;
+        this.timings = pTimings;
+    }
+
+    @Override
+    public void startProfile(final String profileKey) throws IOException {
+        final long start = metrics.start();
+        writer.startProfile(profileKey);
+        elapsed += metrics.start() - start;
+    }
+
+    @Override
+    public void write(final RuleView rule) throws IOException {
+        final long start = metrics.start();
+        writer.write(rule);
+        elapsed += metrics.start() - start;
+    }
+
+    @Override
+    public void endProfile() throws IOException {
+        final long start = metrics.start();
+        writer.endProfile();
+        elapsed += metrics.start() - start;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        final long start = metrics.start();
+        writer.finish();
+        elapsed += metrics.start() - start;
+        metrics.record(name, elapsed, timings);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durations of an operation: count, total, maximum and a histogram
+ * Buckets of the histogram are powers of 2 in microseconds, so percentiles are upper bounds.
+ * @author lequal
+ */
+public class Timer {
+
+    /**
+     * Number of buckets, the last one holds everything above 2^30 microseconds
+     */
+    private static final int BUCKETS = 32;
+
+    /**
+     * Number of recorded durations
+     */
+    private final LongAdder count = new LongAdder();
+    /**
+     * Sum of the recorded durations in nanoseconds
+     */
+    private final LongAdder total = new LongAdder();
+    /**
+     * Longest recorded duration in nanoseconds
+     */
+    private final AtomicLong max = new AtomicLong();
+    /**
+     * Number of durations of each bucket: bucket i holds durations under 2^(i+1) microseconds
+     */
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Record a duration
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(final long nanos) {
+        count.increment();
+        total.add(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+        histogram.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    /**
+     * Number of recorded durations
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Sum of the recorded durations
+     * @return the total in nanoseconds
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Longest recorded duration
+     * @return the maximum in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Duration under which a part of the recorded durations are
+     * @param quantile the part, between 0 and 1
+     * @return the upper bound of the bucket holding the quantile in nanoseconds, 0 if nothing is recorded
+     */
+    public long getPercentile(final double quantile) {
+        long remaining = (long) Math.ceil(getCount() * quantile);
+        long bound = 0;
+        for (int i = 0; i < BUCKETS && remaining > 0; i++) {
+            remaining -= histogram.get(i);
+            bound = TimeUnit.MICROSECONDS.toNanos(1L << (i + 1));
+        }
+        // the histogram is not more precise than the maximum
+        return Math.min(bound, getMax());
+    }
+
+    /**
+     * Bucket of a duration
+     * @param micros the duration in microseconds
+     * @return index of the bucket
+     */
+    private static int bucket(final long micros) {
+        return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1, micros)));
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.cache;
+
+import fr.cnes.sonar.plugins.export.report.exporters.Exporter;
+import fr.cnes.sonar.plugins.export.report.providers.AbstractDataProvider;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Keep the last exported files in memory
+ * Files are indexed by profile and format and tagged with the version of their profile,
+ * they are evicted in least recently used order when there are too many or too big.
+ * @author lequal
+ */
+public final class ExportCache {
+
+    /**
+     * Name of the property for the maximum number of cached files
+     */
+    private static final String EXPORT_CACHE_MAX_ENTRIES = "EXPORT_CACHE_MAX_ENTRIES";
+    /**
+     * Name of the property for the maximum total size of cached files
+     */
+    private static final String EXPORT_CACHE_MAX_BYTES = "EXPORT_CACHE_MAX_BYTES";
+    /**
+     * Name of the property for the maximum size of a cached file
+     */
+    private static final String EXPORT_CACHE_MAX_ENTRY_BYTES = "EXPORT_CACHE_MAX_ENTRY_BYTES";
+
+    /**
+     * Unique instance
+     */
+    private static ExportCache ourInstance;
+
+    /**
+     * Cached files in access order
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Maximum number of cached files
+     */
+    private final int maxEntries;
+    /**
+     * Maximum total size of cached files in bytes
+     */
+    private final long maxBytes;
+    /**
+     * Maximum size of a cached file in bytes
+     */
+    private final long maxEntryBytes;
+    /**
+     * Total size of cached files in bytes
+     */
+    private long bytes;
+
+    /**
+     * A cached file and the version of its profile
+     */
+    private static final class Entry {
+        /**
+         * Version of the profile when it was exported
+         */
+        private final String version;
+        /**
+         * Content of the file
+         */
+        private final byte[] content;
+
+        /**
+         * Constructor
+         * @param pVersion version of the profile
+         * @param pContent content of the file
+         */
+        private Entry(final String pVersion, final byte[] pContent) {
+            this.version = pVersion;
+            this.content = pContent;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param pMaxEntries maximum number of cached files
+     * @param pMaxBytes maximum total size of cached files in bytes
+     */
+    public ExportCache(final int pMaxEntries, final long pMaxBytes) {
+        this(pMaxEntries, pMaxBytes, pMaxBytes);
+    }
+
+    /**
+     * Constructor with a limit per file
+     * @param pMaxEntries maximum number of cached files
+     * @param pMaxBytes maximum total size of cached files in bytes
+     * @param pMaxEntryBytes maximum size of a cached file in bytes
+     */
+    public ExportCache(final int pMaxEntries, final long pMaxBytes, final long pMaxEntryBytes) {
+        this.maxEntries = pMaxEntries;
+        this.maxBytes = pMaxBytes;
+        this.maxEntryBytes = Math.min(pMaxEntryBytes, pMaxBytes);
+    }
+
+    /**
+     * Return the unique instance, limits come from requests.properties
+     * @return the singleton
+     */
+    public static synchronized ExportCache getInstance() {
+        if (ourInstance == null) {
+            ourInstance = new ExportCache(
+                    Integer.parseInt(AbstractDataProvider.getRequest(EXPORT_CACHE_MAX_ENTRIES).trim()),
+                    Long.parseLong(AbstractDataProvider.getRequest(EXPORT_CACHE_MAX_BYTES).trim()),
+                    Long.parseLong(AbstractDataProvider.getRequest(EXPORT_CACHE_MAX_ENTRY_BYTES).trim()));
+        }
+        return ourInstance;
+    }
+
+    /**
+     * Key of the export of a profile in a format
+     * @param profileKey key of the profile
+     * @param exporter format of the export
+     * @return the key of the cached file
+     */
+    public static String key(final String profileKey, final Exporter exporter) {
+        // fields distinguish the options of a format
+        return profileKey + '|' + exporter.getFormat() + '|' + new TreeSet<>(exporter.getFields());
+    }
+
+    /**
+     * Get a cached file if its profile did not change
+     * A file exported from another version of the profile is removed.
+     * @param key key of the file
+     * @param version current version of the profile
+     * @return the content of the file or null if not cached
+     */
+    public synchronized byte[] get(final String key, final String version) {
+        byte[] content = null;
+        final Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.version.equals(version)) {
+                content = entry.content;
+            } else {
+                // the profile changed since the export
+                remove(key);
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Cache a file, files which are too big are ignored
+     * @param key key of the file
+     * @param version version of the exported profile
+     * @param content content of the file
+     */
+    public synchronized void put(final String key, final String version, final byte[] content) {
+        remove(key);
+        if (version != null && content.length <= maxEntryBytes) {
+            entries.put(key, new Entry(version, content));
+            bytes += content.length;
+            evict();
+        }
+    }
+
+    /**
+     * Remove a cached file
+     * @param key key of the file
+     */
+    public synchronized void remove(final String key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.content.length;
+        }
+    }
+
+    /**
+     * Remove all cached files
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Number of cached files
+     * @return the number of files
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Total size of cached files
+     * @return the size in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Maximum total size of cached files
+     * @return the size in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Maximum size of a file which can be cached, bytes of a download are not recorded beyond it
+     * @return the size in bytes
+     */
+    public long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * Remove least recently used files until limits are respected
+     */
+    private void evict() {
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && (entries.size() > maxEntries || bytes > maxBytes)) {
+            bytes -= iterator.next().getValue().content.length;
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.report.providers.AbstractDataProvider;
+import fr.cnes.sonar.plugins.export.report.providers.RuleHandler;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep the pages of rules received by exports until they succeed
+ * An export failing halfway is resumed after its last kept page when it is run again.
+ * Each export has its own directory, named after the profile, its version and the exported fields,
+ * with one file per page holding the rules and their active severities.
+ * Directories are removed when their export succeeds or when they are too old.
+ * @author lequal
+ */
+public final class ExportCheckpoints {
+
+    /**
+     * Logger of this class
+     */
+    private static final Logger LOGGER = Loggers.get(ExportCheckpoints.class);
+    /**
+     * Name of the property for the number of hours a checkpoint is kept
+     */
+    private static final String CHECKPOINT_RETENTION_HOURS = "CHECKPOINT_RETENTION_HOURS";
+    /**
+     * Extension of page files
+     */
+    private static final String EXTENSION = ".page";
+    /**
+     * Extension of a page file being written
+     */
+    private static final String TEMPORARY = ".tmp";
+
+    /**
+     * Unique instance
+     */
+    private static ExportCheckpoints ourInstance;
+
+    /**
+     * Converter of the pages
+     */
+    private final Gson gson;
+    /**
+     * Time (ms) a checkpoint is kept
+     */
+    private final long retention;
+    /**
+     * Exports currently using their checkpoint
+     */
+    private final Set<String> opened;
+    /**
+     * Directory of the checkpoints, null to resume nothing
+     */
+    private Path directory;
+
+    /**
+     * Constructor
+     * @param pRetention time (ms) a checkpoint is kept, 0 to keep it until its export succeeds
+     */
+    public ExportCheckpoints(final long pRetention) {
+        this.retention = pRetention;
+        this.gson = new Gson();
+        this.opened = new HashSet<>();
+    }
+
+    /**
+     * Return the unique instance, its retention comes from requests.properties
+     * @return the singleton
+     */
+    public static synchronized ExportCheckpoints getInstance() {
+        if (ourInstance == null) {
+            ourInstance = new ExportCheckpoints(TimeUnit.HOURS.toMillis(Long.parseLong(
+                    AbstractDataProvider.getRequest(CHECKPOINT_RETENTION_HOURS).trim())));
+        }
+        return ourInstance;
+    }
+
+    /**
+     * Keep checkpoints in a directory, the ones which are too old are removed
+     * @param pDirectory directory of the checkpoints, created if needed, null to keep nothing
+     * @throws IOException when the directory can not be created
+     */
+    public synchronized void setDirectory(final Path pDirectory) throws IOException {
+        if (pDirectory != null) {
+            Files.createDirectories(pDirectory);
+        }
+        this.directory = pDirectory;
+        purge();
+    }
+
+    /**
+     * Getter for directory
+     * @return directory of the checkpoints, null if nothing is kept
+     */
+    public synchronized Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Identifier of an export, the same when it is run again on an unchanged profile
+     * @param profileKey key of the profile
+     * @param version version of the profile
+     * @param fields fields of the exported rules
+     * @return the identifier
+     */
+    public static String exportId(final String profileKey, final String version, final Set<String> fields) {
+        return profileKey + '\n' + version + '\n' + String.join(",", new TreeSet<>(fields));
+    }
+
+    /**
+     * Open the checkpoint of an export, to close after use
+     * @param exportId identifier of the export
+     * @return the checkpoint, null when nothing is kept or when the export is already running
+     */
+    public synchronized Checkpoint open(final String exportId) {
+        Checkpoint checkpoint = null;
+        if (directory != null && opened.add(exportId)) {
+            final StringBuilder name = new StringBuilder();
+            for (byte b : exportId.getBytes(StandardCharsets.UTF_8)) {
+                name.append(String.format("%02x", b));
+            }
+            checkpoint = new Checkpoint(exportId, directory.resolve(name.toString()));
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Remove all checkpoints which are not in use
+     */
+    public synchronized void clear() {
+        if (directory != null) {
+            for (Path checkpoint : checkpoints()) {
+                delete(checkpoint);
+            }
+        }
+    }
+
+    /**
+     * Remove checkpoints which are too old
+     */
+    private synchronized void purge() {
+        if (directory != null && retention > 0) {
+            final long now = System.currentTimeMillis();
+            for (Path checkpoint : checkpoints()) {
+                if (now - lastModified(checkpoint) > retention) {
+                    delete(checkpoint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Directories of the checkpoints
+     * @return the directories, empty if they can not be listed
+     */
+    private List<Path> checkpoints() {
+        final List<Path> checkpoints = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path checkpoint : stream) {
+                checkpoints.add(checkpoint);
+            }
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Checkpoints of %s not listed: %s", directory, e.getMessage()));
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Last modification time of a file
+     * @param file the file
+     * @return the time in ms, 0 if unknown
+     */
+    private static long lastModified(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Delete a checkpoint and its pages, failures are only logged
+     * @param checkpoint directory of the checkpoint
+     */
+    private static void delete(final Path checkpoint) {
+        try {
+            if (Files.exists(checkpoint)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(checkpoint)) {
+                    for (Path file : stream) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                Files.deleteIfExists(checkpoint);
+            }
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Checkpoint %s not deleted: %s", checkpoint, e.getMessage()));
+        }
+    }
+
+    /**
+     * Content of a page file
+     */
+    private static final class Page {
+        /**
+         * Number of rules of the whole profile
+         */
+        private int total;
+        /**
+         * Largest page size accepted by the server
+         */
+        private int maxPageSize;
+        /**
+         * Rules of the page with their active severity
+         */
+        private Rule[] rules;
+    }
+
+    /**
+     * Pages kept for an export
+     * Pages are read back in the order they were added, a page which can not be read
+     * is removed with the ones after it and requested again.
+     */
+    public final class Checkpoint implements Closeable {
+        /**
+         * Identifier of the export
+         */
+        private final String exportId;
+        /**
+         * Directory of the page files
+         */
+        private final Path path;
+        /**
+         * Number of kept pages
+         */
+        private int pages;
+        /**
+         * Number of rules in the kept pages
+         */
+        private int offset;
+        /**
+         * Number of rules of the whole profile, 0 if unknown
+         */
+        private int total;
+        /**
+         * Largest page size accepted by the server, 0 if unknown
+         */
+        private int maxPageSize;
+        /**
+         * False once a page could not be written, following pages are not kept
+         */
+        private boolean writable = true;
+
+        /**
+         * Constructor
+         * @param pExportId identifier of the export
+         * @param pPath directory of the page files, created with the first page
+         */
+        private Checkpoint(final String pExportId, final Path pPath) {
+            this.exportId = pExportId;
+            this.path = pPath;
+        }
+
+        /**
+         * Give the rules of the kept pages, as they were received
+         * @param handler receiver of the pages and their rules
+         * @return the number of pages given
+         * @throws IOException when handling a rule
+         */
+        public int replay(final RuleHandler handler) throws IOException {
+            Page page = read(pages + 1);
+            while (page != null) {
+                pages++;
+                offset += page.rules.length;
+                total = page.total;
+                maxPageSize = page.maxPageSize;
+                handler.pageReceived(pages, total);
+                for (Rule rule : page.rules) {
+                    handler.handle(rule);
+                }
+                page = read(pages + 1);
+            }
+            return pages;
+        }
+
+        /**
+         * Keep a page received after the other ones
+         * The export goes on without checkpoint when the page can not be written.
+         * @param pTotal number of rules of the whole profile
+         * @param pMaxPageSize largest page size accepted by the server
+         * @param rules rules of the page with their active severity
+         */
+        public void add(final int pTotal, final int pMaxPageSize, final List<Rule> rules) {
+            if (writable && !rules.isEmpty()) {
+                final Page page = new Page();
+                page.total = pTotal;
+                page.maxPageSize = pMaxPageSize;
+                page.rules = rules.toArray(new Rule[rules.size()]);
+                final Path file = file(pages + 1);
+                final Path temporary = file.resolveSibling(file.getFileName() + TEMPORARY);
+                try {
+                    Files.createDirectories(path);
+                    try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                        gson.toJson(page, writer);
+                    }
+                    // a page is complete or missing, never partially written
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    pages++;
+                    offset += rules.size();
+                    total = pTotal;
+                    maxPageSize = pMaxPageSize;
+                } catch (IOException e) {
+                    LOGGER.warn(String.format("Checkpoint of %s stopped at page %d: %s",
+                            path.getFileName(), pages, e.getMessage()));
+                    writable = false;
+                }
+            }
+        }
+
+        /**
+         * Getter for pages
+         * @return number of kept pages
+         */
+        public int getPages() {
+            return pages;
+        }
+
+        /**
+         * Getter for offset
+         * @return number of rules in the kept pages
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Tell if all rules of the profile are in the kept pages
+         * @return true when no page remains to request
+         */
+        public boolean isComplete() {
+            return pages > 0 && offset >= total;
+        }
+
+        /**
+         * Getter for maxPageSize
+         * @return largest page size accepted by the server, 0 if no page is kept
+         */
+        public int getMaxPageSize() {
+            return maxPageSize;
+        }
+
+        /**
+         * Remove the kept pages, once the export succeeded
+         */
+        public void delete() {
+            ExportCheckpoints.delete(path);
+            pages = 0;
+            offset = 0;
+        }
+
+        /**
+         * Let the export be resumed again, the kept pages stay
+         */
+        @Override
+        public void close() {
+            synchronized (ExportCheckpoints.this) {
+                opened.remove(exportId);
+            }
+        }
+
+        /**
+         * File of a page
+         * @param page index of the page, starting at 1
+         * @return the path of the file
+         */
+        private Path file(final int page) {
+            return path.resolve(String.format("%06d%s", page, EXTENSION));
+        }
+
+        /**
+         * Read a kept page
+         * A page which can not be read is removed with the following ones.
+         * @param page index of the page, starting at 1
+         * @return the page, null if it is not kept
+         */
+        private Page read(final int page) {
+            final Path file = file(page);
+            Page read = null;
+            if (Files.exists(file)) {
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    read = gson.fromJson(reader, Page.class);
+                } catch (IOException | JsonParseException e) {
+                    LOGGER.warn(String.format("Checkpoint of %s stopped at page %d: %s",
+                            path.getFileName(), page - 1, e.getMessage()));
+                }
+                if (read == null || read.rules == null) {
+                    read = null;
+                    truncate(page);
+                }
+            }
+            return read;
+        }
+
+        /**
+         * Remove a page and the following ones
+         * @param page index of the first removed page
+         */
+        private void truncate(final int page) {
+            int removed = page;
+            try {
+                while (Files.deleteIfExists(file(removed))) {
+                    removed++;
+                }
+            } catch (IOException e) {
+                LOGGER.warn(String.format("Page %d of %s not deleted: %s",
+                        removed, path.getFileName(), e.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,509 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.cache;
+
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.report.model.RuleView;
+import fr.cnes.sonar.plugins.export.report.providers.AbstractDataProvider;
+import fr.cnes.sonar.plugins.export.report.providers.RuleReader;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep the rules of the last export of each profile, to compare it with later versions
+ * and to export only what changed since.
+ * Snapshots are evicted in least recently used order when there are too many profiles.
+ * When a directory is given, they are also written on disk and survive restarts;
+ * files are removed when there are too many or when they are too old.
+ * @author lequal
+ */
+public final class ProfileSnapshots {
+
+    /**
+     * Logger of this class
+     */
+    private static final Logger LOGGER = Loggers.get(ProfileSnapshots.class);
+    /**
+     * Name of the property for the maximum number of kept profiles
+     */
+    private static final String SNAPSHOT_MAX_PROFILES = "SNAPSHOT_MAX_PROFILES";
+    /**
+     * Name of the property for the number of days a snapshot file is kept
+     */
+    private static final String SNAPSHOT_RETENTION_DAYS = "SNAPSHOT_RETENTION_DAYS";
+    /**
+     * Name of the property for the memory (bytes) taken by the rules of a profile, larger snapshots are not kept
+     */
+    private static final String RULES_MEMORY_CAP = "RULES_MEMORY_CAP";
+    /**
+     * Extension of snapshot files
+     */
+    private static final String EXTENSION = ".snap";
+    /**
+     * Fields of the rules which are not kept
+     */
+    private static final Set<String> DROPPED_FIELDS = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList(RuleReader.HTML_DESC, RuleReader.DEBT_REM_FN, RuleReader.DEBT_REM_FN_COEFF)));
+    /**
+     * Order of the rules in a snapshot
+     */
+    public static final Comparator<Rule> BY_KEY = Comparator.comparing(Rule::getKey);
+
+    /**
+     * Unique instance
+     */
+    private static ProfileSnapshots ourInstance;
+
+    /**
+     * Snapshots by profile in access order
+     */
+    private final LinkedHashMap<String, Snapshot> snapshots;
+    /**
+     * Maximum number of kept profiles
+     */
+    private final int maxProfiles;
+    /**
+     * Time (ms) a snapshot file is kept
+     */
+    private final long retention;
+    /**
+     * Directory of snapshot files, null to keep them in memory only
+     */
+    private Path directory;
+
+    /**
+     * Rules of a profile at a given version
+     */
+    public static final class Snapshot {
+        /**
+         * Key of the profile
+         */
+        private final String profileKey;
+        /**
+         * Version of the profile when it was exported
+         */
+        private final String version;
+        /**
+         * Time (ms) of the export
+         */
+        private final long time;
+        /**
+         * Fields of the rules kept in the snapshot
+         */
+        private final Set<String> fields;
+        /**
+         * Rules sorted by key
+         */
+        private final List<Rule> rules;
+
+        /**
+         * Constructor
+         * @param pProfileKey key of the profile
+         * @param pVersion version of the profile
+         * @param pTime time of the export in ms
+         * @param pFields fields of the rules kept in the snapshot
+         * @param pRules rules sorted by key
+         */
+        public Snapshot(final String pProfileKey, final String pVersion, final long pTime,
+                        final Set<String> pFields, final List<Rule> pRules) {
+            this.profileKey = pProfileKey;
+            this.version = pVersion;
+            this.time = pTime;
+            this.fields = Collections.unmodifiableSet(pFields);
+            this.rules = Collections.unmodifiableList(pRules);
+        }
+
+        /**
+         * Getter for profileKey
+         * @return key of the profile
+         */
+        public String getProfileKey() {
+            return profileKey;
+        }
+
+        /**
+         * Getter for version
+         * @return version of the profile when it was exported
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Getter for time
+         * @return time of the export in ms
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Getter for fields
+         * @return fields of the rules kept in the snapshot, key, type and active severity are always kept
+         */
+        public Set<String> getFields() {
+            return fields;
+        }
+
+        /**
+         * Getter for rules
+         * @return read-only rules sorted by key
+         */
+        public List<Rule> getRules() {
+            return rules;
+        }
+    }
+
+    /**
+     * Rules of an export collected for its snapshot while they are received
+     * Rules are compacted and counted: once they exceed the memory cap, they are dropped
+     * and no snapshot is kept, so that a large export does not hold a copy of its rules.
+     */
+    public static final class Recorder {
+        /**
+         * Memory (bytes) the rules can take, 0 for no limit
+         */
+        private final long memoryCap;
+        /**
+         * Compacted rules, null once the cap is exceeded
+         */
+        private List<Rule> rules = new ArrayList<>();
+        /**
+         * Estimated memory (bytes) taken by the rules
+         */
+        private long memoryBytes;
+
+        /**
+         * Constructor
+         * @param pMemoryCap memory (bytes) the rules can take, 0 for no limit
+         */
+        public Recorder(final long pMemoryCap) {
+            this.memoryCap = pMemoryCap;
+        }
+
+        /**
+         * Create a recorder whose cap comes from requests.properties
+         * @return a new recorder
+         */
+        public static Recorder configured() {
+            return new Recorder(Long.parseLong(AbstractDataProvider.getRequest(RULES_MEMORY_CAP).trim()));
+        }
+
+        /**
+         * Keep a compacted copy of a rule, unless the cap is exceeded
+         * @param rule exported rule
+         * @return false once rules are not kept anymore
+         */
+        public boolean add(final RuleView rule) {
+            if (rules != null) {
+                final Rule compacted = compact(rule);
+                memoryBytes += SpillingRuleList.estimate(compacted);
+                if (memoryCap > 0 && memoryBytes > memoryCap) {
+                    rules = null;
+                } else {
+                    rules.add(compacted);
+                }
+            }
+            return rules != null;
+        }
+
+        /**
+         * Kept rules
+         * @return the rules in the order they were added, null if the cap was exceeded
+         */
+        public List<Rule> getRules() {
+            return rules;
+        }
+    }
+
+    /**
+     * Constructor keeping snapshots in memory only
+     * @param pMaxProfiles maximum number of kept profiles
+     */
+    public ProfileSnapshots(final int pMaxProfiles) {
+        this(pMaxProfiles, 0);
+    }
+
+    /**
+     * Complete constructor
+     * @param pMaxProfiles maximum number of kept profiles, in memory and on disk
+     * @param pRetention time (ms) a snapshot file is kept, 0 to keep it until there are too many
+     */
+    public ProfileSnapshots(final int pMaxProfiles, final long pRetention) {
+        this.maxProfiles = pMaxProfiles;
+        this.retention = pRetention;
+        this.snapshots = new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Snapshot> eldest) {
+                return size() > maxProfiles;
+            }
+        };
+    }
+
+    /**
+     * Return the unique instance, its limits come from requests.properties
+     * @return the singleton
+     */
+    public static synchronized ProfileSnapshots getInstance() {
+        if (ourInstance == null) {
+            ourInstance = new ProfileSnapshots(
+                    Integer.parseInt(AbstractDataProvider.getRequest(SNAPSHOT_MAX_PROFILES).trim()),
+                    TimeUnit.DAYS.toMillis(Long.parseLong(
+                            AbstractDataProvider.getRequest(SNAPSHOT_RETENTION_DAYS).trim())));
+        }
+        return ourInstance;
+    }
+
+    /**
+     * Write snapshots in a directory and read the ones written before
+     * Files which are too old or too many are removed.
+     * @param pDirectory directory of the files, created if needed, null to keep snapshots in memory only
+     * @throws IOException when the directory can not be created
+     */
+    public synchronized void setDirectory(final Path pDirectory) throws IOException {
+        if (pDirectory != null) {
+            Files.createDirectories(pDirectory);
+        }
+        this.directory = pDirectory;
+        purge();
+    }
+
+    /**
+     * Getter for directory
+     * @return directory of the files, null if snapshots are kept in memory only
+     */
+    public synchronized Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Keep the rules collected by a recorder, nothing is kept when they exceeded its cap
+     * @param profileKey key of the profile
+     * @param version version of the exported profile, nothing is kept when null
+     * @param fields fields of the exported rules
+     * @param recorder rules of the export
+     */
+    public void put(final String profileKey, final String version, final Set<String> fields,
+                    final Recorder recorder) {
+        if (recorder.getRules() != null) {
+            put(profileKey, version, fields, recorder.getRules());
+        }
+    }
+
+    /**
+     * Keep the rules of an export, replacing the previous snapshot of the profile
+     * The list is sorted in place and is kept: it must not be changed afterwards,
+     * descriptions should be removed with compact().
+     * @param profileKey key of the profile
+     * @param version version of the exported profile, nothing is kept when null
+     * @param fields fields of the exported rules
+     * @param rules exported rules, a modifiable list
+     */
+    public void put(final String profileKey, final String version, final Set<String> fields,
+                    final List<Rule> rules) {
+        if (version != null) {
+            // rules given by the server are already sorted
+            sort(rules);
+            final Set<String> kept = new HashSet<>(fields);
+            kept.removeAll(DROPPED_FIELDS);
+            final Snapshot snapshot = new Snapshot(profileKey, version, System.currentTimeMillis(), kept, rules);
+            final Path file;
+            synchronized (this) {
+                snapshots.put(profileKey, snapshot);
+                file = file(profileKey);
+            }
+            if (file != null) {
+                try {
+                    SnapshotFile.write(snapshot, file);
+                    purge();
+                } catch (IOException e) {
+                    // the snapshot stays in memory
+                    LOGGER.warn(String.format("Snapshot of %s not written: %s", profileKey, e.getMessage()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy a rule without its description
+     * Descriptions are not compared and would take most of the memory.
+     * @param rule rule to copy
+     * @return the copy
+     */
+    public static Rule compact(final RuleView rule) {
+        final Rule copy = new Rule(rule);
+        copy.setHtmlDesc("");
+        return copy;
+    }
+
+    /**
+     * Get the last snapshot of a profile, read on disk if not in memory
+     * A corrupted file is removed.
+     * @param profileKey key of the profile
+     * @return the snapshot or null if the profile was not exported
+     */
+    public Snapshot get(final String profileKey) {
+        final Path file;
+        synchronized (this) {
+            final Snapshot snapshot = snapshots.get(profileKey);
+            file = file(profileKey);
+            if (snapshot != null || file == null || !Files.exists(file)) {
+                return snapshot;
+            }
+        }
+        Snapshot read = null;
+        try {
+            read = SnapshotFile.read(file);
+            if (read.getProfileKey().equals(profileKey)) {
+                synchronized (this) {
+                    snapshots.putIfAbsent(profileKey, read);
+                }
+            } else {
+                read = null;
+            }
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Snapshot of %s ignored: %s", profileKey, e.getMessage()));
+            delete(file);
+        }
+        return read;
+    }
+
+    /**
+     * Remove all snapshots, in memory and on disk
+     */
+    public synchronized void clear() {
+        snapshots.clear();
+        if (directory != null) {
+            for (Path file : files()) {
+                delete(file);
+            }
+        }
+    }
+
+    /**
+     * Number of profiles kept in memory
+     * @return the number of snapshots
+     */
+    public synchronized int size() {
+        return snapshots.size();
+    }
+
+    /**
+     * Sort rules by key, without sorting when they already are as given by the server
+     * @param rules rules to sort in place
+     */
+    public static void sort(final List<Rule> rules) {
+        for (int i = 1; i < rules.size(); i++) {
+            if (BY_KEY.compare(rules.get(i - 1), rules.get(i)) > 0) {
+                rules.sort(BY_KEY);
+                return;
+            }
+        }
+    }
+
+    /**
+     * File of the snapshot of a profile
+     * Keys are hex encoded, so that any key gives a valid file name.
+     * @param profileKey key of the profile
+     * @return the path of the file, null when snapshots are kept in memory only
+     */
+    private Path file(final String profileKey) {
+        Path file = null;
+        if (directory != null) {
+            final StringBuilder name = new StringBuilder();
+            for (byte b : profileKey.getBytes(StandardCharsets.UTF_8)) {
+                name.append(String.format("%02x", b));
+            }
+            file = directory.resolve(name.append(EXTENSION).toString());
+        }
+        return file;
+    }
+
+    /**
+     * Remove files which are too old, then the oldest ones while there are too many
+     */
+    private synchronized void purge() {
+        if (directory != null) {
+            final List<Path> files = files();
+            final long now = System.currentTimeMillis();
+            files.sort(Comparator.comparingLong(ProfileSnapshots::lastModified).reversed());
+            for (int i = 0; i < files.size(); i++) {
+                final Path file = files.get(i);
+                if (i >= maxProfiles || (retention > 0 && now - lastModified(file) > retention)) {
+                    delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Snapshot files of the directory
+     * @return the files, empty if the directory can not be read
+     */
+    private List<Path> files() {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, '*' + EXTENSION)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Snapshots of %s not listed: %s", directory, e.getMessage()));
+        }
+        return files;
+    }
+
+    /**
+     * Last modification time of a file
+     * @param file the file
+     * @return the time in ms, 0 if unknown
+     */
+    private static long lastModified(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Delete a file, failures are only logged
+     * @param file file to delete
+     */
+    private static void delete(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Snapshot %s not deleted: %s", file, e.getMessage()));
+        }
+    }
+}
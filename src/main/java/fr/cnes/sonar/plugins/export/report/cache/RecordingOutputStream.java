@@ -0,0 +1,96 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream keeping a copy of the written bytes up to a limit
+ * @author lequal
+ */
+public class RecordingOutputStream extends FilterOutputStream {
+
+    /**
+     * Copy of the written bytes, null when the limit is exceeded
+     */
+    private ByteArrayOutputStream record = new ByteArrayOutputStream();
+    /**
+     * Maximum number of recorded bytes
+     */
+    private final long limit;
+
+    /**
+     * Constructor
+     * @param pOut stream in which bytes are written
+     * @param pLimit maximum number of recorded bytes
+     */
+    public RecordingOutputStream(final OutputStream pOut, final long pLimit) {
+        super(pOut);
+        this.limit = pLimit;
+    }
+
+    /**
+     * Write and record a byte
+     * @param b the byte
+     * @throws IOException when writing
+     */
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        if (fits(1)) {
+            record.write(b);
+        }
+    }
+
+    /**
+     * Write and record bytes
+     * @param b the bytes
+     * @param off start offset
+     * @param len number of bytes
+     * @throws IOException when writing
+     */
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        if (fits(len)) {
+            record.write(b, off, len);
+        }
+    }
+
+    /**
+     * Recorded bytes
+     * @return the bytes or null if the limit was exceeded
+     */
+    public byte[] getRecord() {
+        return record == null ? null : record.toByteArray();
+    }
+
+    /**
+     * Check if bytes can still be recorded, stop recording otherwise
+     * @param len number of bytes to record
+     * @return true if the bytes must be recorded
+     */
+    private boolean fits(final int len) {
+        if (record != null && record.size() + (long) len > limit) {
+            record = null;
+        }
+        return record != null;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.cache;
+
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary file of a snapshot, written column by column
+ * Keys and names are written as they are, other columns hold few distinct values
+ * and are written as a dictionary followed by an index per rule.
+ * The file ends with the CRC32 of its content.
+ * @author lequal
+ */
+public final class SnapshotFile {
+
+    /**
+     * First bytes of a snapshot file
+     */
+    private static final int MAGIC = 0x434e5350;
+    /**
+     * Version of the format
+     */
+    private static final int FORMAT = 1;
+    /**
+     * Index written for a missing value of a dictionary column
+     */
+    private static final int NO_VALUE = -1;
+    /**
+     * Suffix of the file written before it replaces the snapshot
+     */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * Private constructor, only static methods
+     */
+    private SnapshotFile() {
+    }
+
+    /**
+     * A column holding few distinct values
+     */
+    private static final class Column {
+        /**
+         * Read the value of a rule
+         */
+        private final Function<Rule, String> getter;
+        /**
+         * Set the value of a rule
+         */
+        private final BiConsumer<Rule, String> setter;
+
+        /**
+         * Constructor
+         * @param pGetter read the value of a rule
+         * @param pSetter set the value of a rule
+         */
+        private Column(final Function<Rule, String> pGetter, final BiConsumer<Rule, String> pSetter) {
+            this.getter = pGetter;
+            this.setter = pSetter;
+        }
+    }
+
+    /**
+     * Dictionary columns in the order of the file
+     */
+    private static final Column[] COLUMNS = {
+        new Column(Rule::getType, Rule::setType),
+        new Column(Rule::getActiveSeverity, Rule::setActiveSeverity),
+        new Column(Rule::getRepo, Rule::setRepo),
+        new Column(Rule::getLangName, Rule::setLangName),
+        new Column(Rule::getLang, Rule::setLang),
+        new Column(Rule::getSeverity, Rule::setSeverity),
+        new Column(Rule::getStatus, Rule::setStatus)
+    };
+
+    /**
+     * Write a snapshot, the previous file is replaced only once the new one is complete
+     * @param snapshot snapshot to write
+     * @param file destination
+     * @throws IOException when writing
+     */
+    public static void write(final ProfileSnapshots.Snapshot snapshot, final Path file) throws IOException {
+        // each writer has its own file: exports of the same profile can end at the same time
+        final Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(),
+                file.getFileName().toString(), TEMPORARY_SUFFIX);
+        try {
+            writeFile(snapshot, temporary);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Write the content of a snapshot file
+     * @param snapshot snapshot to write
+     * @param file file to write
+     * @throws IOException when writing
+     */
+    private static void writeFile(final ProfileSnapshots.Snapshot snapshot, final Path file) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(file))) {
+            final CRC32 checksum = new CRC32();
+            final DataOutputStream data = new DataOutputStream(new CheckedOutputStream(output, checksum));
+            final List<Rule> rules = snapshot.getRules();
+            data.writeInt(MAGIC);
+            data.writeInt(FORMAT);
+            data.writeUTF(snapshot.getProfileKey());
+            data.writeUTF(snapshot.getVersion());
+            data.writeLong(snapshot.getTime());
+            data.writeInt(snapshot.getFields().size());
+            for (String field : snapshot.getFields()) {
+                data.writeUTF(field);
+            }
+            data.writeInt(rules.size());
+            for (Rule rule : rules) {
+                data.writeUTF(rule.getKey());
+            }
+            for (Rule rule : rules) {
+                writeString(data, rule.getName());
+            }
+            for (Column column : COLUMNS) {
+                writeColumn(data, rules, column);
+            }
+            data.flush();
+            // the checksum is not part of the checked content
+            new DataOutputStream(output).writeLong(checksum.getValue());
+        }
+    }
+
+    /**
+     * Read a snapshot
+     * @param file file to read
+     * @return the snapshot
+     * @throws IOException when reading or if the file is corrupted
+     */
+    public static ProfileSnapshots.Snapshot read(final Path file) throws IOException {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+            final CRC32 checksum = new CRC32();
+            final DataInputStream data = new DataInputStream(new CheckedInputStream(input, checksum));
+            if (data.readInt() != MAGIC || data.readInt() != FORMAT) {
+                throw new IOException(String.format("%s is not a snapshot.", file));
+            }
+            final String profileKey = data.readUTF();
+            final String version = data.readUTF();
+            final long time = data.readLong();
+            final int fieldCount = data.readInt();
+            final Set<String> fields = new HashSet<>();
+            for (int i = 0; i < fieldCount; i++) {
+                fields.add(data.readUTF());
+            }
+            final int count = data.readInt();
+            final List<Rule> rules = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final Rule rule = new Rule();
+                rule.setKey(data.readUTF());
+                rules.add(rule);
+            }
+            for (Rule rule : rules) {
+                rule.setName(readString(data));
+            }
+            for (Column column : COLUMNS) {
+                readColumn(data, rules, column);
+            }
+            final long expected = checksum.getValue();
+            if (new DataInputStream(input).readLong() != expected) {
+                throw new IOException(String.format("Checksum of %s does not match its content.", file));
+            }
+            return new ProfileSnapshots.Snapshot(profileKey, version, time, fields, rules);
+        }
+    }
+
+    /**
+     * Write a column as a dictionary followed by the index of the value of each rule
+     * @param data destination
+     * @param rules rules of the snapshot
+     * @param column column to write
+     * @throws IOException when writing
+     */
+    private static void writeColumn(final DataOutputStream data, final List<Rule> rules, final Column column)
+            throws IOException {
+        final Map<String, Integer> dictionary = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+        final int[] indexes = new int[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            final String value = column.getter.apply(rules.get(i));
+            if (value == null) {
+                indexes[i] = NO_VALUE;
+            } else {
+                Integer index = dictionary.get(value);
+                if (index == null) {
+                    index = values.size();
+                    dictionary.put(value, index);
+                    values.add(value);
+                }
+                indexes[i] = index;
+            }
+        }
+        data.writeInt(values.size());
+        for (String value : values) {
+            data.writeUTF(value);
+        }
+        for (int index : indexes) {
+            data.writeInt(index);
+        }
+    }
+
+    /**
+     * Read a column written by writeColumn
+     * @param data source
+     * @param rules rules to complete
+     * @param column column to read
+     * @throws IOException when reading
+     */
+    private static void readColumn(final DataInputStream data, final List<Rule> rules, final Column column)
+            throws IOException {
+        final String[] values = new String[data.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = data.readUTF();
+        }
+        for (Rule rule : rules) {
+            final int index = data.readInt();
+            if (index < NO_VALUE || index >= values.length) {
+                throw new IOException("Index out of the dictionary of a snapshot column.");
+            }
+            column.setter.accept(rule, index == NO_VALUE ? null : values[index]);
+        }
+    }
+
+    /**
+     * Write a string which may be null
+     * @param data destination
+     * @param value string to write
+     * @throws IOException when writing
+     */
+    private static void writeString(final DataOutputStream data, final String value) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null) {
+            data.writeUTF(value);
+        }
+    }
+
+    /**
+     * Read a string written by writeString
+     * @param data source
+     * @return the string or null
+     * @throws IOException when reading
+     */
+    private static String readString(final DataInputStream data) throws IOException {
+        return data.readBoolean() ? data.readUTF() : null;
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.cache;
+
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.report.model.RuleRows;
+import fr.cnes.sonar.plugins.export.report.model.RuleView;
+import fr.cnes.sonar.plugins.export.report.model.RuleTable;
+import fr.cnes.sonar.plugins.export.report.providers.AbstractDataProvider;
+import fr.cnes.sonar.plugins.export.utils.StringPool;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Rules of a profile kept in memory up to a size, the next ones being written in a temporary file
+ * The first rules stay in memory, column by column, while their estimated size is below the cap,
+ * the following ones are appended to the file and read back when the list is iterated.
+ * Iterating reads the file in order, getting a rule by index reads only its record.
+ * The list must be closed to remove its file.
+ * @author lequal
+ */
+public final class SpillingRuleList extends AbstractList<Rule> implements RuleRows, Closeable {
+
+    /**
+     * Name of the property for the memory (bytes) taken by the rules of a profile before they are spilled
+     */
+    private static final String RULES_MEMORY_CAP = "RULES_MEMORY_CAP";
+    /**
+     * Estimated size (bytes) of a row of the table without its characters and description
+     */
+    private static final int ROW_BYTES = 48;
+    /**
+     * Estimated size (bytes) of a string without its characters
+     */
+    private static final int STRING_BYTES = 40;
+    /**
+     * Length written for a null value
+     */
+    private static final int NULL = -1;
+    /**
+     * Size (bytes) of the blocks read when iterating over the file
+     */
+    private static final int BLOCK = 65536;
+
+    /**
+     * Memory (bytes) taken by the rules in memory before the next ones are spilled, 0 for no limit
+     */
+    private final long memoryCap;
+    /**
+     * First rules of the list
+     */
+    private final RuleTable memory;
+    /**
+     * Estimated memory (bytes) taken by the rules in memory
+     */
+    private long memoryBytes;
+    /**
+     * Temporary file of the spilled rules, null until the first one
+     */
+    private Path file;
+    /**
+     * Writer of the spilled rules
+     */
+    private DataOutputStream output;
+    /**
+     * Reader of the spilled rules
+     */
+    private FileChannel channel;
+    /**
+     * Offset in the file of each spilled rule
+     */
+    private long[] offsets;
+    /**
+     * Number of spilled rules
+     */
+    private int spilled;
+    /**
+     * Number of bytes written in the file
+     */
+    private long written;
+
+    /**
+     * Constructor
+     * @param pMemoryCap memory (bytes) taken by the rules in memory before the next ones are spilled,
+     *                   0 to keep all of them in memory
+     */
+    public SpillingRuleList(final long pMemoryCap) {
+        this.memoryCap = pMemoryCap;
+        this.memory = new RuleTable();
+        this.offsets = new long[0];
+    }
+
+    /**
+     * Create a list whose cap comes from requests.properties
+     * @return a new list, to close after use
+     */
+    public static SpillingRuleList configured() {
+        return new SpillingRuleList(Long.parseLong(AbstractDataProvider.getRequest(RULES_MEMORY_CAP).trim()));
+    }
+
+    /**
+     * Add a rule at the end of the list
+     * @param rule rule to add, not modified afterwards
+     * @throws IOException when the rule can not be spilled
+     */
+    public void append(final Rule rule) throws IOException {
+        final long bytes = estimate(rule);
+        if (spilled == 0 && (memoryCap <= 0 || memoryBytes + bytes <= memoryCap)) {
+            memory.append(rule);
+            memoryBytes += bytes;
+        } else {
+            spill(rule);
+        }
+    }
+
+    /**
+     * Number of rules written in the temporary file
+     * @return the number of spilled rules
+     */
+    public int getSpilled() {
+        return spilled;
+    }
+
+    /**
+     * Estimated memory taken by the rules in memory
+     * @return a size in bytes
+     */
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Give a rule, read in the file if it was spilled
+     * @param index index of the rule
+     * @return a rule, a new instance for spilled rules
+     */
+    @Override
+    public Rule get(final int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size()));
+        }
+        final Rule rule;
+        if (index < memory.size()) {
+            rule = memory.get(index);
+        } else {
+            final int record = index - memory.size();
+            final long end = record + 1 < spilled ? offsets[record + 1] : written;
+            final ByteBuffer buffer = ByteBuffer.allocate((int) (end - offsets[record]));
+            try {
+                read(buffer, offsets[record]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.flip();
+            rule = decode(buffer, new Rule());
+        }
+        return rule;
+    }
+
+    /**
+     * Number of rules, in memory and spilled
+     * @return the size of the list
+     */
+    @Override
+    public int size() {
+        return memory.size() + spilled;
+    }
+
+    /**
+     * Give the rules in order, reading the spilled ones block after block
+     * @return an iterator over new rules
+     */
+    @Override
+    public Iterator<Rule> iterator() {
+        return new Cursor<>(memory.iterator(), buffer -> decode(buffer, new Rule()));
+    }
+
+    /**
+     * Give the rules in order, as views of the table for the rules in memory
+     * and as a single rule filled out again for each spilled rule
+     * @return the rows
+     */
+    @Override
+    public Iterable<RuleView> rows() {
+        return () -> {
+            final Rule reused = new Rule();
+            return new Cursor<>(memory.rows().iterator(), buffer -> decode(buffer, reused));
+        };
+    }
+
+    /**
+     * Iterator over the rules in memory then over the spilled ones
+     * @param <T> type of the given rules
+     */
+    private final class Cursor<T extends RuleView> implements Iterator<T> {
+        /**
+         * Rules in memory
+         */
+        private final Iterator<T> rows;
+        /**
+         * Converter of a spilled rule, filling out a new rule or the same one each time
+         */
+        private final Function<ByteBuffer, ? extends T> decoder;
+        /**
+         * Index of the next spilled rule
+         */
+        private int record;
+        /**
+         * Block of the file holding the next spilled rules
+         */
+        private ByteBuffer block = ByteBuffer.allocate(0);
+        /**
+         * Offset in the file of the block
+         */
+        private long blockOffset;
+
+        /**
+         * Constructor
+         * @param pRows rules in memory
+         * @param pDecoder converter of a spilled rule
+         */
+        private Cursor(final Iterator<T> pRows, final Function<ByteBuffer, ? extends T> pDecoder) {
+            this.rows = pRows;
+            this.decoder = pDecoder;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return rows.hasNext() || record < spilled;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return rows.hasNext() ? rows.next() : readRecord(record++);
+        }
+
+        /**
+         * Read a spilled rule from the block, reading the next block when needed
+         * @param index index of the rule in the file
+         * @return the rule
+         */
+        private T readRecord(final int index) {
+            final long start = offsets[index];
+            final long end = index + 1 < spilled ? offsets[index + 1] : written;
+            if (start < blockOffset || end > blockOffset + block.limit()) {
+                // a large rule gets its own block
+                block = ByteBuffer.allocate((int) Math.max(BLOCK, end - start));
+                blockOffset = start;
+                try {
+                    read(block, start);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                block.flip();
+            }
+            final ByteBuffer buffer = block.duplicate();
+            buffer.position((int) (start - blockOffset));
+            buffer.limit((int) (end - blockOffset));
+            return decoder.apply(buffer);
+        }
+    }
+
+    /**
+     * Remove the temporary file
+     * @throws IOException when the file can not be removed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (output != null) {
+                output.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            output = null;
+            channel = null;
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Write a rule at the end of the file
+     * @param rule rule to write
+     * @throws IOException when writing
+     */
+    private synchronized void spill(final Rule rule) throws IOException {
+        if (file == null) {
+            file = Files.createTempFile("cnesexport-rules", ".spill");
+            output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+        if (spilled == offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(1024, spilled * 2));
+        }
+        offsets[spilled++] = written;
+        writeValue(rule.getKey());
+        writeValue(rule.getRepo());
+        writeValue(rule.getName());
+        writeValue(rule.getSeverity());
+        writeValue(rule.getActiveSeverity());
+        writeValue(rule.getType());
+        writeValue(rule.getHtmlDesc());
+        writeValue(rule.getDebt());
+        writeValue(rule.getLang());
+        writeValue(rule.getStatus());
+        writeValue(rule.getLangName());
+    }
+
+    /**
+     * Write a value as its length in bytes followed by its utf-8 bytes
+     * @param value value to write, may be null
+     * @throws IOException when writing
+     */
+    private void writeValue(final String value) throws IOException {
+        if (value == null) {
+            output.writeInt(NULL);
+            written += Integer.BYTES;
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            written += Integer.BYTES + bytes.length;
+        }
+    }
+
+    /**
+     * Read bytes of the file, once the spilled rules are written
+     * @param buffer buffer to fill up to its limit or to the end of the file
+     * @param position offset in the file of the first byte
+     * @throws IOException when reading
+     */
+    private synchronized void read(final ByteBuffer buffer, final long position) throws IOException {
+        if (channel == null) {
+            throw new IOException("Spilled rules are closed");
+        }
+        output.flush();
+        long offset = position;
+        while (buffer.hasRemaining() && offset < written) {
+            final int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new EOFException(String.format("Spilled rules end at byte %d", offset));
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Read a rule written by spill()
+     * @param buffer bytes of the rule
+     * @param rule rule to fill out
+     * @return the rule
+     */
+    private static Rule decode(final ByteBuffer buffer, final Rule rule) {
+        // repeated values share the instances of the rules in memory
+        final StringPool pool = StringPool.getInstance();
+        rule.setKey(readValue(buffer));
+        rule.setRepo(pool.get(readValue(buffer)));
+        rule.setName(readValue(buffer));
+        rule.setSeverity(pool.get(readValue(buffer)));
+        rule.setActiveSeverity(pool.get(readValue(buffer)));
+        rule.setType(pool.get(readValue(buffer)));
+        rule.setHtmlDesc(readValue(buffer));
+        rule.setDebt(readValue(buffer));
+        rule.setLang(pool.get(readValue(buffer)));
+        rule.setStatus(pool.get(readValue(buffer)));
+        rule.setLangName(pool.get(readValue(buffer)));
+        return rule;
+    }
+
+    /**
+     * Read a value written by writeValue()
+     * @param buffer bytes of the rule
+     * @return the value, may be null
+     */
+    private static String readValue(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        String value = null;
+        if (length != NULL) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        }
+        return value;
+    }
+
+    /**
+     * Estimate the memory taken by a rule in the table
+     * Repeated values are stored once, keys and names as characters, descriptions as strings.
+     * @param rule the rule
+     * @return a size in bytes
+     */
+    static long estimate(final Rule rule) {
+        return ROW_BYTES + 2L * (length(rule.getKey()) + length(rule.getName()))
+                + (rule.getHtmlDesc() == null ? 0 : STRING_BYTES + 2L * rule.getHtmlDesc().length());
+    }
+
+    /**
+     * Length of a value
+     * @param value the value, may be null
+     * @return the number of characters
+     */
+    private static int length(final String value) {
+        return value == null ? 0 : value.length();
+    }
+}
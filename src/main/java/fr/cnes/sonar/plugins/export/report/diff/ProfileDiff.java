@@ -0,0 +1,221 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.diff;
+
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Rules added, removed and whose severity changed between two profiles
+ * @author lequal
+ */
+public class ProfileDiff {
+
+    /**
+     * Rules only in the second profile
+     */
+    private final List<Rule> added = new ArrayList<>();
+    /**
+     * Rules only in the first profile
+     */
+    private final List<Rule> removed = new ArrayList<>();
+    /**
+     * Rules of both profiles with different severities
+     */
+    private final List<Change> changed = new ArrayList<>();
+
+    /**
+     * A rule in both profiles
+     */
+    public static final class Change {
+        /**
+         * The rule in the first profile
+         */
+        private final Rule before;
+        /**
+         * The rule in the second profile
+         */
+        private final Rule after;
+
+        /**
+         * Constructor
+         * @param pBefore rule in the first profile
+         * @param pAfter rule in the second profile
+         */
+        private Change(final Rule pBefore, final Rule pAfter) {
+            this.before = pBefore;
+            this.after = pAfter;
+        }
+
+        /**
+         * Getter for before
+         * @return the rule in the first profile
+         */
+        public Rule getBefore() {
+            return before;
+        }
+
+        /**
+         * Getter for after
+         * @return the rule in the second profile
+         */
+        public Rule getAfter() {
+            return after;
+        }
+    }
+
+    /**
+     * Rules of a profile read one after the other, checking that they are sorted by key
+     */
+    private static final class Side {
+        /**
+         * Remaining rules
+         */
+        private final Iterator<Rule> rules;
+        /**
+         * Current rule, null once all rules are read
+         */
+        private Rule current;
+        /**
+         * False once a rule comes before the previous one
+         */
+        private boolean sorted = true;
+
+        /**
+         * Constructor, reads the first rule
+         * @param pRules rules of the profile
+         */
+        private Side(final Iterable<Rule> pRules) {
+            this.rules = pRules.iterator();
+            next();
+        }
+
+        /**
+         * Give the current rule and read the next one
+         * @return the current rule
+         */
+        private Rule next() {
+            final Rule rule = current;
+            current = rules.hasNext() ? rules.next() : null;
+            if (rule != null && current != null && ProfileSnapshots.BY_KEY.compare(rule, current) > 0) {
+                sorted = false;
+            }
+            return rule;
+        }
+    }
+
+    /**
+     * Compare two profiles in a single pass over their rules sorted by key
+     * Rules given by the server are already sorted and are walked without copy,
+     * others are sorted on a copy once the walk finds them out of order.
+     * @param before rules of the first profile
+     * @param after rules of the second profile
+     * @return the differences from the first profile to the second one
+     */
+    public static ProfileDiff compare(final List<Rule> before, final List<Rule> after) {
+        ProfileDiff diff = merge(before, after);
+        if (diff == null) {
+            diff = merge(sorted(before), sorted(after));
+        }
+        return diff;
+    }
+
+    /**
+     * Walk the rules of two profiles sorted by key
+     * @param before rules of the first profile
+     * @param after rules of the second profile
+     * @return the differences from the first profile to the second one, null if rules are not sorted
+     */
+    private static ProfileDiff merge(final Iterable<Rule> before, final Iterable<Rule> after) {
+        final Side first = new Side(before);
+        final Side second = new Side(after);
+        final ProfileDiff diff = new ProfileDiff();
+        while ((first.current != null || second.current != null) && first.sorted && second.sorted) {
+            // a finished side gives the rest of the other one
+            final int order;
+            if (first.current == null) {
+                order = 1;
+            } else if (second.current == null) {
+                order = -1;
+            } else {
+                order = first.current.getKey().compareTo(second.current.getKey());
+            }
+
+            if (order < 0) {
+                diff.removed.add(first.next());
+            } else if (order > 0) {
+                diff.added.add(second.next());
+            } else {
+                final Rule rule = first.next();
+                final Rule other = second.next();
+                if (!Objects.equals(rule.getActiveSeverity(), other.getActiveSeverity())) {
+                    diff.changed.add(new Change(rule, other));
+                }
+            }
+        }
+        return first.sorted && second.sorted ? diff : null;
+    }
+
+    /**
+     * Give rules sorted by key
+     * @param rules rules in any order
+     * @return a sorted copy of the rules
+     */
+    private static List<Rule> sorted(final List<Rule> rules) {
+        final List<Rule> copy = new ArrayList<>(rules);
+        copy.sort(ProfileSnapshots.BY_KEY);
+        return copy;
+    }
+
+    /**
+     * Getter for added
+     * @return rules only in the second profile, sorted by key
+     */
+    public List<Rule> getAdded() {
+        return Collections.unmodifiableList(added);
+    }
+
+    /**
+     * Getter for removed
+     * @return rules only in the first profile, sorted by key
+     */
+    public List<Rule> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * Getter for changed
+     * @return rules whose severity changed, sorted by key
+     */
+    public List<Change> getChanged() {
+        return Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * Tell whether both profiles have the same rules and severities
+     * @return true if nothing changed
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.cnes.sonar.plugins.export.report.exporters;
+
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.RuleView;
+import fr.cnes.sonar.plugins.export.report.providers.AbstractDataProvider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Write a quality profile as a semicolon separated values file
+ * @author lequal
+ */
+public class CsvExporter implements Exporter {
+
+    /**
+     * Name of the format
+     */
+    public static final String FORMAT = "csv";
+    /**
+     * Fields written in the csv: key, name, language, repository, active severity and type
+     */
+    private static final Set<String> FIELDS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("name", "langName", "repo")));
+
+    /**
+     * Header of each profile
+     */
+    private static final String[] CSV_HEADER = {"Key", "Name", "Language", "Repository", "Severity", "Type"};
+    /**
+     * Property giving the column separator
+     */
+    private static final String CSV_DELIMITER = "CSV_DELIMITER";
+    /**
+     * Property telling if files start with a byte order mark
+     */
+    private static final String CSV_BOM = "CSV_BOM";
+
+    /**
+     * Column separator
+     */
+    private final char delimiter;
+    /**
+     * True to start files with a byte order mark
+     */
+    private final boolean bom;
+
+    /**
+     * Exporter configured by the plugin's properties
+     */
+    public CsvExporter() {
+        this(AbstractDataProvider.getRequest(CSV_DELIMITER).charAt(0),
+                Boolean.parseBoolean(AbstractDataProvider.getRequest(CSV_BOM).trim()));
+    }
+
+    /**
+     * Complete constructor
+     * @param pDelimiter column separator
+     * @param pBom true to start files with a byte order mark
+     */
+    public CsvExporter(final char pDelimiter, final boolean pBom) {
+        this.delimiter = pDelimiter;
+        this.bom = pBom;
+    }
+
+    /**
+     * Name of the format
+     * @return csv
+     */
+    @Override
+    public String getFormat() {
+        return FORMAT;
+    }
+
+    /**
+     * Media type of the produced file
+     * @return the csv media type
+     */
+    @Override
+    public String getMediaType() {
+        return "text/csv";
+    }
+
+    /**
+     * A csv file contains a single profile
+     * @return false
+     */
+    @Override
+    public boolean isMultiProfile() {
+        return false;
+    }
+
+    /**
+     * Fields of the rules used by this exporter
+     * @return the needed fields
+     */
+    @Override
+    public Set<String> getFields() {
+        return FIELDS;
+    }
+
+    /**
+     * Write a quality profile
+     * @param profile profile to export
+     * @return the profile as csv, the same as the file of a writer
+     */
+    public String export(final QualityProfile profile) {
+        final StringWriter output = new StringWriter();
+        final CsvWriter csv = new CsvWriter(output, delimiter, bom);
+        try {
+            writeHeader(csv);
+            // rows are written at once, they are not kept
+            for (RuleView rule : profile.rows()) {
+                writeRule(csv, rule);
+            }
+            csv.flush();
+        } catch (IOException e) {
+            // a string writer does not fail
+            throw new UncheckedIOException(e);
+        }
+        return output.toString();
+    }
+
+    /**
+     * Create a writer of csv rows
+     * @param output stream in which the csv is written
+     * @return the writer
+     */
+    @Override
+    public ProfileWriter newWriter(final OutputStream output) {
+        final CsvWriter csv = new CsvWriter(output, delimiter, bom);
+
+        return new ProfileWriter() {
+            @Override
+            public void startProfile(final String profileKey) throws IOException {
+                writeHeader(csv);
+            }
+
+            @Override
+            public void write(final RuleView rule) throws IOException {
+                writeRule(csv, rule);
+            }
+
+            @Override
+            public void endProfile() {
+                // nothing to close between two profiles
+            }
+
+            @Override
+            public void finish() throws IOException {
+                csv.flush();
+            }
+        };
+    }
+
+    /**
+     * Write the names of the columns
+     * @param csv writer of the file
+     * @throws IOException when writing
+     */
+    private static void writeHeader(final CsvWriter csv) throws IOException {
+        csv.row(CSV_HEADER);
+    }
+
+    /**
+     * Write a rule as a row: key, name, language, repository, active severity and type
+     * @param csv writer of the file
+     * @param rule rule to write
+     * @throws IOException when writing
+     */
+    private static void writeRule(final CsvWriter csv, final RuleView rule) throws IOException {
+        csv.field(rule.getKey()).field(rule.getName()).field(rule.getLangName()).field(rule.getRepo())
+                .field(rule.getActiveSeverity()).field(rule.getType()).endRow();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.exporters;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Write delimiter separated values in a reused buffer, quoting fields as in RFC 4180 only when needed
+ * @author lequal
+ */
+public class CsvWriter implements Flushable, Closeable {
+
+    /**
+     * Byte order mark written at the beginning of the file when asked
+     */
+    public static final char BOM = '\uFEFF';
+    /**
+     * Quote surrounding the fields containing special characters
+     */
+    private static final char QUOTE = '"';
+    /**
+     * Line separator
+     */
+    private static final char NEW_LINE = '\n';
+    /**
+     * Carriage return, quoted as a line separator
+     */
+    private static final char CARRIAGE_RETURN = '\r';
+    /**
+     * Number of characters buffered before writing them
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Output of the values
+     */
+    private final Writer output;
+    /**
+     * Separator of two fields of a row
+     */
+    private final char delimiter;
+    /**
+     * Characters not written yet, reused for all rows
+     */
+    private final char[] buffer = new char[BUFFER_SIZE];
+    /**
+     * Number of characters in the buffer
+     */
+    private int position;
+    /**
+     * True until the first field of the current row is written
+     */
+    private boolean rowStart = true;
+
+    /**
+     * Write in a stream with the UTF-8 encoding
+     * @param pOutput stream in which values are written
+     * @param pDelimiter separator of two fields
+     * @param pBom true to start with a byte order mark
+     */
+    public CsvWriter(final OutputStream pOutput, final char pDelimiter, final boolean pBom) {
+        this(new OutputStreamWriter(pOutput, StandardCharsets.UTF_8), pDelimiter, pBom);
+    }
+
+    /**
+     * Write in a writer
+     * @param pOutput writer in which values are written
+     * @param pDelimiter separator of two fields
+     * @param pBom true to start with a byte order mark
+     */
+    public CsvWriter(final Writer pOutput, final char pDelimiter, final boolean pBom) {
+        this.output = pOutput;
+        this.delimiter = pDelimiter;
+        if(pBom) {
+            buffer[position++] = BOM;
+        }
+    }
+
+    /**
+     * Write a field of the current row, a null value is an empty field
+     * @param value value of the field
+     * @return this writer
+     * @throws IOException when writing
+     */
+    public CsvWriter field(final CharSequence value) throws IOException {
+        if(!rowStart) {
+            put(delimiter);
+        }
+        rowStart = false;
+        if(value != null) {
+            final int length = value.length();
+            if(needsQuotes(value, length)) {
+                // quotes of the value are doubled
+                put(QUOTE);
+                for (int i = 0; i < length; i++) {
+                    final char c = value.charAt(i);
+                    if(c == QUOTE) {
+                        put(QUOTE);
+                    }
+                    put(c);
+                }
+                put(QUOTE);
+            } else {
+                append(value, length);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Write a whole row
+     * @param values values of the fields
+     * @throws IOException when writing
+     */
+    public void row(final CharSequence... values) throws IOException {
+        for (CharSequence value : values) {
+            field(value);
+        }
+        endRow();
+    }
+
+    /**
+     * End the current row with a CRLF line break, as in RFC 4180
+     * @throws IOException when writing
+     */
+    public void endRow() throws IOException {
+        put(CARRIAGE_RETURN);
+        put(NEW_LINE);
+        rowStart = true;
+    }
+
+    /**
+     * Write the buffered characters and flush the output
+     * @throws IOException when writing
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        output.flush();
+    }
+
+    /**
+     * Write the buffered characters and close the output
+     * @throws IOException when writing
+     */
+    @Override
+    public void close() throws IOException {
+        drain();
+        output.close();
+    }
+
+    /**
+     * Check if a value contains a delimiter, a quote or a line separator
+     * @param value value of a field
+     * @param length length of the value
+     * @return true if the value must be quoted
+     */
+    private boolean needsQuotes(final CharSequence value, final int length) {
+        boolean special = false;
+        for (int i = 0; i < length && !special; i++) {
+            final char c = value.charAt(i);
+            special = c == delimiter || c == QUOTE || c == NEW_LINE || c == CARRIAGE_RETURN;
+        }
+        return special;
+    }
+
+    /**
+     * Copy a value in the buffer, strings are copied by blocks
+     * @param value value to copy
+     * @param length length of the value
+     * @throws IOException when the full buffer is written
+     */
+    private void append(final CharSequence value, final int length) throws IOException {
+        int copied = 0;
+        while(copied < length) {
+            if(position == buffer.length) {
+                drain();
+            }
+            final int count = Math.min(length - copied, buffer.length - position);
+            if(value instanceof String) {
+                ((String) value).getChars(copied, copied + count, buffer, position);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    buffer[position + i] = value.charAt(copied + i);
+                }
+            }
+            position += count;
+            copied += count;
+        }
+    }
+
+    /**
+     * Add a character to the buffer
+     * @param c character to add
+     * @throws IOException when the full buffer is written
+     */
+    private void put(final char c) throws IOException {
+        if(position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = c;
+    }
+
+    /**
+     * Write the buffered characters in the output
+     * @throws IOException when writing
+     */
+    private void drain() throws IOException {
+        output.write(buffer, 0, position);
+        position = 0;
+    }
+}
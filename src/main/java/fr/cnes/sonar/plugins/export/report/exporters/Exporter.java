@@ -0,0 +1,63 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.cnes.sonar.plugins.export.report.exporters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+
+/**
+ * Write a quality profile in a given format
+ * @author lequal
+ */
+public interface Exporter {
+
+    /**
+     * Name of the format, also used as file extension
+     * @return the name of the format
+     */
+    String getFormat();
+
+    /**
+     * Media type of the produced file
+     * @return the media type
+     */
+    String getMediaType();
+
+    /**
+     * Check if several profiles can be written in the same document
+     * @return true if the document can contain several profiles
+     */
+    boolean isMultiProfile();
+
+    /**
+     * Fields of the rules used by this exporter
+     * Names are the ones of the f parameter of /api/rules/search,
+     * key and type are always given by SonarQube.
+     * @return the needed fields
+     */
+    Set<String> getFields();
+
+    /**
+     * Create a writer producing the document rule by rule
+     * @param output stream in which the document is written
+     * @return the writer
+     * @throws IOException when the document can not be started
+     */
+    ProfileWriter newWriter(OutputStream output) throws IOException;
+}
@@ -0,0 +1,56 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.cnes.sonar.plugins.export.report.exporters;
+
+import fr.cnes.sonar.plugins.export.report.model.RuleView;
+
+import java.io.IOException;
+
+/**
+ * Write the rules of profiles one by one in an output
+ * @author lequal
+ */
+public interface ProfileWriter {
+
+    /**
+     * Start a new profile
+     * @param profileKey key of the profile
+     * @throws IOException when writing
+     */
+    void startProfile(String profileKey) throws IOException;
+
+    /**
+     * Write a rule of the current profile
+     * The rule may be a view reused for the next rules, it must not be kept after the call.
+     * @param rule rule to write
+     * @throws IOException when writing
+     */
+    void write(RuleView rule) throws IOException;
+
+    /**
+     * End the current profile
+     * @throws IOException when writing
+     */
+    void endProfile() throws IOException;
+
+    /**
+     * Complete the document and flush it, the output itself is not closed
+     * @throws IOException when writing
+     */
+    void finish() throws IOException;
+}
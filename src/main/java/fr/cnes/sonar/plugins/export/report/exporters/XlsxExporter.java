@@ -0,0 +1,344 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.cnes.sonar.plugins.export.report.exporters;
+
+import fr.cnes.sonar.plugins.export.report.model.RuleView;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Write quality profiles as an OpenXML workbook, one sheet per profile
+ * Only a window of rows is kept in memory, others are flushed to a temporary file.
+ * @author lequal
+ */
+public class XlsxExporter implements Exporter {
+
+    /**
+     * Name of the format
+     */
+    public static final String FORMAT = "xlsx";
+    /**
+     * Number of rows kept in memory by the workbook
+     */
+    public static final int ROW_WINDOW = 100;
+    /**
+     * Fields written in the workbook without descriptions
+     */
+    private static final Set<String> FIELDS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("name", "langName", "repo", "severity", "status")));
+    /**
+     * Fields written in the workbook with descriptions
+     */
+    private static final Set<String> FIELDS_WITH_DESC = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("name", "langName", "repo", "severity", "status", "htmlDesc")));
+
+    /**
+     * Headers of the columns
+     */
+    private static final String[] HEADERS = {"Key", "Name", "Language", "Repository",
+        "Severity", "Default severity", "Type", "Status", "Description"};
+    /**
+     * Width of the columns in characters
+     */
+    private static final int[] WIDTHS = {24, 60, 14, 16, 12, 16, 16, 12, 100};
+    /**
+     * Greatest length of a sheet name
+     */
+    private static final int MAX_SHEET_NAME = 31;
+    /**
+     * Index of the description column
+     */
+    private static final int DESCRIPTION = 8;
+    /**
+     * Text format of excel
+     */
+    private static final String TEXT_FORMAT = "@";
+    /**
+     * Pattern removing html tags of descriptions
+     */
+    private static final String HTML_TAG = "<[^>]*>";
+    /**
+     * Greatest number of characters in a cell
+     */
+    private static final int MAX_TEXT_LENGTH = SpreadsheetVersion.EXCEL2007.getMaxTextLength();
+
+    /**
+     * True to write the descriptions of rules
+     */
+    private final boolean descriptions;
+
+    /**
+     * Default constructor, descriptions are not written
+     */
+    public XlsxExporter() {
+        this(false);
+    }
+
+    /**
+     * Complete constructor
+     * @param pDescriptions true to add the descriptions of rules
+     */
+    public XlsxExporter(final boolean pDescriptions) {
+        this.descriptions = pDescriptions;
+    }
+
+    /**
+     * Name of the format
+     * @return xlsx
+     */
+    @Override
+    public String getFormat() {
+        return FORMAT;
+    }
+
+    /**
+     * Media type of the produced file
+     * @return the OpenXML spreadsheet media type
+     */
+    @Override
+    public String getMediaType() {
+        return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    }
+
+    /**
+     * Each profile has its own sheet
+     * @return true
+     */
+    @Override
+    public boolean isMultiProfile() {
+        return true;
+    }
+
+    /**
+     * Fields of the rules used by this exporter
+     * @return the needed fields
+     */
+    @Override
+    public Set<String> getFields() {
+        return descriptions ? FIELDS_WITH_DESC : FIELDS;
+    }
+
+    /**
+     * Create a writer of spreadsheet rows
+     * @param output stream in which the workbook is written
+     * @return the writer
+     */
+    @Override
+    public ProfileWriter newWriter(final OutputStream output) {
+        return new XlsxWriter(output);
+    }
+
+    /**
+     * Writer filling out a streamed workbook
+     */
+    private class XlsxWriter implements ProfileWriter {
+
+        /**
+         * Stream in which the workbook is written
+         */
+        private final OutputStream output;
+        /**
+         * Workbook keeping only the last rows in memory
+         */
+        private final SXSSFWorkbook workbook;
+        /**
+         * Style of the headers
+         */
+        private final CellStyle headerStyle;
+        /**
+         * Style of the text cells
+         */
+        private final CellStyle textStyle;
+        /**
+         * Style of the descriptions
+         */
+        private final CellStyle descriptionStyle;
+        /**
+         * Number of columns of a sheet
+         */
+        private final int columns;
+        /**
+         * Sheet of the current profile
+         */
+        private SXSSFSheet sheet;
+        /**
+         * Index of the next row of the sheet
+         */
+        private int rowIndex;
+
+        /**
+         * Constructor
+         * @param pOutput stream in which the workbook is written
+         */
+        XlsxWriter(final OutputStream pOutput) {
+            this.output = pOutput;
+            this.workbook = new SXSSFWorkbook(ROW_WINDOW);
+            // temporary files are compressed as descriptions can be long
+            this.workbook.setCompressTempFiles(true);
+            this.columns = descriptions ? HEADERS.length : DESCRIPTION;
+
+            final short textFormat = workbook.createDataFormat().getFormat(TEXT_FORMAT);
+            final Font bold = workbook.createFont();
+            bold.setBold(true);
+            this.headerStyle = workbook.createCellStyle();
+            this.headerStyle.setFont(bold);
+            this.textStyle = workbook.createCellStyle();
+            this.textStyle.setDataFormat(textFormat);
+            this.descriptionStyle = workbook.createCellStyle();
+            this.descriptionStyle.setDataFormat(textFormat);
+            this.descriptionStyle.setWrapText(true);
+        }
+
+        /**
+         * Create the sheet of a profile with its headers
+         * @param profileKey key of the profile
+         */
+        @Override
+        public void startProfile(final String profileKey) {
+            sheet = workbook.createSheet(sheetName(profileKey));
+            rowIndex = 0;
+            final Row header = sheet.createRow(rowIndex++);
+            for (int i = 0; i < columns; i++) {
+                final Cell cell = header.createCell(i);
+                cell.setCellValue(HEADERS[i]);
+                cell.setCellStyle(headerStyle);
+                // widths are given in 1/256th of a character
+                sheet.setColumnWidth(i, WIDTHS[i] * 256);
+                sheet.setDefaultColumnStyle(i, i == DESCRIPTION ? descriptionStyle : textStyle);
+            }
+            sheet.createFreezePane(0, 1);
+        }
+
+        /**
+         * Give a sheet name to a profile which is not used by another sheet of the workbook
+         * Safe names of different keys can be equal: they are truncated and their invalid characters replaced.
+         * @param profileKey key of the profile
+         * @return the safe name, followed by a number if it is already used
+         */
+        private String sheetName(final String profileKey) {
+            final String safeName = WorkbookUtil.createSafeSheetName(profileKey);
+            String name = safeName;
+            // sheet names are compared without case
+            for (int n = 2; workbook.getSheetIndex(name) >= 0; n++) {
+                final String suffix = String.format(" (%d)", n);
+                name = safeName.substring(0, Math.min(safeName.length(), MAX_SHEET_NAME - suffix.length())) + suffix;
+            }
+            return name;
+        }
+
+        /**
+         * Write a rule in a new row
+         * @param rule rule to write
+         */
+        @Override
+        public void write(final RuleView rule) {
+            final Row row = sheet.createRow(rowIndex++);
+            int column = 0;
+            setText(row, column++, rule.getKey());
+            setText(row, column++, rule.getName());
+            setText(row, column++, rule.getLangName());
+            setText(row, column++, rule.getRepo());
+            setText(row, column++, rule.getActiveSeverity());
+            setText(row, column++, rule.getSeverity());
+            setText(row, column++, rule.getType());
+            setText(row, column, rule.getStatus());
+            if (descriptions) {
+                setText(row, DESCRIPTION, description(rule.getHtmlDesc()));
+            }
+        }
+
+        /**
+         * Add a filter on the headers of the sheet
+         */
+        @Override
+        public void endProfile() {
+            sheet.setAutoFilter(new CellRangeAddress(0, Math.max(0, rowIndex - 1), 0, columns - 1));
+        }
+
+        /**
+         * Write the workbook and delete its temporary files
+         * @throws IOException when writing
+         */
+        @Override
+        public void finish() throws IOException {
+            try {
+                // the workbook closes the stream it writes in
+                final OutputStream shield = new FilterOutputStream(new BufferedOutputStream(output)) {
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                };
+                workbook.write(shield);
+            } finally {
+                workbook.dispose();
+            }
+        }
+
+        /**
+         * Write a text in a cell, null values leave the cell empty
+         * @param row row of the cell
+         * @param column index of the cell
+         * @param value text to write
+         */
+        private void setText(final Row row, final int column, final String value) {
+            final Cell cell = row.createCell(column);
+            cell.setCellStyle(column == DESCRIPTION ? descriptionStyle : textStyle);
+            if (value != null) {
+                cell.setCellValue(value);
+            }
+        }
+    }
+
+    /**
+     * Plain text of a description, cut to fit in a cell
+     * @param htmlDesc html description of a rule
+     * @return the text of the description
+     */
+    private static String description(final String htmlDesc) {
+        String text = null;
+        if (htmlDesc != null) {
+            text = htmlDesc.replaceAll(HTML_TAG, "").trim();
+            if (text.length() > MAX_TEXT_LENGTH) {
+                text = text.substring(0, MAX_TEXT_LENGTH);
+            }
+        }
+        return text;
+    }
+}
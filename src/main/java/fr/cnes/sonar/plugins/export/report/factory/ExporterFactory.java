@@ -0,0 +1,64 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.factory;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.exporters.Exporter;
+import fr.cnes.sonar.plugins.export.report.exporters.XlsxExporter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Give the exporter of a format
+ * @author lequal
+ */
+public final class ExporterFactory {
+
+    /**
+     * Available formats, the first one is the default
+     */
+    public static final List<String> FORMATS =
+            Collections.unmodifiableList(Arrays.asList(CsvExporter.FORMAT, XlsxExporter.FORMAT));
+
+    /**
+     * Private constructor for utility class
+     */
+    private ExporterFactory() {}
+
+    /**
+     * Create the exporter of a format
+     * @param format name of the format
+     * @param descriptions true to add rules' descriptions when the format allows it
+     * @return the exporter
+     * @throws BadSonarQubeRequestException when the format is unknown
+     */
+    public static Exporter create(final String format, final boolean descriptions)
+            throws BadSonarQubeRequestException {
+        final Exporter exporter;
+        if (CsvExporter.FORMAT.equals(format)) {
+            exporter = new CsvExporter();
+        } else if (XlsxExporter.FORMAT.equals(format)) {
+            exporter = new XlsxExporter(descriptions);
+        } else {
+            throw new BadSonarQubeRequestException(String.format("Unknown export format '%s'.", format));
+        }
+        return exporter;
+    }
+}
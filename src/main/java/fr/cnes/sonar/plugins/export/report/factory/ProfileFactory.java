@@ -17,11 +17,24 @@
 
 package fr.cnes.sonar.plugins.export.report.factory;
 
+import fr.cnes.sonar.plugins.export.metrics.ExportTimings;
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
 import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
 import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.providers.AbstractDataProvider;
+import fr.cnes.sonar.plugins.export.report.providers.ConcurrentFetcher;
+import fr.cnes.sonar.plugins.export.report.providers.DataBackend;
 import fr.cnes.sonar.plugins.export.report.providers.QualityProfileProvider;
+import fr.cnes.sonar.plugins.export.report.providers.RemoteBackend;
+import fr.cnes.sonar.plugins.export.report.providers.RuleCache;
+import fr.cnes.sonar.plugins.export.report.providers.RuleHandler;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Construct  the report from resources providers
@@ -29,14 +42,78 @@ import java.io.IOException;
  */
 public class ProfileFactory {
 
-    private final String url;
+    /**
+     * Name of the property for the number of profiles exported simultaneously
+     */
+    private static final String BATCH_CONCURRENCY = "BATCH_CONCURRENCY";
+    /**
+     * Name of the property for the time allowed to an export
+     */
+    private static final String EXPORT_TIMEOUT = "EXPORT_TIMEOUT";
 
     /**
-     * Complete constructor
+     * Access to the server to request
+     */
+    private final DataBackend backend;
+    /**
+     * Timings of the current export, null if not followed
+     */
+    private ExportTimings timings;
+    /**
+     * Time (ms since epoch) after which the providers stop requesting, 0 for none
+     */
+    private long deadline;
+
+    /**
+     * Constructor requesting the server through http
      * @param pUrl url of the server to request
      */
     public ProfileFactory(String pUrl) {
-        this.url = pUrl;
+        this(new RemoteBackend(pUrl));
+    }
+
+    /**
+     * Complete constructor
+     * @param pBackend access to the server to request
+     */
+    public ProfileFactory(DataBackend pBackend) {
+        this.backend = pBackend;
+    }
+
+    /**
+     * Follow the requests of the created providers in the timings of an export
+     * @param pTimings timings of the current export, null to follow nothing
+     */
+    public void setTimings(ExportTimings pTimings) {
+        this.timings = pTimings;
+    }
+
+    /**
+     * Timings of the current export
+     * @return the timings, null if not followed
+     */
+    public ExportTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Start the time allowed to an export, after which the created providers stop requesting
+     * The time is configured by EXPORT_TIMEOUT, 0 for no limit.
+     */
+    public void startDeadline() {
+        final long timeout = Long.parseLong(AbstractDataProvider.getRequest(EXPORT_TIMEOUT).trim());
+        this.deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+    }
+
+    /**
+     * Create a provider reading the profiles
+     * @return a provider following the timings and the deadline of the factory
+     */
+    protected QualityProfileProvider newProvider() {
+        final QualityProfileProvider provider = new QualityProfileProvider(this.backend);
+        provider.setTimings(timings);
+        provider.setDeadline(deadline);
+        return provider;
     }
 
     /**
@@ -50,10 +127,179 @@ public class ProfileFactory {
             throws IOException, BadSonarQubeRequestException {
 
         // instantiation of providers
-        final QualityProfileProvider qualityProfileProvider =
-                new QualityProfileProvider(this.url);
+        final QualityProfileProvider qualityProfileProvider = newProvider();
 
         return qualityProfileProvider.getQualityProfile(profileKey);
     }
 
+    /**
+     * Create a report keeping only some fields of the rules
+     * @param profileKey key of the profile to export
+     * @param fields fields of the rules to get
+     * @return A report resources model
+     * @throws IOException on json problem
+     * @throws BadSonarQubeRequestException when a request to the server is not well-formed
+     */
+    public QualityProfile create(String profileKey, Set<String> fields)
+            throws IOException, BadSonarQubeRequestException {
+
+        // instantiation of providers
+        final QualityProfileProvider qualityProfileProvider = newProvider();
+
+        return qualityProfileProvider.getQualityProfile(profileKey, fields);
+    }
+
+    /**
+     * Create a report keeping only some fields of the rules, resuming a failed export
+     * @param profileKey key of the profile to export
+     * @param fields fields of the rules to get
+     * @param version version of the profile, null to keep no checkpoint
+     * @return A report resources model
+     * @throws IOException on json problem
+     * @throws BadSonarQubeRequestException when a request to the server is not well-formed
+     */
+    public QualityProfile create(String profileKey, Set<String> fields, String version)
+            throws IOException, BadSonarQubeRequestException {
+        return newProvider().getQualityProfile(profileKey, fields, version);
+    }
+
+    /**
+     * Create a report from the previous export of the profile and the changes made since
+     * @param profileKey key of the profile to export
+     * @param fields fields of the rules to get
+     * @param snapshot previous export of the profile, may be null
+     * @return the report, or null if it must be fully requested: no snapshot,
+     * snapshot without some fields or too many changes
+     * @throws IOException on json problem
+     * @throws BadSonarQubeRequestException when a request to the server is not well-formed
+     */
+    public QualityProfile update(String profileKey, Set<String> fields, ProfileSnapshots.Snapshot snapshot)
+            throws IOException, BadSonarQubeRequestException {
+        QualityProfile profile = null;
+        if(snapshot != null && snapshot.getFields().containsAll(fields)) {
+            profile = newProvider().update(profileKey, snapshot.getRules(), snapshot.getVersion(), fields);
+            if(profile != null) {
+                Metrics.getInstance().count(Metrics.EXPORT_DELTAS, 1, timings);
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Give the rules of a profile as soon as they are received
+     * @param profileKey key of the profile to export
+     * @param fields fields of the rules to get
+     * @param handler receiver of the rules
+     * @throws IOException on json problem or when handling a rule
+     * @throws BadSonarQubeRequestException when a request to the server is not well-formed
+     */
+    public void stream(String profileKey, Set<String> fields, RuleHandler handler)
+            throws IOException, BadSonarQubeRequestException {
+
+        // instantiation of providers
+        final QualityProfileProvider qualityProfileProvider = newProvider();
+
+        qualityProfileProvider.forEachRule(profileKey, fields, handler);
+    }
+
+    /**
+     * Give the rules of a profile as soon as they are received, resuming a failed export
+     * @param profileKey key of the profile to export
+     * @param fields fields of the rules to get
+     * @param version version of the profile, null to keep no checkpoint
+     * @param handler receiver of the rules
+     * @throws IOException on json problem or when handling a rule
+     * @throws BadSonarQubeRequestException when a request to the server is not well-formed
+     */
+    public void stream(String profileKey, Set<String> fields, String version, RuleHandler handler)
+            throws IOException, BadSonarQubeRequestException {
+        newProvider().forEachRule(profileKey, fields, version, handler);
+    }
+
+    /**
+     * Create several reports at once
+     * Profiles are requested simultaneously and share the metadata of their rules.
+     * @param profileKeys keys of the profiles to export
+     * @param fields fields of the rules to get
+     * @return reports in the order of the keys, to close after use
+     * @throws IOException on json problem
+     * @throws BadSonarQubeRequestException when a request to the server is not well-formed
+     */
+    public List<QualityProfile> createAll(List<String> profileKeys, Set<String> fields)
+            throws IOException, BadSonarQubeRequestException {
+
+        // profiles are exported one after the other when requests must stay in this thread
+        final int concurrency = backend.isConcurrent() ? Integer.parseInt(
+                AbstractDataProvider.getRequest(BATCH_CONCURRENCY).trim()) : 0;
+
+        // metadata of the rules shared by all profiles
+        final RuleCache cache = new RuleCache(fields);
+        // profiles received, closed if another one fails
+        final List<QualityProfile> received = Collections.synchronizedList(new ArrayList<>());
+        // simultaneous profiles share the threads of a single export
+        final QualityProfileProvider.SharedThreads sharedThreads = concurrency > 0 ?
+                new QualityProfileProvider.SharedThreads() : null;
+        final List<ConcurrentFetcher.Fetch<QualityProfile>> fetches = new ArrayList<>();
+        for (String profileKey : profileKeys) {
+            fetches.add(() -> {
+                final QualityProfileProvider provider = newProvider();
+                provider.shareThreads(sharedThreads);
+                final QualityProfile profile = provider.getQualityProfile(profileKey, cache);
+                received.add(profile);
+                return profile;
+            });
+        }
+
+        try {
+            // closing the fetcher waits for the remaining requests
+            try (ConcurrentFetcher fetcher = new ConcurrentFetcher(concurrency, 0)) {
+                return fetcher.fetchAll(fetches);
+            } finally {
+                if (sharedThreads != null) {
+                    sharedThreads.close();
+                }
+            }
+        } catch (Throwable e) {
+            // rules kept on disk by the profiles which will not be used
+            QualityProfile.closeAll(received, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Get the keys of the profiles of a language
+     * @param language key of the language
+     * @return keys of the profiles
+     * @throws IOException on json problem
+     * @throws BadSonarQubeRequestException when a request to the server is not well-formed
+     */
+    public List<String> getProfileKeys(String language)
+            throws IOException, BadSonarQubeRequestException {
+        return newProvider().getProfileKeys(language);
+    }
+
+    /**
+     * Check that a profile exists
+     * @param profileKey key of the profile
+     * @return true if the server knows the profile
+     * @throws IOException on json problem
+     * @throws BadSonarQubeRequestException when a request to the server is not well-formed
+     */
+    public boolean exists(String profileKey)
+            throws IOException, BadSonarQubeRequestException {
+        return newProvider().hasProfile(profileKey);
+    }
+
+    /**
+     * Get the version of a profile, which changes with its rules
+     * @param profileKey key of the profile
+     * @return the version or null if the profile is not found
+     * @throws IOException on json problem
+     * @throws BadSonarQubeRequestException when a request to the server is not well-formed
+     */
+    public String getVersion(String profileKey)
+            throws IOException, BadSonarQubeRequestException {
+        return newProvider().getProfileVersion(profileKey);
+    }
+
 }
@@ -17,49 +17,76 @@
 
 package fr.cnes.sonar.plugins.export.report.model;
 
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Contain all Quality Profile's details
+ * Rules may be partly kept on disk by their list, the profile must then be closed after use.
  * @author lequal
  */
-public class QualityProfile {
-    /**
-     * Header for the resulting file
-     */
-    private static final String CSV_HEADER = "Key;Name;Language;Repository;Severity;Type\n";
-    /**
-     * Column separator in csv
-     */
-    private static final String SEPARATOR = ";";
-    /**
-     * Line separator in CSV
-     */
-    private static final String NEW_LINE = "\n";
+public class QualityProfile implements Closeable {
     /**
      * Contains resources like rules and configuration files
      */
-    private Rule[] rules;
+    private List<Rule> rules;
     /**
      * The key of the current quality profile
      */
     private String key;
+    /**
+     * Positions of the rules indexed by their key, built on the first lookup
+     */
+    private volatile Map<String, Integer> index;
 
     /**
      * Complete constructor
      * @param pRules verified rules by this profile
      */
     public QualityProfile(Rule[] pRules) {
+        this.rules = Arrays.asList(pRules);
+    }
+
+    /**
+     * Constructor keeping a list of rules without copying it
+     * @param pRules verified rules by this profile, closed with the profile when closeable
+     */
+    public QualityProfile(List<Rule> pRules) {
         this.rules = pRules;
     }
 
     /**
      * Getter for rules
-     * @return rules
+     * Rules kept on disk are all read back in memory: prefer getRuleList or rows for large profiles.
+     * @return a copy of the rules, all in memory
      */
     public Rule[] getRules() {
-        return rules.clone();
+        return rules.toArray(new Rule[rules.size()]);
+    }
+
+    /**
+     * Read-only view of the rules, without copying them
+     * Iterating over it streams the rules kept on disk.
+     * @return rules in the order of the profile
+     */
+    public List<Rule> getRuleList() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * Give the rules to write them, without creating a rule per row when they are stored by column
+     * The given rules must be read at once and not kept, see RuleRows.
+     * @return rules in the order of the profile
+     */
+    public Iterable<RuleView> rows() {
+        return rules instanceof RuleRows ? ((RuleRows) rules).rows() : Collections.<RuleView>unmodifiableList(rules);
     }
 
     /**
@@ -67,7 +94,8 @@ public class QualityProfile {
      * @param pRules value
      */
     public void setRules(Rule[] pRules) {
-        this.rules = pRules.clone();
+        this.rules = Arrays.asList(pRules.clone());
+        this.index = null;
     }
 
     /**
@@ -88,54 +116,82 @@ public class QualityProfile {
 
     /**
      * Find a rule with its key
+     * Only this rule is read back when the rules are kept on disk.
      * @param key key of the rule
      * @return the rule or null if not found
      */
     public Rule find(String key) {
-        // initialization of the result
-        Rule rule = null;
-
-        // iterator on profile's rules
-        final Iterator<Rule> iterator = Arrays.asList(getRules()).iterator();
-
-        // search for the rule with the asking key
-        while(iterator.hasNext() && rule==null) {
-            // get current rule
-            final Rule r = iterator.next();
-            // check the current rule's key equals to wanted key
-            if(r.getKey().equals(key)) {
-                rule = r;
+        final Integer position = getIndex().get(key);
+        return position == null ? null : rules.get(position);
+    }
+
+    /**
+     * Give the positions of rules by key, built once
+     * Only keys are kept: rows are read one after the other without keeping them.
+     * The first rule wins when several rules have the same key.
+     * @return immutable map of the positions of rules by key
+     */
+    private Map<String, Integer> getIndex() {
+        Map<String, Integer> result = index;
+        if(result == null) {
+            final Map<String, Integer> built = new HashMap<>(rules.size() * 4 / 3 + 1);
+            int position = 0;
+            for(RuleView rule : rows()) {
+                built.putIfAbsent(rule.getKey(), position++);
             }
+            result = Collections.unmodifiableMap(built);
+            index = result;
         }
+        return result;
+    }
 
-        return rule;
+    /**
+     * Release the rules kept on disk
+     * @throws IOException when they can not be removed
+     */
+    @Override
+    public void close() throws IOException {
+        if(rules instanceof Closeable) {
+            ((Closeable) rules).close();
+        }
     }
 
     /**
-     * Override toString to retrieve information
+     * Close several profiles, each one even when closing another fails
+     * The list is locked while it is read, as needed by synchronized lists.
+     * @param profiles profiles to close
+     * @param failure exception being thrown to which the failures are added as suppressed,
+     *                null to throw them
+     * @throws IOException the first failure, with the next ones as suppressed, when failure is null
+     */
+    public static void closeAll(List<QualityProfile> profiles, Throwable failure) throws IOException {
+        IOException first = null;
+        synchronized (profiles) {
+            for(QualityProfile profile : profiles) {
+                try {
+                    profile.close();
+                } catch (IOException e) {
+                    if(failure != null) {
+                        failure.addSuppressed(e);
+                    } else if(first == null) {
+                        first = e;
+                    } else {
+                        first.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        if(first != null) {
+            throw first;
+        }
+    }
+
+    /**
+     * Override toString to retrieve information, written by the csv exporter
      * @return a csv format
      */
     @Override
     public String toString() {
-        // header added to csv
-        StringBuilder builder = new StringBuilder(CSV_HEADER);
-
-        // concat important information about rules
-        for(Rule rule : rules) {
-            builder.append(rule.getKey());
-            builder.append(SEPARATOR);
-            builder.append(rule.getName());
-            builder.append(SEPARATOR);
-            builder.append(rule.getLangName());
-            builder.append(SEPARATOR);
-            builder.append(rule.getRepo());
-            builder.append(SEPARATOR);
-            builder.append(rule.getActiveSeverity());
-            builder.append(SEPARATOR);
-            builder.append(rule.getType());
-            builder.append(NEW_LINE);
-        }
-
-        return builder.toString();
+        return new CsvExporter().export(this);
     }
 }
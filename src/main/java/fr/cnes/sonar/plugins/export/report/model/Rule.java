@@ -21,7 +21,7 @@ package fr.cnes.sonar.plugins.export.report.model;
  * Model of a quality code rule
  * @author lequal
  */
-public class Rule {
+public class Rule implements RuleView {
     /**
      * Represents the sonarqube's key of the rule
      */
@@ -82,10 +82,30 @@ public class Rule {
         this.langName = "";
     }
 
+    /**
+     * Copy constructor
+     * Values are read through the getters, so that views of other models are copied too.
+     * @param pRule rule to copy
+     */
+    public Rule(final RuleView pRule) {
+        this.key = pRule.getKey();
+        this.repo = pRule.getRepo();
+        this.name = pRule.getName();
+        this.severity = pRule.getSeverity();
+        this.activeSeverity = pRule.getActiveSeverity();
+        this.type = pRule.getType();
+        this.htmlDesc = pRule.getHtmlDesc();
+        this.debtRemFnCoeff = pRule.getDebt();
+        this.lang = pRule.getLang();
+        this.status = pRule.getStatus();
+        this.langName = pRule.getLangName();
+    }
+
     /**
      * Getter for key
      * @return key
      */
+    @Override
     public String getKey() {
         return key;
     }
@@ -102,6 +122,7 @@ public class Rule {
      * Getter for debt
      * @return debt
      */
+    @Override
     public String getDebt() {
         return debtRemFnCoeff;
     }
@@ -118,6 +139,7 @@ public class Rule {
      * Getter for repo
      * @return repo
      */
+    @Override
     public String getRepo() {
         return repo;
     }
@@ -134,6 +156,7 @@ public class Rule {
      * Getter for name
      * @return name
      */
+    @Override
     public String getName() {
         return name;
     }
@@ -150,6 +173,7 @@ public class Rule {
      * Getter for severity
      * @return severity
      */
+    @Override
     public String getSeverity() {
         return severity;
     }
@@ -166,6 +190,7 @@ public class Rule {
      * Getter for activeSeverity
      * @return activeSeverity
      */
+    @Override
     public String getActiveSeverity() {
         return activeSeverity;
     }
@@ -182,6 +207,7 @@ public class Rule {
      * Getter for type
      * @return type
      */
+    @Override
     public String getType() {
         return type;
     }
@@ -198,6 +224,7 @@ public class Rule {
      * Getter for htmlDesc
      * @return htmlDesc
      */
+    @Override
     public String getHtmlDesc() {
         return htmlDesc;
     }
@@ -214,6 +241,7 @@ public class Rule {
      * Represents the sonarqube's programming language of this rule (key)
      * @return key of the language relative to the rule
      */
+    @Override
     public String getLang() {
         return lang;
     }
@@ -230,6 +258,7 @@ public class Rule {
      * Represents the sonarqube's status of the rule
      * @return the status as a String
      */
+    @Override
     public String getStatus() {
         return status;
     }
@@ -247,6 +276,7 @@ public class Rule {
      * Represents the sonarqube's programming language of this rule (display name)
      * @return a string containing th display name of the corresponding language
      */
+    @Override
     public String getLangName() {
         return langName;
     }
@@ -0,0 +1,32 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.model;
+
+/**
+ * Rules which can be read row by row without creating a Rule for each of them
+ * @author lequal
+ */
+public interface RuleRows {
+
+    /**
+     * Give the rules in order as a read-only view moved from row to row
+     * The same instance may be given for all rows: its values must be read before
+     * going to the next row and it must not be kept, copy it with new Rule(rule) if needed.
+     * @return the rows
+     */
+    Iterable<RuleView> rows();
+}
@@ -0,0 +1,353 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Rules stored column by column
+ * Keys and names share a buffer of characters, values repeated by many rules
+ * (repositories, languages, severities, types, statuses and debts) are stored once
+ * in a dictionary and referenced by a code per rule, descriptions are kept as they are.
+ * Getting a rule creates it from the columns, rows() gives a view moved from row to row.
+ * @author lequal
+ */
+public final class RuleTable extends AbstractList<Rule> implements RuleRows {
+
+    /**
+     * Initial number of rows
+     */
+    private static final int INITIAL_ROWS = 64;
+
+    /**
+     * Number of rules
+     */
+    private int size;
+    /**
+     * Characters of the keys and names, one after the other
+     */
+    private char[] chars;
+    /**
+     * Number of used characters
+     */
+    private int length;
+    /**
+     * Start of the key of each rule in chars, the name follows the key and ends at the next key
+     */
+    private int[] keyStarts;
+    /**
+     * Start of the name of each rule in chars
+     */
+    private int[] nameStarts;
+    /**
+     * Rules whose key is null
+     */
+    private final BitSet nullKeys;
+    /**
+     * Rules whose name is null
+     */
+    private final BitSet nullNames;
+    /**
+     * Repositories
+     */
+    private final Column repos;
+    /**
+     * Default severities
+     */
+    private final Column severities;
+    /**
+     * Severities in the profile
+     */
+    private final Column activeSeverities;
+    /**
+     * Types
+     */
+    private final Column types;
+    /**
+     * Technical debts
+     */
+    private final Column debts;
+    /**
+     * Language keys
+     */
+    private final Column langs;
+    /**
+     * Statuses
+     */
+    private final Column statuses;
+    /**
+     * Language names
+     */
+    private final Column langNames;
+    /**
+     * Html descriptions
+     */
+    private String[] htmlDescs;
+
+    /**
+     * Constructor of an empty table
+     */
+    public RuleTable() {
+        this.chars = new char[INITIAL_ROWS * 32];
+        this.keyStarts = new int[INITIAL_ROWS];
+        this.nameStarts = new int[INITIAL_ROWS];
+        this.nullKeys = new BitSet();
+        this.nullNames = new BitSet();
+        this.repos = new Column();
+        this.severities = new Column();
+        this.activeSeverities = new Column();
+        this.types = new Column();
+        this.debts = new Column();
+        this.langs = new Column();
+        this.statuses = new Column();
+        this.langNames = new Column();
+        this.htmlDescs = new String[INITIAL_ROWS];
+    }
+
+    /**
+     * Add a rule at the end of the table, its values are copied
+     * @param rule rule to add
+     */
+    public void append(final Rule rule) {
+        if (size == keyStarts.length) {
+            final int capacity = size * 2;
+            keyStarts = Arrays.copyOf(keyStarts, capacity);
+            nameStarts = Arrays.copyOf(nameStarts, capacity);
+            htmlDescs = Arrays.copyOf(htmlDescs, capacity);
+        }
+        keyStarts[size] = length;
+        appendChars(rule.getKey(), nullKeys);
+        nameStarts[size] = length;
+        appendChars(rule.getName(), nullNames);
+        repos.add(size, rule.getRepo());
+        severities.add(size, rule.getSeverity());
+        activeSeverities.add(size, rule.getActiveSeverity());
+        types.add(size, rule.getType());
+        debts.add(size, rule.getDebt());
+        langs.add(size, rule.getLang());
+        statuses.add(size, rule.getStatus());
+        langNames.add(size, rule.getLangName());
+        htmlDescs[size] = rule.getHtmlDesc();
+        size++;
+    }
+
+    /**
+     * Create a rule from a row
+     * @param index index of the rule
+     * @return a new rule
+     */
+    @Override
+    public Rule get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size));
+        }
+        final Row row = new Row();
+        row.index = index;
+        return new Rule(row);
+    }
+
+    /**
+     * Number of rules
+     * @return the size of the table
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Give the rules in order as a single view moved from row to row
+     * @return the rows
+     */
+    @Override
+    public Iterable<RuleView> rows() {
+        return () -> new Iterator<RuleView>() {
+            /**
+             * View of the current row
+             */
+            private final Row row = new Row();
+            /**
+             * Index of the next row
+             */
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public RuleView next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                row.index = next++;
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Add a key or a name at the end of the buffer of characters
+     * @param value the value, may be null
+     * @param nulls rows whose value is null
+     */
+    private void appendChars(final String value, final BitSet nulls) {
+        if (value == null) {
+            nulls.set(size);
+        } else {
+            if (length + value.length() > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + value.length()));
+            }
+            value.getChars(0, value.length(), chars, length);
+            length += value.length();
+        }
+    }
+
+    /**
+     * Read a key or a name from the buffer of characters
+     * @param start index of its first character
+     * @param end index after its last character
+     * @param nulls rows whose value is null
+     * @param index index of the row
+     * @return the value, may be null
+     */
+    private String chars(final int start, final int end, final BitSet nulls, final int index) {
+        return nulls.get(index) ? null : new String(chars, start, end - start);
+    }
+
+    /**
+     * Values of a field held by few distinct values
+     */
+    private static final class Column {
+        /**
+         * Distinct values, the code of a value is its index
+         */
+        private final List<String> dictionary = new ArrayList<>();
+        /**
+         * Code of each distinct value
+         */
+        private final Map<String, Integer> codes = new HashMap<>();
+        /**
+         * Code of the value of each row, -1 for null
+         */
+        private int[] rows = new int[INITIAL_ROWS];
+
+        /**
+         * Set the value of a row
+         * @param index index of the row
+         * @param value the value, may be null
+         */
+        private void add(final int index, final String value) {
+            if (index == rows.length) {
+                rows = Arrays.copyOf(rows, index * 2);
+            }
+            int code = -1;
+            if (value != null) {
+                code = codes.computeIfAbsent(value, v -> {
+                    dictionary.add(v);
+                    return dictionary.size() - 1;
+                });
+            }
+            rows[index] = code;
+        }
+
+        /**
+         * Get the value of a row
+         * @param index index of the row
+         * @return the value, shared by all rows having it, may be null
+         */
+        private String get(final int index) {
+            final int code = rows[index];
+            return code < 0 ? null : dictionary.get(code);
+        }
+    }
+
+    /**
+     * Read-only view of a row of the table
+     */
+    private final class Row implements RuleView {
+        /**
+         * Index of the row
+         */
+        private int index;
+
+        @Override
+        public String getKey() {
+            return chars(keyStarts[index], nameStarts[index], nullKeys, index);
+        }
+
+        @Override
+        public String getName() {
+            final int end = index + 1 < size ? keyStarts[index + 1] : length;
+            return chars(nameStarts[index], end, nullNames, index);
+        }
+
+        @Override
+        public String getRepo() {
+            return repos.get(index);
+        }
+
+        @Override
+        public String getSeverity() {
+            return severities.get(index);
+        }
+
+        @Override
+        public String getActiveSeverity() {
+            return activeSeverities.get(index);
+        }
+
+        @Override
+        public String getType() {
+            return types.get(index);
+        }
+
+        @Override
+        public String getHtmlDesc() {
+            return htmlDescs[index];
+        }
+
+        @Override
+        public String getDebt() {
+            return debts.get(index);
+        }
+
+        @Override
+        public String getLang() {
+            return langs.get(index);
+        }
+
+        @Override
+        public String getStatus() {
+            return statuses.get(index);
+        }
+
+        @Override
+        public String getLangName() {
+            return langNames.get(index);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.model;
+
+/**
+ * Read-only values of a rule
+ * Writers only read rules through it, so that they accept rules as well as views of other models.
+ * @author lequal
+ */
+public interface RuleView {
+
+    /**
+     * Getter for key
+     * @return key
+     */
+    String getKey();
+
+    /**
+     * Getter for debt
+     * @return debt
+     */
+    String getDebt();
+
+    /**
+     * Getter for repo
+     * @return repo
+     */
+    String getRepo();
+
+    /**
+     * Getter for name
+     * @return name
+     */
+    String getName();
+
+    /**
+     * Getter for severity
+     * @return severity
+     */
+    String getSeverity();
+
+    /**
+     * Getter for activeSeverity
+     * @return activeSeverity
+     */
+    String getActiveSeverity();
+
+    /**
+     * Getter for type
+     * @return type
+     */
+    String getType();
+
+    /**
+     * Getter for htmlDesc
+     * @return htmlDesc
+     */
+    String getHtmlDesc();
+
+    /**
+     * Getter for lang
+     * @return key of the language relative to the rule
+     */
+    String getLang();
+
+    /**
+     * Getter for status
+     * @return the status as a String
+     */
+    String getStatus();
+
+    /**
+     * Getter for langName
+     * @return a string containing the display name of the corresponding language
+     */
+    String getLangName();
+}
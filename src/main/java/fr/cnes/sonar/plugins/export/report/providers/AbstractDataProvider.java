@@ -20,11 +20,20 @@ package fr.cnes.sonar.plugins.export.report.providers;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+import fr.cnes.sonar.plugins.export.metrics.CountingInputStream;
+import fr.cnes.sonar.plugins.export.metrics.ExportTimings;
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
 import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
 import fr.cnes.sonar.plugins.export.utils.StringManager;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -55,6 +64,14 @@ public abstract class AbstractDataProvider {
      * Field to search in json to get active rules
      */
     public static final String ACTIVES = "actives";
+    /**
+     * Field to search in json to get errors
+     */
+    public static final String ERRORS = "errors";
+    /**
+     * Field to search in json to get the message of an error
+     */
+    public static final String MSG = "msg";
 
     /**
      * Logger for the class
@@ -77,6 +94,20 @@ public abstract class AbstractDataProvider {
      */
     private String url;
 
+    /**
+     * Read a field of a json response while it is received
+     */
+    @FunctionalInterface
+    public interface FieldReader {
+        /**
+         * Read the value of a field, unused values must be skipped
+         * @param name name of the field
+         * @param reader reader positioned on the value of the field
+         * @throws IOException when reading the response
+         */
+        void read(String name, JsonReader reader) throws IOException;
+    }
+
     // Static initialization block for reading .properties
     static {
         // store properties
@@ -110,21 +141,37 @@ public abstract class AbstractDataProvider {
     }
 
     /**
-     * Singleton which execute concrete http requests
+     * Access to the web services executing the requests
+     */
+    private final DataBackend backend;
+    /**
+     * Timings of the current export, null if not followed
      */
-    private RequestManager requestManager;
+    private ExportTimings timings;
+    /**
+     * Time (ms since epoch) after which no request is sent, 0 for none
+     */
+    private long deadline;
 
     /**
-     * Constructor
+     * Constructor, requests are sent through http
      * @param pUrl Represents the url of the current SonarQube instance
      */
     public AbstractDataProvider(final String pUrl) {
+        this(new RemoteBackend(pUrl));
+    }
+
+    /**
+     * Constructor
+     * @param pBackend access to the web services of the current SonarQube instance
+     */
+    public AbstractDataProvider(final DataBackend pBackend) {
         // json tool
         this.gson = new Gson();
         // get sonar url
-        this.url = pUrl;
+        this.url = pBackend.getUrl();
         // set network tool to execute request
-        this.requestManager = RequestManager.getInstance();
+        this.backend = pBackend;
     }
 
     /**
@@ -144,13 +191,13 @@ public abstract class AbstractDataProvider {
      */
     private void isErrorFree(final JsonObject jsonObject) throws BadSonarQubeRequestException {
         // we retrieve the exception
-        final JsonElement error = jsonObject.get("errors");
+        final JsonElement error = jsonObject.get(ERRORS);
         // if there is an error we search the message and throw an exception
         if (error != null) {
             // Json object of the error
             final JsonObject errorJO = error.getAsJsonArray().get(0).getAsJsonObject();
             // get the error message
-            final JsonElement errorElement = errorJO.get("msg");
+            final JsonElement errorElement = errorJO.get(MSG);
             final String errorMessage = (getGson().fromJson(errorElement, String.class));
             // throw exception if there was a problem when dealing with the server
             throw new BadSonarQubeRequestException(errorMessage);
@@ -173,8 +220,10 @@ public abstract class AbstractDataProvider {
         final JsonElement json;
 
         // verify that the server response was correct
+        final long start = Metrics.getInstance().start();
         try {
             json = getGson().fromJson(raw, JsonElement.class);
+            Metrics.getInstance().stop(Metrics.PROVIDER_PARSE, start, timings);
         } catch (Exception e) {
             // log exception's message
             LOGGER.log(Level.SEVERE, e.getMessage(), e);
@@ -191,21 +240,169 @@ public abstract class AbstractDataProvider {
         return jsonObject;
     }
 
+    /**
+     * Execute a given request and read the fields of the response while it is received
+     * Neither the raw string nor the json tree of the response are built.
+     * @param request Url for the request, for example http://sonarqube:1234/api/toto/list
+     * @param fieldReader reader of each field of the response's root object
+     * @throws IOException if there were an error contacting the server
+     * @throws BadSonarQubeRequestException if SonarQube Server sent an error
+     */
+    public void streamRequest(final String request, final FieldReader fieldReader)
+            throws IOException, BadSonarQubeRequestException {
+        streamRequest(request, content -> {
+            try (JsonReader reader = new JsonReader(
+                    new InputStreamReader(content, StandardCharsets.UTF_8))) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    final String name = reader.nextName();
+                    // verify if an error occurred
+                    if (ERRORS.equals(name)) {
+                        throw new BadSonarQubeRequestException(readError(reader));
+                    }
+                    fieldReader.read(name, reader);
+                }
+                reader.endObject();
+            } catch (MalformedJsonException | JsonParseException | IllegalStateException e) {
+                // log exception's message
+                LOGGER.log(Level.SEVERE, e.getMessage(), e);
+                throw new BadSonarQubeRequestException("Server answered an unexpected json: " +
+                        e.getMessage());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Read the message of the first error of an errors' array
+     * @param reader reader positioned on the errors' array
+     * @return the message of the error
+     * @throws IOException when reading the response
+     */
+    private static String readError(final JsonReader reader) throws IOException {
+        // get the error message
+        String errorMessage = null;
+        reader.beginArray();
+        if (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (MSG.equals(reader.nextName())) {
+                    errorMessage = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return errorMessage;
+    }
+
     /**
      * Get the raw string response
      * @param request the raw url of the request
      * @return the server's response as a string
      * @throws IOException when not able to contact the server
+     * @throws BadSonarQubeRequestException when the request can not be executed
+     */
+    protected String stringRequest(final String request) throws IOException, BadSonarQubeRequestException {
+        checkDeadline(request);
+        final Metrics metrics = Metrics.getInstance();
+        final long start = metrics.start();
+        try {
+            // launch the request on sonarqube server and retrieve resources into a string
+            return backend.get(prepareRequest(request), deadline);
+        } finally {
+            metrics.stop(Metrics.PROVIDER_REQUEST, start, timings);
+            metrics.count(Metrics.PROVIDER_REQUESTS, 1, timings);
+        }
+    }
+
+    /**
+     * Execute a request and read the response as a stream
+     * @param request the raw url of the request
+     * @param handler reader of the response's content
+     * @param <T> type of the result
+     * @return the result of the handler
+     * @throws IOException when not able to contact the server
+     * @throws BadSonarQubeRequestException when the handler does not understand the response
+     */
+    protected <T> T streamRequest(final String request, final RequestManager.ContentHandler<T> handler)
+            throws IOException, BadSonarQubeRequestException {
+        checkDeadline(request);
+        final Metrics metrics = Metrics.getInstance();
+        if (!metrics.isEnabled()) {
+            // launch the request on sonarqube server and read its content while it is received
+            return backend.get(prepareRequest(request), deadline, handler);
+        }
+
+        final long start = metrics.start();
+        // time spent in the handler and bytes read
+        final long[] read = new long[2];
+        try {
+            return backend.get(prepareRequest(request), deadline, content -> {
+                final CountingInputStream counting = new CountingInputStream(content);
+                final long readStart = metrics.start();
+                try {
+                    return handler.handle(counting);
+                } finally {
+                    read[0] = metrics.start() - readStart;
+                    read[1] = counting.getCount();
+                }
+            });
+        } finally {
+            metrics.stop(Metrics.PROVIDER_REQUEST, start, timings);
+            metrics.count(Metrics.PROVIDER_REQUESTS, 1, timings);
+            metrics.record(Metrics.PROVIDER_PARSE, read[0], timings);
+            metrics.count(Metrics.PROVIDER_BYTES, read[1], timings);
+        }
+    }
+
+    /**
+     * Follow the requests of this provider in the timings of an export
+     * @param pTimings timings of the current export, null to follow nothing
      */
-    protected String stringRequest(final String request) throws IOException {
-        // prepare the request by replacing some relevant special characters
+    public void setTimings(final ExportTimings pTimings) {
+        this.timings = pTimings;
+    }
+
+    /**
+     * Stop sending requests after a time
+     * @param pDeadline time (ms since epoch) after which requests fail, 0 for none
+     */
+    public void setDeadline(final long pDeadline) {
+        this.deadline = pDeadline;
+    }
+
+    /**
+     * Check that the deadline of the export is not passed
+     * @param request the request about to be sent
+     * @throws InterruptedIOException when the deadline is passed
+     */
+    private void checkDeadline(final String request) throws InterruptedIOException {
+        if (deadline > 0 && System.currentTimeMillis() > deadline) {
+            throw new InterruptedIOException("Export deadline exceeded before requesting " + request);
+        }
+    }
+
+    /**
+     * Timings of the current export
+     * @return the timings, null if not followed
+     */
+    protected ExportTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Prepare the request by replacing some relevant special characters
+     * @param request the raw url of the request
+     * @return the url to request
+     */
+    private static String prepareRequest(final String request) {
         // replace spaces
         String preparedRequest = request.replaceAll(" ", "%20");
         // replace + characters
         preparedRequest = preparedRequest.replaceAll("\\+", "%2B");
-
-        // launch the request on sonarqube server and retrieve resources into a string
-        return RequestManager.getInstance().get(preparedRequest);
+        return preparedRequest;
     }
 
     /**
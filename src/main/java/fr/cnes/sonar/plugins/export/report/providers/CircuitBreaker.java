@@ -0,0 +1,131 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.providers;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.CircuitOpenException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stop requesting a server after consecutive failures
+ * After a number of consecutive failures the circuit opens and requests fail fast.
+ * Once the open time elapsed, a single trial request is let through: its success closes
+ * the circuit, its failure opens it again.
+ * @author lequal
+ */
+public class CircuitBreaker {
+
+    /**
+     * State of the circuit
+     */
+    public enum State {
+        /** Requests are sent */
+        CLOSED,
+        /** Requests fail without being sent */
+        OPEN,
+        /** A trial request is being sent */
+        HALF_OPEN
+    }
+
+    /**
+     * Number of consecutive failures opening the circuit, 0 to never open it
+     */
+    private final int failureThreshold;
+    /**
+     * Time (ns) during which the circuit stays open
+     */
+    private final long openTime;
+    /**
+     * Name of the server, used in messages
+     */
+    private final String name;
+    /**
+     * Current state
+     */
+    private State state = State.CLOSED;
+    /**
+     * Number of consecutive failures
+     */
+    private int failures;
+    /**
+     * Time (ns) at which the circuit opened
+     */
+    private long openedAt;
+
+    /**
+     * Complete constructor
+     * @param pName name of the server, used in messages
+     * @param pFailureThreshold number of consecutive failures opening the circuit, 0 to never open it
+     * @param pOpenTime time (ms) during which the circuit stays open
+     */
+    public CircuitBreaker(final String pName, final int pFailureThreshold, final long pOpenTime) {
+        this.name = pName;
+        this.failureThreshold = pFailureThreshold;
+        this.openTime = TimeUnit.MILLISECONDS.toNanos(pOpenTime);
+    }
+
+    /**
+     * Check that a request can be sent
+     * @throws CircuitOpenException when the circuit is open or a trial request is already sent
+     */
+    public synchronized void acquire() throws CircuitOpenException {
+        if(state == State.OPEN && System.nanoTime() - openedAt >= openTime) {
+            // let a trial request through
+            state = State.HALF_OPEN;
+        } else if(state != State.CLOSED) {
+            throw new CircuitOpenException(String.format(
+                    "%s failed %d times in a row, requests are suspended", name, failures));
+        }
+    }
+
+    /**
+     * Record a request answered by the server
+     */
+    public synchronized void onSuccess() {
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Record a request which failed or was refused by an overloaded server
+     */
+    public synchronized void onFailure() {
+        failures++;
+        if(state == State.HALF_OPEN || (failureThreshold > 0 && failures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Record a request cancelled before its outcome was known
+     * A cancelled trial request lets the next request try again.
+     */
+    public synchronized void onCancel() {
+        if(state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    /**
+     * Getter for state
+     * @return the current state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+}
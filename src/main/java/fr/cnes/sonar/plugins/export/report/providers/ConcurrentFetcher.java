@@ -0,0 +1,279 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.cnes.sonar.plugins.export.report.providers;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execute requests to the server over a bounded number of threads
+ * @author lequal
+ */
+public class ConcurrentFetcher implements Closeable {
+
+    /**
+     * Maximum time (ms) to wait for the aborted requests when closing
+     */
+    private static final long CLOSE_TIMEOUT = 10000;
+
+    /**
+     * A request returning a value
+     * @param <T> type of the result
+     */
+    @FunctionalInterface
+    public interface Fetch<T> {
+        /**
+         * Execute the request
+         * @return the result of the request
+         * @throws IOException when connecting the server
+         * @throws BadSonarQubeRequestException A request is not recognized by the server
+         */
+        T fetch() throws IOException, BadSonarQubeRequestException;
+    }
+
+    /**
+     * Threads executing the requests, null when they are executed by the calling thread
+     */
+    private final ExecutorService executor;
+    /**
+     * Threads created by the executor, used to abort their requests
+     */
+    private final List<Thread> workers;
+    /**
+     * Limit the number of requests started per second
+     */
+    private final RateLimiter rateLimiter;
+    /**
+     * False for a view on the threads of another fetcher, which are not stopped on close
+     */
+    private final boolean owner;
+
+    /**
+     * Constructor
+     * @param concurrency maximum number of simultaneous requests,
+     *                    0 to execute them one after the other in the calling thread
+     * @param rateLimit maximum number of requests per second, 0 for no limit
+     */
+    public ConcurrentFetcher(final int concurrency, final double rateLimit) {
+        this.rateLimiter = new RateLimiter(rateLimit);
+        this.workers = new CopyOnWriteArrayList<>();
+        this.owner = true;
+        if (concurrency <= 0) {
+            this.executor = null;
+        } else {
+            this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+                final Thread thread = new Thread(runnable, "cnesexport-fetcher");
+                thread.setDaemon(true);
+                workers.add(thread);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Constructor of a view on the threads of another fetcher
+     * @param shared fetcher whose threads and rate limit are used
+     */
+    private ConcurrentFetcher(final ConcurrentFetcher shared) {
+        this.executor = shared.executor;
+        this.workers = shared.workers;
+        this.rateLimiter = shared.rateLimiter;
+        this.owner = false;
+    }
+
+    /**
+     * Give a fetcher using the same threads, to share them between simultaneous exports
+     * Closing the view does not stop the threads, they are stopped with this fetcher.
+     * @return a new view on the threads of this fetcher
+     */
+    public ConcurrentFetcher share() {
+        return new ConcurrentFetcher(this);
+    }
+
+    /**
+     * Execute all requests and wait for their results
+     * Remaining requests are cancelled as soon as one fails or the calling thread is interrupted.
+     * @param fetches requests to execute
+     * @param <T> type of the results
+     * @return results in the same order as the requests
+     * @throws IOException when connecting the server or if interrupted
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public <T> List<T> fetchAll(final List<Fetch<T>> fetches)
+            throws IOException, BadSonarQubeRequestException {
+        if (executor == null) {
+            return fetchInline(fetches);
+        }
+
+        // pending results in the order of the requests
+        final List<Future<T>> futures = new ArrayList<>(fetches.size());
+        // result to return
+        final List<T> results = new ArrayList<>(fetches.size());
+        boolean success = false;
+
+        try {
+            for (final Fetch<T> fetch : fetches) {
+                futures.add(executor.submit(() -> {
+                    rateLimiter.acquire();
+                    return fetch.fetch();
+                }));
+            }
+            for (final Future<T> future : futures) {
+                results.add(future.get());
+            }
+            success = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export interrupted.");
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            if (!success) {
+                cancel(futures);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Start a request without waiting for its result
+     * The request is executed at once by the calling thread when there are no threads.
+     * @param fetch request to execute
+     * @param <T> type of the result
+     * @return the pending result, to give to await
+     */
+    public <T> Future<T> submit(final Fetch<T> fetch) {
+        final FutureTask<T> task = new FutureTask<>(() -> {
+            rateLimiter.acquire();
+            return fetch.fetch();
+        });
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+        return task;
+    }
+
+    /**
+     * Wait for the result of a submitted request
+     * @param future pending result given by submit
+     * @param <T> type of the result
+     * @return the result of the request
+     * @throws IOException when connecting the server or if interrupted
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public <T> T await(final Future<T> future) throws IOException, BadSonarQubeRequestException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export interrupted.");
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Execute all requests in the calling thread
+     * @param fetches requests to execute
+     * @param <T> type of the results
+     * @return results in the same order as the requests
+     * @throws IOException when connecting the server or if interrupted
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    private <T> List<T> fetchInline(final List<Fetch<T>> fetches)
+            throws IOException, BadSonarQubeRequestException {
+        final List<T> results = new ArrayList<>(fetches.size());
+        for (final Fetch<T> fetch : fetches) {
+            try {
+                rateLimiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export interrupted.");
+            }
+            results.add(fetch.fetch());
+        }
+        return results;
+    }
+
+    /**
+     * Cancel all requests not yet done
+     * @param futures requests to cancel
+     */
+    public void cancel(final List<? extends Future<?>> futures) {
+        for (final Future<?> future : futures) {
+            future.cancel(true);
+        }
+        // interruption does not stop a blocking socket
+        for (final Thread worker : workers) {
+            RequestManager.getInstance().abort(worker);
+        }
+    }
+
+    /**
+     * Get back the exception thrown by a request
+     * @param e exception thrown by a future
+     * @return the exception to throw if it is an IOException
+     * @throws BadSonarQubeRequestException if the request was rejected
+     */
+    private static IOException unwrap(final ExecutionException e) throws BadSonarQubeRequestException {
+        final Throwable cause = e.getCause();
+        if (cause instanceof BadSonarQubeRequestException) {
+            throw (BadSonarQubeRequestException) cause;
+        } else if (cause instanceof IOException) {
+            return (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * Stop all threads, nothing is done by a view on the threads of another fetcher
+     * Running requests are aborted and waited for, so that none reaches the server once closed.
+     */
+    @Override
+    public void close() {
+        if (executor != null && owner) {
+            executor.shutdownNow();
+            // interruption does not stop a blocking socket
+            for (final Thread worker : workers) {
+                RequestManager.getInstance().abort(worker);
+            }
+            try {
+                executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
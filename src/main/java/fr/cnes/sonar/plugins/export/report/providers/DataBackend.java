@@ -0,0 +1,91 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.providers;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+
+import java.io.IOException;
+
+/**
+ * Access to the web services of SonarQube
+ * Requests are the url of a web service prefixed by getUrl().
+ * @author lequal
+ */
+public interface DataBackend {
+
+    /**
+     * Prefix of the requests given to this backend
+     * @return the base url of the server, empty when requests are only paths
+     */
+    String getUrl();
+
+    /**
+     * Tell whether requests may be executed by other threads than the calling one
+     * @return false when requests must stay in the calling thread
+     */
+    boolean isConcurrent();
+
+    /**
+     * Execute a request and give the raw response
+     * @param request url of the web service with its parameters
+     * @return the response as a string
+     * @throws IOException when the server can not be reached
+     * @throws BadSonarQubeRequestException when the request can not be executed
+     */
+    String get(String request) throws IOException, BadSonarQubeRequestException;
+
+    /**
+     * Execute a request and read the response as a stream
+     * @param request url of the web service with its parameters
+     * @param handler reader of the response's content
+     * @param <T> type of the result
+     * @return the result of the handler
+     * @throws IOException when the server can not be reached
+     * @throws BadSonarQubeRequestException when the handler does not understand the response
+     */
+    <T> T get(String request, RequestManager.ContentHandler<T> handler)
+            throws IOException, BadSonarQubeRequestException;
+
+    /**
+     * Execute a request which is not retried after a deadline and give the raw response
+     * Backends which do not retry requests ignore the deadline.
+     * @param request url of the web service with its parameters
+     * @param deadline time (ms since epoch) after which the request is not retried, 0 for none
+     * @return the response as a string
+     * @throws IOException when the server can not be reached
+     * @throws BadSonarQubeRequestException when the request can not be executed
+     */
+    default String get(String request, long deadline) throws IOException, BadSonarQubeRequestException {
+        return get(request);
+    }
+
+    /**
+     * Execute a request which is not retried after a deadline and read the response as a stream
+     * Backends which do not retry requests ignore the deadline.
+     * @param request url of the web service with its parameters
+     * @param deadline time (ms since epoch) after which the request is not retried, 0 for none
+     * @param handler reader of the response's content
+     * @param <T> type of the result
+     * @return the result of the handler
+     * @throws IOException when the server can not be reached
+     * @throws BadSonarQubeRequestException when the handler does not understand the response
+     */
+    default <T> T get(String request, long deadline, RequestManager.ContentHandler<T> handler)
+            throws IOException, BadSonarQubeRequestException {
+        return get(request, handler);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.providers;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import org.sonar.api.server.ws.LocalConnector;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Access to SonarQube web services inside the server, without http
+ * Requests are executed with the connector of the user's request, so with its permissions.
+ * @author lequal
+ */
+public class LocalBackend implements DataBackend {
+
+    /**
+     * Method of all requests
+     */
+    private static final String GET = "GET";
+    /**
+     * Media type of all requests
+     */
+    private static final String JSON = "application/json";
+
+    /**
+     * Connector given by the request of the user
+     */
+    private final LocalConnector connector;
+
+    /**
+     * Constructor
+     * @param pConnector connector of the current request
+     */
+    public LocalBackend(final LocalConnector pConnector) {
+        this.connector = pConnector;
+    }
+
+    /**
+     * Requests are only paths
+     * @return an empty string
+     */
+    @Override
+    public String getUrl() {
+        return "";
+    }
+
+    /**
+     * The session of the user is bound to the thread of its request
+     * @return false
+     */
+    @Override
+    public boolean isConcurrent() {
+        return false;
+    }
+
+    /**
+     * Execute a request and give the raw response
+     * @param request path of the web service with its parameters
+     * @return the response as a string
+     * @throws IOException when the request can not be decoded
+     */
+    @Override
+    public String get(final String request) throws IOException {
+        return new String(call(request), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Execute a request and read the response
+     * @param request path of the web service with its parameters
+     * @param handler reader of the response's content
+     * @param <T> type of the result
+     * @return the result of the handler
+     * @throws IOException when the request can not be decoded
+     * @throws BadSonarQubeRequestException when the handler does not understand the response
+     */
+    @Override
+    public <T> T get(final String request, final RequestManager.ContentHandler<T> handler)
+            throws IOException, BadSonarQubeRequestException {
+        return handler.handle(new ByteArrayInputStream(call(request)));
+    }
+
+    /**
+     * Call a web service through the connector
+     * @param request path of the web service with its parameters
+     * @return the body of the response
+     * @throws IOException when the request can not be decoded
+     */
+    private byte[] call(final String request) throws IOException {
+        final int query = request.indexOf('?');
+        final String path = query < 0 ? request : request.substring(0, query);
+        final Map<String, List<String>> params = query < 0 ?
+                Collections.<String, List<String>>emptyMap() : parse(request.substring(query + 1));
+        return connector.call(new Request(path, params)).getBytes();
+    }
+
+    /**
+     * Decode the parameters of a query string
+     * @param query the query string, without the question mark
+     * @return values of each parameter
+     * @throws UnsupportedEncodingException never with utf-8
+     */
+    private static Map<String, List<String>> parse(final String query) throws UnsupportedEncodingException {
+        final Map<String, List<String>> params = new HashMap<>();
+        for (String pair : query.split("&")) {
+            final int equal = pair.indexOf('=');
+            if (equal > 0) {
+                params.computeIfAbsent(URLDecoder.decode(pair.substring(0, equal), "UTF-8"),
+                        name -> new ArrayList<>())
+                        .add(URLDecoder.decode(pair.substring(equal + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Get request given to the connector
+     */
+    private static final class Request implements LocalConnector.LocalRequest {
+
+        /**
+         * Path of the web service
+         */
+        private final String path;
+        /**
+         * Values of each parameter
+         */
+        private final Map<String, List<String>> params;
+
+        /**
+         * Constructor
+         * @param pPath path of the web service
+         * @param pParams values of each parameter
+         */
+        private Request(final String pPath, final Map<String, List<String>> pParams) {
+            this.path = pPath;
+            this.params = pParams;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public String getMediaType() {
+            return JSON;
+        }
+
+        @Override
+        public String getMethod() {
+            return GET;
+        }
+
+        @Override
+        public boolean hasParam(final String key) {
+            return params.containsKey(key);
+        }
+
+        @Override
+        public String getParam(final String key) {
+            final List<String> values = params.get(key);
+            return values == null ? null : values.get(0);
+        }
+
+        @Override
+        public List<String> getMultiParam(final String key) {
+            final List<String> values = params.get(key);
+            return values == null ? Collections.<String>emptyList() : values;
+        }
+
+        @Override
+        public Optional<String> getHeader(final String name) {
+            return Optional.empty();
+        }
+    }
+}
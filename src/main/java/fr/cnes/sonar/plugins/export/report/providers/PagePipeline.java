@@ -0,0 +1,384 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.providers;
+
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exceptions.CircuitOpenException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Request the pages of a search ahead of their use and give them in order
+ * The first page gives the total, the next ones are then requested simultaneously
+ * up to a limit. The size of the pages follows the time taken by the server:
+ * it is halved when a page is slower than the target and doubled when it is much faster.
+ * Sizes are the maximum divided by powers of 2, so each page starts on a multiple of its size.
+ * A page failing while it is received is requested again, the pages already given are kept.
+ * A search can start from an offset to resume it after the pages received before.
+ * @author lequal
+ */
+public class PagePipeline implements Closeable {
+
+    /**
+     * Source of the pages of a search
+     * @param <T> type of a page
+     */
+    public interface Source<T> {
+        /**
+         * Request a page
+         * @param pageSize number of elements per page
+         * @param page index of the page, starting at 1
+         * @return the page
+         * @throws IOException when connecting the server
+         * @throws BadSonarQubeRequestException A request is not recognized by the server
+         */
+        T fetch(int pageSize, int page) throws IOException, BadSonarQubeRequestException;
+
+        /**
+         * Number of elements of a page
+         * @param page a received page
+         * @return the number of elements
+         */
+        int getCount(T page);
+
+        /**
+         * Number of elements of the whole search
+         * @param page a received page
+         * @return the total number of elements
+         */
+        int getTotal(T page);
+    }
+
+    /**
+     * Receiver of the pages, in their order
+     * @param <T> type of a page
+     */
+    @FunctionalInterface
+    public interface Consumer<T> {
+        /**
+         * Use a page
+         * @param content the page
+         * @param pageSize number of elements per page used to request it
+         * @param page index of the page for this size
+         * @throws IOException when connecting the server or handling the page
+         * @throws BadSonarQubeRequestException A request is not recognized by the server
+         */
+        void accept(T content, int pageSize, int page) throws IOException, BadSonarQubeRequestException;
+    }
+
+    /**
+     * Largest page size, as accepted by the server
+     */
+    private int maxPageSize;
+    /**
+     * Smallest page size
+     */
+    private final int minPageSize;
+    /**
+     * Time (ms) a page should take, 0 to keep the largest size
+     */
+    private final long targetTime;
+    /**
+     * Maximum number of pages requested but not yet given
+     */
+    private final int inFlight;
+    /**
+     * Threads requesting the pages, the calling thread when there are none
+     */
+    private final ConcurrentFetcher fetcher;
+    /**
+     * Retries of a failed page
+     */
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * Constructor, failed pages are not retried
+     * @param pMaxPageSize largest page size
+     * @param pMinPageSize smallest page size
+     * @param pTargetTime time (ms) a page should take, 0 to keep the largest size
+     * @param pInFlight maximum number of simultaneous requests, 0 to request pages one
+     *                  after the other in the calling thread
+     */
+    public PagePipeline(final int pMaxPageSize, final int pMinPageSize, final long pTargetTime,
+                        final int pInFlight) {
+        this(pMaxPageSize, pMinPageSize, pTargetTime, pInFlight, new RetryPolicy(0, 0, 0));
+    }
+
+    /**
+     * Complete constructor
+     * @param pMaxPageSize largest page size
+     * @param pMinPageSize smallest page size
+     * @param pTargetTime time (ms) a page should take, 0 to keep the largest size
+     * @param pInFlight maximum number of simultaneous requests, 0 to request pages one
+     *                  after the other in the calling thread
+     * @param pRetryPolicy retries of a page failing while it is received
+     */
+    public PagePipeline(final int pMaxPageSize, final int pMinPageSize, final long pTargetTime,
+                        final int pInFlight, final RetryPolicy pRetryPolicy) {
+        this(pMaxPageSize, pMinPageSize, pTargetTime, pInFlight, pRetryPolicy, new ConcurrentFetcher(pInFlight, 0));
+    }
+
+    /**
+     * Constructor requesting the pages with given threads
+     * @param pMaxPageSize largest page size
+     * @param pMinPageSize smallest page size
+     * @param pTargetTime time (ms) a page should take, 0 to keep the largest size
+     * @param pInFlight maximum number of pages requested but not yet given
+     * @param pRetryPolicy retries of a page failing while it is received
+     * @param pFetcher threads requesting the pages, closed with the pipeline
+     */
+    public PagePipeline(final int pMaxPageSize, final int pMinPageSize, final long pTargetTime,
+                        final int pInFlight, final RetryPolicy pRetryPolicy, final ConcurrentFetcher pFetcher) {
+        this.retryPolicy = pRetryPolicy;
+        this.maxPageSize = pMaxPageSize;
+        this.minPageSize = Math.max(1, Math.min(pMinPageSize, pMaxPageSize));
+        this.targetTime = pTargetTime;
+        this.inFlight = Math.max(1, pInFlight);
+        this.fetcher = pFetcher;
+    }
+
+    /**
+     * Request all pages of a search and give them in order
+     * @param source requests of the pages
+     * @param consumer receiver of the pages
+     * @param <T> type of a page
+     * @throws IOException when connecting the server or handling a page
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public <T> void run(final Source<T> source, final Consumer<T> consumer)
+            throws IOException, BadSonarQubeRequestException {
+        run(source, consumer, 0);
+    }
+
+    /**
+     * Request the pages of a search from an offset and give them in order
+     * Used to resume a search whose first elements were already received.
+     * @param source requests of the pages
+     * @param consumer receiver of the pages
+     * @param offset number of elements already received
+     * @param <T> type of a page
+     * @throws IOException when connecting the server or handling a page
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public <T> void run(final Source<T> source, final Consumer<T> consumer, final int offset)
+            throws IOException, BadSonarQubeRequestException {
+        // the first page gives the total
+        int pageSize = align(maxPageSize, offset);
+        final int firstPage = offset / pageSize + 1;
+        final Timed<T> first = fetch(source, pageSize, firstPage).fetch();
+        final int total = source.getTotal(first.content);
+        final int count = source.getCount(first.content);
+        if(count < pageSize && count < total - offset && count > 0) {
+            // the server gives less elements than asked: it is its maximum
+            maxPageSize = count;
+            pageSize = count;
+        }
+        consumer.accept(first.content, pageSize, firstPage);
+        // offset of the next page to request
+        int next = offset + pageSize;
+        // the first page of a resumed search may be smaller to start on a multiple of its size
+        pageSize = adapt(offset > 0 ? maxPageSize : pageSize, first.time);
+
+        final Deque<Planned<T>> pending = new ArrayDeque<>();
+        boolean success = false;
+        try {
+            while(next < total || !pending.isEmpty()) {
+                // request pages ahead
+                while(next < total && pending.size() < inFlight) {
+                    final int size = align(pageSize, next);
+                    final int page = next / size + 1;
+                    pending.add(new Planned<>(size, page, fetcher.submit(() -> fetch(source, size, page).fetch())));
+                    next += size;
+                }
+                // give the oldest one
+                final Planned<T> planned = pending.poll();
+                final Timed<T> received = fetcher.await(planned.future);
+                consumer.accept(received.content, planned.size, planned.page);
+                pageSize = adapt(planned.size, received.time);
+            }
+            success = true;
+        } finally {
+            if(!success) {
+                final List<Future<?>> futures = new ArrayList<>(pending.size());
+                for (Planned<T> planned : pending) {
+                    futures.add(planned.future);
+                }
+                fetcher.cancel(futures);
+            }
+        }
+    }
+
+    /**
+     * Largest page size, lowered to the maximum of the server once the first page is received
+     * @return the number of elements
+     */
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    /**
+     * Size of the next pages according to the time taken by the last one
+     * @param pageSize size of the last page
+     * @param time time (ms) taken by the last page
+     * @return the new size
+     */
+    private int adapt(final int pageSize, final long time) {
+        int size = pageSize;
+        if(targetTime > 0) {
+            if(time > targetTime && size / 2 >= minPageSize && size % 2 == 0) {
+                size /= 2;
+            } else if(time < targetTime / 2 && size * 2 <= maxPageSize) {
+                size *= 2;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Largest size not above the wanted one whose pages start at an offset
+     * @param pageSize wanted size
+     * @param offset index of the first element of the page
+     * @return the size to use
+     */
+    private static int align(final int pageSize, final int offset) {
+        int size = pageSize;
+        // a smaller size of the same series always divides the offset
+        while(offset % size != 0 && size % 2 == 0) {
+            size /= 2;
+        }
+        // offset of a resumed search received with another series
+        if(offset % size != 0) {
+            size = BigInteger.valueOf(size).gcd(BigInteger.valueOf(offset)).intValue();
+        }
+        return size;
+    }
+
+    /**
+     * Request a page, again if it fails while it is received, and measure the time taken
+     * @param source requests of the pages
+     * @param pageSize number of elements per page
+     * @param page index of the page
+     * @param <T> type of a page
+     * @return the request
+     */
+    private <T> ConcurrentFetcher.Fetch<Timed<T>> fetch(final Source<T> source, final int pageSize,
+                                                        final int page) {
+        return () -> {
+            int retry = 0;
+            while(true) {
+                final long start = System.nanoTime();
+                try {
+                    final T content = source.fetch(pageSize, page);
+                    return new Timed<>(content, (System.nanoTime() - start) / 1000000);
+                } catch (IOException e) {
+                    retry++;
+                    final long delay = isRetryable(e) && retry <= retryPolicy.getMaxRetries() ?
+                            retryPolicy.delay(retry, -1) : -1;
+                    if(delay < 0) {
+                        throw e;
+                    }
+                    Metrics.getInstance().count(Metrics.RULES_PAGES_RETRIED, 1, null);
+                    RetryPolicy.sleep(delay);
+                }
+            }
+        };
+    }
+
+    /**
+     * Tell if a failed page can be requested again
+     * @param e failure of the page
+     * @return false for cancelled pages and suspended requests
+     */
+    private static boolean isRetryable(final IOException e) {
+        return !Thread.currentThread().isInterrupted() && !(e instanceof CircuitOpenException)
+                && (e instanceof SocketTimeoutException || !(e instanceof InterruptedIOException));
+    }
+
+    /**
+     * Stop all threads
+     */
+    @Override
+    public void close() {
+        fetcher.close();
+    }
+
+    /**
+     * A page with the time taken to receive it
+     * @param <T> type of a page
+     */
+    private static final class Timed<T> {
+        /**
+         * The page
+         */
+        private final T content;
+        /**
+         * Time (ms) taken by the request
+         */
+        private final long time;
+
+        /**
+         * Constructor
+         * @param pContent the page
+         * @param pTime time (ms) taken by the request
+         */
+        private Timed(final T pContent, final long pTime) {
+            this.content = pContent;
+            this.time = pTime;
+        }
+    }
+
+    /**
+     * A page requested but not yet given
+     * @param <T> type of a page
+     */
+    private static final class Planned<T> {
+        /**
+         * Number of elements per page
+         */
+        private final int size;
+        /**
+         * Index of the page for this size
+         */
+        private final int page;
+        /**
+         * Pending result of the request
+         */
+        private final Future<Timed<T>> future;
+
+        /**
+         * Constructor
+         * @param pSize number of elements per page
+         * @param pPage index of the page for this size
+         * @param pFuture pending result of the request
+         */
+        private Planned(final int pSize, final int pPage, final Future<Timed<T>> pFuture) {
+            this.size = pSize;
+            this.page = pPage;
+            this.future = pFuture;
+        }
+    }
+}
@@ -17,16 +17,33 @@
 
 package fr.cnes.sonar.plugins.export.report.providers;
 
-import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.report.cache.ExportCheckpoints;
+import fr.cnes.sonar.plugins.export.report.cache.SpillingRuleList;
 import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
 import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
 import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.utils.StringPool;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
 
 /**
  * Provides quality gates
@@ -42,13 +59,184 @@ public class QualityProfileProvider extends AbstractDataProvider {
      * Property for the request to get a specific rule
      */
     private static final String GET_RULE_REQUEST = "request.rule.get";
+    /**
+     * Property for the request to get active severities of a page of rules
+     */
+    private static final String GET_ACTIVES_REQUEST = "request.qualityprofile.actives";
+    /**
+     * Type of the "actives" field of a rules search: activations indexed by rule's key
+     */
+    private static final Type ACTIVES_MAP_TYPE = new TypeToken<Map<String, ActiveRule[]>>(){}.getType();
+    /**
+     * Name of the property for the number of simultaneous requests on rules
+     */
+    private static final String FETCH_CONCURRENCY = "FETCH_CONCURRENCY";
+    /**
+     * Name of the property for the maximum number of requests on rules per second
+     */
+    private static final String FETCH_RATE_LIMIT = "FETCH_RATE_LIMIT";
+    /**
+     * Property for the request to get the profiles of a language
+     */
+    private static final String GET_LANGUAGE_PROFILES_REQUEST = "request.qualityprofiles.language";
+    /**
+     * Name of the property for the number of unknown rules of a page above which the whole page is requested
+     */
+    private static final String RULE_CACHE_MAX_SHOW = "RULE_CACHE_MAX_SHOW";
+    /**
+     * Field containing the profiles of a search
+     */
+    private static final String PROFILES = "profiles";
+    /**
+     * Field containing the key of a profile
+     */
+    private static final String KEY = "key";
+    /**
+     * Property for the request to get all profiles
+     */
+    private static final String GET_ALL_PROFILES_REQUEST = "request.qualityprofiles.all";
+    /**
+     * Field containing the last modification date of the rules of a profile
+     */
+    private static final String RULES_UPDATED_AT = "rulesUpdatedAt";
+    /**
+     * Field containing the last use date of a profile
+     */
+    private static final String LAST_USED = "lastUsed";
+    /**
+     * Field containing the rule of /api/rules/show
+     */
+    private static final String RULE = "rule";
+    /**
+     * Name of the property for the smallest number of rules per page
+     */
+    private static final String PAGE_SIZE_MIN = "PAGE_SIZE_MIN";
+    /**
+     * Name of the property for the time a page of rules should take
+     */
+    private static final String PAGE_TARGET_TIME = "PAGE_TARGET_TIME";
+    /**
+     * Name of the property for the number of pages of rules requested simultaneously
+     */
+    private static final String PAGES_IN_FLIGHT = "PAGES_IN_FLIGHT";
+    /**
+     * Name of the property for the number of retries of a page of rules failing while it is received
+     */
+    private static final String PAGE_RETRY_MAX = "PAGE_RETRY_MAX";
+    /**
+     * Property for the request to get the changes of a profile since a date
+     */
+    private static final String GET_CHANGELOG_REQUEST = "request.qualityprofile.changelog";
+    /**
+     * Name of the property for the number of changes above which a profile is requested again
+     */
+    private static final String DELTA_MAX_EVENTS = "DELTA_MAX_EVENTS";
+    /**
+     * Field containing the events of a changelog
+     */
+    private static final String EVENTS = "events";
+    /**
+     * Field containing the total number of results of a search
+     */
+    private static final String TOTAL = "total";
+    /**
+     * Action of the changelog removing a rule from a profile
+     */
+    private static final String DEACTIVATED = "DEACTIVATED";
+    /**
+     * Parameter of a changelog event giving the new severity
+     */
+    private static final String SEVERITY_PARAM = "severity";
+
+    /**
+     * False as soon as the server does not support bulk resolution of activations
+     */
+    private boolean bulkActivesSupported = true;
+    /**
+     * Number of simultaneous requests when activations are fetched rule by rule
+     */
+    private int concurrency;
+    /**
+     * Maximum number of requests per second when activations are fetched rule by rule
+     */
+    private double rateLimit;
+    /**
+     * Largest number of rules per page
+     */
+    private final int maxPageSize;
+    /**
+     * Smallest number of rules per page
+     */
+    private final int minPageSize;
+    /**
+     * Time (ms) a page of rules should take, 0 to always use the largest pages
+     */
+    private long pageTargetTime;
+    /**
+     * Number of pages of rules requested simultaneously
+     */
+    private int pagesInFlight;
+    /**
+     * Threads shared with simultaneous exports, null to use threads of its own
+     */
+    private SharedThreads sharedThreads;
 
     /**
      * Complete constructor
      * @param pUrl Represents the url of the current SonarQube instance
      */
     public QualityProfileProvider(String pUrl) {
-        super(pUrl);
+        this(new RemoteBackend(pUrl));
+    }
+
+    /**
+     * Constructor with a given access to the server
+     * @param pBackend access to the web services of the current SonarQube instance
+     */
+    public QualityProfileProvider(DataBackend pBackend) {
+        super(pBackend);
+        // requests stay in the calling thread when the backend requires it
+        this.concurrency = pBackend.isConcurrent() ? Integer.parseInt(getRequest(FETCH_CONCURRENCY).trim()) : 0;
+        this.rateLimit = Double.parseDouble(getRequest(FETCH_RATE_LIMIT).trim());
+        this.maxPageSize = Integer.parseInt(getRequest(MAX_PER_PAGE_SONARQUBE).trim());
+        this.minPageSize = Integer.parseInt(getRequest(PAGE_SIZE_MIN).trim());
+        this.pageTargetTime = Long.parseLong(getRequest(PAGE_TARGET_TIME).trim());
+        this.pagesInFlight = pBackend.isConcurrent() ? Integer.parseInt(getRequest(PAGES_IN_FLIGHT).trim()) : 0;
+    }
+
+    /**
+     * Threads shared by the providers of simultaneous exports
+     * The exports take their requests from the same threads, so that their sum stays the configured one
+     * while each export may use all of them when the others wait.
+     * A failed export aborts the running requests of all exports, which fail with it.
+     */
+    public static final class SharedThreads implements Closeable {
+        /**
+         * Threads requesting activations and metadata of rules
+         */
+        private final ConcurrentFetcher rules;
+        /**
+         * Threads requesting pages of rules
+         */
+        private final ConcurrentFetcher pages;
+
+        /**
+         * Constructor, the numbers of threads come from requests.properties
+         */
+        public SharedThreads() {
+            this.rules = new ConcurrentFetcher(Integer.parseInt(getRequest(FETCH_CONCURRENCY).trim()),
+                    Double.parseDouble(getRequest(FETCH_RATE_LIMIT).trim()));
+            this.pages = new ConcurrentFetcher(Integer.parseInt(getRequest(PAGES_IN_FLIGHT).trim()), 0);
+        }
+
+        /**
+         * Stop all threads
+         */
+        @Override
+        public void close() {
+            rules.close();
+            pages.close();
+        }
     }
 
     /**
@@ -59,33 +247,95 @@ public class QualityProfileProvider extends AbstractDataProvider {
         public String severity;
 
         /**
-         * Find a rule with its profile's key
-         * @param profileKey key of the profile
-         * @return the rule or null if not found
+         * Index activations by the key of their profile
+         * The first activation wins when a profile appears twice.
+         * @param rules activations of a rule
+         * @return activations by profile's key
          */
-         public static ActiveRule find(ActiveRule[] rules, String profileKey) {
-            // initialization of the result
-             ActiveRule rule = null;
-
-            // iterator on profile's rules
-            final Iterator<ActiveRule> iterator = Arrays.asList(rules).iterator();
-
-            // search for the rule with the asking key
-            while(iterator.hasNext() && rule==null) {
-                // get current rule
-                final ActiveRule r = iterator.next();
-                // check the current rule's profile's key equals to wanted key
-                if(r.qProfile.equals(profileKey)) {
-                    rule = r;
+        public static Map<String, ActiveRule> index(ActiveRule[] rules) {
+            final Map<String, ActiveRule> result;
+            if(rules.length == 1) {
+                // usual case of an activation filtered by profile
+                result = Collections.singletonMap(rules[0].qProfile, rules[0]);
+            } else {
+                result = new HashMap<>(rules.length * 4 / 3 + 1);
+                for(ActiveRule rule : rules) {
+                    result.putIfAbsent(rule.qProfile, rule);
                 }
             }
+            return result;
+        }
+    }
+
+    /**
+     * Intern class to gather an event of a profile's changelog
+     */
+    private static class ChangeEvent {
+        public String action;
+        public String ruleKey;
+        public Map<String, String> params;
+    }
+
+    /**
+     * Intern class to gather a page of a rules search
+     */
+    private static class RulesPage {
+        /**
+         * Total number of rules of the search
+         */
+        private int total;
+        /**
+         * Rules of the page
+         */
+        private final List<Rule> rules = new ArrayList<>();
+        /**
+         * Activations indexed by rule's key, null if not in the response
+         */
+        private Map<String, ActiveRule[]> actives;
+    }
+
+    /**
+     * Pages of a rules search
+     */
+    private class RulesSource implements PagePipeline.Source<RulesPage> {
+        /**
+         * Converter of json rules
+         */
+        private final RuleReader ruleReader;
+        /**
+         * Url of a page from its size and its index
+         */
+        private final BiFunction<Integer, Integer, String> requests;
+
+        /**
+         * Constructor
+         * @param pRuleReader converter of json rules
+         * @param pRequests url of a page from its size and its index
+         */
+        RulesSource(final RuleReader pRuleReader, final BiFunction<Integer, Integer, String> pRequests) {
+            this.ruleReader = pRuleReader;
+            this.requests = pRequests;
+        }
+
+        @Override
+        public RulesPage fetch(final int pageSize, final int page)
+                throws IOException, BadSonarQubeRequestException {
+            return readPage(requests.apply(pageSize, page), ruleReader);
+        }
+
+        @Override
+        public int getCount(final RulesPage page) {
+            return page.rules.size();
+        }
 
-            return rule;
+        @Override
+        public int getTotal(final RulesPage page) {
+            return page.total;
         }
     }
 
     /**
-     * Get a specific quality profile
+     * Get a specific quality profile with all fields of its rules
      * @param profileKey The key corresponding to the wanted quality profile
      * @return The chosen quality profile
      * @throws IOException when connecting the server
@@ -93,64 +343,780 @@ public class QualityProfileProvider extends AbstractDataProvider {
      */
     public QualityProfile getQualityProfile(String profileKey)
             throws IOException, BadSonarQubeRequestException {
-        // declaration of the variable to return
-        final QualityProfile res = new QualityProfile(new Rule[0]);
+        return getQualityProfile(profileKey, RuleReader.ALL_FIELDS);
+    }
 
-        // Will contain the requests
-        String request;
-        // Will contain the json response of requests
-        JsonObject jsonObject;
+    /**
+     * Get a specific quality profile
+     * Only the given fields of rules are requested and kept.
+     * @param profileKey The key corresponding to the wanted quality profile
+     * @param fields fields of rules to get, as named by the f parameter of /api/rules/search
+     * @return The chosen quality profile
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public QualityProfile getQualityProfile(String profileKey, Set<String> fields)
+            throws IOException, BadSonarQubeRequestException {
+        return getQualityProfile(profileKey, fields, null);
+    }
 
-        // get the rules of the profile
-        // stop condition
-        boolean goon = true;
-        // page result index
-        int page = 1;
-        // contain the resulted rules
-        final List<Rule> rules = new ArrayList<>();
-        // continue until there are no more results
-        while(goon) {
-            // Get all quality profiles (metadata)
-            request = String.format(getRequest(GET_QUALITY_PROFILE_REQUEST),
-                    getUrl(), profileKey,
-                    Integer.valueOf(getRequest(MAX_PER_PAGE_SONARQUBE)), page);
-            // perform the previous request to sonarqube server
-            jsonObject = request(request);
-            // convert json to Rule objects
-            final Rule [] tmp = (getGson().fromJson(jsonObject.get(RULES), Rule[].class));
-            // add rules to the result list
-            rules.addAll(Arrays.asList(tmp));
-
-            // check if there are other pages
-            final int number = (jsonObject.get(TOTAL).getAsInt());
-            goon = page* Integer.valueOf(getRequest(MAX_PER_PAGE_SONARQUBE)) < number;
-            page++;
+    /**
+     * Get a specific quality profile, resuming a failed export
+     * Only the given fields of rules are requested and kept.
+     * @param profileKey The key corresponding to the wanted quality profile
+     * @param fields fields of rules to get, as named by the f parameter of /api/rules/search
+     * @param version version of the profile, null to keep no checkpoint
+     * @return The chosen quality profile
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public QualityProfile getQualityProfile(String profileKey, Set<String> fields, String version)
+            throws IOException, BadSonarQubeRequestException {
+        // contain the resulted rules, the last ones on disk for large profiles
+        final SpillingRuleList rules = SpillingRuleList.configured();
+        boolean success = false;
+        try {
+            forEachRule(profileKey, fields, version, rules::append);
+            success = true;
+        } finally {
+            if(!success) {
+                rules.close();
+            }
         }
-        // set rules in the result
-        Rule[] tmpRules = new Rule[rules.size()];
-        rules.toArray(tmpRules);
-        res.setRules(tmpRules);
+
+        // the profile keeps the list without copying it
+        final QualityProfile res = new QualityProfile(rules);
         // set the profile's key
         res.setKey(profileKey);
 
-        // get all active severities of rules in current profile
-        for (Rule rule : rules) {
-            // get active severity
-            request = String.format(getRequest(GET_RULE_REQUEST),
-                    getUrl(), rule.getKey());
-            // perform a request
-            jsonObject = request(request);
-            // convert json to Project objects
-            final ActiveRule[] activeRules = (getGson().fromJson(jsonObject.get(ACTIVES), ActiveRule[].class));
+        return res;
+    }
+
+    /**
+     * Get a specific quality profile, sharing metadata of rules with other exports
+     * @param profileKey The key corresponding to the wanted quality profile
+     * @param cache metadata of rules already received, completed with the new ones
+     * @return The chosen quality profile
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public QualityProfile getQualityProfile(String profileKey, RuleCache cache)
+            throws IOException, BadSonarQubeRequestException {
+        // contain the resulted rules, the last ones on disk for large profiles
+        final SpillingRuleList rules = SpillingRuleList.configured();
+        boolean success = false;
+        try {
+            forEachRule(profileKey, cache, rules::append);
+            success = true;
+        } finally {
+            if(!success) {
+                rules.close();
+            }
+        }
+
+        final QualityProfile res = new QualityProfile(rules);
+        res.setKey(profileKey);
+
+        return res;
+    }
+
+    /**
+     * Get a quality profile from a previous export and the changes made since
+     * Deactivated rules are removed, new severities are applied
+     * and other rules are requested one by one with their activations.
+     * @param profileKey The key corresponding to the wanted quality profile
+     * @param previous rules of the previous export, sorted by key and not modified
+     * @param since version of the previous export, the date of the last change of its rules
+     * @param fields fields of rules to get for new rules
+     * @return The quality profile, or null if there are too many changes to apply
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public QualityProfile update(String profileKey, List<Rule> previous, String since, Set<String> fields)
+            throws IOException, BadSonarQubeRequestException {
+        final List<ChangeEvent> events = getChangelog(profileKey, since);
+        if(events == null) {
+            return null;
+        }
+        Metrics.getInstance().count(Metrics.DELTA_EVENTS, events.size(), getTimings());
 
-            // retrieve corresponding rule
-            ActiveRule activeRule = ActiveRule.find(activeRules, profileKey);
-            // set active severity for the rule
-            if(activeRule!=null) {
-                rule.setActiveSeverity(activeRule.severity);
+        // rules by key, in the order given by the server
+        final TreeMap<String, Rule> rules = new TreeMap<>();
+        for (Rule rule : previous) {
+            rules.put(rule.getKey(), rule);
+        }
+        // rules to request again
+        final Set<String> unknown = new LinkedHashSet<>();
+        // the newest events come first
+        for (int i = events.size() - 1; i >= 0; i--) {
+            final ChangeEvent event = events.get(i);
+            final String severity = event.params != null ? event.params.get(SEVERITY_PARAM) : null;
+            final Rule rule = rules.get(event.ruleKey);
+            if(DEACTIVATED.equals(event.action)) {
+                rules.remove(event.ruleKey);
+                unknown.remove(event.ruleKey);
+            } else if(rule != null && severity != null && !unknown.contains(event.ruleKey)) {
+                // copy the rule, the previous export must not change
+                final Rule updated = new Rule(rule);
+                updated.setActiveSeverity(StringPool.getInstance().get(severity));
+                rules.put(event.ruleKey, updated);
+            } else {
+                unknown.add(event.ruleKey);
             }
         }
 
+        final RuleReader ruleReader = new RuleReader(fields);
+        final List<String> keys = new ArrayList<>(unknown);
+        final List<ConcurrentFetcher.Fetch<Rule>> fetches = new ArrayList<>(keys.size());
+        for (String ruleKey : keys) {
+            fetches.add(() -> getActiveRule(ruleKey, ruleReader, profileKey));
+        }
+        final List<Rule> fetched;
+        try (ConcurrentFetcher fetcher = newFetcher()) {
+            fetched = fetcher.fetchAll(fetches);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            if(fetched.get(i) != null) {
+                rules.put(keys.get(i), fetched.get(i));
+            } else {
+                // not active in the profile anymore
+                rules.remove(keys.get(i));
+            }
+        }
+
+        final QualityProfile res = new QualityProfile(rules.values().toArray(new Rule[rules.size()]));
+        res.setKey(profileKey);
+
         return res;
     }
+
+    /**
+     * Get the changes of a profile since a date
+     * @param profileKey key of the profile
+     * @param since date of the first change
+     * @return events from the newest one, or null if there are more than DELTA_MAX_EVENTS
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    private List<ChangeEvent> getChangelog(final String profileKey, final String since)
+            throws IOException, BadSonarQubeRequestException {
+        final int maxEvents = Integer.parseInt(getRequest(DELTA_MAX_EVENTS).trim());
+        final List<ChangeEvent> events = new ArrayList<>();
+        final int[] total = new int[1];
+        int page = 1;
+        int received;
+        do {
+            final String request = String.format(getRequest(GET_CHANGELOG_REQUEST), getUrl(), profileKey,
+                    URLEncoder.encode(since, StandardCharsets.UTF_8.name()), maxPageSize, page);
+            final int before = events.size();
+            streamRequest(request, (name, reader) -> {
+                if(EVENTS.equals(name)) {
+                    Collections.addAll(events, getGson().<ChangeEvent[]>fromJson(reader, ChangeEvent[].class));
+                } else if(TOTAL.equals(name)) {
+                    total[0] = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            });
+            if(total[0] > maxEvents) {
+                return null;
+            }
+            received = events.size() - before;
+            page++;
+        } while(received > 0 && events.size() < total[0]);
+
+        return events;
+    }
+
+    /**
+     * Get a rule with its active severity in a profile
+     * @param ruleKey key of the rule
+     * @param ruleReader converter of the json rule
+     * @param profileKey key of the profile
+     * @return the rule, or null if it is not active in the profile
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    private Rule getActiveRule(final String ruleKey, final RuleReader ruleReader, final String profileKey)
+            throws IOException, BadSonarQubeRequestException {
+        final ActiveRule activeRule = getRuleActives(ruleKey).get(profileKey);
+        Rule rule = null;
+        if(activeRule != null) {
+            rule = getRule(ruleKey, ruleReader);
+            rule.setActiveSeverity(StringPool.getInstance().get(activeRule.severity));
+        }
+        return rule;
+    }
+
+    /**
+     * Give the rules of a quality profile page after page
+     * Each rule is handled as soon as its page and its active severity are received.
+     * @param profileKey The key corresponding to the wanted quality profile
+     * @param fields fields of rules to get, as named by the f parameter of /api/rules/search
+     * @param handler receiver of the rules in the order of their keys
+     * @throws IOException when connecting the server or handling a rule
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public void forEachRule(String profileKey, Set<String> fields, RuleHandler handler)
+            throws IOException, BadSonarQubeRequestException {
+        forEachRule(profileKey, fields, null, handler);
+    }
+
+    /**
+     * Give the rules of a quality profile page after page, resuming a failed export
+     * Received pages are kept in the checkpoint of the export until all of them are handled:
+     * when the same export of the same version is run again, the kept pages are given first
+     * and only the following ones are requested.
+     * @param profileKey The key corresponding to the wanted quality profile
+     * @param fields fields of rules to get, as named by the f parameter of /api/rules/search
+     * @param version version of the profile, null to keep no checkpoint
+     * @param handler receiver of the rules in the order of their keys
+     * @throws IOException when connecting the server or handling a rule
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public void forEachRule(String profileKey, Set<String> fields, String version, RuleHandler handler)
+            throws IOException, BadSonarQubeRequestException {
+        // keep only the wanted fields of rules
+        final RuleReader ruleReader = new RuleReader(fields);
+        // activations are requested with the rules
+        final String fieldsParameter = ruleReader.getFieldsParameter(ACTIVES);
+
+        try (ExportCheckpoints.Checkpoint checkpoint = version == null ? null :
+                ExportCheckpoints.getInstance().open(ExportCheckpoints.exportId(profileKey, version, fields))) {
+            // pages kept by a previous run of the export
+            final int resumed = checkpoint != null ? checkpoint.replay(handler) : 0;
+            if(resumed > 0) {
+                Metrics.getInstance().count(Metrics.RULES_PAGES_RESUMED, resumed, getTimings());
+            }
+            if(checkpoint == null || !checkpoint.isComplete()) {
+                // number of pages received
+                final AtomicInteger received = new AtomicInteger(resumed);
+                // pages of a resumed export keep the sizes accepted by the server
+                final int firstPageSize = resumed > 0 ?
+                        Math.min(maxPageSize, checkpoint.getMaxPageSize()) : maxPageSize;
+
+                // threads used only when activations must be requested rule by rule
+                try (ConcurrentFetcher fetcher = newFetcher();
+                     PagePipeline pipeline = newPipeline(firstPageSize)) {
+                    // pages are requested ahead and given in order
+                    pipeline.run(new RulesSource(ruleReader, (pageSize, page) ->
+                            String.format(getRequest(GET_QUALITY_PROFILE_REQUEST),
+                                    getUrl(), profileKey, fieldsParameter, pageSize, page)),
+                            (rulesPage, pageSize, page) -> {
+                                handler.pageReceived(received.incrementAndGet(), rulesPage.total);
+                                countPage(rulesPage);
+                                // set active severities of the whole page
+                                resolveActiveSeverities(fetcher, profileKey, pageSize, page, rulesPage);
+                                // give the rules of the page
+                                for (Rule rule : rulesPage.rules) {
+                                    handler.handle(rule);
+                                }
+                                // the page is not requested again if the export fails later
+                                if(checkpoint != null) {
+                                    checkpoint.add(rulesPage.total, pipeline.getMaxPageSize(), rulesPage.rules);
+                                }
+                            }, resumed > 0 ? checkpoint.getOffset() : 0);
+                }
+            }
+            // all rules are handled, nothing to resume
+            if(checkpoint != null) {
+                checkpoint.delete();
+            }
+        }
+    }
+
+    /**
+     * Give the rules of a quality profile page after page, sharing their metadata
+     * Pages are requested with keys and activations only, metadata of the rules
+     * which are not in the cache are then requested and added to it.
+     * @param profileKey The key corresponding to the wanted quality profile
+     * @param cache metadata of rules already received, completed with the new ones
+     * @param handler receiver of the rules in the order of their keys
+     * @throws IOException when connecting the server or handling a rule
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public void forEachRule(String profileKey, RuleCache cache, RuleHandler handler)
+            throws IOException, BadSonarQubeRequestException {
+        // pages only give keys and types
+        final RuleReader keyReader = new RuleReader(Collections.<String>emptySet());
+        // number of pages received
+        final AtomicInteger received = new AtomicInteger();
+
+        try (ConcurrentFetcher fetcher = newFetcher();
+             PagePipeline pipeline = newPipeline()) {
+            // keys of the rules and their activations
+            pipeline.run(new RulesSource(keyReader, (pageSize, page) ->
+                    String.format(getRequest(GET_ACTIVES_REQUEST), getUrl(), profileKey, pageSize, page)),
+                    (rulesPage, pageSize, page) -> {
+                        handler.pageReceived(received.incrementAndGet(), rulesPage.total);
+                        countPage(rulesPage);
+                        resolveActiveSeverities(fetcher, profileKey, pageSize, page, rulesPage);
+                        // metadata of the rules not met in previous pages or profiles
+                        completeCache(fetcher, cache, profileKey, pageSize, page, rulesPage.rules);
+                        // give the rules of the page
+                        for (Rule rule : rulesPage.rules) {
+                            handler.handle(withMetadata(rule, cache));
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Count a page and its rules in the metrics
+     * @param rulesPage the received page
+     */
+    private void countPage(final RulesPage rulesPage) {
+        final Metrics metrics = Metrics.getInstance();
+        metrics.count(Metrics.RULES_PAGES, 1, getTimings());
+        metrics.count(Metrics.RULES_COUNT, rulesPage.rules.size(), getTimings());
+    }
+
+    /**
+     * Create the pipeline requesting the pages of rules
+     * @return a new pipeline, to close after use
+     */
+    private PagePipeline newPipeline() {
+        return newPipeline(maxPageSize);
+    }
+
+    /**
+     * Create the pipeline requesting the pages of rules up to a size
+     * @param pageSize largest page size
+     * @return a new pipeline, to close after use
+     */
+    private PagePipeline newPipeline(final int pageSize) {
+        if(sharedThreads != null) {
+            return new PagePipeline(pageSize, minPageSize, pageTargetTime, pagesInFlight,
+                    RetryPolicy.configured(PAGE_RETRY_MAX), sharedThreads.pages.share());
+        }
+        return new PagePipeline(pageSize, minPageSize, pageTargetTime, pagesInFlight,
+                RetryPolicy.configured(PAGE_RETRY_MAX));
+    }
+
+    /**
+     * Create the threads requesting activations and metadata of rules
+     * @return a new fetcher, to close after use
+     */
+    private ConcurrentFetcher newFetcher() {
+        return sharedThreads != null ? sharedThreads.rules.share() : new ConcurrentFetcher(concurrency, rateLimit);
+    }
+
+    /**
+     * Get the keys of all quality profiles of a language
+     * @param language key of the language
+     * @return keys of the profiles
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public List<String> getProfileKeys(String language)
+            throws IOException, BadSonarQubeRequestException {
+        final String request = String.format(getRequest(GET_LANGUAGE_PROFILES_REQUEST), getUrl(), language);
+        final List<String> keys = new ArrayList<>();
+        streamRequest(request, (name, reader) -> {
+            if(PROFILES.equals(name)) {
+                reader.beginArray();
+                while(reader.hasNext()) {
+                    readProfileKey(reader, keys);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        });
+        return keys;
+    }
+
+    /**
+     * Check that a profile exists on the server
+     * @param profileKey key of the profile
+     * @return true if the profile is listed by the server
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public boolean hasProfile(String profileKey)
+            throws IOException, BadSonarQubeRequestException {
+        final String request = String.format(getRequest(GET_ALL_PROFILES_REQUEST), getUrl());
+        final List<String> keys = new ArrayList<>();
+        streamRequest(request, (name, reader) -> {
+            if(PROFILES.equals(name)) {
+                reader.beginArray();
+                while(reader.hasNext()) {
+                    readProfileKey(reader, keys);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        });
+        return keys.contains(profileKey);
+    }
+
+    /**
+     * Get the version of a profile: the last modification date of its rules
+     * The last use date is given when the profile has never been modified.
+     * @param profileKey key of the profile
+     * @return the version or null if the profile is not found
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    public String getProfileVersion(String profileKey)
+            throws IOException, BadSonarQubeRequestException {
+        final String request = String.format(getRequest(GET_ALL_PROFILES_REQUEST), getUrl());
+        final List<String> version = new ArrayList<>(1);
+        streamRequest(request, (name, reader) -> {
+            if(PROFILES.equals(name)) {
+                reader.beginArray();
+                while(reader.hasNext()) {
+                    readProfileVersion(reader, profileKey, version);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        });
+        return version.isEmpty() ? null : version.get(0);
+    }
+
+    /**
+     * Read the version of a json profile if it is the wanted one
+     * @param reader reader positioned on the profile
+     * @param profileKey key of the wanted profile
+     * @param version list to which add the version
+     * @throws IOException when reading the response
+     */
+    private static void readProfileVersion(final JsonReader reader, final String profileKey,
+                                           final List<String> version) throws IOException {
+        String key = null;
+        String rulesUpdatedAt = null;
+        String lastUsed = null;
+        reader.beginObject();
+        while(reader.hasNext()) {
+            final String name = reader.nextName();
+            if(reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if(KEY.equals(name)) {
+                key = reader.nextString();
+            } else if(RULES_UPDATED_AT.equals(name)) {
+                rulesUpdatedAt = reader.nextString();
+            } else if(LAST_USED.equals(name)) {
+                lastUsed = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if(profileKey.equals(key) && (rulesUpdatedAt != null || lastUsed != null)) {
+            version.add(rulesUpdatedAt != null ? rulesUpdatedAt : lastUsed);
+        }
+    }
+
+    /**
+     * Read the key of a json profile
+     * @param reader reader positioned on the profile
+     * @param keys list to which add the key
+     * @throws IOException when reading the response
+     */
+    private static void readProfileKey(final JsonReader reader, final List<String> keys) throws IOException {
+        reader.beginObject();
+        while(reader.hasNext()) {
+            if(KEY.equals(reader.nextName())) {
+                keys.add(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Request the metadata of the rules of a page which are not cached
+     * A few unknown rules are requested one by one, otherwise the whole page is requested.
+     * @param fetcher executor of the requests per rule
+     * @param cache metadata of rules to complete
+     * @param profileKey key of the profile containing the rules
+     * @param pageSize number of rules per page
+     * @param page index of the page of rules
+     * @param rules rules of the page
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    private void completeCache(final ConcurrentFetcher fetcher, final RuleCache cache, final String profileKey,
+                               final int pageSize, final int page, final List<Rule> rules)
+            throws IOException, BadSonarQubeRequestException {
+        final RuleReader ruleReader = new RuleReader(cache.getFields());
+        final List<String> keys = new ArrayList<>(rules.size());
+        for (Rule rule : rules) {
+            keys.add(rule.getKey());
+        }
+        // rules requested by no other export
+        final List<String> claimed = cache.claim(keys);
+
+        Throwable cause = null;
+        try {
+            if(claimed.size() > Integer.parseInt(getRequest(RULE_CACHE_MAX_SHOW).trim())) {
+                final String request = String.format(getRequest(GET_QUALITY_PROFILE_REQUEST),
+                        getUrl(), profileKey, ruleReader.getFieldsParameter(), pageSize, page);
+                for (Rule rule : readPage(request, ruleReader).rules) {
+                    cache.put(rule);
+                }
+            } else if(!claimed.isEmpty()) {
+                final List<ConcurrentFetcher.Fetch<Rule>> fetches = new ArrayList<>(claimed.size());
+                for (String ruleKey : claimed) {
+                    fetches.add(() -> getRule(ruleKey, ruleReader));
+                }
+                for (Rule rule : fetcher.fetchAll(fetches)) {
+                    cache.put(rule);
+                }
+            }
+        } catch (IOException | BadSonarQubeRequestException | RuntimeException e) {
+            cause = e;
+            throw e;
+        } finally {
+            // do not let other exports wait for rules which were not received
+            cache.release(claimed, cause);
+        }
+    }
+
+    /**
+     * Copy the cached metadata of a rule with its active severity
+     * @param rule rule of the profile with its key, type and active severity
+     * @param cache metadata of rules
+     * @return the complete rule, or the given one if the rule was not found
+     * @throws IOException when the export requesting the rule failed
+     */
+    private static Rule withMetadata(final Rule rule, final RuleCache cache) throws IOException {
+        Rule complete = rule;
+        final Rule metadata = cache.get(rule.getKey());
+        if(metadata!=null) {
+            complete = new Rule(metadata);
+            complete.setActiveSeverity(rule.getActiveSeverity());
+        }
+        return complete;
+    }
+
+    /**
+     * Get the metadata of a single rule
+     * @param ruleKey key of the rule
+     * @param ruleReader converter of the json rule
+     * @return the rule
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    private Rule getRule(final String ruleKey, final RuleReader ruleReader)
+            throws IOException, BadSonarQubeRequestException {
+        final String request = String.format(getRequest(GET_RULE_REQUEST), getUrl(), ruleKey);
+        Metrics.getInstance().count(Metrics.RULES_LOOKUPS, 1, getTimings());
+        final List<Rule> rule = new ArrayList<>(1);
+        streamRequest(request, (name, reader) -> {
+            if(RULE.equals(name)) {
+                rule.add(ruleReader.read(reader));
+            } else {
+                reader.skipValue();
+            }
+        });
+        if(rule.isEmpty()) {
+            throw new BadSonarQubeRequestException(String.format("Rule '%s' not found.", ruleKey));
+        }
+        return rule.get(0);
+    }
+
+    /**
+     * Set the active severity of all rules of a page
+     * Use a single request for the whole page when the server supports it
+     * and fall back to one request per rule otherwise.
+     * @param fetcher executor of the requests per rule
+     * @param profileKey key of the profile containing the rules
+     * @param pageSize number of rules per page
+     * @param page index of the page of rules
+     * @param rulesPage rules of the page and their activations if already received
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    private void resolveActiveSeverities(final ConcurrentFetcher fetcher, final String profileKey,
+                                         final int pageSize, final int page, final RulesPage rulesPage)
+            throws IOException, BadSonarQubeRequestException {
+        // activations of the page indexed by rule's key
+        final Map<String, ActiveRule[]> actives = rulesPage.actives != null ?
+                rulesPage.actives : getPageActives(profileKey, pageSize, page);
+
+        // rules not resolved by the bulk request and their requests
+        final List<Rule> missing = new ArrayList<>();
+        final List<ConcurrentFetcher.Fetch<Map<String, ActiveRule>>> fetches = new ArrayList<>();
+
+        for (Rule rule : rulesPage.rules) {
+            // activations of the current rule
+            ActiveRule[] activeRules = null;
+            if(actives!=null) {
+                activeRules = actives.get(rule.getKey());
+            }
+            if(activeRules!=null) {
+                setActiveSeverity(rule, ActiveRule.index(activeRules), profileKey);
+            } else {
+                // ask for the rule alone
+                missing.add(rule);
+                fetches.add(() -> getRuleActives(rule.getKey()));
+            }
+        }
+
+        // results come back in the order of the rules
+        final List<Map<String, ActiveRule>> fetched = fetcher.fetchAll(fetches);
+        for (int i = 0; i < missing.size(); i++) {
+            setActiveSeverity(missing.get(i), fetched.get(i), profileKey);
+        }
+    }
+
+    /**
+     * Set the active severity of a rule from its activations
+     * @param rule rule to complete
+     * @param activeRules activations of the rule by profile's key
+     * @param profileKey key of the profile containing the rule
+     */
+    private static void setActiveSeverity(final Rule rule, final Map<String, ActiveRule> activeRules,
+                                          final String profileKey) {
+        // retrieve corresponding rule
+        final ActiveRule activeRule = activeRules.get(profileKey);
+        // set active severity for the rule
+        if(activeRule!=null) {
+            // severities are shared by all rules
+            rule.setActiveSeverity(StringPool.getInstance().get(activeRule.severity));
+        }
+    }
+
+    /**
+     * Get activations of a whole page of rules in one request
+     * @param profileKey key of the profile containing the rules
+     * @param pageSize number of rules per page
+     * @param page index of the page of rules
+     * @return activations indexed by rule's key or null if the server does not support it
+     * @throws IOException when connecting the server
+     */
+    private Map<String, ActiveRule[]> getPageActives(final String profileKey, final int pageSize,
+                                                     final int page) throws IOException {
+        // result to return
+        Map<String, ActiveRule[]> actives = null;
+
+        if(bulkActivesSupported) {
+            final String request = String.format(getRequest(GET_ACTIVES_REQUEST),
+                    getUrl(), profileKey, pageSize, page);
+            try {
+                actives = readPage(request, null).actives;
+            } catch (BadSonarQubeRequestException e) {
+                // the server rejected the request, the fallback will be used
+                LOGGER.log(Level.INFO, e.getMessage(), e);
+            }
+            // do not try again on the next pages
+            bulkActivesSupported = actives!=null;
+        }
+
+        return actives;
+    }
+
+    /**
+     * Get activations of a single rule
+     * @param ruleKey key of the rule
+     * @return activations of the rule in all profiles, by profile's key
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    private Map<String, ActiveRule> getRuleActives(final String ruleKey)
+            throws IOException, BadSonarQubeRequestException {
+        // get active severity
+        final String request = String.format(getRequest(GET_RULE_REQUEST), getUrl(), ruleKey);
+        Metrics.getInstance().count(Metrics.RULES_LOOKUPS, 1, getTimings());
+        // will contain the activations
+        final Map<String, ActiveRule> activeRules = new HashMap<>();
+        // perform a request and convert json to ActiveRule objects
+        streamRequest(request, (name, reader) -> {
+            if(ACTIVES.equals(name)) {
+                for(ActiveRule activeRule : getGson().<ActiveRule[]>fromJson(reader, ActiveRule[].class)) {
+                    activeRules.putIfAbsent(activeRule.qProfile, activeRule);
+                }
+            } else {
+                reader.skipValue();
+            }
+        });
+
+        return activeRules;
+    }
+
+    /**
+     * Read a page of a rules search while it is received
+     * @param request url of the page
+     * @param ruleReader converter of json rules, null to skip them
+     * @return the total number of rules, the rules of the page and their activations if any
+     * @throws IOException when connecting the server
+     * @throws BadSonarQubeRequestException A request is not recognized by the server
+     */
+    private RulesPage readPage(final String request, final RuleReader ruleReader)
+            throws IOException, BadSonarQubeRequestException {
+        final RulesPage rulesPage = new RulesPage();
+        streamRequest(request, (name, reader) -> {
+            if(TOTAL.equals(name)) {
+                rulesPage.total = reader.nextInt();
+            } else if(RULES.equals(name) && ruleReader != null) {
+                readRules(reader, ruleReader, rulesPage.rules);
+            } else if(ACTIVES.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                rulesPage.actives = getGson().fromJson(reader, ACTIVES_MAP_TYPE);
+            } else {
+                reader.skipValue();
+            }
+        });
+        return rulesPage;
+    }
+
+    /**
+     * Convert a json array of rules to Rule objects one at a time
+     * @param reader reader positioned on the array
+     * @param ruleReader converter of json rules
+     * @param rules list to which add the rules
+     * @throws IOException when reading the response
+     */
+    private static void readRules(final JsonReader reader, final RuleReader ruleReader,
+                                  final List<Rule> rules) throws IOException {
+        reader.beginArray();
+        while(reader.hasNext()) {
+            rules.add(ruleReader.read(reader));
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Share the threads of the provider with other exports run at the same time
+     * @param pSharedThreads threads of all exports, closed by their creator after the exports
+     */
+    public void shareThreads(final SharedThreads pSharedThreads) {
+        this.sharedThreads = pSharedThreads;
+    }
+
+    /**
+     * Setter of the number of simultaneous requests on rules
+     * @param pConcurrency value
+     */
+    public void setConcurrency(final int pConcurrency) {
+        this.concurrency = pConcurrency;
+    }
+
+    /**
+     * Setter of the number of pages of rules requested simultaneously
+     * @param pPagesInFlight value, 0 to request them one after the other
+     */
+    public void setPagesInFlight(final int pPagesInFlight) {
+        this.pagesInFlight = pPagesInFlight;
+    }
+
+    /**
+     * Setter of the time a page of rules should take
+     * @param pPageTargetTime value in ms, 0 to always use the largest pages
+     */
+    public void setPageTargetTime(final long pPageTargetTime) {
+        this.pageTargetTime = pPageTargetTime;
+    }
+
+    /**
+     * Setter of the maximum number of requests on rules per second
+     * @param pRateLimit value, 0 for no limit
+     */
+    public void setRateLimit(final double pRateLimit) {
+        this.rateLimit = pRateLimit;
+    }
 }
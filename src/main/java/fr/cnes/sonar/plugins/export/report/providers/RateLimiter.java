@@ -0,0 +1,66 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.cnes.sonar.plugins.export.report.providers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Space out calls so that no more than a given number start each second
+ * @author lequal
+ */
+public class RateLimiter {
+
+    /**
+     * Minimal time between two calls in nanoseconds, 0 for no limit
+     */
+    private final long interval;
+    /**
+     * Time at which the next call is allowed
+     */
+    private long next;
+
+    /**
+     * Constructor
+     * @param permitsPerSecond maximum number of calls per second, 0 or less for no limit
+     */
+    public RateLimiter(final double permitsPerSecond) {
+        this.interval = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0L;
+        this.next = System.nanoTime();
+    }
+
+    /**
+     * Wait until a new call is allowed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        if (interval > 0) {
+            TimeUnit.NANOSECONDS.sleep(reserve());
+        }
+    }
+
+    /**
+     * Reserve the next free slot
+     * @return time to wait before using the slot in nanoseconds
+     */
+    private synchronized long reserve() {
+        final long now = System.nanoTime();
+        final long slot = Math.max(now, next);
+        next = slot + interval;
+        return slot - now;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.providers;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import org.sonar.api.config.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Access to SonarQube through http, with the pooled client of RequestManager
+ * @author lequal
+ */
+public class RemoteBackend implements DataBackend {
+
+    /**
+     * Property overriding the url of the server requested by the plugin
+     */
+    public static final String URL_PROPERTY = "sonar.cnesexport.url";
+    /**
+     * Property of the network interface of the web server
+     */
+    private static final String WEB_HOST = "sonar.web.host";
+    /**
+     * Property of the port of the web server
+     */
+    private static final String WEB_PORT = "sonar.web.port";
+    /**
+     * Property of the context path of the web server
+     */
+    private static final String WEB_CONTEXT = "sonar.web.context";
+    /**
+     * Address listening on all interfaces
+     */
+    private static final String ANY_HOST = "0.0.0.0";
+    /**
+     * Default host of the web server
+     */
+    private static final String LOCALHOST = "localhost";
+    /**
+     * Default port of the web server
+     */
+    private static final int DEFAULT_PORT = 9000;
+
+    /**
+     * Base url of the server
+     */
+    private final String url;
+
+    /**
+     * Constructor
+     * @param pUrl base url of the server
+     */
+    public RemoteBackend(final String pUrl) {
+        this.url = pUrl;
+    }
+
+    /**
+     * Url of the web server as configured in SonarQube's settings
+     * The url given to the plugin is used first, then the host, port and context of the web server.
+     * @param configuration settings of the server
+     * @return the base url, without trailing slash
+     */
+    public static String baseUrl(final Configuration configuration) {
+        String base = configuration.get(URL_PROPERTY).orElse("").trim();
+        if (base.isEmpty()) {
+            String host = configuration.get(WEB_HOST).orElse(LOCALHOST).trim();
+            if (host.isEmpty() || ANY_HOST.equals(host)) {
+                host = LOCALHOST;
+            }
+            final int port = configuration.getInt(WEB_PORT).orElse(DEFAULT_PORT);
+            final String context = configuration.get(WEB_CONTEXT).orElse("").trim();
+            base = String.format("http://%s:%d%s", host, port, context);
+        }
+        // requests start with a slash
+        while (base.endsWith("/")) {
+            base = base.substring(0, base.length() - 1);
+        }
+        return base;
+    }
+
+    /**
+     * Getter for url
+     * @return url
+     */
+    @Override
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Http requests are sent by any thread
+     * @return true
+     */
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    /**
+     * Execute a request and give the raw response
+     * @param request url of the web service with its parameters
+     * @return the response as a string
+     * @throws IOException when the server can not be reached
+     */
+    @Override
+    public String get(final String request) throws IOException {
+        return RequestManager.getInstance().get(request);
+    }
+
+    /**
+     * Execute a request and read the response while it is received
+     * @param request url of the web service with its parameters
+     * @param handler reader of the response's content
+     * @param <T> type of the result
+     * @return the result of the handler
+     * @throws IOException when the server can not be reached
+     * @throws BadSonarQubeRequestException when the handler does not understand the response
+     */
+    @Override
+    public <T> T get(final String request, final RequestManager.ContentHandler<T> handler)
+            throws IOException, BadSonarQubeRequestException {
+        return RequestManager.getInstance().get(request, handler);
+    }
+
+    /**
+     * Execute a request, retried on failures until the deadline, and give the raw response
+     * @param request url of the web service with its parameters
+     * @param deadline time (ms since epoch) after which the request is not retried, 0 for none
+     * @return the response as a string
+     * @throws IOException when the server can not be reached
+     */
+    @Override
+    public String get(final String request, final long deadline) throws IOException {
+        return RequestManager.getInstance().get(request, deadline);
+    }
+
+    /**
+     * Execute a request, retried on failures until the deadline, and read the response while it is received
+     * @param request url of the web service with its parameters
+     * @param deadline time (ms since epoch) after which the request is not retried, 0 for none
+     * @param handler reader of the response's content
+     * @param <T> type of the result
+     * @return the result of the handler
+     * @throws IOException when the server can not be reached
+     * @throws BadSonarQubeRequestException when the handler does not understand the response
+     */
+    @Override
+    public <T> T get(final String request, final long deadline, final RequestManager.ContentHandler<T> handler)
+            throws IOException, BadSonarQubeRequestException {
+        return RequestManager.getInstance().get(request, deadline, handler);
+    }
+}
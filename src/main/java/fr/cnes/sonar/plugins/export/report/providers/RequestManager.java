@@ -17,17 +17,41 @@
 
 package fr.cnes.sonar.plugins.export.report.providers;
 
-import org.apache.http.HttpResponse;
+import fr.cnes.sonar.plugins.export.metrics.CountingInputStream;
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exceptions.CircuitOpenException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Provides issue items
@@ -47,16 +71,179 @@ public final class RequestManager {
      * Json type for a content
      */
     private static final String APPLICATION_JSON = "application/json";
+    /**
+     * Header http for the encodings accepted for a response
+     */
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    /**
+     * Encodings of the responses which can be decompressed
+     */
+    private static final String GZIP_DEFLATE = "gzip, deflate";
+    /**
+     * Name of the property enabling compressed responses
+     */
+    private static final String HTTP_COMPRESSION = "HTTP_COMPRESSION";
+    /**
+     * Header http giving the delay before a retry
+     */
+    private static final String RETRY_AFTER = "Retry-After";
+    /**
+     * Name of the property for the maximum time to establish a connection
+     */
+    private static final String HTTP_CONNECT_TIMEOUT = "HTTP_CONNECT_TIMEOUT";
+    /**
+     * Name of the property for the maximum time without receiving data
+     */
+    private static final String HTTP_SOCKET_TIMEOUT = "HTTP_SOCKET_TIMEOUT";
+    /**
+     * Name of the property for the number of retries of a failed get request
+     */
+    private static final String HTTP_RETRY_MAX = "HTTP_RETRY_MAX";
+    /**
+     * Name of the property for the number of consecutive failures suspending the requests to a server
+     */
+    private static final String HTTP_BREAKER_FAILURES = "HTTP_BREAKER_FAILURES";
+    /**
+     * Name of the property for the time during which requests to a failing server are suspended
+     */
+    private static final String HTTP_BREAKER_OPEN_TIME = "HTTP_BREAKER_OPEN_TIME";
+    /**
+     * Name of the property for the maximum number of pooled connections
+     */
+    private static final String HTTP_POOL_MAX_TOTAL = "HTTP_POOL_MAX_TOTAL";
+    /**
+     * Name of the property for the maximum number of pooled connections to a same server
+     */
+    private static final String HTTP_POOL_MAX_PER_ROUTE = "HTTP_POOL_MAX_PER_ROUTE";
+    /**
+     * Name of the property for the keep-alive duration when the server does not give one
+     */
+    private static final String HTTP_KEEP_ALIVE = "HTTP_KEEP_ALIVE";
+    /**
+     * Name of the property for the duration after which idle connections are closed
+     */
+    private static final String HTTP_IDLE_TIMEOUT = "HTTP_IDLE_TIMEOUT";
+    /**
+     * Name of the property for the maximum time to wait for a pooled connection
+     */
+    private static final String HTTP_POOL_TIMEOUT = "HTTP_POOL_TIMEOUT";
+
+    /**
+     * Logger for the class
+     */
+    private static final Logger LOGGER = Logger.getLogger(RequestManager.class.getCanonicalName());
 
     /**
      * Instance of the singleton
      */
     private static RequestManager ourInstance = null;
 
+    /**
+     * Read the content of a response while it is received
+     * @param <T> type of the result
+     */
+    @FunctionalInterface
+    public interface ContentHandler<T> {
+        /**
+         * Read the content of a response
+         * @param content body of the response
+         * @return the result of the reading
+         * @throws IOException when reading the content
+         * @throws BadSonarQubeRequestException when the content is an error or is not understood
+         */
+        T handle(InputStream content) throws IOException, BadSonarQubeRequestException;
+    }
+
+    /**
+     * Read a response entity
+     * @param <T> type of the result
+     */
+    @FunctionalInterface
+    private interface EntityReader<T> {
+        /**
+         * Read a response entity
+         * @param entity entity of the response
+         * @return the result of the reading
+         * @throws IOException when reading the entity
+         * @throws BadSonarQubeRequestException when the content is an error or is not understood
+         */
+        T read(HttpEntity entity) throws IOException, BadSonarQubeRequestException;
+    }
+
+    /**
+     * Pool of connections shared by all requests
+     */
+    private final PoolingHttpClientConnectionManager connectionManager;
+    /**
+     * Client reused by all requests
+     */
+    private final CloseableHttpClient httpClient;
+    /**
+     * Requests being executed indexed by the thread executing them
+     */
+    private final Map<Thread, HttpRequestBase> running = new ConcurrentHashMap<>();
+    /**
+     * True to ask for compressed responses
+     */
+    private final boolean compression;
+    /**
+     * Retries of failed get requests
+     */
+    private final RetryPolicy retryPolicy;
+    /**
+     * Circuit breakers indexed by host and port
+     */
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    /**
+     * Number of consecutive failures opening a circuit breaker
+     */
+    private final int breakerFailures;
+    /**
+     * Time (ms) during which a circuit breaker stays open
+     */
+    private final long breakerOpenTime;
+
     /**
      * Use of private constructor to singletonize this class
      */
     private RequestManager() {
+        // bounded pool of connections
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(intProperty(HTTP_POOL_MAX_TOTAL));
+        connectionManager.setDefaultMaxPerRoute(intProperty(HTTP_POOL_MAX_PER_ROUTE));
+
+        // keep connections alive as long as the server allows it or for the default duration
+        final long keepAlive = intProperty(HTTP_KEEP_ALIVE);
+        final ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE
+                    .getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : keepAlive;
+        };
+
+        // do not wait forever for a connection of the pool nor for a silent server
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(intProperty(HTTP_POOL_TIMEOUT))
+                .setConnectTimeout(intProperty(HTTP_CONNECT_TIMEOUT))
+                .setSocketTimeout(intProperty(HTTP_SOCKET_TIMEOUT))
+                .build();
+
+        // failures are retried here, knowing if the content was already read
+        retryPolicy = RetryPolicy.configured(HTTP_RETRY_MAX);
+        breakerFailures = intProperty(HTTP_BREAKER_FAILURES);
+        breakerOpenTime = intProperty(HTTP_BREAKER_OPEN_TIME);
+
+        // responses are decompressed here to count the bytes actually received
+        compression = Boolean.parseBoolean(AbstractDataProvider.getRequest(HTTP_COMPRESSION).trim());
+
+        httpClient = HttpClientBuilder.create()
+                .disableContentCompression()
+                .disableAutomaticRetries()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections((long) intProperty(HTTP_IDLE_TIMEOUT), TimeUnit.MILLISECONDS)
+                .build();
     }
 
     /**
@@ -70,6 +257,317 @@ public final class RequestManager {
         return ourInstance;
     }
 
+    /**
+     * Close all connections of the singleton and release it
+     * A new instance is created on the next call to getInstance().
+     */
+    public static synchronized void shutdown() {
+        if (ourInstance != null) {
+            try {
+                // also stops the idle connections evictor
+                ourInstance.httpClient.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, e.getMessage(), e);
+            }
+            ourInstance = null;
+        }
+    }
+
+    /**
+     * Statistics of the connections pool
+     * @return numbers of leased, pending and available connections
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * Abort the request being executed by a thread if any
+     * @param thread thread executing the request
+     */
+    public void abort(final Thread thread) {
+        final HttpRequestBase request = running.get(thread);
+        if (request != null) {
+            request.abort();
+        }
+    }
+
+    /**
+     * Execute a request and get the response as a string
+     * @param request request to execute
+     * @param deadline time (ms since epoch) after which the request is not retried, 0 for none
+     * @return response as string
+     * @throws IOException error on response
+     */
+    private String execute(final HttpRequestBase request, final long deadline) throws IOException {
+        try {
+            return execute(request, entity -> EntityUtils.toString(entity, UTF_8), deadline);
+        } catch (BadSonarQubeRequestException e) {
+            // never thrown when reading a string
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Execute a request and read its response
+     * The request can be aborted from another thread during its execution.
+     * Get requests failing before their content is read are retried after a growing delay,
+     * all requests to a server failing repeatedly are suspended by its circuit breaker.
+     * A request is not retried when the delay would end after the deadline.
+     * @param request request to execute
+     * @param reader reader of the response's entity
+     * @param deadline time (ms since epoch) after which the request is not retried, 0 for none
+     * @param <T> type of the result
+     * @return result of the reader
+     * @throws IOException error on response
+     * @throws BadSonarQubeRequestException when the reader does not understand the response
+     */
+    private <T> T execute(final HttpRequestBase request, final EntityReader<T> reader, final long deadline)
+            throws IOException, BadSonarQubeRequestException {
+        final CircuitBreaker breaker = getBreaker(request);
+        // only idempotent requests can be sent again
+        final int maxRetries = request instanceof HttpGet ? retryPolicy.getMaxRetries() : 0;
+        int retry = 0;
+        Attempt<T> attempt = attempt(request, reader, breaker);
+        while (attempt.failure != null) {
+            retry++;
+            final long delay = retry > maxRetries ? -1 : retryPolicy.delay(retry, attempt.retryAfter);
+            if (delay < 0 || request.isAborted()) {
+                throw attempt.failure;
+            }
+            if (deadline > 0 && System.currentTimeMillis() + delay >= deadline) {
+                final InterruptedIOException exceeded = new InterruptedIOException(String.format(
+                        "Export deadline exceeded before retry %d of %s", retry, request.getURI()));
+                exceeded.initCause(attempt.failure);
+                throw exceeded;
+            }
+            LOGGER.log(Level.INFO, String.format("Retry %d of %s in %d ms: %s",
+                    retry, request.getURI(), delay, attempt.failure.getMessage()));
+            Metrics.getInstance().count(Metrics.HTTP_RETRIES, 1, null);
+            RetryPolicy.sleep(delay);
+            attempt = attempt(request, reader, breaker);
+        }
+        return attempt.value;
+    }
+
+    /**
+     * Execute a request once
+     * @param request request to execute
+     * @param reader reader of the response's entity
+     * @param breaker circuit breaker of the server
+     * @param <T> type of the result
+     * @return the result of the reader, or the failure to retry
+     * @throws IOException error on response which can not be retried
+     * @throws BadSonarQubeRequestException when the reader does not understand the response
+     */
+    private <T> Attempt<T> attempt(final HttpRequestBase request, final EntityReader<T> reader,
+                                   final CircuitBreaker breaker)
+            throws IOException, BadSonarQubeRequestException {
+        final Thread thread = Thread.currentThread();
+        running.put(thread, request);
+        // the thread may have been cancelled before its request was registered
+        if (thread.isInterrupted()) {
+            running.remove(thread);
+            throw new InterruptedIOException("Request cancelled: " + request.getURI());
+        }
+        try {
+            breaker.acquire();
+        } catch (CircuitOpenException e) {
+            running.remove(thread);
+            Metrics.getInstance().count(Metrics.HTTP_REJECTED, 1, null);
+            throw e;
+        }
+        if (compression) {
+            request.setHeader(ACCEPT_ENCODING, GZIP_DEFLATE);
+        }
+        final Metrics metrics = Metrics.getInstance();
+        final long start = metrics.start();
+        CountingEntity counting = null;
+        CountingEntity decoded = null;
+        // true once the content is given to the reader, which can not read it twice
+        boolean reading = false;
+        // outcome given to the circuit breaker
+        Boolean success = null;
+        // execute the request, the connection goes back to the pool on close
+        try (CloseableHttpResponse result = httpClient.execute(request)) {
+            metrics.stop(Metrics.HTTP_LATENCY, start, null);
+            final int status = result.getStatusLine().getStatusCode();
+            metrics.count(Metrics.HTTP_STATUS + status / 100 + "xx", 1, null);
+            HttpEntity entity = result.getEntity();
+            if (RetryPolicy.isRetryable(status)) {
+                // the server is overloaded or unreachable behind a proxy
+                success = false;
+                EntityUtils.consume(entity);
+                final Header retryAfter = result.getFirstHeader(RETRY_AFTER);
+                return new Attempt<>(null, new IOException(String.format("Server answered %d to %s",
+                        status, request.getURI())),
+                        RetryPolicy.parseRetryAfter(retryAfter == null ? null : retryAfter.getValue(),
+                                System.currentTimeMillis()));
+            }
+            success = true;
+            if (metrics.isEnabled() && entity != null) {
+                counting = new CountingEntity(entity);
+                entity = counting;
+            }
+            // the content is decompressed while it is read
+            final HttpEntity decompressed = decompress(entity);
+            if (counting != null && decompressed != entity) {
+                decoded = new CountingEntity(decompressed);
+                entity = decoded;
+            } else {
+                entity = decompressed;
+            }
+            reading = true;
+            final T value = reader.read(entity);
+            // read the remaining bytes to be able to reuse the connection
+            EntityUtils.consume(entity);
+            return new Attempt<>(value, null, -1);
+        } catch (IOException e) {
+            metrics.count(Metrics.HTTP_ERRORS, 1, null);
+            if (request.isAborted() || thread.isInterrupted()) {
+                throw e;
+            }
+            success = false;
+            if (reading) {
+                throw e;
+            }
+            return new Attempt<>(null, e, -1);
+        } finally {
+            running.remove(thread);
+            if (success == null) {
+                breaker.onCancel();
+            } else if (success) {
+                breaker.onSuccess();
+            } else {
+                breaker.onFailure();
+            }
+            metrics.stop(Metrics.HTTP_CALL, start, null);
+            if (counting != null) {
+                metrics.count(Metrics.HTTP_BYTES, counting.getCount(), null);
+            }
+            if (decoded != null) {
+                metrics.count(Metrics.HTTP_BYTES_SAVED, decoded.getCount() - counting.getCount(), null);
+            }
+        }
+    }
+
+    /**
+     * Circuit breaker of the server of a request
+     * @param request request to a server
+     * @return the breaker shared by all requests to the same host and port
+     */
+    private CircuitBreaker getBreaker(final HttpRequestBase request) {
+        final URI uri = request.getURI();
+        final String server = uri.getHost() + ':' + uri.getPort();
+        return breakers.computeIfAbsent(server,
+                key -> new CircuitBreaker(key, breakerFailures, breakerOpenTime));
+    }
+
+    /**
+     * Result of an attempt to execute a request
+     * @param <T> type of the result
+     */
+    private static final class Attempt<T> {
+        /**
+         * Result of the reader, null on failure
+         */
+        private final T value;
+        /**
+         * Failure to retry, null on success
+         */
+        private final IOException failure;
+        /**
+         * Delay (ms) asked by the server before a retry, negative if none
+         */
+        private final long retryAfter;
+
+        /**
+         * Constructor
+         * @param pValue result of the reader, null on failure
+         * @param pFailure failure to retry, null on success
+         * @param pRetryAfter delay (ms) asked by the server before a retry, negative if none
+         */
+        private Attempt(final T pValue, final IOException pFailure, final long pRetryAfter) {
+            this.value = pValue;
+            this.failure = pFailure;
+            this.retryAfter = pRetryAfter;
+        }
+    }
+
+    /**
+     * Decompress an entity according to its encoding
+     * @param entity entity of a response, may be null
+     * @return an entity decompressing the content while it is read, or the same entity if not compressed
+     * @throws IOException when the encoding is not supported
+     */
+    private static HttpEntity decompress(final HttpEntity entity) throws IOException {
+        final Header encoding = entity == null ? null : entity.getContentEncoding();
+        final HttpEntity result;
+        if (encoding == null) {
+            result = entity;
+        } else {
+            switch (encoding.getValue().trim().toLowerCase(Locale.ENGLISH)) {
+                case "gzip":
+                case "x-gzip":
+                    result = new GzipDecompressingEntity(entity);
+                    break;
+                case "deflate":
+                    result = new DeflateDecompressingEntity(entity);
+                    break;
+                case "identity":
+                case "":
+                    result = entity;
+                    break;
+                default:
+                    throw new IOException("Unsupported content encoding: " + encoding.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Entity counting the bytes of its content
+     */
+    private static final class CountingEntity extends HttpEntityWrapper {
+        /**
+         * Content of the entity, created on first use
+         */
+        private CountingInputStream content;
+
+        /**
+         * Constructor
+         * @param entity entity of the response
+         */
+        private CountingEntity(final HttpEntity entity) {
+            super(entity);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            if (content == null) {
+                content = new CountingInputStream(super.getContent());
+            }
+            return content;
+        }
+
+        /**
+         * Number of bytes read
+         * @return the count
+         */
+        private long getCount() {
+            return content == null ? 0 : content.getCount();
+        }
+    }
+
+    /**
+     * Read an integer property of the requests' configuration
+     * @param property name of the property
+     * @return value of the property
+     */
+    private static int intProperty(final String property) {
+        return Integer.parseInt(AbstractDataProvider.getRequest(property).trim());
+    }
+
     /**
      * Execute a get http request
      * @param url url to request
@@ -77,27 +575,57 @@ public final class RequestManager {
      * @throws IOException error on response
      */
     public String get(String url) throws IOException {
-        // returned string containing the response as raw string
-        final String toReturn;
-        // create a client
-        final CloseableHttpClient httpClient = HttpClientBuilder.create().build();
+        return get(url, 0);
+    }
+
+    /**
+     * Execute a get http request which is not retried after a deadline
+     * @param url url to request
+     * @param deadline time (ms since epoch) after which the request is not retried, 0 for none
+     * @return response as string
+     * @throws IOException error on response
+     */
+    public String get(String url, long deadline) throws IOException {
         // set the request
         final HttpGet request = new HttpGet(url);
         // set content type to json
         request.addHeader(CONTENT_TYPE, APPLICATION_JSON);
-        // future result of the request
-        final HttpResponse result;
-        try {
-            // execute the request
-            result = httpClient.execute(request);
-            // convert to string
-            toReturn = EntityUtils.toString(result.getEntity(), UTF_8);
-        } finally {
-            // always close the connexion
-            request.reset();
-        }
         // return string result
-        return toReturn;
+        return execute(request, deadline);
+    }
+
+    /**
+     * Execute a get http request and read the response while it is received
+     * @param url url to request
+     * @param handler reader of the response's content
+     * @param <T> type of the result
+     * @return result of the handler
+     * @throws IOException error on response
+     * @throws BadSonarQubeRequestException when the handler does not understand the response
+     */
+    public <T> T get(String url, ContentHandler<T> handler)
+            throws IOException, BadSonarQubeRequestException {
+        return get(url, 0, handler);
+    }
+
+    /**
+     * Execute a get http request which is not retried after a deadline and read the response while it is received
+     * @param url url to request
+     * @param deadline time (ms since epoch) after which the request is not retried, 0 for none
+     * @param handler reader of the response's content
+     * @param <T> type of the result
+     * @return result of the handler
+     * @throws IOException error on response
+     * @throws BadSonarQubeRequestException when the handler does not understand the response
+     */
+    public <T> T get(String url, long deadline, ContentHandler<T> handler)
+            throws IOException, BadSonarQubeRequestException {
+        // set the request
+        final HttpGet request = new HttpGet(url);
+        // set content type to json
+        request.addHeader(CONTENT_TYPE, APPLICATION_JSON);
+        // read the content as a stream
+        return execute(request, entity -> handler.handle(entity.getContent()), deadline);
     }
 
     /**
@@ -108,23 +636,11 @@ public final class RequestManager {
      * @throws IOException error on response
      */
     public String post(String url, List<NameValuePair> data) throws IOException {
-        // create a client
-        final CloseableHttpClient httpClient = HttpClientBuilder.create().build();
         // set the request
         final HttpPost request = new HttpPost(url);
         request.addHeader(CONTENT_TYPE, APPLICATION_JSON);
         request.setEntity(new UrlEncodedFormEntity(data));
-        // future result of the request
-        final HttpResponse result;
-        try {
-            // execute the request
-            result = httpClient.execute(request);
-        } finally {
-            // always close the connexion
-            request.reset();
-        }
-
         // return string result
-        return EntityUtils.toString(result.getEntity(), UTF_8);
+        return execute(request, 0);
     }
 }
@@ -0,0 +1,170 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.providers;
+
+import org.apache.http.client.utils.DateUtils;
+
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Number of retries of a failed request and delays between them
+ * Delays grow exponentially with a full jitter, so clients failing together do not retry together.
+ * A delay asked by the server through Retry-After is respected.
+ * @author lequal
+ */
+public class RetryPolicy {
+
+    /**
+     * Http status of too many requests
+     */
+    private static final int TOO_MANY_REQUESTS = 429;
+    /**
+     * Http status of a bad gateway
+     */
+    private static final int BAD_GATEWAY = 502;
+    /**
+     * Http status of a server unavailable
+     */
+    private static final int SERVICE_UNAVAILABLE = 503;
+    /**
+     * Http status of a gateway timeout
+     */
+    private static final int GATEWAY_TIMEOUT = 504;
+    /**
+     * Milliseconds per second
+     */
+    private static final long MS_PER_SECOND = 1000;
+    /**
+     * Name of the property for the largest delay before the first retry
+     */
+    private static final String HTTP_RETRY_BASE_DELAY = "HTTP_RETRY_BASE_DELAY";
+    /**
+     * Name of the property for the largest delay before any retry
+     */
+    private static final String HTTP_RETRY_MAX_DELAY = "HTTP_RETRY_MAX_DELAY";
+
+    /**
+     * Number of retries after the first attempt
+     */
+    private final int maxRetries;
+    /**
+     * Largest delay (ms) before the first retry
+     */
+    private final long baseDelay;
+    /**
+     * Largest delay (ms) before any retry
+     */
+    private final long maxDelay;
+
+    /**
+     * Complete constructor
+     * @param pMaxRetries number of retries after the first attempt, 0 for none
+     * @param pBaseDelay largest delay (ms) before the first retry, doubled for each next one
+     * @param pMaxDelay largest delay (ms) before any retry, including the ones asked by the server
+     */
+    public RetryPolicy(final int pMaxRetries, final long pBaseDelay, final long pMaxDelay) {
+        this.maxRetries = Math.max(0, pMaxRetries);
+        this.baseDelay = Math.max(0, pBaseDelay);
+        this.maxDelay = Math.max(0, pMaxDelay);
+    }
+
+    /**
+     * Policy with the delays of the requests' configuration
+     * @param maxRetriesProperty name of the property giving the number of retries
+     * @return the policy
+     */
+    public static RetryPolicy configured(final String maxRetriesProperty) {
+        return new RetryPolicy(Integer.parseInt(AbstractDataProvider.getRequest(maxRetriesProperty).trim()),
+                Long.parseLong(AbstractDataProvider.getRequest(HTTP_RETRY_BASE_DELAY).trim()),
+                Long.parseLong(AbstractDataProvider.getRequest(HTTP_RETRY_MAX_DELAY).trim()));
+    }
+
+    /**
+     * Getter for maxRetries
+     * @return number of retries after the first attempt
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Tell if a status means that the server may answer later
+     * @param status http status of a response
+     * @return true for 429, 502, 503 and 504
+     */
+    public static boolean isRetryable(final int status) {
+        return status == TOO_MANY_REQUESTS || status == BAD_GATEWAY
+                || status == SERVICE_UNAVAILABLE || status == GATEWAY_TIMEOUT;
+    }
+
+    /**
+     * Delay before a retry
+     * @param retry index of the retry, starting at 1
+     * @param retryAfter delay (ms) asked by the server, negative if none
+     * @return the delay (ms), negative if the server asks to wait longer than the largest delay
+     */
+    public long delay(final int retry, final long retryAfter) {
+        final long delay;
+        if(retryAfter > maxDelay) {
+            delay = -1;
+        } else {
+            // full jitter: uniform between 0 and the exponential bound
+            final long bound = Math.min(maxDelay, baseDelay << Math.min(retry - 1, 30));
+            final long jittered = bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+            delay = Math.max(retryAfter, jittered);
+        }
+        return delay;
+    }
+
+    /**
+     * Wait before a retry
+     * @param delay delay (ms) to wait
+     * @throws InterruptedIOException when the thread is interrupted, e.g. by a cancelled export
+     */
+    public static void sleep(final long delay) throws InterruptedIOException {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Retry cancelled");
+        }
+    }
+
+    /**
+     * Read the value of a Retry-After header
+     * @param value number of seconds or http date, may be null
+     * @param now current time (ms since epoch) to which the date is compared
+     * @return the delay (ms), negative if the value is absent or not understood
+     */
+    public static long parseRetryAfter(final String value, final long now) {
+        long delay = -1;
+        if(value != null && !value.trim().isEmpty()) {
+            final String trimmed = value.trim();
+            try {
+                delay = Long.parseLong(trimmed) * MS_PER_SECOND;
+            } catch (NumberFormatException e) {
+                final Date date = DateUtils.parseDate(trimmed);
+                if(date != null) {
+                    delay = Math.max(0, date.getTime() - now);
+                }
+            }
+        }
+        return delay;
+    }
+}
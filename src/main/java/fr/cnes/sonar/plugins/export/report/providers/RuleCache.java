@@ -0,0 +1,141 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.report.providers;
+
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Metadata of rules shared by the exports of several profiles
+ * Rules are kept without their active severity, which depends on the profile.
+ * An export claims the rules it does not find before requesting them,
+ * so that simultaneous exports wait for these rules instead of requesting them again.
+ * @author lequal
+ */
+public class RuleCache {
+
+    /**
+     * Fields of the cached rules, as named by the f parameter of /api/rules/search
+     */
+    private final Set<String> fields;
+    /**
+     * Rules indexed by their key, completed with null when a claimed rule is not found
+     */
+    private final ConcurrentMap<String, CompletableFuture<Rule>> rules = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     * @param pFields fields of the rules to cache
+     */
+    public RuleCache(final Set<String> pFields) {
+        this.fields = pFields;
+    }
+
+    /**
+     * Getter for fields
+     * @return fields of the cached rules
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Claim the rules which are neither cached nor requested by another export
+     * The caller must then put or release each claimed rule.
+     * @param ruleKeys keys of the wanted rules
+     * @return keys of the rules to request
+     */
+    public List<String> claim(final Collection<String> ruleKeys) {
+        final List<String> claimed = new ArrayList<>();
+        for (String ruleKey : ruleKeys) {
+            if (rules.putIfAbsent(ruleKey, new CompletableFuture<>()) == null) {
+                claimed.add(ruleKey);
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * Cache the metadata of a claimed rule
+     * @param rule rule to cache, its active severity is not kept
+     */
+    public void put(final Rule rule) {
+        final Rule metadata = new Rule(rule);
+        metadata.setActiveSeverity("");
+        rules.computeIfAbsent(metadata.getKey(), key -> new CompletableFuture<>()).complete(metadata);
+    }
+
+    /**
+     * Release claimed rules which were not put, waiting exports get no metadata for them
+     * @param ruleKeys keys of the claimed rules
+     * @param cause error which prevented to get the rules, null if they were not found
+     */
+    public void release(final Collection<String> ruleKeys, final Throwable cause) {
+        for (String ruleKey : ruleKeys) {
+            final CompletableFuture<Rule> rule = rules.get(ruleKey);
+            if (rule != null && !rule.isDone()) {
+                if (cause != null) {
+                    // next exports will claim the rule again
+                    rules.remove(ruleKey, rule);
+                    rule.completeExceptionally(cause);
+                } else {
+                    rule.complete(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the metadata of a rule, waiting for it if it is requested by another export
+     * @param ruleKey key of the rule
+     * @return the rule or null if it is unknown
+     * @throws IOException when the export requesting the rule failed
+     */
+    public Rule get(final String ruleKey) throws IOException {
+        final CompletableFuture<Rule> rule = rules.get(ruleKey);
+        Rule result = null;
+        if (rule != null) {
+            try {
+                result = rule.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of cached or requested rules
+     * @return the number of rules
+     */
+    public int size() {
+        return rules.size();
+    }
+}
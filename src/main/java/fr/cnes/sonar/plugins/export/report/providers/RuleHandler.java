@@ -0,0 +1,46 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.cnes.sonar.plugins.export.report.providers;
+
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+
+import java.io.IOException;
+
+/**
+ * Receive the rules of a profile as soon as they are complete
+ * @author lequal
+ */
+@FunctionalInterface
+public interface RuleHandler {
+
+    /**
+     * Handle a rule
+     * @param rule rule with its active severity
+     * @throws IOException when the rule can not be written
+     */
+    void handle(Rule rule) throws IOException;
+
+    /**
+     * Called when a page of rules is received, before its rules are handled
+     * @param page index of the page, starting at 1
+     * @param total total number of rules of the profile
+     */
+    default void pageReceived(final int page, final int total) {
+        // progress is not followed by default
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.cnes.sonar.plugins.export.report.providers;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.utils.StringPool;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Convert json rules to Rule objects keeping only a projection of their fields
+ * Values repeated by many rules share their instances through a pool.
+ * @author lequal
+ */
+public class RuleReader {
+
+    /**
+     * Name of the rule's key field
+     */
+    public static final String KEY = "key";
+    /**
+     * Name of the rule's type field
+     */
+    public static final String TYPE = "type";
+    /**
+     * Name of the rule's repository field
+     */
+    public static final String REPO = "repo";
+    /**
+     * Name of the rule's name field
+     */
+    public static final String NAME = "name";
+    /**
+     * Name of the rule's default severity field
+     */
+    public static final String SEVERITY = "severity";
+    /**
+     * Name of the rule's html description field
+     */
+    public static final String HTML_DESC = "htmlDesc";
+    /**
+     * Name of the f parameter value giving the technical debt of the rule
+     */
+    public static final String DEBT_REM_FN = "debtRemFn";
+    /**
+     * Name of the rule's technical debt field
+     */
+    public static final String DEBT_REM_FN_COEFF = "debtRemFnCoeff";
+    /**
+     * Name of the rule's language key field
+     */
+    public static final String LANG = "lang";
+    /**
+     * Name of the rule's language name field
+     */
+    public static final String LANG_NAME = "langName";
+    /**
+     * Name of the rule's status field
+     */
+    public static final String STATUS = "status";
+
+    /**
+     * All the fields of the Rule model
+     */
+    public static final Set<String> ALL_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            REPO, NAME, SEVERITY, HTML_DESC, DEBT_REM_FN, LANG, LANG_NAME, STATUS)));
+
+    /**
+     * Fields to keep, as named by the f parameter of /api/rules/search
+     */
+    private final Set<String> fields;
+    /**
+     * Shared instances of the repeated values
+     */
+    private final StringPool pool;
+
+    /**
+     * Constructor sharing values through the pool of the plugin
+     * @param pFields fields to keep, key and type are always kept
+     */
+    public RuleReader(final Set<String> pFields) {
+        this(pFields, StringPool.getInstance());
+    }
+
+    /**
+     * Complete constructor
+     * @param pFields fields to keep, key and type are always kept
+     * @param pPool shared instances of the values of repositories, languages, severities, types and statuses
+     */
+    public RuleReader(final Set<String> pFields, final StringPool pPool) {
+        this.fields = pFields;
+        this.pool = pPool;
+    }
+
+    /**
+     * Value of the f parameter of /api/rules/search for this projection
+     * @param extra additional fields to request, like actives
+     * @return comma separated list of fields
+     */
+    public String getFieldsParameter(final String... extra) {
+        final StringBuilder parameter = new StringBuilder();
+        for (String field : fields) {
+            parameter.append(field).append(',');
+        }
+        for (String field : extra) {
+            parameter.append(field).append(',');
+        }
+        // remove last comma
+        if (parameter.length() > 0) {
+            parameter.setLength(parameter.length() - 1);
+        }
+        return parameter.toString();
+    }
+
+    /**
+     * Read a json rule, fields which are not projected are skipped
+     * @param reader reader positioned on the rule
+     * @return the new rule
+     * @throws IOException when reading the json
+     */
+    public Rule read(final JsonReader reader) throws IOException {
+        final Rule rule = new Rule();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL || !isProjected(name)) {
+                reader.skipValue();
+            } else {
+                readField(reader, name, rule);
+            }
+        }
+        reader.endObject();
+        return rule;
+    }
+
+    /**
+     * Check if a json field must be kept
+     * @param name name of the json field
+     * @return true if the field is in the projection
+     */
+    private boolean isProjected(final String name) {
+        final boolean projected;
+        if (KEY.equals(name) || TYPE.equals(name)) {
+            projected = true;
+        } else if (DEBT_REM_FN_COEFF.equals(name)) {
+            projected = fields.contains(DEBT_REM_FN);
+        } else {
+            projected = fields.contains(name);
+        }
+        return projected;
+    }
+
+    /**
+     * Set a field of the rule from the json
+     * @param reader reader positioned on the value
+     * @param name name of the field
+     * @param rule rule to fill out
+     * @throws IOException when reading the json
+     */
+    private void readField(final JsonReader reader, final String name, final Rule rule)
+            throws IOException {
+        switch (name) {
+            case KEY:
+                rule.setKey(reader.nextString());
+                break;
+            case TYPE:
+                rule.setType(pool.get(reader.nextString()));
+                break;
+            case REPO:
+                rule.setRepo(pool.get(reader.nextString()));
+                break;
+            case NAME:
+                rule.setName(reader.nextString());
+                break;
+            case SEVERITY:
+                rule.setSeverity(pool.get(reader.nextString()));
+                break;
+            case HTML_DESC:
+                rule.setHtmlDesc(reader.nextString());
+                break;
+            case DEBT_REM_FN_COEFF:
+                rule.setDebt(reader.nextString());
+                break;
+            case LANG:
+                rule.setLang(pool.get(reader.nextString()));
+                break;
+            case LANG_NAME:
+                rule.setLangName(pool.get(reader.nextString()));
+                break;
+            case STATUS:
+                rule.setStatus(pool.get(reader.nextString()));
+                break;
+            default:
+                reader.skipValue();
+                break;
+        }
+    }
+}
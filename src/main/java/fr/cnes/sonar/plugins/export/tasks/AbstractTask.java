@@ -17,7 +17,10 @@
 package fr.cnes.sonar.plugins.export.tasks;
 
 
+import fr.cnes.sonar.plugins.export.report.factory.ProfileFactory;
+import fr.cnes.sonar.plugins.export.report.providers.LocalBackend;
 import fr.cnes.sonar.plugins.export.utils.StringManager;
+import org.sonar.api.server.ws.Request;
 import org.sonar.api.server.ws.RequestHandler;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
@@ -28,6 +31,7 @@ import java.io.InputStreamReader;
 
 /**
  * Execute the export of a project
+ * Handlers are shared by all requests: the state of an export is kept in its ExportContext.
  * @author lequal
  */
 public abstract class AbstractTask implements RequestHandler {
@@ -38,9 +42,59 @@ public abstract class AbstractTask implements RequestHandler {
     protected static final Logger LOGGER = Loggers.get(AbstractTask.class);
 
     /**
-     * contain all the task's logs
+     * Url of the server requested when the local connector is not used
      */
-    private StringBuilder logs = new StringBuilder();
+    private final String url;
+    /**
+     * True to call web services inside the server with the connector of the user's request
+     */
+    private final boolean local;
+
+    /**
+     * Default constructor, requests the configured server through http
+     */
+    protected AbstractTask() {
+        this(StringManager.string(StringManager.SONAR_URL), false);
+    }
+
+    /**
+     * Complete constructor
+     * @param pUrl url of the server to request
+     * @param pLocal true to use the connector of the user's request instead of http
+     */
+    protected AbstractTask(final String pUrl, final boolean pLocal) {
+        this.url = pUrl;
+        this.local = pLocal;
+    }
+
+    /**
+     * Url of the server requested through http
+     * @return the base url of the server
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Tell whether web services are called inside the server
+     * @return true when the connector of the user's request is used
+     */
+    public boolean isLocal() {
+        return local;
+    }
+
+    /**
+     * Create a factory reading profiles for a request
+     * @param request request of the user, null outside of a request
+     * @return a factory using the local connector when possible, http otherwise
+     */
+    protected ProfileFactory newFactory(final Request request) {
+        // the connector only lives as long as the request
+        if(local && request != null) {
+            return new ProfileFactory(new LocalBackend(request.localConnector()));
+        }
+        return new ProfileFactory(url);
+    }
 
     /**
      * Execute an environment command
@@ -90,28 +144,4 @@ public abstract class AbstractTask implements RequestHandler {
         // return the output logs
         return result;
     }
-
-    /**
-     * Getter of logs
-     * @return the string contained in the StringBuilder
-     */
-    protected String getLogs() {
-        return logs.toString();
-    }
-
-    /**
-     * Setter of logs
-     * @param pLogs string to put in a new StringBuilder
-     */
-    protected void setLogs(final String pLogs) {
-        this.logs = new StringBuilder().append(pLogs);
-    }
-
-    /**
-     * Add logs
-     * @param pLogs string to add
-     */
-    protected void log(final String pLogs) {
-        this.logs.append(pLogs);
-    }
 }
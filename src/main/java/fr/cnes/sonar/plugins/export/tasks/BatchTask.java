@@ -0,0 +1,231 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.tasks;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.Exporter;
+import fr.cnes.sonar.plugins.export.report.exporters.ProfileWriter;
+import fr.cnes.sonar.plugins.export.report.factory.ExporterFactory;
+import fr.cnes.sonar.plugins.export.report.factory.ProfileFactory;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.RuleView;
+import fr.cnes.sonar.plugins.export.utils.StringManager;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Export several profiles in a single file
+ * Formats holding several profiles give one document, others give a zip archive.
+ * @author lequal
+ */
+public class BatchTask extends AbstractTask {
+
+    /**
+     * Header giving the name of the downloaded file
+     */
+    private static final String CONTENT_DISPOSITION = "Content-Disposition";
+    /**
+     * Value of the Content-Disposition header, filled out with the file extension
+     */
+    private static final String ATTACHMENT = "attachment; filename=\"cnesexport.%s\"";
+    /**
+     * Extension of zip archives
+     */
+    private static final String ZIP = "zip";
+    /**
+     * Media type of zip archives
+     */
+    private static final String ZIP_MEDIA_TYPE = "application/zip";
+
+    /**
+     * Default constructor, requests the configured server
+     */
+    public BatchTask() {
+        super();
+    }
+
+    /**
+     * Constructor requesting a server through http
+     * @param pUrl url of the server to request
+     */
+    public BatchTask(final String pUrl) {
+        this(pUrl, false);
+    }
+
+    /**
+     * Complete constructor
+     * @param pUrl url of the server to request
+     * @param pLocal true to use the connector of the user's request instead of http
+     */
+    public BatchTask(final String pUrl, final boolean pLocal) {
+        super(pUrl, pLocal);
+    }
+
+    /**
+     * Write the export of several profiles in a stream
+     * @param profileKeys keys of the profiles to export
+     * @param exporter format of the export
+     * @param output stream in which the export is written
+     * @throws IOException when contacting the server or writing
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public void export(final List<String> profileKeys, final Exporter exporter, final OutputStream output)
+            throws IOException, BadSonarQubeRequestException {
+        export(newFactory(null), profileKeys, exporter, output);
+    }
+
+    /**
+     * Write the export of several profiles read by a given factory
+     * @param factory reader of the profiles
+     * @param profileKeys keys of the profiles to export
+     * @param exporter format of the export
+     * @param output stream in which the export is written
+     * @throws IOException when contacting the server or writing
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public void export(final ProfileFactory factory, final List<String> profileKeys, final Exporter exporter,
+                       final OutputStream output)
+            throws IOException, BadSonarQubeRequestException {
+        factory.startDeadline();
+        // all profiles are requested simultaneously
+        final List<QualityProfile> profiles = factory.createAll(profileKeys, exporter.getFields());
+
+        try {
+            if(exporter.isMultiProfile()) {
+                final ProfileWriter writer = exporter.newWriter(output);
+                for (QualityProfile profile : profiles) {
+                    write(profile, writer);
+                }
+                writer.finish();
+            } else {
+                // one file per profile in an archive
+                final ZipOutputStream zip = new ZipOutputStream(output);
+                for (QualityProfile profile : profiles) {
+                    zip.putNextEntry(new ZipEntry(profile.getKey() + '.' + exporter.getFormat()));
+                    final ProfileWriter writer = exporter.newWriter(zip);
+                    write(profile, writer);
+                    writer.finish();
+                    zip.closeEntry();
+                }
+                zip.finish();
+            }
+        } catch (Throwable e) {
+            // rules of large profiles are kept on disk until written
+            QualityProfile.closeAll(profiles, e);
+            throw e;
+        }
+        QualityProfile.closeAll(profiles, null);
+    }
+
+    /**
+     * Keys of the profiles to export: the given ones then the ones of the given language
+     * @param profileKeys keys given by the user, may be null
+     * @param language language given by the user, may be null
+     * @return keys of the profiles
+     * @throws IOException when contacting the server
+     * @throws BadSonarQubeRequestException when no profile is given
+     */
+    public List<String> getProfileKeys(final List<String> profileKeys, final String language)
+            throws IOException, BadSonarQubeRequestException {
+        return getProfileKeys(newFactory(null), profileKeys, language);
+    }
+
+    /**
+     * Keys of the profiles to export, the ones of the language being read by a given factory
+     * @param factory reader of the profiles
+     * @param profileKeys keys given by the user, may be null
+     * @param language language given by the user, may be null
+     * @return keys of the profiles
+     * @throws IOException when contacting the server
+     * @throws BadSonarQubeRequestException when no profile is given
+     */
+    public List<String> getProfileKeys(final ProfileFactory factory, final List<String> profileKeys,
+                                       final String language)
+            throws IOException, BadSonarQubeRequestException {
+        final List<String> keys = new ArrayList<>();
+        if(profileKeys != null) {
+            keys.addAll(profileKeys);
+        }
+        if(language != null && !language.isEmpty()) {
+            for (String key : factory.getProfileKeys(language)) {
+                if(!keys.contains(key)) {
+                    keys.add(key);
+                }
+            }
+        }
+        if(keys.isEmpty()) {
+            throw new BadSonarQubeRequestException("No quality profile to export.");
+        }
+        return keys;
+    }
+
+    /**
+     * Use the user's request to stream the export of the profiles as a file
+     * @param request request coming from the user
+     * @param response response to send to the user
+     * @throws IOException when contacting the server
+     * @throws BadSonarQubeRequestException on bad requests
+     */
+    @Override
+    public void handle(final Request request, final Response response)
+            throws IOException, BadSonarQubeRequestException {
+        final ProfileFactory factory = newFactory(request);
+        // profiles provided by the user through parameters
+        final List<String> profileKeys = getProfileKeys(factory,
+                request.paramAsStrings(StringManager.string(StringManager.BATCH_PARAM_KEYS_NAME)),
+                request.param(StringManager.string(StringManager.BATCH_PARAM_LANGUAGE_NAME)));
+        // format of the file and its options
+        final Exporter exporter = ExporterFactory.create(
+                request.mandatoryParam(StringManager.string(StringManager.DOWNLOAD_PARAM_FORMAT_NAME)),
+                request.mandatoryParamAsBoolean(
+                        StringManager.string(StringManager.DOWNLOAD_PARAM_DESCRIPTIONS_NAME)));
+
+        // the file is downloaded by the browser
+        final Response.Stream stream = response.stream();
+        if(exporter.isMultiProfile()) {
+            response.setHeader(CONTENT_DISPOSITION, String.format(ATTACHMENT, exporter.getFormat()));
+            stream.setMediaType(exporter.getMediaType());
+        } else {
+            response.setHeader(CONTENT_DISPOSITION, String.format(ATTACHMENT, ZIP));
+            stream.setMediaType(ZIP_MEDIA_TYPE);
+        }
+
+        export(factory, profileKeys, exporter, stream.output());
+    }
+
+    /**
+     * Write a profile
+     * @param profile profile to write
+     * @param writer writer of the document
+     * @throws IOException when writing
+     */
+    private static void write(final QualityProfile profile, final ProfileWriter writer) throws IOException {
+        writer.startProfile(profile.getKey());
+        // writers do not keep the rules, which may be views moved from row to row
+        for (RuleView rule : profile.rows()) {
+            writer.write(rule);
+        }
+        writer.endProfile();
+    }
+}
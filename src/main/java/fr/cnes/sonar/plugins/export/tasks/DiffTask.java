@@ -0,0 +1,176 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.tasks;
+
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
+import fr.cnes.sonar.plugins.export.report.diff.ProfileDiff;
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.factory.ProfileFactory;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.utils.StringManager;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.utils.text.JsonWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compare a profile with another one or with its last export
+ * @author lequal
+ */
+public class DiffTask extends AbstractTask {
+
+    /**
+     * Fields of the rules written in the differences
+     */
+    private static final Set<String> FIELDS = new CsvExporter().getFields();
+
+    /**
+     * Default constructor, requests the configured server
+     */
+    public DiffTask() {
+        super();
+    }
+
+    /**
+     * Constructor requesting a server through http
+     * @param pUrl url of the server to request
+     */
+    public DiffTask(final String pUrl) {
+        this(pUrl, false);
+    }
+
+    /**
+     * Complete constructor
+     * @param pUrl url of the server to request
+     * @param pLocal true to use the connector of the user's request instead of http
+     */
+    public DiffTask(final String pUrl, final boolean pLocal) {
+        super(pUrl, pLocal);
+    }
+
+    /**
+     * Compare two profiles, both are requested simultaneously
+     * @param factory reader of the profiles
+     * @param profileKey key of the first profile
+     * @param otherKey key of the second profile
+     * @return the differences from the first profile to the second one
+     * @throws IOException when contacting the server
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public ProfileDiff diff(final ProfileFactory factory, final String profileKey, final String otherKey)
+            throws IOException, BadSonarQubeRequestException {
+        final List<QualityProfile> profiles = factory.createAll(Arrays.asList(profileKey, otherKey), FIELDS);
+        try (QualityProfile first = profiles.get(0); QualityProfile second = profiles.get(1)) {
+            return ProfileDiff.compare(first.getRuleList(), second.getRuleList());
+        }
+    }
+
+    /**
+     * Compare the last export of a profile with its current rules
+     * @param factory reader of the profile
+     * @param snapshot last export of the profile
+     * @return the differences since the export
+     * @throws IOException when contacting the server
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public ProfileDiff diff(final ProfileFactory factory, final ProfileSnapshots.Snapshot snapshot)
+            throws IOException, BadSonarQubeRequestException {
+        try (QualityProfile profile = factory.create(snapshot.getProfileKey(), FIELDS)) {
+            return ProfileDiff.compare(snapshot.getRules(), profile.getRuleList());
+        }
+    }
+
+    /**
+     * Use the user's request to compare profiles
+     * @param request request coming from the user
+     * @param response response to send to the user
+     * @throws IOException when contacting the server
+     * @throws BadSonarQubeRequestException on bad requests
+     */
+    @Override
+    public void handle(final Request request, final Response response)
+            throws IOException, BadSonarQubeRequestException {
+        final String profileKey = request.mandatoryParam(
+                StringManager.string(StringManager.CNES_ACTION_EXPORT_PARAM_KEY_NAME));
+        final String otherKey = request.param(StringManager.string(StringManager.DIFF_PARAM_TO_NAME));
+        final ProfileFactory factory = newFactory(request);
+
+        final ProfileDiff diff;
+        String snapshotVersion = null;
+        if (otherKey != null) {
+            diff = diff(factory, profileKey, otherKey);
+        } else {
+            // compare with the last export of the profile
+            final ProfileSnapshots.Snapshot snapshot = ProfileSnapshots.getInstance().get(profileKey);
+            if (snapshot == null) {
+                throw new BadSonarQubeRequestException(String.format(
+                        "No export of profile '%s' to compare with, export it or give another profile.",
+                        profileKey));
+            }
+            snapshotVersion = snapshot.getVersion();
+            diff = diff(factory, snapshot);
+        }
+
+        final JsonWriter jsonWriter = response.newJsonWriter();
+        jsonWriter.beginObject();
+        jsonWriter.prop("key", profileKey);
+        jsonWriter.prop("to", otherKey);
+        jsonWriter.prop("snapshot", snapshotVersion);
+        jsonWriter.name("added").beginArray();
+        for (Rule rule : diff.getAdded()) {
+            writeRule(jsonWriter, rule).endObject();
+        }
+        jsonWriter.endArray();
+        jsonWriter.name("removed").beginArray();
+        for (Rule rule : diff.getRemoved()) {
+            writeRule(jsonWriter, rule).endObject();
+        }
+        jsonWriter.endArray();
+        jsonWriter.name("changed").beginArray();
+        for (ProfileDiff.Change change : diff.getChanged()) {
+            writeRule(jsonWriter, change.getAfter());
+            jsonWriter.prop("previousSeverity", change.getBefore().getActiveSeverity());
+            jsonWriter.endObject();
+        }
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+        jsonWriter.close();
+    }
+
+    /**
+     * Start the json object of a rule
+     * @param jsonWriter writer of the response
+     * @param rule rule to write
+     * @return the writer, to end the object
+     */
+    private static JsonWriter writeRule(final JsonWriter jsonWriter, final Rule rule) {
+        jsonWriter.beginObject();
+        jsonWriter.prop("key", rule.getKey());
+        jsonWriter.prop("name", rule.getName());
+        jsonWriter.prop("language", rule.getLangName());
+        jsonWriter.prop("repository", rule.getRepo());
+        jsonWriter.prop("severity", rule.getActiveSeverity());
+        jsonWriter.prop("type", rule.getType());
+        return jsonWriter;
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.tasks;
+
+import fr.cnes.sonar.plugins.export.jobs.ExportJob;
+import fr.cnes.sonar.plugins.export.jobs.JobManager;
+import fr.cnes.sonar.plugins.export.metrics.ExportTimings;
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.metrics.TimedProfileWriter;
+import fr.cnes.sonar.plugins.export.report.cache.ExportCache;
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
+import fr.cnes.sonar.plugins.export.report.cache.RecordingOutputStream;
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.Exporter;
+import fr.cnes.sonar.plugins.export.report.exporters.ProfileWriter;
+import fr.cnes.sonar.plugins.export.report.factory.ExporterFactory;
+import fr.cnes.sonar.plugins.export.report.factory.ProfileFactory;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.report.providers.AbstractDataProvider;
+import fr.cnes.sonar.plugins.export.report.providers.RuleHandler;
+import fr.cnes.sonar.plugins.export.utils.GzipThresholdOutputStream;
+import fr.cnes.sonar.plugins.export.utils.StringManager;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Write the export of a profile directly in the response
+ * @author lequal
+ */
+public class DownloadTask extends AbstractTask {
+
+    /**
+     * Header giving the name of the downloaded file
+     */
+    private static final String CONTENT_DISPOSITION = "Content-Disposition";
+    /**
+     * Value of the Content-Disposition header, filled out with the safe name of the file and its encoded name
+     */
+    private static final String ATTACHMENT = "attachment; filename=\"%s\"; filename*=UTF-8''%s";
+    /**
+     * Characters replaced in the plain name of a downloaded file
+     */
+    private static final String UNSAFE_CHARACTERS = "[^A-Za-z0-9._-]";
+    /**
+     * Header giving the encodings accepted by the browser
+     */
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    /**
+     * Header giving the encoding of the downloaded file
+     */
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    /**
+     * Gzip content encoding
+     */
+    private static final String GZIP = "gzip";
+    /**
+     * Name of the property giving the size above which text files are compressed
+     */
+    private static final String DOWNLOAD_GZIP_MIN_BYTES = "DOWNLOAD_GZIP_MIN_BYTES";
+    /**
+     * Size of the buffer copying the file of an asynchronous export
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Default constructor, requests the configured server
+     */
+    public DownloadTask() {
+        super();
+    }
+
+    /**
+     * Constructor requesting a server through http
+     * @param pUrl url of the server to request
+     */
+    public DownloadTask(final String pUrl) {
+        this(pUrl, false);
+    }
+
+    /**
+     * Complete constructor
+     * @param pUrl url of the server to request
+     * @param pLocal true to use the connector of the user's request instead of http
+     */
+    public DownloadTask(final String pUrl, final boolean pLocal) {
+        super(pUrl, pLocal);
+    }
+
+    /**
+     * Write the export of a profile in a stream while its rules are received
+     * The file is cached and given again as long as the profile does not change.
+     * @param profileKey key of the profile to export
+     * @param exporter format of the export
+     * @param output stream in which the export is written
+     * @throws IOException when contacting the server or writing
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public void export(final String profileKey, final Exporter exporter, final OutputStream output)
+            throws IOException, BadSonarQubeRequestException {
+        export(profileKey, exporter, output, rule -> { });
+    }
+
+    /**
+     * Write the export of a profile in a stream and report its progress
+     * @param profileKey key of the profile to export
+     * @param exporter format of the export
+     * @param output stream in which the export is written
+     * @param progress receives the pages and the rules once written, not called for cached files
+     * @throws IOException when contacting the server or writing
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public void export(final String profileKey, final Exporter exporter, final OutputStream output,
+                       final RuleHandler progress)
+            throws IOException, BadSonarQubeRequestException {
+        export(profileKey, exporter, output, progress, new ExportTimings());
+    }
+
+    /**
+     * Write the export of a profile in a stream, report its progress and measure it
+     * @param profileKey key of the profile to export
+     * @param exporter format of the export
+     * @param output stream in which the export is written
+     * @param progress receives the pages and the rules once written, not called for cached files
+     * @param timings receives the durations and counts of the export
+     * @throws IOException when contacting the server or writing
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public void export(final String profileKey, final Exporter exporter, final OutputStream output,
+                       final RuleHandler progress, final ExportTimings timings)
+            throws IOException, BadSonarQubeRequestException {
+        export(newFactory(null), profileKey, exporter, output, progress, timings);
+    }
+
+    /**
+     * Write the export of a profile read by a given factory
+     * @param factory reader of the profile
+     * @param profileKey key of the profile to export
+     * @param exporter format of the export
+     * @param output stream in which the export is written
+     * @param progress receives the pages and the rules once written, not called for cached files
+     * @param timings receives the durations and counts of the export
+     * @throws IOException when contacting the server or writing
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public void export(final ProfileFactory factory, final String profileKey, final Exporter exporter,
+                       final OutputStream output, final RuleHandler progress, final ExportTimings timings)
+            throws IOException, BadSonarQubeRequestException {
+        final Metrics metrics = Metrics.getInstance();
+        final long start = metrics.start();
+        factory.setTimings(timings);
+        factory.startDeadline();
+        // version of the profile to check that the cached file is up to date
+        write(factory, profileKey, factory.getVersion(profileKey), exporter, output, progress, timings);
+        metrics.stop(Metrics.EXPORT_TOTAL, start, timings);
+    }
+
+    /**
+     * Write the export of a profile whose version is known
+     * @param factory reader of the profile
+     * @param profileKey key of the profile to export
+     * @param version version of the profile, null if it is unknown
+     * @param exporter format of the export
+     * @param output stream in which the export is written
+     * @param progress receives the pages and the rules once written, not called for cached files
+     * @param timings receives the durations and counts of the export
+     * @throws IOException when contacting the server or writing
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    private static void write(final ProfileFactory factory, final String profileKey, final String version,
+                              final Exporter exporter, final OutputStream output, final RuleHandler progress,
+                              final ExportTimings timings)
+            throws IOException, BadSonarQubeRequestException {
+        final Metrics metrics = Metrics.getInstance();
+        final ExportCache cache = ExportCache.getInstance();
+        final String cacheKey = ExportCache.key(profileKey, exporter);
+
+        final byte[] cached = version == null ? null : cache.get(cacheKey, version);
+        if(cached != null) {
+            metrics.count(Metrics.EXPORT_CACHE_HITS, 1, timings);
+            output.write(cached);
+            output.flush();
+        } else {
+            // keep a copy of the file while it is written, unless it is too large to be cached
+            final RecordingOutputStream recording = new RecordingOutputStream(output, cache.getMaxEntryBytes());
+            final ProfileWriter writer = new TimedProfileWriter(
+                    exporter.newWriter(recording), exporter.getFormat(), timings);
+            // rules kept to compare them with the next versions, unless they are too many
+            final ProfileSnapshots.Recorder snapshot = ProfileSnapshots.Recorder.configured();
+            final RuleHandler handler = new RuleHandler() {
+                @Override
+                public void handle(final Rule rule) throws IOException {
+                    writer.write(rule);
+                    snapshot.add(rule);
+                    progress.handle(rule);
+                }
+
+                @Override
+                public void pageReceived(final int page, final int total) {
+                    progress.pageReceived(page, total);
+                }
+            };
+            writer.startProfile(profileKey);
+            // only the changes since the last export are requested when possible
+            final QualityProfile delta = version == null ? null : factory.update(profileKey, exporter.getFields(),
+                    ProfileSnapshots.getInstance().get(profileKey));
+            if(delta != null) {
+                final List<Rule> rules = delta.getRuleList();
+                handler.pageReceived(1, rules.size());
+                for (Rule rule : rules) {
+                    handler.handle(rule);
+                }
+            } else {
+                // only get the fields written by the exporter and write rules page after page,
+                // after the ones of a failed export of the same version
+                factory.stream(profileKey, exporter.getFields(), version, handler);
+            }
+            writer.endProfile();
+            writer.finish();
+
+            final byte[] record = recording.getRecord();
+            if(record != null) {
+                cache.put(cacheKey, version, record);
+            }
+            ProfileSnapshots.getInstance().put(profileKey, version, exporter.getFields(), snapshot);
+        }
+    }
+
+    /**
+     * Use the user's request to stream the export as a file
+     * @param request request coming from the user
+     * @param response response to send to the user
+     * @throws IOException when contacting the server
+     * @throws BadSonarQubeRequestException on bad requests
+     */
+    @Override
+    public void handle(final Request request, final Response response)
+            throws IOException, BadSonarQubeRequestException {
+        // file of an asynchronous export
+        final String jobId = request.param(StringManager.string(StringManager.JOB_PARAM_NAME));
+        if(jobId != null) {
+            downloadJob(request, JobManager.getInstance().get(jobId), response);
+            return;
+        }
+
+        // Key of the profile provided by the user through parameters
+        final String profileKey = request.mandatoryParam(
+                StringManager.string(StringManager.CNES_ACTION_EXPORT_PARAM_KEY_NAME));
+        // format of the file and its options
+        final Exporter exporter = ExporterFactory.create(
+                request.mandatoryParam(StringManager.string(StringManager.DOWNLOAD_PARAM_FORMAT_NAME)),
+                request.mandatoryParamAsBoolean(
+                        StringManager.string(StringManager.DOWNLOAD_PARAM_DESCRIPTIONS_NAME)));
+
+        final Metrics metrics = Metrics.getInstance();
+        final long start = metrics.start();
+        final ExportTimings timings = new ExportTimings();
+        final ProfileFactory factory = newFactory(request);
+        factory.setTimings(timings);
+        factory.startDeadline();
+        // the profile is resolved before the response is started,
+        // so that an unknown profile or a failing server is reported as an error instead of an empty file
+        final String version = factory.getVersion(profileKey);
+        if(version == null && !factory.exists(profileKey)) {
+            throw new BadSonarQubeRequestException(
+                    String.format("Quality profile '%s' does not exist.", profileKey));
+        }
+
+        // the file is downloaded by the browser
+        response.setHeader(CONTENT_DISPOSITION, attachment(profileKey, exporter.getFormat()));
+        final GzipThresholdOutputStream output = open(request, response, exporter.getMediaType());
+
+        write(factory, profileKey, version, exporter, output, rule -> { }, timings);
+        metrics.stop(Metrics.EXPORT_TOTAL, start, timings);
+        finish(output, timings);
+        LOGGER.info(String.format("Download of %s: %s", profileKey, timings));
+    }
+
+    /**
+     * Give the value of the Content-Disposition header of a downloaded file
+     * The plain name only keeps safe characters, the complete name is given percent-encoded (RFC 5987).
+     * @param name name of the file, without its extension
+     * @param format extension of the file
+     * @return the value of the header
+     * @throws UnsupportedEncodingException never, UTF-8 is always supported
+     */
+    public static String attachment(final String name, final String format) throws UnsupportedEncodingException {
+        final String fileName = name + '.' + format;
+        // the encoder gives form encoding: spaces and stars must be encoded for a header
+        final String encoded = URLEncoder.encode(fileName, StandardCharsets.UTF_8.name())
+                .replace("+", "%20").replace("*", "%2A");
+        return String.format(ATTACHMENT, fileName.replaceAll(UNSAFE_CHARACTERS, "_"), encoded);
+    }
+
+    /**
+     * Open the output of a file, compressed with gzip if it is a large text file and the browser accepts it
+     * @param request request coming from the user
+     * @param response response to send to the user
+     * @param mediaType media type of the file
+     * @return the output to finish once the file is written
+     */
+    private static GzipThresholdOutputStream open(final Request request, final Response response,
+                                                  final String mediaType) {
+        final Response.Stream stream = response.stream();
+        stream.setMediaType(mediaType);
+        // binary formats such as xlsx are already compressed
+        final boolean text = mediaType.startsWith("text/") || mediaType.startsWith("application/json");
+        final int threshold = text && acceptsGzip(request.header(ACCEPT_ENCODING).orElse("")) ?
+                Integer.parseInt(AbstractDataProvider.getRequest(DOWNLOAD_GZIP_MIN_BYTES).trim()) : -1;
+        return new GzipThresholdOutputStream(stream.output(), threshold,
+                () -> response.setHeader(CONTENT_ENCODING, GZIP));
+    }
+
+    /**
+     * Write the end of a file and count the bytes saved by its compression
+     * @param output output of the file
+     * @param timings receives the counts of the download
+     * @throws IOException when writing
+     */
+    private static void finish(final GzipThresholdOutputStream output, final ExportTimings timings)
+            throws IOException {
+        output.finish();
+        if(output.isCompressed()) {
+            final Metrics metrics = Metrics.getInstance();
+            metrics.count(Metrics.DOWNLOAD_COMPRESSED, 1, timings);
+            metrics.count(Metrics.DOWNLOAD_BYTES_SAVED, output.getCount() - output.getWrittenCount(), timings);
+        }
+    }
+
+    /**
+     * Check if an Accept-Encoding header accepts gzip
+     * @param acceptEncoding value of the header, e.g. "gzip, deflate, br" or "gzip;q=0"
+     * @return true if gzip is listed with a non null quality
+     */
+    public static boolean acceptsGzip(final String acceptEncoding) {
+        boolean accepted = false;
+        for (String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            if(GZIP.equals(parts[0].trim().toLowerCase(Locale.ENGLISH))) {
+                accepted = true;
+                for (int i = 1; i < parts.length; i++) {
+                    final String parameter = parts[i].trim();
+                    // a null quality refuses the encoding
+                    if(parameter.startsWith("q=")) {
+                        accepted = parseQuality(parameter.substring(2)) > 0;
+                    }
+                }
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Read the quality of an accepted encoding
+     * @param value value of the q parameter
+     * @return the quality, 0 if it is not a number
+     */
+    private static double parseQuality(final String value) {
+        double quality;
+        try {
+            quality = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            quality = 0;
+        }
+        return quality;
+    }
+
+    /**
+     * Send the file of a finished asynchronous export
+     * @param request request coming from the user
+     * @param job the export
+     * @param response response to send to the user
+     * @throws IOException when reading the file
+     * @throws BadSonarQubeRequestException when the export is not finished
+     */
+    private static void downloadJob(final Request request, final ExportJob job, final Response response)
+            throws IOException, BadSonarQubeRequestException {
+        if(job.getState() != ExportJob.State.DONE) {
+            throw new BadSonarQubeRequestException(
+                    String.format("Export '%s' is not finished: %s.", job.getId(), job.getState()));
+        }
+
+        // the file is opened before any header is sent and kept until it is copied, even if the job expires
+        try (InputStream input = job.openFile()) {
+            if(input == null) {
+                throw new BadSonarQubeRequestException(String.format("Export '%s' has expired.", job.getId()));
+            }
+            // the file is downloaded by the browser
+            response.setHeader(CONTENT_DISPOSITION,
+                    attachment(job.getProfileKey(), job.getExporter().getFormat()));
+            final GzipThresholdOutputStream output = open(request, response, job.getExporter().getMediaType());
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while((read = input.read(buffer)) >= 0) {
+                output.write(buffer, 0, read);
+            }
+            finish(output, job.getTimings());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.tasks;
+
+import fr.cnes.sonar.plugins.export.metrics.ExportTimings;
+import fr.cnes.sonar.plugins.export.utils.Status;
+
+/**
+ * State of a single export: its logs, timings and status
+ * A new context is created for each request, so that handlers stay stateless.
+ * @author lequal
+ */
+public class ExportContext {
+
+    /**
+     * Key of the exported profile
+     */
+    private final String profileKey;
+    /**
+     * Logs of this export only
+     */
+    private final StringBuilder logs = new StringBuilder();
+    /**
+     * Time (ms) at which the export started
+     */
+    private final long startTime;
+    /**
+     * Time (ms) at which the export ended, 0 while running
+     */
+    private long endTime;
+    /**
+     * Status of the ended export, null while running
+     */
+    private Status status;
+    /**
+     * Durations and counts of the steps of this export
+     */
+    private final ExportTimings timings = new ExportTimings();
+
+    /**
+     * Constructor, starts the timer
+     * @param pProfileKey key of the exported profile
+     */
+    public ExportContext(final String pProfileKey) {
+        this.profileKey = pProfileKey;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Add logs
+     * @param pLogs string to add
+     */
+    public void log(final String pLogs) {
+        this.logs.append(pLogs);
+    }
+
+    /**
+     * End the export
+     * @param pStatus status of the export
+     */
+    public void end(final Status pStatus) {
+        this.endTime = System.currentTimeMillis();
+        this.status = pStatus;
+    }
+
+    /**
+     * Getter for profileKey
+     * @return profileKey
+     */
+    public String getProfileKey() {
+        return profileKey;
+    }
+
+    /**
+     * Getter of logs
+     * @return the logs of this export
+     */
+    public String getLogs() {
+        return logs.toString();
+    }
+
+    /**
+     * Duration of the export
+     * @return milliseconds between start and end, or until now while running
+     */
+    public long getDuration() {
+        return (endTime > 0 ? endTime : System.currentTimeMillis()) - startTime;
+    }
+
+    /**
+     * Getter for status
+     * @return status or null while running
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Getter for timings
+     * @return durations and counts of the steps of this export
+     */
+    public ExportTimings getTimings() {
+        return timings;
+    }
+}
@@ -16,15 +16,22 @@
  */
 package fr.cnes.sonar.plugins.export.tasks;
 
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.report.cache.ExportCache;
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
 import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
 import fr.cnes.sonar.plugins.export.report.factory.ProfileFactory;
 import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.RuleView;
+import fr.cnes.sonar.plugins.export.utils.Status;
 import fr.cnes.sonar.plugins.export.utils.StringManager;
 import org.sonar.api.server.ws.Request;
 import org.sonar.api.server.ws.Response;
 import org.sonar.api.utils.text.JsonWriter;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Execute element to produce the report
@@ -32,6 +39,35 @@ import java.io.IOException;
  */
 public class ExportTask extends AbstractTask {
 
+    /**
+     * Writer of the exported profile
+     */
+    private final CsvExporter exporter = new CsvExporter();
+
+    /**
+     * Default constructor, requests the configured server
+     */
+    public ExportTask() {
+        super();
+    }
+
+    /**
+     * Constructor requesting a server through http
+     * @param pUrl url of the server to request
+     */
+    public ExportTask(final String pUrl) {
+        this(pUrl, false);
+    }
+
+    /**
+     * Complete constructor
+     * @param pUrl url of the server to request
+     * @param pLocal true to use the connector of the user's request instead of http
+     */
+    public ExportTask(final String pUrl, final boolean pLocal) {
+        super(pUrl, pLocal);
+    }
+
     /**
      * Product the report
      * @param profileId Key of the profile to export
@@ -41,11 +77,120 @@ public class ExportTask extends AbstractTask {
      */
     public QualityProfile export(final String profileId)
             throws IOException, BadSonarQubeRequestException {
+        return export(newFactory(null), profileId);
+    }
 
-        // create a factory
-        ProfileFactory factory = new ProfileFactory("http://localhost:9000");
+    /**
+     * Product the report with a given factory
+     * @param factory reader of the profile
+     * @param profileId Key of the profile to export
+     * @return the exported profile, to close after use
+     * @throws IOException when contacting the server
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public QualityProfile export(final ProfileFactory factory, final String profileId)
+            throws IOException, BadSonarQubeRequestException {
+        // only get the fields written by the exporter
+        return factory.create(profileId, exporter.getFields());
+    }
 
-        return factory.create(profileId);
+    /**
+     * Give the csv export of a profile, from the cache if the profile did not change
+     * The cached file is the same as the one of the download action.
+     * @param profileId Key of the profile to export
+     * @return the profile as csv
+     * @throws IOException when contacting the server
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public String exportCsv(final String profileId)
+            throws IOException, BadSonarQubeRequestException {
+        return exportCsv(newFactory(null), profileId);
+    }
+
+    /**
+     * Give the csv export of a profile read by a given factory
+     * @param factory reader of the profile
+     * @param profileId Key of the profile to export
+     * @return the profile as csv
+     * @throws IOException when contacting the server
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public String exportCsv(final ProfileFactory factory, final String profileId)
+            throws IOException, BadSonarQubeRequestException {
+        final Metrics metrics = Metrics.getInstance();
+        final long start = metrics.start();
+        final ExportCache cache = ExportCache.getInstance();
+        final String cacheKey = ExportCache.key(profileId, exporter);
+        // version of the profile to check that the cached file is up to date
+        final String version = factory.getVersion(profileId);
+
+        final String csv;
+        final byte[] cached = version == null ? null : cache.get(cacheKey, version);
+        if(cached != null) {
+            metrics.count(Metrics.EXPORT_CACHE_HITS, 1, factory.getTimings());
+            csv = new String(cached, StandardCharsets.UTF_8);
+        } else {
+            // only the changes since the last export are requested when possible
+            final QualityProfile delta = version == null ? null : factory.update(profileId, exporter.getFields(),
+                    ProfileSnapshots.getInstance().get(profileId));
+            // a failed export of the same version is resumed
+            try (QualityProfile profile = delta != null ? delta :
+                    factory.create(profileId, exporter.getFields(), version)) {
+                final long writing = metrics.start();
+                csv = exporter.export(profile);
+                metrics.stop(Metrics.WRITER + exporter.getFormat(), writing, factory.getTimings());
+                cache.put(cacheKey, version, csv.getBytes(StandardCharsets.UTF_8));
+                // keep the rules to compare them with the next versions, unless they are too many
+                final ProfileSnapshots.Recorder snapshot = ProfileSnapshots.Recorder.configured();
+                for (RuleView rule : profile.rows()) {
+                    if (!snapshot.add(rule)) {
+                        break;
+                    }
+                }
+                ProfileSnapshots.getInstance().put(profileId, version, exporter.getFields(), snapshot);
+            }
+        }
+        metrics.stop(Metrics.EXPORT_TOTAL, start, factory.getTimings());
+        return csv;
+    }
+
+    /**
+     * Export a profile in its own context
+     * @param profileKey Key of the profile to export
+     * @return the context of the export, its logs contain the csv
+     * @throws IOException when contacting the server
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public ExportContext run(final String profileKey)
+            throws IOException, BadSonarQubeRequestException {
+        return run(newFactory(null), profileKey);
+    }
+
+    /**
+     * Export a profile read by a given factory in its own context
+     * @param factory reader of the profile
+     * @param profileKey Key of the profile to export
+     * @return the context of the export, its logs contain the csv
+     * @throws IOException when contacting the server
+     * @throws BadSonarQubeRequestException malformed request from the client
+     */
+    public ExportContext run(final ProfileFactory factory, final String profileKey)
+            throws IOException, BadSonarQubeRequestException {
+        final ExportContext context = new ExportContext(profileKey);
+        factory.setTimings(context.getTimings());
+        factory.startDeadline();
+        try {
+            // generate the reports and save output
+            context.log(exportCsv(factory, profileKey));
+            context.end(new Status(true, ""));
+        } catch (IOException | BadSonarQubeRequestException | RuntimeException e) {
+            context.end(new Status(false, e.getMessage()));
+            throw e;
+        } finally {
+            LOGGER.info(String.format("Export of %s in %d ms: %s", profileKey, context.getDuration(),
+                    context.getTimings()));
+        }
+        return context;
     }
 
     /**
@@ -58,22 +203,21 @@ public class ExportTask extends AbstractTask {
     @Override
     public void handle(final Request request, final Response response)
             throws IOException, BadSonarQubeRequestException {
-        // reset logs to not stack them
-        setLogs("");
-
         // Key of the project provided by the user through parameters
         final String profileKey = request.mandatoryParam(
                 StringManager.string(StringManager.CNES_ACTION_EXPORT_PARAM_KEY_NAME));
 
         // read request parameters and generates response output
-        // generate the reports and save output
-        final QualityProfile result = export(profileKey);
+        final ExportContext context = run(newFactory(request), profileKey);
 
         // set the response
         final JsonWriter jsonWriter = response.newJsonWriter();
         jsonWriter.beginObject();
         // add logs to response
-        jsonWriter.prop(StringManager.string(StringManager.EXPORT_RESPONSE_LOG), result.toString());
+        jsonWriter.prop(StringManager.string(StringManager.EXPORT_RESPONSE_LOG), context.getLogs());
+        // add the time spent in each step
+        jsonWriter.name(StringManager.string(StringManager.EXPORT_RESPONSE_TIMINGS));
+        context.getTimings().writeTo(jsonWriter);
         jsonWriter.endObject();
         jsonWriter.close();
     }
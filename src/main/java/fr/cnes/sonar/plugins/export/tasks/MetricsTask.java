@@ -0,0 +1,41 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.tasks;
+
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.utils.text.JsonWriter;
+
+/**
+ * Give the durations and counters measured since the server started
+ * @author lequal
+ */
+public class MetricsTask extends AbstractTask {
+
+    /**
+     * Write the metrics of all exports in the response
+     * @param request request coming from the user
+     * @param response response to send to the user
+     */
+    @Override
+    public void handle(final Request request, final Response response) {
+        final JsonWriter jsonWriter = response.newJsonWriter();
+        Metrics.getInstance().writeTo(jsonWriter);
+        jsonWriter.close();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.tasks;
+
+import fr.cnes.sonar.plugins.export.jobs.ExportJob;
+import fr.cnes.sonar.plugins.export.jobs.JobManager;
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.Exporter;
+import fr.cnes.sonar.plugins.export.report.factory.ExporterFactory;
+import fr.cnes.sonar.plugins.export.utils.StringManager;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.utils.text.JsonWriter;
+
+/**
+ * Start an export in background and give its id at once
+ * Background exports outlive the user's request: they use http, which carries no credentials.
+ * When profiles are read inside the server, no export is started and the client is told to download
+ * the file synchronously with the download action, which uses the connector of the user's request.
+ * @author lequal
+ */
+public class StartTask extends AbstractTask {
+
+    /**
+     * Default constructor, requests the configured server
+     */
+    public StartTask() {
+        super();
+    }
+
+    /**
+     * Constructor of exports read through http
+     * @param pUrl url of the server to request
+     */
+    public StartTask(final String pUrl) {
+        super(pUrl, false);
+    }
+
+    /**
+     * Complete constructor
+     * @param pUrl url of the server to request
+     * @param pLocal true when profiles are read inside the server: exports are then downloaded synchronously
+     */
+    public StartTask(final String pUrl, final boolean pLocal) {
+        super(pUrl, pLocal);
+    }
+
+    /**
+     * Use the user's request to queue an export
+     * @param request request coming from the user
+     * @param response response to send to the user
+     * @throws BadSonarQubeRequestException on bad requests or when too many exports are running
+     */
+    @Override
+    public void handle(final Request request, final Response response) throws BadSonarQubeRequestException {
+        // Key of the profile provided by the user through parameters
+        final String profileKey = request.mandatoryParam(
+                StringManager.string(StringManager.CNES_ACTION_EXPORT_PARAM_KEY_NAME));
+        // format of the file and its options
+        final Exporter exporter = ExporterFactory.create(
+                request.mandatoryParam(StringManager.string(StringManager.DOWNLOAD_PARAM_FORMAT_NAME)),
+                request.mandatoryParamAsBoolean(
+                        StringManager.string(StringManager.DOWNLOAD_PARAM_DESCRIPTIONS_NAME)));
+
+        final JsonWriter jsonWriter = response.newJsonWriter();
+        if(isLocal()) {
+            // the connector of this request can not be used by a background export
+            jsonWriter.beginObject();
+            jsonWriter.prop("key", profileKey);
+            jsonWriter.prop("format", exporter.getFormat());
+            jsonWriter.prop("synchronous", true);
+            jsonWriter.endObject();
+        } else {
+            final ExportJob job = JobManager.getInstance().submit(profileKey, exporter, getUrl());
+            // the client polls the status of the export with its id
+            StatusTask.writeJob(jsonWriter, job);
+        }
+        jsonWriter.close();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.tasks;
+
+import fr.cnes.sonar.plugins.export.jobs.ExportJob;
+import fr.cnes.sonar.plugins.export.jobs.JobManager;
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.utils.StringManager;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.utils.text.JsonWriter;
+
+/**
+ * Give the state and the progress of an export started in background
+ * @author lequal
+ */
+public class StatusTask extends AbstractTask {
+
+    /**
+     * Use the user's request to describe an export
+     * @param request request coming from the user
+     * @param response response to send to the user
+     * @throws BadSonarQubeRequestException when the export is unknown
+     */
+    @Override
+    public void handle(final Request request, final Response response) throws BadSonarQubeRequestException {
+        final ExportJob job = JobManager.getInstance().get(
+                request.mandatoryParam(StringManager.string(StringManager.JOB_PARAM_NAME)));
+
+        final JsonWriter jsonWriter = response.newJsonWriter();
+        writeJob(jsonWriter, job);
+        jsonWriter.close();
+    }
+
+    /**
+     * Write an export as a json object
+     * @param jsonWriter writer of the response
+     * @param job export to describe
+     */
+    static void writeJob(final JsonWriter jsonWriter, final ExportJob job) {
+        jsonWriter.beginObject();
+        jsonWriter.prop("id", job.getId());
+        jsonWriter.prop("key", job.getProfileKey());
+        jsonWriter.prop("format", job.getExporter().getFormat());
+        jsonWriter.prop("state", job.getState().name());
+        // progress
+        jsonWriter.prop("pages", job.getPages());
+        jsonWriter.prop("rules", job.getRules());
+        jsonWriter.prop("total", job.getTotal());
+        jsonWriter.prop("error", job.getError());
+        // time spent in each step
+        jsonWriter.name("timings");
+        job.getTimings().writeTo(jsonWriter);
+        jsonWriter.endObject();
+    }
+}
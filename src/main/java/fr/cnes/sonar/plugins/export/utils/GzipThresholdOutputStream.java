@@ -0,0 +1,161 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.utils;
+
+import fr.cnes.sonar.plugins.export.metrics.CountingOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output stream compressing its content with gzip once it is larger than a threshold
+ * The first bytes are buffered until the threshold is reached or the stream is finished,
+ * so headers can still be changed when the compression starts.
+ * @author lequal
+ */
+public class GzipThresholdOutputStream extends OutputStream {
+
+    /**
+     * Size of the buffer of the compressor
+     */
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    /**
+     * Stream receiving the content, compressed or not
+     */
+    private final CountingOutputStream output;
+    /**
+     * Size above which the content is compressed, negative to never compress
+     */
+    private final int threshold;
+    /**
+     * Called once before the first compressed byte, e.g. to set the Content-Encoding header
+     */
+    private final Runnable onCompression;
+    /**
+     * First bytes of the content while the threshold is not reached
+     */
+    private ByteArrayOutputStream buffer;
+    /**
+     * Compressor, null until the threshold is reached
+     */
+    private GZIPOutputStream gzip;
+    /**
+     * Number of bytes written in this stream
+     */
+    private long count;
+
+    /**
+     * Complete constructor
+     * @param pOutput stream receiving the content, not closed by this stream
+     * @param pThreshold size above which the content is compressed, negative to never compress
+     * @param pOnCompression called once when the compression starts
+     */
+    public GzipThresholdOutputStream(final OutputStream pOutput, final int pThreshold,
+                                     final Runnable pOnCompression) {
+        this.output = new CountingOutputStream(pOutput);
+        this.threshold = pThreshold;
+        this.onCompression = pOnCompression;
+        this.buffer = pThreshold < 0 ? null : new ByteArrayOutputStream(Math.min(pThreshold, GZIP_BUFFER_SIZE));
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        count += len;
+        if(gzip != null) {
+            gzip.write(b, off, len);
+        } else if(buffer == null) {
+            output.write(b, off, len);
+        } else if(buffer.size() + len <= threshold) {
+            buffer.write(b, off, len);
+        } else {
+            // the content is large enough to be compressed
+            onCompression.run();
+            gzip = new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+            buffer.writeTo(gzip);
+            buffer = null;
+            gzip.write(b, off, len);
+        }
+    }
+
+    /**
+     * Flush the bytes already compressed or not buffered, buffered bytes are kept until finish()
+     * @throws IOException when writing
+     */
+    @Override
+    public void flush() throws IOException {
+        if(buffer == null) {
+            (gzip != null ? gzip : output).flush();
+        }
+    }
+
+    /**
+     * Write the remaining content without closing the underlying stream
+     * @throws IOException when writing
+     */
+    public void finish() throws IOException {
+        if(gzip != null) {
+            gzip.finish();
+        } else if(buffer != null) {
+            // too small to be compressed
+            buffer.writeTo(output);
+            buffer = null;
+        }
+        output.flush();
+    }
+
+    /**
+     * Finish the content and close the underlying stream
+     * @throws IOException when writing
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        output.close();
+    }
+
+    /**
+     * Tell if the content is compressed
+     * @return true once the threshold is reached
+     */
+    public boolean isCompressed() {
+        return gzip != null;
+    }
+
+    /**
+     * Number of bytes written in this stream
+     * @return the size of the content
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Number of bytes written in the underlying stream
+     * @return the size of the content, compressed or not
+     */
+    public long getWrittenCount() {
+        return output.getCount();
+    }
+}
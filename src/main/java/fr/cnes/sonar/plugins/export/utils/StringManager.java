@@ -51,6 +51,10 @@ public final class StringManager {
      * Property for action 2 (reporting) response's field 1
      */
     public static final String EXPORT_RESPONSE_LOG = "cnes.action.export.response.log";
+    /**
+     * Property for action 2 (reporting) response's field 2
+     */
+    public static final String EXPORT_RESPONSE_TIMINGS = "cnes.action.export.response.timings";
     /**
      * Property for action 2 (reporting) param 1 description
      */
@@ -72,6 +76,102 @@ public final class StringManager {
      * Property for action 2 (reporting) description
      */
     public static final String EXPORT_DESC = "cnes.action.export.desc";
+    /**
+     * Property for action 'download' key
+     */
+    public static final String DOWNLOAD_KEY = "cnes.action.download.key";
+    /**
+     * Property for action 'download' description
+     */
+    public static final String DOWNLOAD_DESC = "cnes.action.download.desc";
+    /**
+     * Property for action 'download' format param name
+     */
+    public static final String DOWNLOAD_PARAM_FORMAT_NAME = "cnes.action.download.param.format.name";
+    /**
+     * Property for action 'download' format param description
+     */
+    public static final String DOWNLOAD_PARAM_FORMAT_DESC = "cnes.action.download.param.format.desc";
+    /**
+     * Property for action 'download' descriptions param name
+     */
+    public static final String DOWNLOAD_PARAM_DESCRIPTIONS_NAME = "cnes.action.download.param.descriptions.name";
+    /**
+     * Property for action 'download' descriptions param description
+     */
+    public static final String DOWNLOAD_PARAM_DESCRIPTIONS_DESC = "cnes.action.download.param.descriptions.desc";
+    /**
+     * Property for action 'batch' key
+     */
+    public static final String BATCH_KEY = "cnes.action.batch.key";
+    /**
+     * Property for action 'batch' description
+     */
+    public static final String BATCH_DESC = "cnes.action.batch.desc";
+    /**
+     * Property for action 'batch' keys param name
+     */
+    public static final String BATCH_PARAM_KEYS_NAME = "cnes.action.batch.param.keys.name";
+    /**
+     * Property for action 'batch' keys param description
+     */
+    public static final String BATCH_PARAM_KEYS_DESC = "cnes.action.batch.param.keys.desc";
+    /**
+     * Property for action 'batch' language param name
+     */
+    public static final String BATCH_PARAM_LANGUAGE_NAME = "cnes.action.batch.param.language.name";
+    /**
+     * Property for action 'batch' language param description
+     */
+    public static final String BATCH_PARAM_LANGUAGE_DESC = "cnes.action.batch.param.language.desc";
+    /**
+     * Property for action 'start' key
+     */
+    public static final String START_KEY = "cnes.action.start.key";
+    /**
+     * Property for action 'start' description
+     */
+    public static final String START_DESC = "cnes.action.start.desc";
+    /**
+     * Property for action 'status' key
+     */
+    public static final String STATUS_KEY = "cnes.action.status.key";
+    /**
+     * Property for action 'status' description
+     */
+    public static final String STATUS_DESC = "cnes.action.status.desc";
+    /**
+     * Property for action 'metrics' key
+     */
+    public static final String METRICS_KEY = "cnes.action.metrics.key";
+    /**
+     * Property for action 'metrics' description
+     */
+    public static final String METRICS_DESC = "cnes.action.metrics.desc";
+    /**
+     * Property for action 'diff' key
+     */
+    public static final String DIFF_KEY = "cnes.action.diff.key";
+    /**
+     * Property for action 'diff' description
+     */
+    public static final String DIFF_DESC = "cnes.action.diff.desc";
+    /**
+     * Property for the name of the param giving the profile to compare with
+     */
+    public static final String DIFF_PARAM_TO_NAME = "cnes.action.diff.param.to.name";
+    /**
+     * Property for the description of the param giving the profile to compare with
+     */
+    public static final String DIFF_PARAM_TO_DESC = "cnes.action.diff.param.to.desc";
+    /**
+     * Property for the name of the param giving an asynchronous export
+     */
+    public static final String JOB_PARAM_NAME = "cnes.action.param.job.name";
+    /**
+     * Property for the description of the param giving an asynchronous export
+     */
+    public static final String JOB_PARAM_DESC = "cnes.action.param.job.desc";
     /**
      * Property name of the command pattern to report an export
      */
@@ -0,0 +1,116 @@
+/*
+ * This file is part of cnesexport.
+ *
+ * cnesexport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * cnesexport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with cnesexport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.cnes.sonar.plugins.export.utils;
+
+import fr.cnes.sonar.plugins.export.report.providers.AbstractDataProvider;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Share the instances of values repeated by many rules, like repositories, languages or severities
+ * Values of fixed vocabularies are always shared, other values are added up to a maximum
+ * after which they are given back as they are.
+ * @author lequal
+ */
+public final class StringPool {
+
+    /**
+     * Name of the property for the maximum number of pooled values
+     */
+    private static final String STRING_POOL_MAX_SIZE = "STRING_POOL_MAX_SIZE";
+    /**
+     * Severities, types and statuses of the rules, known by SonarQube
+     */
+    private static final String[] VOCABULARY = {
+        "INFO", "MINOR", "MAJOR", "CRITICAL", "BLOCKER",
+        "CODE_SMELL", "BUG", "VULNERABILITY", "SECURITY_HOTSPOT",
+        "READY", "BETA", "DEPRECATED", "REMOVED", ""
+    };
+
+    /**
+     * Unique instance
+     */
+    private static StringPool ourInstance;
+
+    /**
+     * Shared instance of each value
+     */
+    private final ConcurrentMap<String, String> values;
+    /**
+     * Maximum number of values added besides the vocabulary
+     */
+    private final int maxSize;
+    /**
+     * Number of values of the vocabulary
+     */
+    private final int vocabularySize;
+
+    /**
+     * Constructor
+     * @param pMaxSize maximum number of values added besides the vocabulary, 0 to share only the vocabulary
+     * @param vocabulary values always shared
+     */
+    public StringPool(final int pMaxSize, final String... vocabulary) {
+        this.maxSize = pMaxSize;
+        this.values = new ConcurrentHashMap<>();
+        for (String value : vocabulary) {
+            values.putIfAbsent(value, value);
+        }
+        this.vocabularySize = values.size();
+    }
+
+    /**
+     * Return the unique instance, sharing the vocabulary of the rules
+     * @return the singleton
+     */
+    public static synchronized StringPool getInstance() {
+        if (ourInstance == null) {
+            ourInstance = new StringPool(
+                    Integer.parseInt(AbstractDataProvider.getRequest(STRING_POOL_MAX_SIZE).trim()), VOCABULARY);
+        }
+        return ourInstance;
+    }
+
+    /**
+     * Give the shared instance of a value
+     * @param value the value, may be null
+     * @return an equal value, the same instance for all equal pooled values
+     */
+    public String get(final String value) {
+        String shared = value;
+        if (value != null) {
+            final String pooled = values.get(value);
+            if (pooled != null) {
+                shared = pooled;
+            } else if (values.size() - vocabularySize < maxSize) {
+                // the size may be exceeded by concurrent additions, by a few values only
+                final String previous = values.putIfAbsent(value, value);
+                shared = previous != null ? previous : value;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Number of pooled values, vocabulary included
+     * @return the size of the pool
+     */
+    public int size() {
+        return values.size();
+    }
+}
@@ -16,9 +16,26 @@
  */
 package fr.cnes.sonar.plugins.export.ws;
 
+import fr.cnes.sonar.plugins.export.report.cache.ExportCheckpoints;
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
+import fr.cnes.sonar.plugins.export.report.factory.ExporterFactory;
+import fr.cnes.sonar.plugins.export.report.providers.RemoteBackend;
+import fr.cnes.sonar.plugins.export.tasks.BatchTask;
+import fr.cnes.sonar.plugins.export.tasks.DiffTask;
+import fr.cnes.sonar.plugins.export.tasks.DownloadTask;
 import fr.cnes.sonar.plugins.export.tasks.ExportTask;
+import fr.cnes.sonar.plugins.export.tasks.StartTask;
+import fr.cnes.sonar.plugins.export.tasks.MetricsTask;
+import fr.cnes.sonar.plugins.export.tasks.StatusTask;
 import fr.cnes.sonar.plugins.export.utils.StringManager;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.server.ws.WebService;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * Expose CNES plugin api
@@ -26,6 +43,93 @@ import org.sonar.api.server.ws.WebService;
  */
 public class CnesWs implements WebService {
 
+    /**
+     * Property choosing how the plugin reads profiles: "local" inside the server, "remote" through http
+     */
+    public static final String BACKEND_PROPERTY = "sonar.cnesexport.backend";
+    /**
+     * Value of BACKEND_PROPERTY reading profiles through http
+     */
+    public static final String REMOTE = "remote";
+    /**
+     * Property of SonarQube giving its data directory
+     */
+    public static final String DATA_PROPERTY = "sonar.path.data";
+
+    /**
+     * Logger of this class
+     */
+    private static final Logger LOGGER = Loggers.get(CnesWs.class);
+
+    /**
+     * Base url of the server, used by background exports and the remote backend
+     */
+    private final String url;
+    /**
+     * True to call web services inside the server with the connector of the user's request
+     */
+    private final boolean local;
+
+    /**
+     * Default constructor, requests the configured server through http
+     */
+    public CnesWs() {
+        this(StringManager.string(StringManager.SONAR_URL), false);
+    }
+
+    /**
+     * Constructor used by SonarQube, reads the url and the backend in the server's settings
+     * @param configuration settings of the server
+     */
+    public CnesWs(final Configuration configuration) {
+        this(RemoteBackend.baseUrl(configuration),
+                !REMOTE.equalsIgnoreCase(configuration.get(BACKEND_PROPERTY).orElse("").trim()));
+        // snapshots of exported profiles survive restarts in the data directory
+        final Path snapshots = snapshotDirectory(configuration);
+        try {
+            ProfileSnapshots.getInstance().setDirectory(snapshots);
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Snapshots kept in memory only, %s not created: %s",
+                    snapshots, e.getMessage()));
+        }
+        // pages received by failed exports, to resume them
+        final Path checkpoints = checkpointDirectory(configuration);
+        try {
+            ExportCheckpoints.getInstance().setDirectory(checkpoints);
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Failed exports will not be resumed, %s not created: %s",
+                    checkpoints, e.getMessage()));
+        }
+    }
+
+    /**
+     * Directory of the snapshots of exported profiles
+     * @param configuration settings of the server
+     * @return a directory of the data directory of SonarQube
+     */
+    public static Path snapshotDirectory(final Configuration configuration) {
+        return Paths.get(configuration.get(DATA_PROPERTY).orElse("data"), "cnesexport", "snapshots");
+    }
+
+    /**
+     * Directory of the checkpoints of failed exports
+     * @param configuration settings of the server
+     * @return a directory of the data directory of SonarQube
+     */
+    public static Path checkpointDirectory(final Configuration configuration) {
+        return Paths.get(configuration.get(DATA_PROPERTY).orElse("data"), "cnesexport", "checkpoints");
+    }
+
+    /**
+     * Complete constructor
+     * @param pUrl base url of the server
+     * @param pLocal true to use the connector of the user's request instead of http
+     */
+    public CnesWs(final String pUrl, final boolean pLocal) {
+        this.url = pUrl;
+        this.local = pLocal;
+    }
+
     /**
      * Define the new web service
      * Define each controller and action
@@ -43,6 +147,17 @@ public class CnesWs implements WebService {
 
         // create the action for URL /api/cnesexport/export
         exportAction(controller);
+        // create the action for URL /api/cnesexport/download
+        downloadAction(controller);
+        // create the action for URL /api/cnesexport/batch
+        batchAction(controller);
+        // create the actions for URL /api/cnesexport/start and /api/cnesexport/status
+        startAction(controller);
+        statusAction(controller);
+        // create the action for URL /api/cnesexport/metrics
+        metricsAction(controller);
+        // create the action for URL /api/cnesexport/diff
+        diffAction(controller);
 
         // important to apply changes
         controller.done();
@@ -57,7 +172,7 @@ public class CnesWs implements WebService {
                 StringManager.string(StringManager.EXPORT_KEY));
         report.setDescription(StringManager.string(StringManager.EXPORT_DESC));
         report.setSince(StringManager.string(StringManager.SONAR_VERSION));
-        report.setHandler(new ExportTask());
+        report.setHandler(new ExportTask(url, local));
         // add the parameters of the controller
         // key parameter
         NewParam newParam = report.createParam(
@@ -66,4 +181,137 @@ public class CnesWs implements WebService {
         newParam.setRequired(true);
     }
 
-}
\ No newline at end of file
+    /**
+     * Add the action streaming the export as a file
+     * @param controller controller to which add the action
+     */
+    private void downloadAction(final NewController controller) {
+        final NewAction download = controller.createAction(
+                StringManager.string(StringManager.DOWNLOAD_KEY));
+        download.setDescription(StringManager.string(StringManager.DOWNLOAD_DESC));
+        download.setSince(StringManager.string(StringManager.SONAR_VERSION));
+        download.setHandler(new DownloadTask(url, local));
+        // add the parameters of the controller
+        // key parameter, not needed when a job is given
+        final NewParam newParam = download.createParam(
+                StringManager.string(StringManager.CNES_ACTION_EXPORT_PARAM_KEY_NAME));
+        newParam.setDescription(StringManager.string(StringManager.CNES_ACTION_EXPORT_PARAM_KEY_DESC));
+        // format parameters
+        formatParams(download);
+        // job parameter, to get the file of an export started in background
+        final NewParam job = download.createParam(StringManager.string(StringManager.JOB_PARAM_NAME));
+        job.setDescription(StringManager.string(StringManager.JOB_PARAM_DESC));
+    }
+
+    /**
+     * Add the action exporting several profiles in a single file
+     * @param controller controller to which add the action
+     */
+    private void batchAction(final NewController controller) {
+        final NewAction batch = controller.createAction(
+                StringManager.string(StringManager.BATCH_KEY));
+        batch.setDescription(StringManager.string(StringManager.BATCH_DESC));
+        batch.setSince(StringManager.string(StringManager.SONAR_VERSION));
+        batch.setHandler(new BatchTask(url, local));
+        // add the parameters of the controller
+        // keys parameter
+        final NewParam keys = batch.createParam(
+                StringManager.string(StringManager.BATCH_PARAM_KEYS_NAME));
+        keys.setDescription(StringManager.string(StringManager.BATCH_PARAM_KEYS_DESC));
+        // language parameter
+        final NewParam language = batch.createParam(
+                StringManager.string(StringManager.BATCH_PARAM_LANGUAGE_NAME));
+        language.setDescription(StringManager.string(StringManager.BATCH_PARAM_LANGUAGE_DESC));
+        // format parameters
+        formatParams(batch);
+    }
+
+    /**
+     * Add the action starting an export in background
+     * @param controller controller to which add the action
+     */
+    private void startAction(final NewController controller) {
+        final NewAction start = controller.createAction(
+                StringManager.string(StringManager.START_KEY));
+        start.setDescription(StringManager.string(StringManager.START_DESC));
+        start.setSince(StringManager.string(StringManager.SONAR_VERSION));
+        // background exports outlive the user's request and its local connector:
+        // with the local backend the client downloads the export synchronously instead
+        start.setHandler(new StartTask(url, local));
+        // add the parameters of the controller
+        // key parameter
+        final NewParam newParam = start.createParam(
+                StringManager.string(StringManager.CNES_ACTION_EXPORT_PARAM_KEY_NAME));
+        newParam.setDescription(StringManager.string(StringManager.CNES_ACTION_EXPORT_PARAM_KEY_DESC));
+        newParam.setRequired(true);
+        // format parameters
+        formatParams(start);
+    }
+
+    /**
+     * Add the action giving the progress of an export started in background
+     * @param controller controller to which add the action
+     */
+    private void statusAction(final NewController controller) {
+        final NewAction status = controller.createAction(
+                StringManager.string(StringManager.STATUS_KEY));
+        status.setDescription(StringManager.string(StringManager.STATUS_DESC));
+        status.setSince(StringManager.string(StringManager.SONAR_VERSION));
+        status.setHandler(new StatusTask());
+        // job parameter
+        final NewParam job = status.createParam(StringManager.string(StringManager.JOB_PARAM_NAME));
+        job.setDescription(StringManager.string(StringManager.JOB_PARAM_DESC));
+        job.setRequired(true);
+    }
+
+    /**
+     * Add the action giving the measures of all exports
+     * @param controller controller to which add the action
+     */
+    private void metricsAction(final NewController controller) {
+        final NewAction metrics = controller.createAction(
+                StringManager.string(StringManager.METRICS_KEY));
+        metrics.setDescription(StringManager.string(StringManager.METRICS_DESC));
+        metrics.setSince(StringManager.string(StringManager.SONAR_VERSION));
+        metrics.setHandler(new MetricsTask());
+    }
+
+    /**
+     * Add the action comparing profiles
+     * @param controller controller to which add the action
+     */
+    private void diffAction(final NewController controller) {
+        final NewAction diff = controller.createAction(
+                StringManager.string(StringManager.DIFF_KEY));
+        diff.setDescription(StringManager.string(StringManager.DIFF_DESC));
+        diff.setSince(StringManager.string(StringManager.SONAR_VERSION));
+        diff.setHandler(new DiffTask(url, local));
+        // key parameter
+        final NewParam newParam = diff.createParam(
+                StringManager.string(StringManager.CNES_ACTION_EXPORT_PARAM_KEY_NAME));
+        newParam.setDescription(StringManager.string(StringManager.CNES_ACTION_EXPORT_PARAM_KEY_DESC));
+        newParam.setRequired(true);
+        // profile to compare with
+        final NewParam to = diff.createParam(StringManager.string(StringManager.DIFF_PARAM_TO_NAME));
+        to.setDescription(StringManager.string(StringManager.DIFF_PARAM_TO_DESC));
+    }
+
+    /**
+     * Add the parameters choosing the format of an export
+     * @param action action to which add the parameters
+     */
+    private void formatParams(final NewAction action) {
+        // format parameter
+        final NewParam format = action.createParam(
+                StringManager.string(StringManager.DOWNLOAD_PARAM_FORMAT_NAME));
+        format.setDescription(StringManager.string(StringManager.DOWNLOAD_PARAM_FORMAT_DESC));
+        format.setPossibleValues(ExporterFactory.FORMATS);
+        format.setDefaultValue(ExporterFactory.FORMATS.get(0));
+        // descriptions parameter
+        final NewParam descriptions = action.createParam(
+                StringManager.string(StringManager.DOWNLOAD_PARAM_DESCRIPTIONS_NAME));
+        descriptions.setDescription(StringManager.string(StringManager.DOWNLOAD_PARAM_DESCRIPTIONS_DESC));
+        descriptions.setBooleanPossibleValues();
+        descriptions.setDefaultValue(false);
+    }
+}
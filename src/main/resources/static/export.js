@@ -112,35 +112,98 @@ function registerCnesExport(options){
     };
 
     /**
-     * Generate the export
-     * @param key
-     * @param author
+     * Download the file of a finished export
+     * @param job id of the export
+     * @param file name of the downloaded file
      */
-    var produceExport = function (key) {
-        // http GET request to the cnes web service
-        window.SonarRequest.getJSON(
-            '/api/cnesexport/export',
-            { key: key }
-        ).then(function (response) {
+    var downloadJob = function (job, file) {
+        // create a new link to download data
+        var a = window.document.createElement('a');
+        a.href = (window.baseUrl || '') + '/api/cnesexport/download?job=' + encodeURIComponent(job);
+        a.download = file;
 
-            // create a new link to download data
-            var a = window.document.createElement('a');
-            a.href = window.URL.createObjectURL(new Blob([response.logs], {type: 'text/csv'}));
-            a.download = key+'.csv';
+        // append link to body
+        document.body.appendChild(a);
+        a.click();
+        // remove link from body
+        document.body.removeChild(a);
+    };
 
-            // append link to body
-            document.body.appendChild(a);
-            a.click();
-            // remove link from body
-            document.body.removeChild(a);
+    /**
+     * Download an export generated while it is sent, within the request of the user
+     * @param key key of the profile
+     * @param format csv or xlsx
+     * @param descriptions true to add rules' descriptions
+     */
+    var downloadNow = function (key, format, descriptions) {
+        // create a new link to download data
+        var a = window.document.createElement('a');
+        a.href = (window.baseUrl || '') + '/api/cnesexport/download?key=' + encodeURIComponent(key)
+            + '&format=' + encodeURIComponent(format) + '&descriptions=' + descriptions;
+        a.download = key + '.' + format;
+
+        // append link to body
+        document.body.appendChild(a);
+        a.click();
+        // remove link from body
+        document.body.removeChild(a);
+    };
 
-            // on success log generation
-            log("[INFO] CNES web service's response: \n" + response.logs);
-            log("############################################################\n\tExport terminated!\n############################################################\n");
+    /**
+     * Poll the status of an export until it ends
+     * @param job id of the export
+     * @param file name of the downloaded file
+     */
+    var pollExport = function (job, file) {
+        window.SonarRequest.getJSON(
+            '/api/cnesexport/status', { job: job }
+        ).then(function (status) {
+            if (!isDisplayedExporting) {
+                // the page was closed
+                return;
+            }
+            if (status.state === 'DONE') {
+                log("[INFO] Export of " + status.rules + " rules terminated, download of " + file + " started.");
+                downloadJob(job, file);
+                setEnabled(true);
+            } else if (status.state === 'FAILED') {
+                log("[ERROR] " + status.error);
+                setEnabled(true);
+            } else {
+                log("[INFO] " + status.state + ": " + status.pages + " pages received, "
+                    + status.rules + "/" + status.total + " rules written.");
+                setTimeout(pollExport, 1000, job, file);
+            }
+        }).catch(function () {
+            log("[ERROR] Progress of the export can not be retrieved.");
             setEnabled(true);
-        }).catch(function (error) {
-            // log error
-            log("[ERROR] Export failed.");
+        });
+    };
+
+    /**
+     * Generate the export
+     * The export runs in background on the server, its progress is polled
+     * and the file is downloaded by the browser once ready.
+     * A server reading profiles within the user's request asks for a synchronous download instead.
+     * @param key
+     * @param format csv or xlsx
+     * @param descriptions true to add rules' descriptions
+     */
+    var produceExport = function (key, format, descriptions) {
+        var file = key + '.' + format;
+        window.SonarRequest.getJSON(
+            '/api/cnesexport/start', { key: key, format: format, descriptions: descriptions }
+        ).then(function (job) {
+            if (job.synchronous) {
+                log("[INFO] Download of " + file + " started.");
+                downloadNow(key, format, descriptions);
+                setEnabled(true);
+                return;
+            }
+            log("[INFO] Export of " + key + " started.");
+            pollExport(job.id, file);
+        }).catch(function () {
+            log("[ERROR] Export of " + key + " can not be started.");
             setEnabled(true);
         });
     };
@@ -195,6 +258,8 @@ function registerCnesExport(options){
 
                     // Get form values
                     var key = document.forms["generation-form"]["key"].value;
+                    var format = document.forms["generation-form"]["format"].value;
+                    var descriptions = document.forms["generation-form"]["descriptions"].checked;
 
                     // lock the form
                     setEnabled(false);
@@ -203,7 +268,7 @@ function registerCnesExport(options){
                     $('#loading').show();
 
                     // request the creation of the report
-                    produceExport(key);
+                    produceExport(key, format, descriptions);
                 }
             };
 
@@ -0,0 +1,241 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.exporters.XlsxExporter;
+import fr.cnes.sonar.plugins.export.report.factory.ProfileFactory;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.providers.AbstractDataProvider;
+import fr.cnes.sonar.plugins.export.report.providers.QualityProfileProvider;
+import fr.cnes.sonar.plugins.export.report.providers.RuleCache;
+import fr.cnes.sonar.plugins.export.tasks.BatchTask;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the BatchTask class
+ * Also compare the size of the responses with separate exports.
+ * @author lequal
+ */
+public class BatchTaskTest {
+
+    /**
+     * Number of rules in the stubbed profiles
+     */
+    private static final int RULES = 1800;
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+
+    /**
+     * Start a stubbed server before each test
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(RULES);
+        server.start();
+    }
+
+    /**
+     * Stop the stubbed server after each test
+     */
+    @After
+    public void clean() {
+        server.stop();
+    }
+
+    /**
+     * Assert that each profile has its csv in the archive
+     * and that metadata of rules is requested once for all profiles
+     * @throws Exception on export failure
+     */
+    @Test
+    public void sharedMetadataTest() throws Exception {
+        final CsvExporter exporter = new CsvExporter();
+        final List<String> keys = Arrays.asList(SonarQubeStub.PROFILES);
+
+        // separate exports
+        long start = SonarQubeStub.getBytesSent();
+        for (String key : keys) {
+            new QualityProfileProvider(server.getUrl()).getQualityProfile(key, exporter.getFields());
+        }
+        final long separateBytes = SonarQubeStub.getBytesSent() - start;
+
+        // batch export
+        start = SonarQubeStub.getBytesSent();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new BatchTask(server.getUrl()).export(keys, exporter, output);
+        final long batchBytes = SonarQubeStub.getBytesSent() - start;
+
+        final List<String> entries = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.add(entry.getName());
+                final String profile = entry.getName().replace(".csv", "");
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(zip, StandardCharsets.UTF_8));
+                // header
+                reader.readLine();
+                for (int i = 0; i < RULES; i++) {
+                    final String[] row = reader.readLine().split(";");
+                    assertEquals(SonarQubeStub.ruleKey(i), row[0]);
+                    assertEquals("Rule number " + i, row[1]);
+                    assertEquals(SonarQubeStub.severity(profile, i), row[4]);
+                }
+            }
+        }
+        assertEquals(Arrays.asList("profile-a.csv", "profile-b.csv", "other-profile.csv"), entries);
+        assertTrue(batchBytes < separateBytes);
+    }
+
+    /**
+     * Assert that all profiles of a language are exported in sheets of a single workbook
+     * @throws Exception on export failure
+     */
+    @Test
+    public void languageWorkbookTest() throws Exception {
+        final BatchTask task = new BatchTask(server.getUrl());
+        final List<String> keys = task.getProfileKeys(null, "java");
+        assertEquals(Arrays.asList(SonarQubeStub.PROFILES), keys);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        task.export(keys, new XlsxExporter(), output);
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))) {
+            assertEquals(3, workbook.getNumberOfSheets());
+            assertEquals(RULES, workbook.getSheet("profile-b").getLastRowNum());
+            assertEquals(SonarQubeStub.severity("profile-b", 42),
+                    workbook.getSheet("profile-b").getRow(43).getCell(4).getStringCellValue());
+        }
+    }
+
+    /**
+     * Assert that an export without profiles is rejected
+     * @throws Exception on the expected error
+     */
+    @Test(expected = BadSonarQubeRequestException.class)
+    public void noProfileTest() throws Exception {
+        new BatchTask(server.getUrl()).getProfileKeys(null, "cobol");
+    }
+
+    /**
+     * Assert that simultaneous profiles share the threads of a single export
+     * Threads are sampled during the export: their number must stay within the configured budget.
+     * @throws Exception on export failure
+     */
+    @Test
+    public void threadBudgetTest() throws Exception {
+        final int budget = Integer.parseInt(AbstractDataProvider.getRequest("BATCH_CONCURRENCY").trim())
+                + Integer.parseInt(AbstractDataProvider.getRequest("FETCH_CONCURRENCY").trim())
+                + Integer.parseInt(AbstractDataProvider.getRequest("PAGES_IN_FLIGHT").trim());
+        // threads left by previous tests are not counted
+        final Set<Thread> previous = new HashSet<>(Thread.getAllStackTraces().keySet());
+        final AtomicInteger peak = new AtomicInteger();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                int threads = 0;
+                for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                    if (thread.getName().startsWith("cnesexport-") && !previous.contains(thread)) {
+                        threads++;
+                    }
+                }
+                peak.accumulateAndGet(threads, Math::max);
+                Thread.yield();
+            }
+        });
+        sampler.start();
+        try {
+            new BatchTask(server.getUrl()).export(Arrays.asList(SonarQubeStub.PROFILES),
+                    new CsvExporter(), new ByteArrayOutputStream());
+        } finally {
+            running.set(false);
+            sampler.join();
+        }
+        assertTrue(peak.get() > 0);
+        assertTrue(peak.get() <= budget);
+    }
+
+    /**
+     * Assert that each profile of a batch of 4 still requests several pages at the same time
+     * @throws Exception on export failure
+     */
+    @Test
+    public void sharedPagesTest() throws Exception {
+        server.setMaxPageSize(100);
+        server.setSearchLatency(20);
+        final List<String> keys = new ArrayList<>(Arrays.asList(SonarQubeStub.PROFILES));
+        // any other key is a profile with the same rules
+        keys.add("profile-d");
+
+        final List<QualityProfile> profiles = new ProfileFactory(server.getUrl())
+                .createAll(keys, new CsvExporter().getFields());
+        for (QualityProfile profile : profiles) {
+            assertEquals(RULES, profile.getRuleList().size());
+            profile.close();
+        }
+        assertTrue(server.getPeakSearches() > 1);
+    }
+
+    /**
+     * Assert that the profiles received before a failure of the batch are closed
+     * @throws Exception on unexpected failure
+     */
+    @Test
+    public void failedProfileTest() throws Exception {
+        final AtomicInteger closed = new AtomicInteger();
+        final ProfileFactory factory = new ProfileFactory(server.getUrl()) {
+            @Override
+            protected QualityProfileProvider newProvider() {
+                return new QualityProfileProvider(server.getUrl()) {
+                    @Override
+                    public QualityProfile getQualityProfile(final String profileKey, final RuleCache cache)
+                            throws IOException, BadSonarQubeRequestException {
+                        final QualityProfile profile = super.getQualityProfile(profileKey, cache);
+                        return new QualityProfile(profile.getRuleList()) {
+                            @Override
+                            public void close() throws IOException {
+                                closed.incrementAndGet();
+                                profile.close();
+                            }
+                        };
+                    }
+                };
+            }
+        };
+        final List<String> keys = new ArrayList<>(Arrays.asList(SonarQubeStub.PROFILES));
+        keys.add(SonarQubeStub.UNKNOWN_PROFILE);
+        try {
+            factory.createAll(keys, new CsvExporter().getFields());
+            fail("The unknown profile must fail the batch.");
+        } catch (BadSonarQubeRequestException e) {
+            assertTrue(e.getMessage().contains(SonarQubeStub.UNKNOWN_PROFILE));
+        }
+        assertEquals(SonarQubeStub.PROFILES.length, closed.get());
+    }
+}
@@ -0,0 +1,86 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.CircuitOpenException;
+import fr.cnes.sonar.plugins.export.report.providers.CircuitBreaker;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the CircuitBreaker class
+ * @author lequal
+ */
+public class CircuitBreakerTest {
+
+    /**
+     * Assert that the circuit opens after consecutive failures only
+     * @throws Exception on unexpected rejection
+     */
+    @Test
+    public void openTest() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker("server", 3, 60000);
+        for (int i = 0; i < 2; i++) {
+            breaker.acquire();
+            breaker.onFailure();
+        }
+        // a success resets the count
+        breaker.acquire();
+        breaker.onSuccess();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+            breaker.acquire();
+            breaker.onFailure();
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        try {
+            breaker.acquire();
+            fail("The circuit should be open");
+        } catch (CircuitOpenException e) {
+            assertEquals("server failed 3 times in a row, requests are suspended", e.getMessage());
+        }
+    }
+
+    /**
+     * Assert that a single trial request is let through once the open time elapsed
+     * @throws Exception on unexpected rejection
+     */
+    @Test
+    public void halfOpenTest() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker("server", 1, 50);
+        breaker.acquire();
+        breaker.onFailure();
+        Thread.sleep(60);
+
+        // a failed trial opens the circuit again
+        breaker.acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertRejected(breaker);
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertRejected(breaker);
+        Thread.sleep(60);
+
+        // a cancelled trial lets the next request try
+        breaker.acquire();
+        breaker.onCancel();
+        breaker.acquire();
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.acquire();
+    }
+
+    /**
+     * Assert that a breaker rejects requests
+     * @param breaker the breaker
+     */
+    private static void assertRejected(final CircuitBreaker breaker) {
+        try {
+            breaker.acquire();
+            fail("The request should be rejected");
+        } catch (CircuitOpenException e) {
+            assertEquals(CircuitOpenException.class, e.getClass());
+        }
+    }
+}
@@ -39,7 +39,7 @@ public class CnesExportPluginTest {
         final SonarRuntime runtime = SonarRuntimeImpl.forSonarQube(Version.create(6,3), SonarQubeSide.SERVER);
         final Plugin.Context context = new Plugin.Context(runtime);
         cnesExportPlugin.define(context);
-        assertEquals(2, context.getExtensions().size());
+        assertEquals(3, context.getExtensions().size());
     }
 
 }
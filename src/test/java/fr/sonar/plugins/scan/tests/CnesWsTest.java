@@ -41,7 +41,7 @@ public class CnesWsTest {
         assertNotNull(controller);
         assertEquals("api/cnesexport", controller.path());
         assertFalse(controller.description().isEmpty());
-        assertEquals(1, controller.actions().size());
+        assertEquals(7, controller.actions().size());
     }
 
     /**
@@ -55,4 +55,64 @@ public class CnesWsTest {
         assertEquals("export", getTree.key());
         assertEquals(1, getTree.params().size());
     }
+
+    /**
+     * Check download web service
+     * Assert that the key and parameters' number is correct
+     */
+    @Test
+    public void downloadWebServiceTest() {
+        final WebService.Action download = controller.action("download");
+        assertNotNull(download);
+        assertEquals("download", download.key());
+        assertEquals(4, download.params().size());
+    }
+
+    /**
+     * Check batch web service
+     * Assert that the key and parameters' number is correct
+     */
+    @Test
+    public void batchWebServiceTest() {
+        final WebService.Action batch = controller.action("batch");
+        assertNotNull(batch);
+        assertEquals("batch", batch.key());
+        assertEquals(4, batch.params().size());
+    }
+
+    /**
+     * Check start and status web services
+     * Assert that the key and parameters' number is correct
+     */
+    @Test
+    public void jobWebServicesTest() {
+        final WebService.Action start = controller.action("start");
+        assertNotNull(start);
+        assertEquals(3, start.params().size());
+        final WebService.Action status = controller.action("status");
+        assertNotNull(status);
+        assertEquals(1, status.params().size());
+    }
+
+    /**
+     * Check metrics web service
+     * Assert that the key and parameters' number is correct
+     */
+    @Test
+    public void metricsWebServiceTest() {
+        final WebService.Action metrics = controller.action("metrics");
+        assertNotNull(metrics);
+        assertEquals(0, metrics.params().size());
+    }
+
+    /**
+     * Check diff web service
+     * Assert that the key and parameters' number is correct
+     */
+    @Test
+    public void diffWebServiceTest() {
+        final WebService.Action diff = controller.action("diff");
+        assertNotNull(diff);
+        assertEquals(2, diff.params().size());
+    }
 }
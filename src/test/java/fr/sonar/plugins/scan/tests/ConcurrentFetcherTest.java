@@ -0,0 +1,159 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.providers.ConcurrentFetcher;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the ConcurrentFetcher class
+ * @author lequal
+ */
+public class ConcurrentFetcherTest {
+
+    /**
+     * Assert that results are given in the order of the requests
+     * whatever their completion order
+     * @throws Exception on failure
+     */
+    @Test
+    public void deterministicOrderTest() throws Exception {
+        final List<ConcurrentFetcher.Fetch<Integer>> fetches = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            final int value = i;
+            fetches.add(() -> {
+                sleep((50 - value) % 7);
+                return value;
+            });
+        }
+
+        try (ConcurrentFetcher fetcher = new ConcurrentFetcher(8, 0)) {
+            final List<Integer> results = fetcher.fetchAll(fetches);
+            for (int i = 0; i < 50; i++) {
+                assertEquals(Integer.valueOf(i), results.get(i));
+            }
+        }
+    }
+
+    /**
+     * Assert that no more requests than the concurrency level run at the same time
+     * @throws Exception on failure
+     */
+    @Test
+    public void boundedConcurrencyTest() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maximum = new AtomicInteger();
+        final List<ConcurrentFetcher.Fetch<Integer>> fetches = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            fetches.add(() -> {
+                maximum.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(5);
+                return running.decrementAndGet();
+            });
+        }
+
+        try (ConcurrentFetcher fetcher = new ConcurrentFetcher(3, 0)) {
+            fetcher.fetchAll(fetches);
+        }
+        assertTrue(maximum.get() <= 3);
+    }
+
+    /**
+     * Assert that the rate limit spaces out the requests
+     * @throws Exception on failure
+     */
+    @Test
+    public void rateLimitTest() throws Exception {
+        final List<ConcurrentFetcher.Fetch<Integer>> fetches = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            fetches.add(() -> 0);
+        }
+
+        final long start = System.nanoTime();
+        try (ConcurrentFetcher fetcher = new ConcurrentFetcher(4, 50)) {
+            fetcher.fetchAll(fetches);
+        }
+        // 10 intervals of 20 ms
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 190);
+    }
+
+    /**
+     * Assert that a failure cancels the remaining requests
+     * @throws Exception on failure
+     */
+    @Test
+    public void failureCancelsTest() throws Exception {
+        final AtomicInteger done = new AtomicInteger();
+        final List<ConcurrentFetcher.Fetch<Integer>> fetches = new ArrayList<>();
+        fetches.add(() -> {
+            throw new BadSonarQubeRequestException("rejected");
+        });
+        for (int i = 0; i < 20; i++) {
+            fetches.add(() -> {
+                sleep(50);
+                return done.incrementAndGet();
+            });
+        }
+
+        try (ConcurrentFetcher fetcher = new ConcurrentFetcher(2, 0)) {
+            fetcher.fetchAll(fetches);
+            fail("The failure must be thrown.");
+        } catch (BadSonarQubeRequestException e) {
+            assertEquals("rejected", e.getMessage());
+        }
+        sleep(200);
+        assertTrue(done.get() < 20);
+    }
+
+    /**
+     * Assert that closing waits for the running requests to stop
+     * @throws Exception on failure
+     */
+    @Test
+    public void closeWaitsTest() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final ConcurrentFetcher fetcher = new ConcurrentFetcher(1, 0);
+        fetcher.submit(() -> {
+            started.countDown();
+            try {
+                sleep(5000);
+            } catch (IOException e) {
+                // stopped by close, slow to release its resources
+                Thread.interrupted();
+                sleep(100);
+            } finally {
+                stopped.set(true);
+            }
+            return 0;
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        fetcher.close();
+        assertTrue(stopped.get());
+    }
+
+    /**
+     * Sleep without checked exception on interruption
+     * @param millis time to sleep
+     * @throws IOException if interrupted
+     */
+    private static void sleep(final long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+}
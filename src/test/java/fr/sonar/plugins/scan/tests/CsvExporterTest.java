@@ -0,0 +1,82 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.exporters.ProfileWriter;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for the CsvExporter class
+ * @author lequal
+ */
+public class CsvExporterTest {
+
+    /**
+     * Profile to export
+     */
+    private QualityProfile profile;
+
+    /**
+     * Prepare a profile of a few rules
+     */
+    @Before
+    public void prepare() {
+        final Rule[] rules = new Rule[3];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = new Rule();
+            rules[i].setKey(SonarQubeStub.ruleKey(i));
+            rules[i].setName("Rule number " + i);
+            rules[i].setLangName("Java");
+            rules[i].setRepo("squid");
+            rules[i].setActiveSeverity(SonarQubeStub.severity("profile-a", i));
+            rules[i].setType("BUG");
+        }
+        profile = new QualityProfile(rules);
+        profile.setKey("profile-a");
+    }
+
+    /**
+     * Assert that the streamed csv is the same as the one built in memory
+     * @throws IOException on writing error
+     */
+    @Test
+    public void streamedCsvTest() throws IOException {
+        final CsvExporter exporter = new CsvExporter();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        final ProfileWriter writer = exporter.newWriter(output);
+        writer.startProfile(profile.getKey());
+        for (Rule rule : profile.getRules()) {
+            writer.write(rule);
+        }
+        writer.endProfile();
+        writer.finish();
+
+        assertEquals(exporter.export(profile), new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Assert that a name containing separators stays in its column
+     */
+    @Test
+    public void escapedNameTest() {
+        final Rule[] rules = profile.getRules();
+        rules[1].setName("Avoid \"a;b\"\nin names");
+        profile.setRules(rules);
+
+        // rows end with CRLF, the line break of the name stays in its field
+        final String[] lines = new CsvExporter(';', false).export(profile).split("\r\n");
+        assertEquals("Key;Name;Language;Repository;Severity;Type", lines[0]);
+        assertEquals(SonarQubeStub.ruleKey(1) + ";\"Avoid \"\"a;b\"\"\nin names\";Java;squid;"
+                + rules[1].getActiveSeverity() + ";BUG", lines[2]);
+        assertEquals(profile.toString(), new CsvExporter(';', false).export(profile));
+    }
+}
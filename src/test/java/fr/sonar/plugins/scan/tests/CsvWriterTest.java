@@ -0,0 +1,78 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.exporters.CsvWriter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for the CsvWriter class
+ * @author lequal
+ */
+public class CsvWriterTest {
+
+    /**
+     * Write a row of values in a string
+     * @param delimiter separator of the fields
+     * @param values values of the row
+     * @return the written row
+     * @throws IOException on writing error
+     */
+    private static String row(final char delimiter, final CharSequence... values) throws IOException {
+        final StringWriter output = new StringWriter();
+        final CsvWriter csv = new CsvWriter(output, delimiter, false);
+        csv.row(values);
+        csv.flush();
+        return output.toString();
+    }
+
+    /**
+     * Assert that only the fields with special characters are quoted
+     * @throws IOException on writing error
+     */
+    @Test
+    public void quotingTest() throws IOException {
+        assertEquals("a;b c;;\r\n", row(';', "a", "b c", "", null));
+        assertEquals("\"a;b\";\"say \"\"hi\"\"\";\"two\nlines\";\"cr\r\"\r\n",
+                row(';', "a;b", "say \"hi\"", "two\nlines", "cr\r"));
+        // the separator of another delimiter is not special
+        assertEquals("a;b,\"c,d\"\r\n", row(',', "a;b", "c,d"));
+    }
+
+    /**
+     * Assert that values larger than the buffer are written entirely
+     * @throws IOException on writing error
+     */
+    @Test
+    public void largeValuesTest() throws IOException {
+        final StringBuilder plain = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            plain.append((char) ('a' + i % 26));
+        }
+        final String quoted = plain.toString().replace('z', ';');
+        final String expected = plain + ";\"" + quoted + "\";" + plain + "\r\n";
+
+        assertEquals(expected, row(';', plain.toString(), quoted, plain));
+    }
+
+    /**
+     * Assert that streams are encoded in UTF-8 after an optional byte order mark
+     * @throws IOException on writing error
+     */
+    @Test
+    public void bomTest() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final CsvWriter csv = new CsvWriter(output, '\t', true);
+        csv.row("\u00e9", "x");
+        csv.close();
+
+        assertArrayEquals(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, (byte) 0xC3, (byte) 0xA9,
+            '\t', 'x', '\r', '\n'}, output.toByteArray());
+    }
+}
@@ -0,0 +1,138 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.factory.ProfileFactory;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.report.providers.DataBackend;
+import fr.cnes.sonar.plugins.export.report.providers.LocalBackend;
+import fr.cnes.sonar.plugins.export.report.providers.RemoteBackend;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.server.ws.LocalConnector;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test for the remote and local backends
+ * @author lequal
+ */
+public class DataBackendTest {
+
+    /**
+     * Number of rules in the stubbed profiles
+     */
+    private static final int RULES = 1800;
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+
+    /**
+     * Start a stubbed server before each test
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(RULES);
+        server.start();
+    }
+
+    /**
+     * Stop the stubbed server after each test
+     */
+    @After
+    public void clean() {
+        server.stop();
+    }
+
+    /**
+     * Assert that both backends give the same profile
+     * Their durations are compared by BackendBenchmark.
+     * @throws Exception on export failure
+     */
+    @Test
+    public void sameExportTest() throws Exception {
+        final QualityProfile remoteProfile = export(new RemoteBackend(server.getUrl()));
+        final QualityProfile localProfile = export(new LocalBackend(server.getConnector()));
+
+        assertSameRules(remoteProfile, localProfile);
+    }
+
+    /**
+     * Assert that the local connector is only called by the thread of the request,
+     * even when the rules are fetched one by one or several profiles are exported
+     * @throws Exception on export failure
+     */
+    @Test
+    public void callingThreadTest() throws Exception {
+        server.setBulkActivesSupported(false);
+        final Thread caller = Thread.currentThread();
+        final LocalConnector connector = server.getConnector();
+        final ProfileFactory factory = new ProfileFactory(new LocalBackend(request -> {
+            assertSame(caller, Thread.currentThread());
+            return connector.call(request);
+        }));
+
+        final List<String> keys = Arrays.asList(SonarQubeStub.PROFILES);
+        final List<QualityProfile> profiles = factory.createAll(keys, new CsvExporter().getFields());
+        assertEquals(keys.size(), profiles.size());
+        for (QualityProfile profile : profiles) {
+            final Rule[] rules = profile.getRules();
+            assertEquals(RULES, rules.length);
+            assertEquals(SonarQubeStub.severity(profile.getKey(), 0), rules[0].getActiveSeverity());
+        }
+    }
+
+    /**
+     * Assert that the url of the server is read in SonarQube's settings
+     */
+    @Test
+    public void baseUrlTest() {
+        final MapSettings settings = new MapSettings();
+        assertEquals("http://localhost:9000", RemoteBackend.baseUrl(settings.asConfig()));
+
+        settings.setProperty("sonar.web.host", "0.0.0.0");
+        settings.setProperty("sonar.web.port", "9100");
+        settings.setProperty("sonar.web.context", "/sonar/");
+        assertEquals("http://localhost:9100/sonar", RemoteBackend.baseUrl(settings.asConfig()));
+
+        settings.setProperty(RemoteBackend.URL_PROPERTY, "https://sonar.example.org/");
+        assertEquals("https://sonar.example.org", RemoteBackend.baseUrl(settings.asConfig()));
+    }
+
+    /**
+     * Export a profile with the fields of the csv
+     * @param backend access to the server
+     * @return the exported profile
+     * @throws Exception on export failure
+     */
+    private static QualityProfile export(final DataBackend backend) throws Exception {
+        return new ProfileFactory(backend).create(SonarQubeStub.PROFILES[0], new CsvExporter().getFields());
+    }
+
+    /**
+     * Assert that two exports have the same rules
+     * @param expected export through http
+     * @param actual export in-process
+     */
+    private static void assertSameRules(final QualityProfile expected, final QualityProfile actual) {
+        assertEquals(expected.getRules().length, actual.getRules().length);
+        for (int i = 0; i < expected.getRules().length; i++) {
+            final Rule rule = expected.getRules()[i];
+            final Rule other = actual.getRules()[i];
+            assertEquals(rule.getKey(), other.getKey());
+            assertEquals(rule.getName(), other.getName());
+            assertEquals(rule.getActiveSeverity(), other.getActiveSeverity());
+            assertEquals(rule.getType(), other.getType());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.cache.ExportCache;
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
+import fr.cnes.sonar.plugins.export.report.diff.ProfileDiff;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.factory.ProfileFactory;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.tasks.DiffTask;
+import fr.cnes.sonar.plugins.export.tasks.DownloadTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the comparison of profiles
+ * Also measure the comparison of two large profiles.
+ * @author lequal
+ */
+public class DiffTaskTest {
+
+    /**
+     * Number of rules in the stubbed profiles
+     */
+    private static final int RULES = 1800;
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+
+    /**
+     * Start a stubbed server before each test
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(RULES);
+        server.start();
+        ExportCache.getInstance().clear();
+        ProfileSnapshots.getInstance().clear();
+    }
+
+    /**
+     * Stop the stubbed server after each test
+     */
+    @After
+    public void clean() {
+        server.stop();
+    }
+
+    /**
+     * Assert that added, removed and changed rules are found in any order
+     */
+    @Test
+    public void compareTest() {
+        final List<Rule> before = new ArrayList<>();
+        final List<Rule> after = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            before.add(rule(i, "MAJOR"));
+            after.add(rule(i + 2, i == 5 ? "BLOCKER" : "MAJOR"));
+        }
+        Collections.reverse(after);
+
+        final ProfileDiff diff = ProfileDiff.compare(before, after);
+        assertEquals(2, diff.getRemoved().size());
+        assertEquals(SonarQubeStub.ruleKey(0), diff.getRemoved().get(0).getKey());
+        assertEquals(SonarQubeStub.ruleKey(1), diff.getRemoved().get(1).getKey());
+        assertEquals(2, diff.getAdded().size());
+        assertEquals(SonarQubeStub.ruleKey(10), diff.getAdded().get(0).getKey());
+        assertEquals(SonarQubeStub.ruleKey(11), diff.getAdded().get(1).getKey());
+        assertEquals(1, diff.getChanged().size());
+        assertEquals("MAJOR", diff.getChanged().get(0).getBefore().getActiveSeverity());
+        assertEquals("BLOCKER", diff.getChanged().get(0).getAfter().getActiveSeverity());
+        assertTrue(ProfileDiff.compare(before, before).isEmpty());
+    }
+
+    /**
+     * Assert that two profiles of the server are compared rule by rule
+     * @throws Exception on export failure
+     */
+    @Test
+    public void profilesTest() throws Exception {
+        final String first = SonarQubeStub.PROFILES[0];
+        final String second = SonarQubeStub.PROFILES[1];
+        final ProfileDiff diff = new DiffTask(server.getUrl())
+                .diff(new ProfileFactory(server.getUrl()), first, second);
+
+        int changed = 0;
+        for (int i = 0; i < RULES; i++) {
+            if (!SonarQubeStub.severity(first, i).equals(SonarQubeStub.severity(second, i))) {
+                changed++;
+            }
+        }
+        assertEquals(changed, diff.getChanged().size());
+        assertTrue(diff.getAdded().isEmpty());
+        assertTrue(diff.getRemoved().isEmpty());
+    }
+
+    /**
+     * Assert that a profile is compared with its last export
+     * @throws Exception on export failure
+     */
+    @Test
+    public void snapshotTest() throws Exception {
+        final String profileKey = SonarQubeStub.PROFILES[0];
+        new DownloadTask(server.getUrl()).export(profileKey, new CsvExporter(), new ByteArrayOutputStream(),
+                rule -> { });
+        final ProfileSnapshots.Snapshot snapshot = ProfileSnapshots.getInstance().get(profileKey);
+        assertNotNull(snapshot);
+        assertEquals(RULES, snapshot.getRules().size());
+
+        final DiffTask task = new DiffTask(server.getUrl());
+        final ProfileFactory factory = new ProfileFactory(server.getUrl());
+        assertTrue(task.diff(factory, snapshot).isEmpty());
+
+        // an older export without the first rule and another severity for the second one
+        final List<Rule> older = new ArrayList<>(snapshot.getRules().subList(1, RULES));
+        older.set(0, rule(1, "INFO"));
+        ProfileSnapshots.getInstance().put(profileKey, "older", snapshot.getFields(), older);
+        final ProfileDiff diff = task.diff(factory, ProfileSnapshots.getInstance().get(profileKey));
+        assertEquals(1, diff.getAdded().size());
+        assertEquals(SonarQubeStub.ruleKey(0), diff.getAdded().get(0).getKey());
+        assertEquals(1, diff.getChanged().size());
+        assertEquals("INFO", diff.getChanged().get(0).getBefore().getActiveSeverity());
+    }
+
+    /**
+     * Assert that the changes of two large profiles are all found
+     */
+    @Test
+    public void largeCompareTest() {
+        final int rules = 50000;
+        final List<Rule> before = new ArrayList<>(rules);
+        final List<Rule> after = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) {
+            before.add(rule(i, "MAJOR"));
+            after.add(rule(i, i % 100 == 0 ? "MINOR" : "MAJOR"));
+        }
+        Collections.sort(before, ProfileSnapshots.BY_KEY);
+        Collections.sort(after, ProfileSnapshots.BY_KEY);
+
+        final ProfileDiff diff = ProfileDiff.compare(before, after);
+        assertEquals(rules / 100, diff.getChanged().size());
+    }
+
+    /**
+     * Create a rule
+     * @param index index of the rule
+     * @param severity active severity of the rule
+     * @return the rule
+     */
+    private static Rule rule(final int index, final String severity) {
+        final Rule rule = SonarQubeStub.rule("profile-a", index);
+        rule.setActiveSeverity(severity);
+        return rule;
+    }
+}
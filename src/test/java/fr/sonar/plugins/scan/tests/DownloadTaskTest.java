@@ -0,0 +1,276 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.report.cache.ExportCache;
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.tasks.DownloadTask;
+import fr.cnes.sonar.plugins.export.tasks.StartTask;
+import fr.cnes.sonar.plugins.export.utils.StringManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.internal.SimpleGetRequest;
+import org.sonar.api.utils.text.JsonWriter;
+import org.sonar.api.utils.text.XmlWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the compression of the files of the DownloadTask class
+ * @author lequal
+ */
+public class DownloadTaskTest {
+
+    /**
+     * Key of the downloaded profile
+     */
+    private static final String PROFILE = "profile-a";
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+
+    /**
+     * Start a stubbed server before each test
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(1800);
+        server.start();
+        ExportCache.getInstance().clear();
+        ProfileSnapshots.getInstance().clear();
+        Metrics.getInstance().reset();
+    }
+
+    /**
+     * Stop the stubbed server after each test
+     */
+    @After
+    public void clean() {
+        server.stop();
+    }
+
+    /**
+     * Request the download of a profile
+     * @param format format of the file
+     * @param acceptEncoding value of the Accept-Encoding header, null for none
+     * @return the response
+     * @throws Exception on export error
+     */
+    private FakeResponse download(final String format, final String acceptEncoding) throws Exception {
+        final FakeResponse response = new FakeResponse();
+        download(PROFILE, format, acceptEncoding, response);
+        return response;
+    }
+
+    /**
+     * Request the download of a given profile
+     * @param profileKey key of the profile
+     * @param format format of the file
+     * @param acceptEncoding value of the Accept-Encoding header, null for none
+     * @param response response receiving the file
+     * @throws Exception on export error
+     */
+    private void download(final String profileKey, final String format, final String acceptEncoding,
+                          final FakeResponse response) throws Exception {
+        final SimpleGetRequest request = new SimpleGetRequest()
+                .setParam(StringManager.string(StringManager.CNES_ACTION_EXPORT_PARAM_KEY_NAME), profileKey)
+                .setParam(StringManager.string(StringManager.DOWNLOAD_PARAM_FORMAT_NAME), format)
+                .setParam(StringManager.string(StringManager.DOWNLOAD_PARAM_DESCRIPTIONS_NAME), "false");
+        if (acceptEncoding != null) {
+            request.setHeader("Accept-Encoding", acceptEncoding);
+        }
+        new DownloadTask(server.getUrl()).handle(request, response);
+    }
+
+    /**
+     * Assert that a large csv file is compressed for a browser accepting gzip
+     * @throws Exception on export error
+     */
+    @Test
+    public void compressedCsvTest() throws Exception {
+        final byte[] plain = download(CsvExporter.FORMAT, null).output.toByteArray();
+        final FakeResponse response = download(CsvExporter.FORMAT, "deflate, gzip;q=0.8");
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        final byte[] compressed = response.output.toByteArray();
+        assertTrue(compressed.length < plain.length / 4);
+        final ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            final byte[] buffer = new byte[4096];
+            for (int n = input.read(buffer); n >= 0; n = input.read(buffer)) {
+                decompressed.write(buffer, 0, n);
+            }
+        }
+        assertArrayEquals(plain, decompressed.toByteArray());
+        assertEquals(1, Metrics.getInstance().getCount(Metrics.DOWNLOAD_COMPRESSED));
+        assertEquals(plain.length - compressed.length, Metrics.getInstance().getCount(Metrics.DOWNLOAD_BYTES_SAVED));
+    }
+
+    /**
+     * Assert that files are not compressed when gzip is refused or useless
+     * @throws Exception on export error
+     */
+    @Test
+    public void uncompressedTest() throws Exception {
+        assertNull(download(CsvExporter.FORMAT, null).getHeader("Content-Encoding"));
+        assertNull(download(CsvExporter.FORMAT, "gzip;q=0, deflate").getHeader("Content-Encoding"));
+        // xlsx files are already compressed
+        assertNull(download("xlsx", "gzip").getHeader("Content-Encoding"));
+        assertEquals(0, Metrics.getInstance().getCount(Metrics.DOWNLOAD_COMPRESSED));
+    }
+
+    /**
+     * Assert that the Accept-Encoding header is understood
+     */
+    @Test
+    public void acceptsGzipTest() {
+        assertTrue(DownloadTask.acceptsGzip("gzip"));
+        assertTrue(DownloadTask.acceptsGzip("deflate, GZIP ;q=0.5, br"));
+        assertFalse(DownloadTask.acceptsGzip(""));
+        assertFalse(DownloadTask.acceptsGzip("deflate, br"));
+        assertFalse(DownloadTask.acceptsGzip("gzip;q=0"));
+        assertFalse(DownloadTask.acceptsGzip("gzip;q=abc"));
+    }
+
+    /**
+     * Assert that the name of the file can not inject anything in the Content-Disposition header
+     * @throws Exception on encoding error
+     */
+    @Test
+    public void attachmentTest() throws Exception {
+        assertEquals("attachment; filename=\"profile-a.csv\"; filename*=UTF-8''profile-a.csv",
+                DownloadTask.attachment(PROFILE, CsvExporter.FORMAT));
+        assertEquals("attachment; filename=\"a__b_c_d_.csv\"; filename*=UTF-8''a%22%3Bb%0Dc%20d%C3%A9.csv",
+                DownloadTask.attachment("a\";b\rc d\u00e9", CsvExporter.FORMAT));
+    }
+
+    /**
+     * Assert that an unknown profile is reported as an error before the file is started
+     * @throws Exception on export error
+     */
+    @Test
+    public void unknownProfileTest() throws Exception {
+        final FakeResponse response = new FakeResponse();
+        try {
+            download(SonarQubeStub.UNKNOWN_PROFILE, CsvExporter.FORMAT, null, response);
+            fail("An unknown profile must not be downloaded");
+        } catch (BadSonarQubeRequestException e) {
+            assertTrue(e.getMessage().contains(SonarQubeStub.UNKNOWN_PROFILE));
+        }
+        assertFalse(response.streamed);
+        assertNull(response.getHeader("Content-Disposition"));
+    }
+
+    /**
+     * Assert that a server reading profiles inside the user's request starts no background export
+     * and asks for a synchronous download
+     * @throws Exception on request error
+     */
+    @Test
+    public void localStartTest() throws Exception {
+        final SimpleGetRequest request = new SimpleGetRequest()
+                .setParam(StringManager.string(StringManager.CNES_ACTION_EXPORT_PARAM_KEY_NAME), PROFILE)
+                .setParam(StringManager.string(StringManager.DOWNLOAD_PARAM_FORMAT_NAME), CsvExporter.FORMAT)
+                .setParam(StringManager.string(StringManager.DOWNLOAD_PARAM_DESCRIPTIONS_NAME), "false");
+        final FakeResponse response = new FakeResponse();
+        new StartTask(server.getUrl(), true).handle(request, response);
+
+        final String json = new String(response.output.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"synchronous\":true"));
+        assertFalse(json.contains("\"id\""));
+        assertEquals(0, server.getTotalCalls());
+    }
+
+    /**
+     * Response keeping its headers and content in memory
+     */
+    private static final class FakeResponse implements Response {
+        /**
+         * Headers of the response
+         */
+        private final Map<String, String> headers = new HashMap<>();
+        /**
+         * Content of the response
+         */
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        /**
+         * True once the content of the response is started
+         */
+        private boolean streamed;
+
+        @Override
+        public JsonWriter newJsonWriter() {
+            return JsonWriter.of(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public XmlWriter newXmlWriter() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Response noContent() {
+            return this;
+        }
+
+        @Override
+        public Response setHeader(final String name, final String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        @Override
+        public Collection<String> getHeaderNames() {
+            return headers.keySet();
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public Stream stream() {
+            streamed = true;
+            return new Stream() {
+                @Override
+                public Stream setMediaType(final String s) {
+                    return this;
+                }
+
+                @Override
+                public Stream setStatus(final int httpStatus) {
+                    return this;
+                }
+
+                @Override
+                public OutputStream output() {
+                    return output;
+                }
+            };
+        }
+    }
+}
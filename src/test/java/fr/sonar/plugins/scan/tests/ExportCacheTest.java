@@ -0,0 +1,163 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.cache.ExportCache;
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
+import fr.cnes.sonar.plugins.export.report.cache.RecordingOutputStream;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.exporters.XlsxExporter;
+import fr.cnes.sonar.plugins.export.tasks.DownloadTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the ExportCache class
+ * @author lequal
+ */
+public class ExportCacheTest {
+
+    /**
+     * Key of the exported profile
+     */
+    private static final String PROFILE = "profile-a";
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+
+    /**
+     * Start a stubbed server and empty the cache before each test
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(1800);
+        server.start();
+        ExportCache.getInstance().clear();
+        ProfileSnapshots.getInstance().clear();
+    }
+
+    /**
+     * Stop the stubbed server after each test
+     */
+    @After
+    public void clean() {
+        server.stop();
+        ExportCache.getInstance().clear();
+    }
+
+    /**
+     * Assert that files are evicted in least recently used order
+     */
+    @Test
+    public void evictionTest() {
+        final ExportCache cache = new ExportCache(2, 10);
+        cache.put("a", "v1", new byte[4]);
+        cache.put("b", "v1", new byte[4]);
+        // a becomes the most recently used
+        cache.get("a", "v1");
+        cache.put("c", "v1", new byte[1]);
+        assertNull(cache.get("b", "v1"));
+        assertEquals(2, cache.size());
+
+        // too many bytes: a is the least recently used
+        cache.put("d", "v1", new byte[8]);
+        assertNull(cache.get("a", "v1"));
+        assertEquals(9, cache.getBytes());
+
+        // bigger than the whole cache
+        cache.put("e", "v1", new byte[11]);
+        assertNull(cache.get("e", "v1"));
+    }
+
+    /**
+     * Assert that files larger than the limit per file are not cached
+     */
+    @Test
+    public void entryLimitTest() {
+        final ExportCache cache = new ExportCache(2, 10, 4);
+        assertEquals(4, cache.getMaxEntryBytes());
+        cache.put("a", "v1", new byte[5]);
+        assertNull(cache.get("a", "v1"));
+        cache.put("b", "v1", new byte[4]);
+        assertEquals(4, cache.getBytes());
+    }
+
+    /**
+     * Assert that the copy of a download stops once the limit is exceeded
+     * @throws IOException never, bytes are written in memory
+     */
+    @Test
+    public void recordingLimitTest() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final RecordingOutputStream recording = new RecordingOutputStream(output, 4);
+        recording.write(new byte[3], 0, 3);
+        assertEquals(3, recording.getRecord().length);
+        recording.write(new byte[2], 0, 2);
+        assertNull(recording.getRecord());
+        recording.write(1);
+        assertNull(recording.getRecord());
+        assertEquals(6, output.size());
+    }
+
+    /**
+     * Assert that a file of another version of its profile is removed
+     */
+    @Test
+    public void invalidationTest() {
+        final ExportCache cache = new ExportCache(2, 10);
+        cache.put("a", "v1", new byte[4]);
+        assertNull(cache.get("a", "v2"));
+        assertNull(cache.get("a", "v1"));
+        assertEquals(0, cache.getBytes());
+    }
+
+    /**
+     * Assert that an unchanged profile is downloaded again without requesting its rules
+     * @throws Exception on export failure
+     */
+    @Test
+    public void downloadTest() throws Exception {
+        final DownloadTask task = new DownloadTask(server.getUrl());
+
+        final ByteArrayOutputStream first = new ByteArrayOutputStream();
+        task.export(PROFILE, new CsvExporter(), first);
+        final int firstCalls = server.getTotalCalls();
+
+        final ByteArrayOutputStream second = new ByteArrayOutputStream();
+        task.export(PROFILE, new CsvExporter(), second);
+
+        // only the version of the profile is requested
+        assertEquals(firstCalls + 1, server.getTotalCalls());
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+
+        // another format is another file
+        task.export(PROFILE, new XlsxExporter(), new ByteArrayOutputStream());
+        assertEquals(2, ExportCache.getInstance().size());
+    }
+
+    /**
+     * Assert that a modified profile is exported again
+     * @throws Exception on export failure
+     */
+    @Test
+    public void modifiedProfileTest() throws Exception {
+        final DownloadTask task = new DownloadTask(server.getUrl());
+        task.export(PROFILE, new CsvExporter(), new ByteArrayOutputStream());
+        final int calls = server.getTotalCalls();
+
+        server.setRulesUpdatedAt(PROFILE, "2018-02-01T00:00:00+0000");
+        task.export(PROFILE, new CsvExporter(), new ByteArrayOutputStream());
+        assertTrue(server.getTotalCalls() > calls + 1);
+        assertEquals(1, ExportCache.getInstance().size());
+    }
+}
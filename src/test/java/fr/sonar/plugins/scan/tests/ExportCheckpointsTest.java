@@ -0,0 +1,219 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.report.cache.ExportCheckpoints;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.report.providers.QualityProfileProvider;
+import fr.cnes.sonar.plugins.export.report.providers.RuleHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the ExportCheckpoints class
+ * Exports failing halfway are resumed after their last received page.
+ * @author lequal
+ */
+public class ExportCheckpointsTest {
+
+    /**
+     * Number of rules in the stubbed profile
+     */
+    private static final int RULES = 1800;
+    /**
+     * Key of the exported profile
+     */
+    private static final String PROFILE = "profile-a";
+    /**
+     * Version of the exported profile
+     */
+    private static final String VERSION = "2018-01-01T00:00:00+0000";
+    /**
+     * Number of rules handled before the first export fails
+     */
+    private static final int FAILURE = 750;
+    /**
+     * Fields of the exported rules
+     */
+    private static final Set<String> FIELDS = new CsvExporter().getFields();
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+    /**
+     * Directory of the checkpoints
+     */
+    private Path directory;
+
+    /**
+     * Start a stubbed server giving pages of 100 rules and keep checkpoints in a new directory
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(RULES);
+        server.setMaxPageSize(100);
+        server.start();
+        directory = Files.createTempDirectory("checkpoints");
+        ExportCheckpoints.getInstance().setDirectory(directory);
+        Metrics.getInstance().reset();
+    }
+
+    /**
+     * Stop the stubbed server and remove the checkpoints after each test
+     * @throws IOException when the directory can not be removed
+     */
+    @After
+    public void clean() throws IOException {
+        server.stop();
+        ExportCheckpoints.getInstance().clear();
+        ExportCheckpoints.getInstance().setDirectory(null);
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * Assert that a failed export is resumed after its last handled page and that
+     * its checkpoint is removed once it succeeds
+     * @throws Exception on export failure
+     */
+    @Test
+    public void resumeTest() throws Exception {
+        failingExport(VERSION);
+        final int failedCalls = server.getCalls(SonarQubeStub.RULES_SEARCH);
+
+        final List<Rule> rules = export(VERSION);
+
+        checkRules(rules);
+        // the 7 pages handled before the failure are not requested again
+        assertEquals(RULES / 100 - 7, server.getCalls(SonarQubeStub.RULES_SEARCH) - failedCalls);
+        assertEquals(7, Metrics.getInstance().getCount(Metrics.RULES_PAGES_RESUMED));
+        assertEquals(0, files(directory).size());
+    }
+
+    /**
+     * Assert that nothing is resumed when the profile changed since the failure
+     * @throws Exception on export failure
+     */
+    @Test
+    public void otherVersionTest() throws Exception {
+        failingExport(VERSION);
+        final int failedCalls = server.getCalls(SonarQubeStub.RULES_SEARCH);
+
+        checkRules(export("2018-02-01T00:00:00+0000"));
+        assertEquals(RULES / 100, server.getCalls(SonarQubeStub.RULES_SEARCH) - failedCalls);
+        assertEquals(0, Metrics.getInstance().getCount(Metrics.RULES_PAGES_RESUMED));
+    }
+
+    /**
+     * Assert that a corrupted page is requested again with the following ones
+     * @throws Exception on export failure
+     */
+    @Test
+    public void corruptedPageTest() throws Exception {
+        failingExport(VERSION);
+        final int failedCalls = server.getCalls(SonarQubeStub.RULES_SEARCH);
+        final List<Path> checkpoints = files(directory);
+        assertEquals(1, checkpoints.size());
+        final List<Path> pages = files(checkpoints.get(0));
+        assertEquals(7, pages.size());
+        pages.sort(null);
+        Files.write(pages.get(4), "{\"total\":".getBytes(StandardCharsets.UTF_8));
+
+        checkRules(export(VERSION));
+        assertEquals(RULES / 100 - 4, server.getCalls(SonarQubeStub.RULES_SEARCH) - failedCalls);
+        assertEquals(4, Metrics.getInstance().getCount(Metrics.RULES_PAGES_RESUMED));
+    }
+
+    /**
+     * Assert that the same export running twice does not share its checkpoint
+     */
+    @Test
+    public void openedTest() {
+        final String exportId = ExportCheckpoints.exportId(PROFILE, VERSION, FIELDS);
+        try (ExportCheckpoints.Checkpoint checkpoint = ExportCheckpoints.getInstance().open(exportId)) {
+            assertFalse(checkpoint == null);
+            assertNull(ExportCheckpoints.getInstance().open(exportId));
+        }
+        try (ExportCheckpoints.Checkpoint checkpoint = ExportCheckpoints.getInstance().open(exportId)) {
+            assertFalse(checkpoint == null);
+        }
+    }
+
+    /**
+     * Export the profile with a handler failing in the middle
+     * @param version version of the profile
+     * @throws Exception on unexpected failure
+     */
+    private void failingExport(final String version) throws Exception {
+        final List<Rule> rules = new ArrayList<>();
+        try {
+            new QualityProfileProvider(server.getUrl()).forEachRule(PROFILE, FIELDS, version, new RuleHandler() {
+                @Override
+                public void handle(final Rule rule) throws IOException {
+                    if (rules.size() == FAILURE) {
+                        throw new IOException("Disk full");
+                    }
+                    rules.add(rule);
+                }
+            });
+            fail("The export should fail");
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getMessage());
+        }
+    }
+
+    /**
+     * Export the profile
+     * @param version version of the profile
+     * @return the rules of the profile
+     * @throws Exception on export failure
+     */
+    private List<Rule> export(final String version) throws Exception {
+        return new QualityProfileProvider(server.getUrl())
+                .getQualityProfile(PROFILE, FIELDS, version).getRuleList();
+    }
+
+    /**
+     * Check the rules of the stubbed profile and their active severities
+     * @param rules exported rules
+     */
+    private static void checkRules(final List<Rule> rules) {
+        assertEquals(RULES, rules.size());
+        for (int i = 0; i < RULES; i++) {
+            assertEquals(SonarQubeStub.ruleKey(i), rules.get(i).getKey());
+            assertEquals(SonarQubeStub.severity(PROFILE, i), rules.get(i).getActiveSeverity());
+        }
+    }
+
+    /**
+     * Files of a directory
+     * @param path the directory
+     * @return its files
+     * @throws IOException when the directory can not be read
+     */
+    private static List<Path> files(final Path path) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+}
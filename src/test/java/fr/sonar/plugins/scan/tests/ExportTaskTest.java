@@ -0,0 +1,111 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.cache.ExportCache;
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
+import fr.cnes.sonar.plugins.export.tasks.ExportContext;
+import fr.cnes.sonar.plugins.export.tasks.ExportTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the ExportTask class
+ * Run many simultaneous exports with the same handler.
+ * @author lequal
+ */
+public class ExportTaskTest {
+
+    /**
+     * Number of rules in the stubbed profiles
+     */
+    private static final int RULES = 600;
+    /**
+     * Number of simultaneous exports
+     */
+    private static final int EXPORTS = 24;
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+
+    /**
+     * Start a stubbed server before each test
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(RULES);
+        server.start();
+        ExportCache.getInstance().clear();
+        ProfileSnapshots.getInstance().clear();
+    }
+
+    /**
+     * Stop the stubbed server after each test
+     */
+    @After
+    public void clean() {
+        server.stop();
+        ExportCache.getInstance().clear();
+    }
+
+    /**
+     * Assert that each simultaneous export only contains its own profile
+     * @throws Exception on export failure
+     */
+    @Test
+    public void concurrentExportsTest() throws Exception {
+        // a single handler, as registered in the web service
+        final ExportTask task = new ExportTask(server.getUrl());
+        final CyclicBarrier barrier = new CyclicBarrier(EXPORTS);
+        final ExecutorService executor = Executors.newFixedThreadPool(EXPORTS);
+        final List<Future<ExportContext>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < EXPORTS; i++) {
+                final String profile = SonarQubeStub.PROFILES[i % SonarQubeStub.PROFILES.length];
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    return task.run(profile);
+                }));
+            }
+
+            for (int i = 0; i < EXPORTS; i++) {
+                final ExportContext context = futures.get(i).get();
+                final String profile = SonarQubeStub.PROFILES[i % SonarQubeStub.PROFILES.length];
+                assertEquals(profile, context.getProfileKey());
+                assertTrue(context.getStatus().isSuccess());
+                checkCsv(profile, context.getLogs());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Assert that a csv contains a single header and the rules of a profile
+     * @param profile key of the profile
+     * @param csv exported csv
+     */
+    private static void checkCsv(final String profile, final String csv) {
+        final String[] lines = csv.split("\n");
+        assertEquals(RULES + 1, lines.length);
+        assertTrue(lines[0].startsWith("Key;"));
+        for (int i = 0; i < RULES; i++) {
+            final String[] row = lines[i + 1].split(";");
+            assertEquals(SonarQubeStub.ruleKey(i), row[0]);
+            assertEquals(SonarQubeStub.severity(profile, i), row[4]);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.jobs.ExportJob;
+import fr.cnes.sonar.plugins.export.jobs.JobManager;
+import fr.cnes.sonar.plugins.export.report.cache.ExportCache;
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the JobManager class
+ * @author lequal
+ */
+public class JobManagerTest {
+
+    /**
+     * Number of rules in the stubbed profiles
+     */
+    private static final int RULES = 1800;
+    /**
+     * Maximum time (ms) to wait for an export
+     */
+    private static final long TIMEOUT = 30000;
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+    /**
+     * Tested manager
+     */
+    private JobManager manager;
+
+    /**
+     * Start a stubbed server before each test
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(RULES);
+        server.start();
+        ExportCache.getInstance().clear();
+        ProfileSnapshots.getInstance().clear();
+    }
+
+    /**
+     * Stop the stubbed server and the manager after each test
+     */
+    @After
+    public void clean() {
+        if (manager != null) {
+            manager.close();
+        }
+        server.stop();
+        ExportCache.getInstance().clear();
+    }
+
+    /**
+     * Assert that an export runs in background and reports its progress
+     * @throws Exception on export failure
+     */
+    @Test
+    public void progressTest() throws Exception {
+        manager = new JobManager(1, 1, TIMEOUT);
+        final ExportJob job = manager.submit("profile-a", new CsvExporter(), server.getUrl());
+        waitFor(job);
+
+        assertEquals(ExportJob.State.DONE, job.getState());
+        assertNull(job.getError());
+        assertEquals(4, job.getPages());
+        assertEquals(RULES, job.getRules());
+        assertEquals(RULES, job.getTotal());
+        final List<String> lines = Files.readAllLines(job.getFile(), StandardCharsets.UTF_8);
+        assertEquals(RULES + 1, lines.size());
+        assertEquals(job, manager.get(job.getId()));
+    }
+
+    /**
+     * Assert that a failed export gives its error
+     * @throws Exception on unexpected failure
+     */
+    @Test
+    public void failureTest() throws Exception {
+        manager = new JobManager(1, 1, TIMEOUT);
+        final ExportJob job = manager.submit(SonarQubeStub.UNKNOWN_PROFILE, new CsvExporter(), server.getUrl());
+        waitFor(job);
+
+        assertEquals(ExportJob.State.FAILED, job.getState());
+        assertEquals("No quality profile with key 'unknown-profile'", job.getError());
+        assertNull(job.getFile());
+    }
+
+    /**
+     * Assert that exports are rejected when the queue is full
+     * @throws Exception on unexpected failure
+     */
+    @Test
+    public void queueLimitTest() throws Exception {
+        manager = new JobManager(1, 1, TIMEOUT);
+        // one running, one waiting
+        manager.submit("profile-a", new CsvExporter(), server.getUrl());
+        manager.submit("profile-b", new CsvExporter(), server.getUrl());
+        try {
+            manager.submit("other-profile", new CsvExporter(), server.getUrl());
+            fail("The export must be rejected.");
+        } catch (BadSonarQubeRequestException e) {
+            assertEquals("Too many exports are running, please try again later.", e.getMessage());
+        }
+    }
+
+    /**
+     * Assert that expired exports are forgotten with their files
+     * @throws Exception on unexpected failure
+     */
+    @Test
+    public void purgeTest() throws Exception {
+        manager = new JobManager(1, 1, 0);
+        final ExportJob job = manager.submit("profile-a", new CsvExporter(), server.getUrl());
+        waitFor(job);
+        final Path file = job.getFile();
+        Thread.sleep(10);
+
+        try {
+            manager.get(job.getId());
+            fail("The export must be expired.");
+        } catch (BadSonarQubeRequestException e) {
+            assertFalse(Files.exists(file));
+        }
+    }
+
+    /**
+     * Assert that an export expiring while it is downloaded keeps its file until the download ends
+     * @throws Exception on unexpected failure
+     */
+    @Test
+    public void purgeWhileDownloadingTest() throws Exception {
+        manager = new JobManager(1, 1, 0);
+        final ExportJob job = manager.submit("profile-a", new CsvExporter(), server.getUrl());
+        waitFor(job);
+        final Path file = job.getFile();
+
+        try (InputStream input = job.openFile()) {
+            Thread.sleep(10);
+            manager.purge();
+            assertNull(job.getFile());
+            assertTrue(Files.exists(file));
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            int lines = 0;
+            while (reader.readLine() != null) {
+                lines++;
+            }
+            assertEquals(RULES + 1, lines);
+        }
+        assertFalse(Files.exists(file));
+        assertNull(job.openFile());
+    }
+
+    /**
+     * Wait for the end of an export
+     * @param job the export
+     * @throws InterruptedException when interrupted
+     */
+    private static void waitFor(final ExportJob job) throws InterruptedException {
+        final long limit = System.currentTimeMillis() + TIMEOUT;
+        while (job.getEndTime() == 0 && System.currentTimeMillis() < limit) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.metrics.ExportTimings;
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.metrics.Timer;
+import fr.cnes.sonar.plugins.export.report.cache.ExportCache;
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.tasks.DownloadTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.utils.text.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the Metrics class and the timings of an export
+ * @author lequal
+ */
+public class MetricsTest {
+
+    /**
+     * Number of rules in the stubbed profile
+     */
+    private static final int RULES = 1800;
+    /**
+     * Key of the exported profile
+     */
+    private static final String PROFILE = "profile-a";
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+
+    /**
+     * Start a stubbed server before each test
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(RULES);
+        server.start();
+        ExportCache.getInstance().clear();
+        ProfileSnapshots.getInstance().clear();
+    }
+
+    /**
+     * Stop the stubbed server after each test
+     */
+    @After
+    public void clean() {
+        server.stop();
+        Metrics.getInstance().setEnabled(true);
+    }
+
+    /**
+     * Assert that percentiles are at most twice the recorded durations
+     */
+    @Test
+    public void timerTest() {
+        final Timer timer = new Timer();
+        for (int i = 1; i <= 100; i++) {
+            timer.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(100, timer.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), timer.getMax());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5050), timer.getTotal());
+        final long median = timer.getPercentile(0.5);
+        assertTrue(median >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(median <= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(timer.getMax(), timer.getPercentile(0.99));
+        assertEquals(0, new Timer().getPercentile(0.5));
+    }
+
+    /**
+     * Assert that disabled metrics record nothing
+     */
+    @Test
+    public void disabledTest() {
+        final Metrics metrics = new Metrics(false);
+        final ExportTimings timings = new ExportTimings();
+
+        final long start = metrics.start();
+        metrics.stop(Metrics.HTTP_CALL, start, timings);
+        metrics.count(Metrics.RULES_COUNT, 10, timings);
+
+        assertEquals(0, start);
+        assertEquals(0, metrics.getTimer(Metrics.HTTP_CALL).getCount());
+        assertEquals(0, metrics.getCount(Metrics.RULES_COUNT));
+        assertEquals(0, timings.getDuration(Metrics.HTTP_CALL));
+        assertEquals(0, timings.getCount(Metrics.RULES_COUNT));
+    }
+
+    /**
+     * Assert that an export gives the time spent in each step, then a cache hit
+     * @throws Exception on export failure
+     */
+    @Test
+    public void exportTimingsTest() throws Exception {
+        final DownloadTask task = new DownloadTask(server.getUrl());
+        final ExportTimings timings = new ExportTimings();
+        task.export(PROFILE, new CsvExporter(), new ByteArrayOutputStream(), rule -> { }, timings);
+
+        assertEquals(RULES, timings.getCount(Metrics.RULES_COUNT));
+        assertEquals(4, timings.getCount(Metrics.RULES_PAGES));
+        assertEquals(0, timings.getCount(Metrics.EXPORT_CACHE_HITS));
+        assertTrue(timings.getCount(Metrics.PROVIDER_BYTES) > 0);
+        assertTrue(timings.getDuration(Metrics.PROVIDER_REQUEST) > 0);
+        assertTrue(timings.getDuration(Metrics.WRITER + "csv") > 0);
+        assertTrue(timings.getDuration(Metrics.EXPORT_TOTAL) >= timings.getDuration(Metrics.WRITER + "csv"));
+        assertTrue(Metrics.getInstance().getTimer(Metrics.HTTP_LATENCY).getCount() > 0);
+
+        final ExportTimings cached = new ExportTimings();
+        task.export(PROFILE, new CsvExporter(), new ByteArrayOutputStream(), rule -> { }, cached);
+        assertEquals(1, cached.getCount(Metrics.EXPORT_CACHE_HITS));
+        assertEquals(0, cached.getCount(Metrics.RULES_COUNT));
+    }
+
+    /**
+     * Assert that timers and counters are written in json
+     */
+    @Test
+    public void jsonTest() {
+        final Metrics metrics = new Metrics(true);
+        metrics.record(Metrics.HTTP_CALL, TimeUnit.MILLISECONDS.toNanos(3), null);
+        metrics.count(Metrics.HTTP_BYTES, 42, null);
+
+        final StringWriter output = new StringWriter();
+        final JsonWriter jsonWriter = JsonWriter.of(output);
+        metrics.writeTo(jsonWriter);
+        jsonWriter.close();
+
+        final String json = output.toString();
+        assertTrue(json.contains("\"enabled\":true"));
+        assertTrue(json.contains("\"http.call\":{\"count\":1,\"totalMs\":3"));
+        assertTrue(json.contains("\"http.bytes\":42"));
+    }
+}
@@ -0,0 +1,290 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.report.providers.PagePipeline;
+import fr.cnes.sonar.plugins.export.report.providers.QualityProfileProvider;
+import fr.cnes.sonar.plugins.export.report.providers.RetryPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the PagePipeline class
+ * Also compare the duration of an export with and without pages requested ahead.
+ * @author lequal
+ */
+public class PagePipelineTest {
+
+    /**
+     * Number of rules in the stubbed profile
+     */
+    private static final int RULES = 1800;
+    /**
+     * Key of the exported profile
+     */
+    private static final String PROFILE = "profile-a";
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+
+    /**
+     * Start a stubbed server before each test
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(RULES);
+        server.start();
+    }
+
+    /**
+     * Stop the stubbed server after each test
+     */
+    @After
+    public void clean() {
+        server.stop();
+    }
+
+    /**
+     * Assert that pages are given in order even when the last ones are received first
+     * @throws Exception on pipeline failure
+     */
+    @Test
+    public void orderTest() throws Exception {
+        final int total = 1000;
+        final List<Integer> offsets = new ArrayList<>();
+        try (PagePipeline pipeline = new PagePipeline(100, 100, 0, 4)) {
+            pipeline.run(new Pages(total, 0) {
+                @Override
+                public int[] fetch(final int pageSize, final int page) throws IOException {
+                    // later pages are faster
+                    pause(50 - page * 5);
+                    return super.fetch(pageSize, page);
+                }
+            }, (content, pageSize, page) -> offsets.add(content[0]));
+        }
+
+        assertEquals(10, offsets.size());
+        for (int i = 0; i < offsets.size(); i++) {
+            assertEquals(i * 100, offsets.get(i).intValue());
+        }
+    }
+
+    /**
+     * Assert that a failed page is requested again without requesting the given pages again
+     * @throws Exception on pipeline failure
+     */
+    @Test
+    public void retryTest() throws Exception {
+        final List<Integer> offsets = new ArrayList<>();
+        final List<Integer> fetched = new ArrayList<>();
+        try (PagePipeline pipeline = new PagePipeline(100, 100, 0, 2, new RetryPolicy(1, 10, 10))) {
+            pipeline.run(new Pages(1000, 0) {
+                @Override
+                public int[] fetch(final int pageSize, final int page) throws IOException {
+                    synchronized (fetched) {
+                        fetched.add(page);
+                        if (page == 5 && Collections.frequency(fetched, page) == 1) {
+                            throw new SocketException("Connection reset");
+                        }
+                    }
+                    return super.fetch(pageSize, page);
+                }
+            }, (content, pageSize, page) -> offsets.add(content[0]));
+        }
+
+        assertEquals(10, offsets.size());
+        for (int i = 0; i < offsets.size(); i++) {
+            assertEquals(i * 100, offsets.get(i).intValue());
+        }
+        assertEquals(11, fetched.size());
+        assertEquals(2, Collections.frequency(fetched, 5));
+    }
+
+    /**
+     * Assert that a resumed search requests only the pages after its offset
+     * @throws Exception on pipeline failure
+     */
+    @Test
+    public void offsetTest() throws Exception {
+        final List<Integer> offsets = new ArrayList<>();
+        try (PagePipeline pipeline = new PagePipeline(200, 100, 0, 2)) {
+            pipeline.run(new Pages(1000, 0), (content, pageSize, page) -> offsets.add(content[0]), 300);
+        }
+
+        assertEquals(4, offsets.size());
+        assertEquals(300, offsets.get(0).intValue());
+        assertEquals(400, offsets.get(1).intValue());
+        assertEquals(600, offsets.get(2).intValue());
+        assertEquals(800, offsets.get(3).intValue());
+    }
+
+    /**
+     * Assert that an export goes on when a page is cut in the middle
+     * @throws Exception on export failure
+     */
+    @Test
+    public void truncatedPageTest() throws Exception {
+        server.setMaxPageSize(100);
+        server.failNext(SonarQubeStub.RULES_SEARCH, SonarQubeStub.TRUNCATED, null);
+        Metrics.getInstance().reset();
+
+        export(3);
+        assertEquals(RULES / 100 + 1, server.getCalls(SonarQubeStub.RULES_SEARCH));
+        assertEquals(1, Metrics.getInstance().getCount(Metrics.RULES_PAGES_RETRIED));
+    }
+
+    /**
+     * Assert that slow pages are halved and stay aligned on their size
+     * @throws Exception on pipeline failure
+     */
+    @Test
+    public void adaptiveTest() throws Exception {
+        final int total = 2000;
+        final List<int[]> pages = new ArrayList<>();
+        // a page of 500 elements takes 100 ms, a page of 250 takes 50 ms
+        try (PagePipeline pipeline = new PagePipeline(500, 100, 60, 1)) {
+            pipeline.run(new Pages(total, 5), (content, pageSize, page) -> pages.add(content));
+        }
+
+        int offset = 0;
+        for (int[] page : pages) {
+            assertEquals(offset, page[0]);
+            offset += page[1];
+        }
+        assertEquals(total, offset);
+        assertEquals(500, pages.get(0)[1]);
+        for (int i = 1; i < pages.size(); i++) {
+            assertEquals(250, pages.get(i)[1]);
+        }
+    }
+
+    /**
+     * Assert that a server giving smaller pages than asked does not lose rules
+     * @throws Exception on export failure
+     */
+    @Test
+    public void serverMaximumTest() throws Exception {
+        server.setMaxPageSize(100);
+
+        final Rule[] rules = new QualityProfileProvider(server.getUrl())
+                .getQualityProfile(PROFILE, new CsvExporter().getFields()).getRules();
+
+        assertEquals(RULES, rules.length);
+        for (int i = 0; i < RULES; i++) {
+            assertEquals(SonarQubeStub.ruleKey(i), rules[i].getKey());
+        }
+        assertEquals(RULES / 100, server.getCalls(SonarQubeStub.RULES_SEARCH));
+    }
+
+    /**
+     * Compare an export requesting pages one after the other with pages requested ahead
+     * @throws Exception on export failure
+     */
+    @Test
+    public void prefetchTest() throws Exception {
+        server.setMaxPageSize(100);
+        server.setSearchLatency(50);
+
+        final long sequential = export(0);
+        final long pipelined = export(3);
+
+        assertTrue(pipelined < sequential);
+    }
+
+    /**
+     * Export the stubbed profile and check its rules
+     * @param pagesInFlight number of pages requested simultaneously
+     * @return duration of the export in ms
+     * @throws Exception on export failure
+     */
+    private long export(final int pagesInFlight) throws Exception {
+        final QualityProfileProvider provider = new QualityProfileProvider(server.getUrl());
+        provider.setPagesInFlight(pagesInFlight);
+        provider.setPageTargetTime(0);
+
+        final long start = System.currentTimeMillis();
+        final QualityProfile profile = provider.getQualityProfile(PROFILE, new CsvExporter().getFields());
+        final long duration = System.currentTimeMillis() - start;
+
+        final Rule[] rules = profile.getRules();
+        assertEquals(RULES, rules.length);
+        for (int i = 0; i < RULES; i++) {
+            assertEquals(SonarQubeStub.ruleKey(i), rules[i].getKey());
+            assertEquals(SonarQubeStub.severity(PROFILE, i), rules[i].getActiveSeverity());
+        }
+        return duration;
+    }
+
+    /**
+     * Wait a bit
+     * @param time time to wait in ms
+     * @throws IOException if interrupted
+     */
+    private static void pause(final long time) throws IOException {
+        try {
+            Thread.sleep(Math.max(0, time));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Generated pages: the offset of their first element and their number of elements
+     */
+    private static class Pages implements PagePipeline.Source<int[]> {
+        /**
+         * Number of elements of the search
+         */
+        private final int total;
+        /**
+         * Number of elements received per ms
+         */
+        private final int speed;
+
+        /**
+         * Constructor
+         * @param pTotal number of elements of the search
+         * @param pSpeed number of elements received per ms, 0 for no delay
+         */
+        Pages(final int pTotal, final int pSpeed) {
+            this.total = pTotal;
+            this.speed = pSpeed;
+        }
+
+        @Override
+        public int[] fetch(final int pageSize, final int page) throws IOException {
+            final int offset = (page - 1) * pageSize;
+            final int count = Math.max(0, Math.min(pageSize, total - offset));
+            if (speed > 0) {
+                pause(pageSize / speed);
+            }
+            return new int[]{offset, count};
+        }
+
+        @Override
+        public int getCount(final int[] page) {
+            return page[1];
+        }
+
+        @Override
+        public int getTotal(final int[] page) {
+            return total;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.cache.ExportCache;
+import fr.cnes.sonar.plugins.export.report.cache.ProfileSnapshots;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.tasks.ExportTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the snapshots of exported profiles and the exports of their changes
+ * Also compare the requests of a full export with the ones of an export of the changes.
+ * @author lequal
+ */
+public class ProfileSnapshotsTest {
+
+    /**
+     * Number of rules in the stubbed profile
+     */
+    private static final int RULES = 1800;
+    /**
+     * Key of the exported profile
+     */
+    private static final String PROFILE = SonarQubeStub.PROFILES[0];
+
+    /**
+     * Directory of snapshot files
+     */
+    private Path directory;
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+
+    /**
+     * Start a stubbed server before each test
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(RULES);
+        server.start();
+        ExportCache.getInstance().clear();
+        ProfileSnapshots.getInstance().clear();
+        directory = Files.createTempDirectory("cnesexport-snapshots");
+    }
+
+    /**
+     * Stop the stubbed server and remove the snapshot files after each test
+     * @throws IOException when a file can not be removed
+     */
+    @After
+    public void clean() throws IOException {
+        server.stop();
+        for (Path file : files()) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Assert that a snapshot written on disk is read again by another instance
+     * @throws IOException when writing
+     */
+    @Test
+    public void fileTest() throws IOException {
+        final ProfileSnapshots snapshots = new ProfileSnapshots(10, 0);
+        snapshots.setDirectory(directory);
+        final List<Rule> rules = rules(100);
+        rules.get(3).setName(null);
+        snapshots.put(PROFILE, "v1", new CsvExporter().getFields(), rules);
+
+        final ProfileSnapshots restarted = new ProfileSnapshots(10, 0);
+        restarted.setDirectory(directory);
+        final ProfileSnapshots.Snapshot snapshot = restarted.get(PROFILE);
+        assertNotNull(snapshot);
+        assertEquals("v1", snapshot.getVersion());
+        assertEquals(new CsvExporter().getFields(), snapshot.getFields());
+        assertEquals(rules.size(), snapshot.getRules().size());
+        for (int i = 0; i < rules.size(); i++) {
+            final Rule expected = rules.get(i);
+            final Rule actual = snapshot.getRules().get(i);
+            assertEquals(expected.getKey(), actual.getKey());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getActiveSeverity(), actual.getActiveSeverity());
+            assertEquals(expected.getRepo(), actual.getRepo());
+            assertEquals(expected.getType(), actual.getType());
+        }
+    }
+
+    /**
+     * Assert that snapshots of a profile written at the same time give a complete file
+     * @throws Exception when writing
+     */
+    @Test
+    public void concurrentWriteTest() throws Exception {
+        final ProfileSnapshots snapshots = new ProfileSnapshots(10, 0);
+        snapshots.setDirectory(directory);
+        final List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final String version = "v" + i;
+            writers.add(new Thread(() -> snapshots.put(PROFILE, version, new CsvExporter().getFields(),
+                    rules(2000))));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        // no temporary file is left
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        final ProfileSnapshots restarted = new ProfileSnapshots(10, 0);
+        restarted.setDirectory(directory);
+        assertEquals(2000, restarted.get(PROFILE).getRules().size());
+    }
+
+    /**
+     * Assert that a corrupted file is ignored and removed
+     * @throws IOException when writing
+     */
+    @Test
+    public void corruptedTest() throws IOException {
+        final ProfileSnapshots snapshots = new ProfileSnapshots(10, 0);
+        snapshots.setDirectory(directory);
+        snapshots.put(PROFILE, "v1", new CsvExporter().getFields(), rules(100));
+        final Path file = files().get(0);
+        final byte[] content = Files.readAllBytes(file);
+        content[content.length / 2] ^= 1;
+        Files.write(file, content);
+
+        final ProfileSnapshots restarted = new ProfileSnapshots(10, 0);
+        restarted.setDirectory(directory);
+        assertNull(restarted.get(PROFILE));
+        assertFalse(Files.exists(file));
+    }
+
+    /**
+     * Assert that the rules of an export are not kept once they exceed the memory cap
+     */
+    @Test
+    public void recorderCapTest() {
+        final ProfileSnapshots snapshots = new ProfileSnapshots(10);
+        final ProfileSnapshots.Recorder small = new ProfileSnapshots.Recorder(1000000);
+        for (Rule rule : rules(10)) {
+            assertTrue(small.add(rule));
+        }
+        snapshots.put("small", "v1", new CsvExporter().getFields(), small);
+        assertEquals(10, snapshots.get("small").getRules().size());
+
+        final ProfileSnapshots.Recorder large = new ProfileSnapshots.Recorder(1000);
+        boolean kept = true;
+        for (Rule rule : rules(100)) {
+            kept = large.add(rule);
+        }
+        assertFalse(kept);
+        assertNull(large.getRules());
+        snapshots.put("large", "v1", new CsvExporter().getFields(), large);
+        assertNull(snapshots.get("large"));
+    }
+
+    /**
+     * Assert that the oldest files are removed when there are too many or when they are too old
+     * @throws IOException when writing
+     */
+    @Test
+    public void retentionTest() throws IOException {
+        final ProfileSnapshots snapshots = new ProfileSnapshots(2, 0);
+        snapshots.setDirectory(directory);
+        snapshots.put("first", "v1", new CsvExporter().getFields(), rules(10));
+        Files.setLastModifiedTime(files().get(0), FileTime.fromMillis(System.currentTimeMillis() - 60000));
+        snapshots.put("second", "v1", new CsvExporter().getFields(), rules(10));
+        snapshots.put("third", "v1", new CsvExporter().getFields(), rules(10));
+        assertEquals(2, files().size());
+        final ProfileSnapshots restarted = new ProfileSnapshots(2, 0);
+        restarted.setDirectory(directory);
+        assertNull(restarted.get("first"));
+        assertNotNull(restarted.get("third"));
+
+        // a day of retention removes a file of two days ago
+        Files.setLastModifiedTime(files().get(0), FileTime.fromMillis(System.currentTimeMillis() - 172800000L));
+        new ProfileSnapshots(2, 86400000L).setDirectory(directory);
+        assertEquals(1, files().size());
+    }
+
+    /**
+     * Assert that an export of the changes since the last export gives the same csv as a full export
+     * @throws Exception on export failure
+     */
+    @Test
+    public void deltaExportTest() throws Exception {
+        final ExportTask task = new ExportTask(server.getUrl());
+        task.exportCsv(PROFILE);
+        final int fullSearches = server.getCalls(SonarQubeStub.RULES_SEARCH);
+
+        // a new rule, a new severity and a removed rule
+        server.change(PROFILE, 5, null, "2018-01-02T00:00:00+0000");
+        server.change(PROFILE, 7, "BLOCKER", "2018-01-03T00:00:00+0000");
+        server.change(PROFILE, 9, null, "2018-01-04T00:00:00+0000");
+        server.change(PROFILE, 5, "INFO", "2018-01-05T00:00:00+0000");
+        final long start = SonarQubeStub.getBytesSent();
+        final String delta = task.exportCsv(PROFILE);
+        final long deltaBytes = SonarQubeStub.getBytesSent() - start;
+
+        assertEquals(fullSearches, server.getCalls(SonarQubeStub.RULES_SEARCH));
+        assertEquals(1, server.getCalls(SonarQubeStub.CHANGELOG));
+
+        // same export without snapshot
+        ExportCache.getInstance().clear();
+        ProfileSnapshots.getInstance().clear();
+        final long fullStart = SonarQubeStub.getBytesSent();
+        final String full = task.exportCsv(PROFILE);
+        final long fullBytes = SonarQubeStub.getBytesSent() - fullStart;
+
+        assertEquals(full, delta);
+        assertEquals(RULES - 1, full.split("\n").length - 1);
+        assertTrue(deltaBytes < fullBytes);
+    }
+
+    /**
+     * Assert that a profile changed too much is exported in full
+     * @throws Exception on export failure
+     */
+    @Test
+    public void tooManyChangesTest() throws Exception {
+        final ExportTask task = new ExportTask(server.getUrl());
+        task.exportCsv(PROFILE);
+        final int searches = server.getCalls(SonarQubeStub.RULES_SEARCH);
+        for (int i = 0; i < 1001; i++) {
+            server.change(PROFILE, i, "MAJOR", String.format("2018-02-01T00:%02d:%02d+0000", i / 60, i % 60));
+        }
+
+        final String csv = task.exportCsv(PROFILE);
+        assertEquals(1, server.getCalls(SonarQubeStub.CHANGELOG));
+        assertEquals(2 * searches, server.getCalls(SonarQubeStub.RULES_SEARCH));
+        assertEquals(RULES, csv.split("\n").length - 1);
+    }
+
+    /**
+     * Snapshot files of the folder
+     * @return the files
+     * @throws IOException when listing
+     */
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".snap")).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Generated rules
+     * @param count number of rules
+     * @return rules sorted by key
+     */
+    private static List<Rule> rules(final int count) {
+        final List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rules.add(SonarQubeStub.rule(PROFILE, i));
+        }
+        return rules;
+    }
+}
@@ -0,0 +1,182 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.exceptions.BadSonarQubeRequestException;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.report.providers.QualityProfileProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the QualityProfileProvider class
+ * Also count the number of http calls needed by an export.
+ * @author lequal
+ */
+public class QualityProfileProviderTest {
+
+    /**
+     * Number of rules in the stubbed profile
+     */
+    private static final int RULES = 1800;
+    /**
+     * Key of the exported profile
+     */
+    private static final String PROFILE = "profile-a";
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+
+    /**
+     * Start a stubbed server before each test
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(RULES);
+        server.start();
+    }
+
+    /**
+     * Stop the stubbed server after each test
+     */
+    @After
+    public void clean() {
+        server.stop();
+    }
+
+    /**
+     * Assert that active severities are resolved with the pages of rules
+     * @throws Exception on export failure
+     */
+    @Test
+    public void bulkActivesTest() throws Exception {
+        final QualityProfile profile = export();
+
+        // 4 pages of 500 rules with their activations
+        assertEquals(4, server.getTotalCalls());
+        assertEquals(0, server.getCalls(SonarQubeStub.RULES_SHOW));
+        checkSeverities(profile);
+    }
+
+    /**
+     * Assert that only the fields used by the csv are requested and kept
+     * @throws Exception on export failure
+     */
+    @Test
+    public void projectionTest() throws Exception {
+        final QualityProfileProvider provider = new QualityProfileProvider(server.getUrl());
+
+        long start = SonarQubeStub.getBytesSent();
+        final Rule full = provider.getQualityProfile(PROFILE).getRules()[0];
+        final long fullBytes = SonarQubeStub.getBytesSent() - start;
+
+        start = SonarQubeStub.getBytesSent();
+        final Rule projected = provider.getQualityProfile(PROFILE, new CsvExporter().getFields()).getRules()[0];
+        final long projectedBytes = SonarQubeStub.getBytesSent() - start;
+
+        assertEquals(full.getName(), projected.getName());
+        assertEquals(full.getLangName(), projected.getLangName());
+        assertEquals(full.getRepo(), projected.getRepo());
+        assertEquals(full.getType(), projected.getType());
+        assertEquals(full.getActiveSeverity(), projected.getActiveSeverity());
+        assertFalse(full.getHtmlDesc().isEmpty());
+        assertTrue(projected.getHtmlDesc().isEmpty());
+        assertTrue(projectedBytes < fullBytes);
+    }
+
+    /**
+     * Assert that the per rule requests are still used when
+     * the server does not give activations in bulk
+     * @throws Exception on export failure
+     */
+    @Test
+    public void fallbackActivesTest() throws Exception {
+        server.setBulkActivesSupported(false);
+
+        final QualityProfile profile = export();
+
+        // 4 pages, a single unsuccessful bulk request and one request per rule
+        assertEquals(4 + 1 + RULES, server.getTotalCalls());
+        checkSeverities(profile);
+    }
+
+    /**
+     * Assert that the per rule requests keep the order of rules
+     * when they are executed one at a time
+     * @throws Exception on export failure
+     */
+    @Test
+    public void sequentialFallbackActivesTest() throws Exception {
+        server.setBulkActivesSupported(false);
+
+        final QualityProfileProvider provider = new QualityProfileProvider(server.getUrl());
+        provider.setConcurrency(1);
+        checkSeverities(provider.getQualityProfile(PROFILE));
+    }
+
+    /**
+     * Assert that an error sent by the server is thrown
+     * @throws Exception on network failure
+     */
+    @Test
+    public void serverErrorTest() throws Exception {
+        try {
+            new QualityProfileProvider(server.getUrl()).getQualityProfile(SonarQubeStub.UNKNOWN_PROFILE);
+            fail("The error of the server must be thrown.");
+        } catch (BadSonarQubeRequestException e) {
+            assertEquals("No quality profile with key 'unknown-profile'", e.getMessage());
+        }
+    }
+
+    /**
+     * Assert that no request is sent once the deadline of the export is passed
+     * @throws Exception on bad request
+     */
+    @Test
+    public void deadlineTest() throws Exception {
+        final QualityProfileProvider provider = new QualityProfileProvider(server.getUrl());
+        provider.setDeadline(System.currentTimeMillis() - 1);
+        try {
+            provider.getQualityProfile(PROFILE);
+            fail("The deadline must stop the export.");
+        } catch (InterruptedIOException e) {
+            assertTrue(e.getMessage().startsWith("Export deadline exceeded"));
+        }
+        assertEquals(0, server.getTotalCalls());
+    }
+
+    /**
+     * Export the stubbed profile, callers check the number of http calls
+     * @return the exported profile
+     * @throws IOException on network error
+     * @throws BadSonarQubeRequestException on bad request
+     */
+    private QualityProfile export() throws IOException, BadSonarQubeRequestException {
+        return new QualityProfileProvider(server.getUrl()).getQualityProfile(PROFILE);
+    }
+
+    /**
+     * Assert that all rules have the severity of the profile
+     * @param profile exported profile
+     */
+    private void checkSeverities(final QualityProfile profile) {
+        final Rule[] rules = profile.getRules();
+        assertEquals(RULES, rules.length);
+        for (int i = 0; i < RULES; i++) {
+            assertEquals(SonarQubeStub.ruleKey(i), rules[i].getKey());
+            assertEquals(SonarQubeStub.severity(PROFILE, i), rules[i].getActiveSeverity());
+        }
+    }
+}
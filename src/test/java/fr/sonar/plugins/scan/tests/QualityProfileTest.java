@@ -0,0 +1,129 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the QualityProfile class
+ * Also measure the lookup of every rule of a large profile.
+ * @author lequal
+ */
+public class QualityProfileTest {
+
+    /**
+     * Number of rules in the profile
+     */
+    private static final int RULES = 20000;
+
+    /**
+     * Rules of the profile
+     */
+    private Rule[] rules;
+    /**
+     * Profile to search
+     */
+    private QualityProfile profile;
+
+    /**
+     * Create a large profile before each test
+     */
+    @Before
+    public void prepare() {
+        rules = new Rule[RULES];
+        for (int i = 0; i < RULES; i++) {
+            rules[i] = new Rule();
+            rules[i].setKey(SonarQubeStub.ruleKey(i));
+        }
+        profile = new QualityProfile(rules);
+    }
+
+    /**
+     * Assert that every rule is found
+     */
+    @Test
+    public void findTest() {
+        for (int i = 0; i < RULES; i++) {
+            assertSame(rules[i], profile.find(SonarQubeStub.ruleKey(i)));
+        }
+        assertNull(profile.find("unknown:rule"));
+    }
+
+    /**
+     * Assert that the first rule wins when keys are duplicated
+     * and that new rules are indexed again
+     */
+    @Test
+    public void duplicateAndResetTest() {
+        final Rule duplicate = new Rule();
+        duplicate.setKey(SonarQubeStub.ruleKey(0));
+        profile.setRules(new Rule[]{rules[0], duplicate});
+        assertSame(rules[0], profile.find(SonarQubeStub.ruleKey(0)));
+        assertNull(profile.find(SonarQubeStub.ruleKey(1)));
+
+        profile.setRules(new Rule[]{duplicate});
+        assertSame(duplicate, profile.find(SonarQubeStub.ruleKey(0)));
+    }
+
+    /**
+     * Assert that the view of the rules is not a copy and can not be modified
+     */
+    @Test
+    public void ruleListTest() {
+        assertEquals(RULES, profile.getRuleList().size());
+        assertSame(rules[1], profile.getRuleList().get(1));
+        try {
+            profile.getRuleList().set(0, new Rule());
+            fail("The view of the rules must be read-only.");
+        } catch (UnsupportedOperationException e) {
+            assertSame(rules[0], profile.getRuleList().get(0));
+        }
+    }
+
+    /**
+     * Assert that every profile is closed when others fail, their failures being kept
+     * @throws Exception on unexpected failure
+     */
+    @Test
+    public void closeAllTest() throws Exception {
+        final AtomicInteger closed = new AtomicInteger();
+        final List<QualityProfile> profiles = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final boolean failing = i % 2 == 0;
+            profiles.add(new QualityProfile(rules) {
+                @Override
+                public void close() throws IOException {
+                    closed.incrementAndGet();
+                    if (failing) {
+                        throw new IOException("Disk error");
+                    }
+                }
+            });
+        }
+
+        final IOException export = new IOException("Export failed");
+        QualityProfile.closeAll(profiles, export);
+        assertEquals(4, closed.get());
+        assertEquals(2, export.getSuppressed().length);
+
+        try {
+            QualityProfile.closeAll(profiles, null);
+            fail("The failure to close must be thrown.");
+        } catch (IOException e) {
+            assertEquals("Disk error", e.getMessage());
+            assertEquals(1, e.getSuppressed().length);
+        }
+        assertEquals(8, closed.get());
+    }
+}
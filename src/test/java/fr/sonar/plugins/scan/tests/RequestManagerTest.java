@@ -0,0 +1,146 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.metrics.Metrics;
+import fr.cnes.sonar.plugins.export.report.providers.RequestManager;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the RequestManager class
+ * @author lequal
+ */
+public class RequestManagerTest {
+
+    /**
+     * Stubbed SonarQube server
+     */
+    private SonarQubeStub server;
+
+    /**
+     * Start a stubbed server before each test
+     * @throws IOException when the server can not start
+     */
+    @Before
+    public void prepare() throws IOException {
+        server = new SonarQubeStub(10);
+        server.start();
+    }
+
+    /**
+     * Stop the stubbed server after each test
+     */
+    @After
+    public void clean() {
+        server.stop();
+    }
+
+    /**
+     * Assert that connections go back to the pool after each request
+     * @throws IOException on network error
+     */
+    @Test
+    public void pooledConnectionsTest() throws IOException {
+        final RequestManager manager = RequestManager.getInstance();
+        for (int i = 0; i < 20; i++) {
+            manager.get(server.getUrl() + "/api/rules/show?key=" + SonarQubeStub.ruleKey(i % 10));
+        }
+
+        final PoolStats stats = manager.getPoolStats();
+        assertEquals(0, stats.getLeased());
+        assertEquals(0, stats.getPending());
+        assertTrue(stats.getAvailable() >= 1);
+    }
+
+    /**
+     * Assert that a new manager is created after a shutdown
+     */
+    @Test
+    public void shutdownTest() {
+        final RequestManager manager = RequestManager.getInstance();
+        RequestManager.shutdown();
+
+        assertNotSame(manager, RequestManager.getInstance());
+    }
+
+    /**
+     * Assert that compressed responses are decompressed and their savings counted
+     * @throws IOException on network error
+     */
+    @Test
+    public void compressedResponsesTest() throws IOException {
+        final RequestManager manager = RequestManager.getInstance();
+        final Metrics metrics = Metrics.getInstance();
+        final String url = server.getUrl() + "/api/rules/search?qprofile=profile-a&f=name,htmlDesc&ps=10&p=1";
+        metrics.reset();
+        final String plain = manager.get(url);
+        final long plainBytes = metrics.getCount(Metrics.HTTP_BYTES);
+        assertEquals(0, metrics.getCount(Metrics.HTTP_BYTES_SAVED));
+
+        server.setGzipSupported(true);
+        metrics.reset();
+        assertEquals(plain, manager.get(url));
+        final long compressedBytes = metrics.getCount(Metrics.HTTP_BYTES);
+        assertTrue(compressedBytes < plainBytes);
+        assertEquals(plainBytes - compressedBytes, metrics.getCount(Metrics.HTTP_BYTES_SAVED));
+    }
+
+    /**
+     * Assert that an overloaded server is requested again
+     * @throws IOException on network error
+     */
+    @Test
+    public void retryTest() throws IOException {
+        server.failNext(SonarQubeStub.RULES_SHOW, 503, "0");
+        server.failNext(SonarQubeStub.RULES_SHOW, 502, null);
+        Metrics.getInstance().reset();
+
+        final String response = RequestManager.getInstance().get(
+                server.getUrl() + "/api/rules/show?key=" + SonarQubeStub.ruleKey(0));
+        assertTrue(response.contains(SonarQubeStub.ruleKey(0)));
+        assertEquals(3, server.getCalls(SonarQubeStub.RULES_SHOW));
+        assertEquals(2, Metrics.getInstance().getCount(Metrics.HTTP_RETRIES));
+    }
+
+    /**
+     * Assert that a request fails when the server asks to wait too long
+     */
+    @Test
+    public void retryAfterTest() {
+        server.failNext(SonarQubeStub.RULES_SHOW, 503, "3600");
+        try {
+            RequestManager.getInstance().get(server.getUrl() + "/api/rules/show?key=" + SonarQubeStub.ruleKey(0));
+            fail("The request should fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Server answered 503"));
+        }
+        assertEquals(1, server.getCalls(SonarQubeStub.RULES_SHOW));
+    }
+
+    /**
+     * Assert that a request is not retried once the export deadline would be passed
+     */
+    @Test
+    public void deadlineRetryTest() {
+        server.failNext(SonarQubeStub.RULES_SHOW, 503, "1");
+        try {
+            RequestManager.getInstance().get(server.getUrl() + "/api/rules/show?key=" + SonarQubeStub.ruleKey(0),
+                    System.currentTimeMillis() + 200);
+            fail("The request should fail");
+        } catch (InterruptedIOException e) {
+            assertTrue(e.getMessage().contains("deadline"));
+        } catch (IOException e) {
+            fail("The deadline should stop the retries: " + e.getMessage());
+        }
+        assertEquals(1, server.getCalls(SonarQubeStub.RULES_SHOW));
+    }
+}
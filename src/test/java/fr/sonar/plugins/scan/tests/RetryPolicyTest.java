@@ -0,0 +1,59 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.providers.RetryPolicy;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the RetryPolicy class
+ * @author lequal
+ */
+public class RetryPolicyTest {
+
+    /**
+     * Assert that delays grow exponentially, randomly and within the largest delay
+     */
+    @Test
+    public void delayTest() {
+        final RetryPolicy policy = new RetryPolicy(5, 100, 1000);
+        for (int i = 0; i < 100; i++) {
+            final long first = policy.delay(1, -1);
+            assertTrue(first >= 0 && first <= 100);
+            final long third = policy.delay(3, -1);
+            assertTrue(third >= 0 && third <= 400);
+            assertTrue(policy.delay(10, -1) <= 1000);
+            // the server's delay is a minimum
+            assertTrue(policy.delay(1, 700) >= 700);
+        }
+        // a longer delay asked by the server is not waited
+        assertEquals(-1, policy.delay(1, 2000));
+    }
+
+    /**
+     * Assert that Retry-After headers are understood in seconds and as dates
+     */
+    @Test
+    public void retryAfterTest() {
+        // Sun, 06 Nov 1994 08:49:37 GMT
+        final long now = 784111777000L;
+        assertEquals(120000, RetryPolicy.parseRetryAfter(" 120 ", now));
+        assertEquals(3000, RetryPolicy.parseRetryAfter("Sun, 06 Nov 1994 08:49:40 GMT", now));
+        assertEquals(0, RetryPolicy.parseRetryAfter("Sun, 06 Nov 1994 08:49:00 GMT", now));
+        assertEquals(-1, RetryPolicy.parseRetryAfter(null, now));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("soon", now));
+    }
+
+    /**
+     * Assert that only the statuses of an overloaded server are retried
+     */
+    @Test
+    public void retryableTest() {
+        assertTrue(RetryPolicy.isRetryable(503));
+        assertTrue(RetryPolicy.isRetryable(429));
+        assertFalse(RetryPolicy.isRetryable(500));
+        assertFalse(RetryPolicy.isRetryable(404));
+    }
+}
@@ -0,0 +1,119 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.report.model.RuleTable;
+import fr.cnes.sonar.plugins.export.report.model.RuleView;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test for the RuleTable class
+ * @author lequal
+ */
+public class RuleTableTest {
+
+    /**
+     * Number of rules of the tests
+     */
+    private static final int RULES = 3000;
+
+    /**
+     * Create a rule with all its fields, some of them null
+     * @param index index of the rule
+     * @return the rule
+     */
+    private static Rule rule(final int index) {
+        final Rule rule = SonarQubeStub.rule("profile-a", index);
+        rule.setRepo(index % 2 == 0 ? "squid" : "common-java");
+        rule.setName(index % 10 == 0 ? null : "Rule \u00e9 " + index);
+        rule.setType(index % 3 == 0 ? null : rule.getType());
+        rule.setDebt(index % 4 == 0 ? null : index % 7 + "min");
+        return rule;
+    }
+
+    /**
+     * Fill a table with the rules of the tests
+     * @param expected list receiving the added rules
+     * @return the table
+     */
+    private static RuleTable fill(final List<Rule> expected) {
+        final RuleTable table = new RuleTable();
+        for (int i = 0; i < RULES; i++) {
+            final Rule rule = rule(i);
+            expected.add(rule);
+            table.append(rule);
+        }
+        return table;
+    }
+
+    /**
+     * Assert that rules are read back identical, by index and by row
+     */
+    @Test
+    public void rowsTest() {
+        final List<Rule> expected = new ArrayList<>();
+        final RuleTable table = fill(expected);
+        assertEquals(RULES, table.size());
+
+        for (int i = 0; i < RULES; i++) {
+            SonarQubeStub.assertSameRule(expected.get(i), table.get(i));
+        }
+        final Iterator<RuleView> rows = table.rows().iterator();
+        final RuleView first = rows.next();
+        SonarQubeStub.assertSameRule(expected.get(0), first);
+        for (int i = 1; i < RULES; i++) {
+            final RuleView row = rows.next();
+            // the view is moved to the next row
+            assertSame(first, row);
+            SonarQubeStub.assertSameRule(expected.get(i), row);
+        }
+        assertFalse(rows.hasNext());
+        assertNull(table.get(30).getName());
+        assertNull(table.get(RULES - 3).getType());
+    }
+
+    /**
+     * Assert that repeated values are stored once and that rows are read-only
+     */
+    @Test
+    public void sharedValuesTest() {
+        final RuleTable table = fill(new ArrayList<>());
+        final Rule first = table.get(0);
+        final Rule other = table.get(RULES - 2);
+        assertNotSame(first, other);
+        assertSame(first.getRepo(), other.getRepo());
+        assertSame(first.getLangName(), other.getLangName());
+
+        // rules given by index are copies
+        first.setName("renamed");
+        assertEquals("Rule \u00e9 1", table.get(1).getName());
+        assertNull(table.get(0).getName());
+        // rows are views without setters, not rules
+        assertFalse(table.rows().iterator().next() instanceof Rule);
+        // a copy of a row keeps its values
+        final Rule copy = new Rule(table.rows().iterator().next());
+        SonarQubeStub.assertSameRule(table.get(0), copy);
+    }
+
+    /**
+     * Assert that a profile stored by column gives the same csv file
+     */
+    @Test
+    public void exportTest() {
+        final List<Rule> expected = new ArrayList<>();
+        final RuleTable table = fill(expected);
+        assertEquals(new CsvExporter().export(new QualityProfile(expected)),
+                new CsvExporter().export(new QualityProfile(table)));
+    }
+}
@@ -0,0 +1,777 @@
+package fr.sonar.plugins.scan.tests;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.report.model.RuleView;
+import org.sonar.api.server.ws.LocalConnector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local http server answering like SonarQube rules web services.
+ * Every profile activates the same generated rules with its own severities,
+ * until rules are changed with change(), which also fills the changelog.
+ * The same answers are given in-process by the connector of getConnector().
+ * @author lequal
+ */
+public class SonarQubeStub {
+
+    /**
+     * Path of the rules search web service
+     */
+    public static final String RULES_SEARCH = "/api/rules/search";
+    /**
+     * Path of the rule details web service
+     */
+    public static final String RULES_SHOW = "/api/rules/show";
+    /**
+     * Path of the quality profiles search web service
+     */
+    public static final String PROFILES_SEARCH = "/api/qualityprofiles/search";
+    /**
+     * Path of the quality profile changelog web service
+     */
+    public static final String CHANGELOG = "/api/qualityprofiles/changelog";
+    /**
+     * Status of a simulated failure cutting the body of the response
+     */
+    public static final int TRUNCATED = 0;
+    /**
+     * Keys of the profiles of the java language
+     */
+    public static final String[] PROFILES = {"profile-a", "profile-b", "other-profile"};
+    /**
+     * Available severities
+     */
+    private static final String[] SEVERITIES = {"INFO", "MINOR", "MAJOR", "CRITICAL", "BLOCKER"};
+    /**
+     * Key of a profile which does not exist
+     */
+    public static final String UNKNOWN_PROFILE = "unknown-profile";
+    /**
+     * Parameters read by the stub, the local connector does not list the ones of a request
+     */
+    private static final String[] PARAMS = {"qprofile", "ps", "p", "f", "key", "language", "profileKey", "since"};
+
+    static {
+        // avoid delayed acknowledgements on kept alive connections
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * Number of rules in each profile
+     */
+    private final int ruleCount;
+    /**
+     * Concrete http server
+     */
+    private HttpServer server;
+    /**
+     * Number of calls by path
+     */
+    private final Map<String, AtomicInteger> calls = new HashMap<>();
+    /**
+     * Number of pages of rules being answered by profile
+     */
+    private final Map<String, AtomicInteger> searching = new HashMap<>();
+    /**
+     * Largest number of pages of a profile answered at the same time
+     */
+    private final AtomicInteger peakSearches = new AtomicInteger();
+    /**
+     * Number of bytes sent in responses' bodies
+     */
+    private static final AtomicLong BYTES_SENT = new AtomicLong();
+    /**
+     * False to simulate a server which does not answer to bulk activations
+     */
+    private volatile boolean bulkActivesSupported = true;
+    /**
+     * Time (ms) taken by each page of a rules search
+     */
+    private volatile long searchLatency;
+    /**
+     * Largest number of rules given by a page
+     */
+    private volatile int maxPageSize = Integer.MAX_VALUE;
+    /**
+     * Failures to simulate for the next calls of each path
+     */
+    private final Map<String, Deque<String[]>> faults = new HashMap<>();
+    /**
+     * True to compress the responses with gzip when the client accepts it
+     */
+    private volatile boolean gzipSupported;
+    /**
+     * Last modification date of the rules of each profile
+     */
+    private final Map<String, String> rulesUpdatedAt = new HashMap<>();
+    /**
+     * Severities changed by profile and rule index, null for a deactivated rule
+     */
+    private final Map<String, Map<Integer, String>> changes = new HashMap<>();
+    /**
+     * Changelog events by profile, the newest first
+     */
+    private final Map<String, List<JsonObject>> events = new HashMap<>();
+
+    /**
+     * Constructor
+     * @param pRuleCount number of rules in each profile
+     */
+    public SonarQubeStub(final int pRuleCount) {
+        this.ruleCount = pRuleCount;
+        calls.put(RULES_SEARCH, new AtomicInteger());
+        calls.put(RULES_SHOW, new AtomicInteger());
+        calls.put(PROFILES_SEARCH, new AtomicInteger());
+        calls.put(CHANGELOG, new AtomicInteger());
+        for (String profile : PROFILES) {
+            rulesUpdatedAt.put(profile, "2018-01-01T00:00:00+0000");
+        }
+    }
+
+    /**
+     * Start the server on a free port
+     * @throws IOException when the port can not be bound
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        for (String path : calls.keySet()) {
+            server.createContext(path, exchange -> {
+                final String[] fault = nextFault(path);
+                final Answer answer = answer(path, params(exchange));
+                if (fault == null) {
+                    send(exchange, answer, gzipSupported);
+                } else {
+                    fail(exchange, answer, fault);
+                }
+            });
+        }
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    /**
+     * Stop the server
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Url to give to providers
+     * @return base url of the server
+     */
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Connector answering in-process, like the one given to plugins by SonarQube
+     * @return a connector sharing the counters of the http server
+     */
+    public LocalConnector getConnector() {
+        return request -> {
+            final Map<String, String> params = new HashMap<>();
+            for (String name : PARAMS) {
+                if (request.hasParam(name)) {
+                    params.put(name, request.getParam(name));
+                }
+            }
+            final Answer answer = answer(request.getPath(), params);
+            final byte[] body = answer.json.toString().getBytes(StandardCharsets.UTF_8);
+            BYTES_SENT.addAndGet(body.length);
+            return new LocalConnector.LocalResponse() {
+                @Override
+                public int getStatus() {
+                    return answer.status;
+                }
+
+                @Override
+                public String getMediaType() {
+                    return "application/json";
+                }
+
+                @Override
+                public byte[] getBytes() {
+                    return body;
+                }
+
+                @Override
+                public Collection<String> getHeaderNames() {
+                    return Collections.emptyList();
+                }
+
+                @Override
+                public String getHeader(final String name) {
+                    return null;
+                }
+            };
+        };
+    }
+
+    /**
+     * Number of calls received on a path
+     * @param path path of the web service
+     * @return the number of calls
+     */
+    public int getCalls(final String path) {
+        return calls.get(path).get();
+    }
+
+    /**
+     * Largest number of pages of rules of a single profile answered at the same time
+     * @return the number of pages
+     */
+    public int getPeakSearches() {
+        return peakSearches.get();
+    }
+
+    /**
+     * Total number of calls received
+     * @return the number of calls
+     */
+    public int getTotalCalls() {
+        return getCalls(RULES_SEARCH) + getCalls(RULES_SHOW) + getCalls(PROFILES_SEARCH) + getCalls(CHANGELOG);
+    }
+
+    /**
+     * Number of bytes sent in responses' bodies by all stubs
+     * @return the number of bytes
+     */
+    public static long getBytesSent() {
+        return BYTES_SENT.get();
+    }
+
+    /**
+     * Enable or disable bulk activations
+     * @param pBulkActivesSupported false to ignore f=actives
+     */
+    public void setBulkActivesSupported(final boolean pBulkActivesSupported) {
+        this.bulkActivesSupported = pBulkActivesSupported;
+    }
+
+    /**
+     * Slow down the pages of rules searches
+     * @param pSearchLatency time (ms) taken by each page
+     */
+    public void setSearchLatency(final long pSearchLatency) {
+        this.searchLatency = pSearchLatency;
+    }
+
+    /**
+     * Make the next call of a path fail, after the previous failures of this path
+     * @param path path of the web service
+     * @param status http status of the failure, TRUNCATED to cut the body in the middle
+     * @param retryAfter value of the Retry-After header, null for none
+     */
+    public void failNext(final String path, final int status, final String retryAfter) {
+        synchronized (faults) {
+            faults.computeIfAbsent(path, key -> new ArrayDeque<>())
+                    .add(new String[] {String.valueOf(status), retryAfter});
+        }
+    }
+
+    /**
+     * Take the failure of the next call of a path
+     * @param path path of the web service
+     * @return the status and the Retry-After header, null to answer normally
+     */
+    private String[] nextFault(final String path) {
+        synchronized (faults) {
+            final Deque<String[]> next = faults.get(path);
+            return next == null ? null : next.poll();
+        }
+    }
+
+    /**
+     * Enable or disable compressed responses
+     * @param pGzipSupported true to compress the responses when the client accepts gzip
+     */
+    public void setGzipSupported(final boolean pGzipSupported) {
+        this.gzipSupported = pGzipSupported;
+    }
+
+    /**
+     * Limit the size of the pages of rules searches, as SonarQube does
+     * @param pMaxPageSize largest number of rules given by a page
+     */
+    public void setMaxPageSize(final int pMaxPageSize) {
+        this.maxPageSize = pMaxPageSize;
+    }
+
+    /**
+     * Simulate a modification of the rules of a profile
+     * @param profileKey key of the profile
+     * @param date new modification date
+     */
+    public synchronized void setRulesUpdatedAt(final String profileKey, final String date) {
+        rulesUpdatedAt.put(profileKey, date);
+    }
+
+    /**
+     * Change a rule of a profile and add the event to its changelog
+     * @param profileKey key of the profile
+     * @param index index of the rule
+     * @param severity new severity, null to deactivate the rule
+     * @param date date of the change, also the new modification date of the profile
+     */
+    public synchronized void change(final String profileKey, final int index, final String severity,
+                                    final String date) {
+        final boolean wasActive = isActive(profileKey, index);
+        changes.computeIfAbsent(profileKey, k -> new HashMap<>()).put(index, severity);
+        rulesUpdatedAt.put(profileKey, date);
+
+        final JsonObject event = new JsonObject();
+        event.addProperty("date", date);
+        event.addProperty("action", severity == null ? "DEACTIVATED" : wasActive ? "UPDATED" : "ACTIVATED");
+        event.addProperty("ruleKey", ruleKey(index));
+        event.addProperty("ruleName", "Rule number " + index);
+        final JsonObject params = new JsonObject();
+        if (severity != null) {
+            params.addProperty("severity", severity);
+        }
+        event.add("params", params);
+        events.computeIfAbsent(profileKey, k -> new ArrayList<>()).add(0, event);
+    }
+
+    /**
+     * Key of a generated rule
+     * @param index index of the rule
+     * @return the key
+     */
+    public static String ruleKey(final int index) {
+        return String.format("squid:R%05d", index);
+    }
+
+    /**
+     * Active severity of a rule in a profile
+     * @param profileKey key of the profile
+     * @param index index of the rule
+     * @return the expected severity
+     */
+    public static String severity(final String profileKey, final int index) {
+        return SEVERITIES[((profileKey.hashCode() & Integer.MAX_VALUE) + index) % SEVERITIES.length];
+    }
+
+    /**
+     * Generated rule as activated by a profile, with the values of the web services
+     * @param profileKey key of the profile
+     * @param index index of the rule
+     * @return the rule
+     */
+    public static Rule rule(final String profileKey, final int index) {
+        final Rule rule = new Rule();
+        rule.setKey(ruleKey(index));
+        rule.setType(index % 2 == 0 ? "CODE_SMELL" : "BUG");
+        rule.setRepo("squid");
+        rule.setName("Rule number " + index);
+        rule.setSeverity(SEVERITIES[index % SEVERITIES.length]);
+        rule.setActiveSeverity(severity(profileKey, index));
+        rule.setHtmlDesc(description(index));
+        rule.setLang("java");
+        rule.setLangName("Java");
+        rule.setStatus("READY");
+        return rule;
+    }
+
+    /**
+     * Assert that two rules have the same fields
+     * @param expected expected rule
+     * @param actual read rule
+     */
+    public static void assertSameRule(final RuleView expected, final RuleView actual) {
+        assertEquals(expected.getKey(), actual.getKey());
+        assertEquals(expected.getRepo(), actual.getRepo());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getSeverity(), actual.getSeverity());
+        assertEquals(expected.getActiveSeverity(), actual.getActiveSeverity());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getHtmlDesc(), actual.getHtmlDesc());
+        assertEquals(expected.getDebt(), actual.getDebt());
+        assertEquals(expected.getLang(), actual.getLang());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getLangName(), actual.getLangName());
+    }
+
+    /**
+     * Html description of a generated rule
+     * @param index index of the rule
+     * @return the description
+     */
+    private static String description(final int index) {
+        return "<p>Description of the rule number " + index + ": a long text which is not used by all exports.</p>";
+    }
+
+    /**
+     * Answer to a web service and count the call
+     * @param path path of the web service
+     * @param params parameters of the request
+     * @return the answer to send
+     */
+    private Answer answer(final String path, final Map<String, String> params) {
+        calls.get(path).incrementAndGet();
+        if (RULES_SEARCH.equals(path)) {
+            return search(params);
+        } else if (RULES_SHOW.equals(path)) {
+            return new Answer(200, show(params));
+        } else if (CHANGELOG.equals(path)) {
+            return new Answer(200, changelog(params));
+        }
+        return new Answer(200, profiles(params));
+    }
+
+    /**
+     * Answer to /api/rules/search
+     * @param params parameters of the request
+     * @return the answer to send
+     */
+    private Answer search(final Map<String, String> params) {
+        final String profileKey = params.get("qprofile");
+        final AtomicInteger running;
+        synchronized (searching) {
+            running = searching.computeIfAbsent(String.valueOf(profileKey), key -> new AtomicInteger());
+        }
+        peakSearches.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            pause(searchLatency);
+        } finally {
+            running.decrementAndGet();
+        }
+        final int pageSize = Math.min(maxPageSize, Integer.parseInt(params.get("ps")));
+        final int page = Integer.parseInt(params.get("p"));
+        // all fields are returned when f is not given
+        final Set<String> fields = params.containsKey("f") ?
+                new HashSet<>(Arrays.asList(params.get("f").split(","))) : null;
+
+        if (UNKNOWN_PROFILE.equals(profileKey)) {
+            final JsonObject error = new JsonObject();
+            error.addProperty("msg", "No quality profile with key '" + profileKey + "'");
+            final JsonArray errors = new JsonArray();
+            errors.add(error);
+            final JsonObject json = new JsonObject();
+            json.add("errors", errors);
+            return new Answer(404, json);
+        }
+
+        final List<Integer> active = activeRules(profileKey);
+        final JsonObject json = new JsonObject();
+        json.addProperty("total", active.size());
+        json.addProperty("p", page);
+        json.addProperty("ps", pageSize);
+        final JsonArray rules = new JsonArray();
+        final JsonObject actives = new JsonObject();
+        for (int i = (page - 1) * pageSize; i < Math.min(page * pageSize, active.size()); i++) {
+            final int index = active.get(i);
+            final JsonObject rule = new JsonObject();
+            rule.addProperty("key", ruleKey(index));
+            fill(rule, index, fields);
+            rules.add(rule);
+            actives.add(ruleKey(index), activations(profileKey, index));
+        }
+        json.add("rules", rules);
+        if (bulkActivesSupported && fields != null && fields.contains("actives")) {
+            json.add("actives", actives);
+        }
+        return new Answer(200, json);
+    }
+
+    /**
+     * Answer to /api/rules/show
+     * @param params parameters of the request
+     * @return the json to send
+     */
+    private JsonObject show(final Map<String, String> params) {
+        final String key = params.get("key");
+        final int index = Integer.parseInt(key.substring(key.indexOf(":R") + 2));
+        final JsonObject json = new JsonObject();
+        final JsonObject rule = new JsonObject();
+        rule.addProperty("key", key);
+        fill(rule, index, null);
+        json.add("rule", rule);
+        final JsonArray actives = new JsonArray();
+        for (String profile : PROFILES) {
+            if (isActive(profile, index)) {
+                actives.addAll(activations(profile, index));
+            }
+        }
+        json.add("actives", actives);
+        return json;
+    }
+
+    /**
+     * Answer to /api/qualityprofiles/search, only java has profiles
+     * @param params parameters of the request
+     * @return the json to send
+     */
+    private synchronized JsonObject profiles(final Map<String, String> params) {
+        final String language = params.get("language");
+        final JsonArray profiles = new JsonArray();
+        if (language == null || "java".equals(language)) {
+            for (String key : PROFILES) {
+                final JsonObject profile = new JsonObject();
+                profile.addProperty("key", key);
+                profile.addProperty("name", key);
+                profile.addProperty("language", "java");
+                profile.addProperty("rulesUpdatedAt", rulesUpdatedAt.get(key));
+                profiles.add(profile);
+            }
+        }
+        final JsonObject json = new JsonObject();
+        json.add("profiles", profiles);
+        return json;
+    }
+
+    /**
+     * Answer to /api/qualityprofiles/changelog, events from the given date
+     * @param params parameters of the request
+     * @return the json to send
+     */
+    private synchronized JsonObject changelog(final Map<String, String> params) {
+        final String since = params.get("since");
+        final int pageSize = Integer.parseInt(params.get("ps"));
+        final int page = Integer.parseInt(params.get("p"));
+        final List<JsonObject> selected = new ArrayList<>();
+        for (JsonObject event : events.getOrDefault(params.get("profileKey"), Collections.emptyList())) {
+            // dates have the same format and time zone
+            if (since == null || event.get("date").getAsString().compareTo(since) >= 0) {
+                selected.add(event);
+            }
+        }
+        final JsonArray array = new JsonArray();
+        for (int i = (page - 1) * pageSize; i < Math.min(page * pageSize, selected.size()); i++) {
+            array.add(selected.get(i));
+        }
+        final JsonObject json = new JsonObject();
+        json.addProperty("total", selected.size());
+        json.addProperty("p", page);
+        json.addProperty("ps", pageSize);
+        json.add("events", array);
+        return json;
+    }
+
+    /**
+     * Indexes of the rules active in a profile
+     * @param profileKey key of the profile
+     * @return indexes in the order of the keys
+     */
+    private synchronized List<Integer> activeRules(final String profileKey) {
+        final List<Integer> active = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            if (isActive(profileKey, i)) {
+                active.add(i);
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Tell whether a rule is active in a profile
+     * @param profileKey key of the profile
+     * @param index index of the rule
+     * @return false if the rule was deactivated
+     */
+    private synchronized boolean isActive(final String profileKey, final int index) {
+        final Map<Integer, String> changed = changes.get(profileKey);
+        return changed == null || !changed.containsKey(index) || changed.get(index) != null;
+    }
+
+    /**
+     * Current severity of a rule in a profile
+     * @param profileKey key of the profile
+     * @param index index of the rule
+     * @return the changed severity or the generated one
+     */
+    private synchronized String currentSeverity(final String profileKey, final int index) {
+        final Map<Integer, String> changed = changes.get(profileKey);
+        return changed != null && changed.get(index) != null ? changed.get(index) : severity(profileKey, index);
+    }
+
+    /**
+     * Simulate the time taken by the server
+     * @param time time (ms) to wait
+     */
+    private static void pause(final long time) {
+        if (time > 0) {
+            try {
+                Thread.sleep(time);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Fill rule's metadata, type is always given
+     * @param rule json rule
+     * @param index index of the rule
+     * @param fields fields to fill out, null for all
+     */
+    private static void fill(final JsonObject rule, final int index, final Set<String> fields) {
+        rule.addProperty("type", index % 2 == 0 ? "CODE_SMELL" : "BUG");
+        add(rule, fields, "repo", "squid");
+        add(rule, fields, "name", "Rule number " + index);
+        add(rule, fields, "severity", SEVERITIES[index % SEVERITIES.length]);
+        add(rule, fields, "htmlDesc", description(index));
+        add(rule, fields, "lang", "java");
+        add(rule, fields, "langName", "Java");
+        add(rule, fields, "status", "READY");
+    }
+
+    /**
+     * Add a field if requested
+     * @param rule json rule
+     * @param fields requested fields, null for all
+     * @param name name of the field
+     * @param value value of the field
+     */
+    private static void add(final JsonObject rule, final Set<String> fields, final String name, final String value) {
+        if (fields == null || fields.contains(name)) {
+            rule.addProperty(name, value);
+        }
+    }
+
+    /**
+     * Activations of a rule in a profile
+     * @param profileKey key of the profile
+     * @param index index of the rule
+     * @return a json array with the activation
+     */
+    private JsonArray activations(final String profileKey, final int index) {
+        final JsonArray array = new JsonArray();
+        final JsonObject active = new JsonObject();
+        active.addProperty("qProfile", profileKey);
+        active.addProperty("inherit", "NONE");
+        active.addProperty("severity", currentSeverity(profileKey, index));
+        array.add(active);
+        return array;
+    }
+
+    /**
+     * Parse query parameters
+     * @param exchange http exchange
+     * @return parameters by name
+     * @throws UnsupportedEncodingException never with utf-8
+     */
+    private static Map<String, String> params(final HttpExchange exchange) throws UnsupportedEncodingException {
+        final Map<String, String> params = new HashMap<>();
+        final String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                final int equal = pair.indexOf('=');
+                if (equal > 0) {
+                    params.put(pair.substring(0, equal), URLDecoder.decode(pair.substring(equal + 1), "UTF-8"));
+                }
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Send a json response
+     * @param exchange http exchange
+     * @param answer status and body to send
+     * @param gzip true to compress the body when the client accepts gzip
+     * @throws IOException when writing the response
+     */
+    private static void send(final HttpExchange exchange, final Answer answer, final boolean gzip)
+            throws IOException {
+        byte[] body = answer.json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        final String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (gzip && accepted != null && accepted.contains("gzip")) {
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+                output.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(answer.status, body.length);
+        BYTES_SENT.addAndGet(body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    /**
+     * Send a failure
+     * @param exchange http exchange
+     * @param answer answer which should have been sent
+     * @param fault status and Retry-After header of the failure
+     * @throws IOException when writing the response
+     */
+    private static void fail(final HttpExchange exchange, final Answer answer, final String[] fault)
+            throws IOException {
+        final int status = Integer.parseInt(fault[0]);
+        if (status == TRUNCATED) {
+            // the connection is closed before the announced length
+            final byte[] body = answer.json.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body, 0, body.length / 2);
+            exchange.getResponseBody().flush();
+            BYTES_SENT.addAndGet(body.length / 2);
+            // fails as the body is shorter than announced, the server then closes the connection
+            exchange.close();
+        } else {
+            if (fault[1] != null) {
+                exchange.getResponseHeaders().add("Retry-After", fault[1]);
+            }
+            final byte[] body = "Service Unavailable".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    /**
+     * Status and body of a response
+     */
+    private static final class Answer {
+        /**
+         * Http status
+         */
+        private final int status;
+        /**
+         * Json body
+         */
+        private final JsonObject json;
+
+        /**
+         * Constructor
+         * @param pStatus http status
+         * @param pJson json body
+         */
+        private Answer(final int pStatus, final JsonObject pJson) {
+            this.status = pStatus;
+            this.json = pJson;
+        }
+    }
+}
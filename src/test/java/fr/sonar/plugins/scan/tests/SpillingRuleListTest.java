@@ -0,0 +1,131 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.cache.SpillingRuleList;
+import fr.cnes.sonar.plugins.export.report.exporters.CsvExporter;
+import fr.cnes.sonar.plugins.export.report.model.QualityProfile;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the SpillingRuleList class
+ * @author lequal
+ */
+public class SpillingRuleListTest {
+
+    /**
+     * Number of rules of the tests
+     */
+    private static final int RULES = 5000;
+
+    /**
+     * Create a rule with all its fields
+     * @param index index of the rule
+     * @return the rule
+     */
+    private static Rule rule(final int index) {
+        final Rule rule = SonarQubeStub.rule("profile-a", index);
+        rule.setName("Rule \u00e9 " + index);
+        // some descriptions are larger than a block of the file
+        if (index % 1000 == 0) {
+            final StringBuilder description = new StringBuilder("<p>");
+            for (int i = 0; i < 20000; i++) {
+                description.append("line ").append(i).append('\n');
+            }
+            rule.setHtmlDesc(description.toString());
+        }
+        rule.setDebt(index % 3 == 0 ? null : index + "min");
+        return rule;
+    }
+
+    /**
+     * Fill a list with the rules of the tests
+     * @param memoryCap memory cap of the list
+     * @return the list
+     * @throws IOException when spilling
+     */
+    private static SpillingRuleList fill(final long memoryCap) throws IOException {
+        final SpillingRuleList rules = new SpillingRuleList(memoryCap);
+        for (int i = 0; i < RULES; i++) {
+            rules.append(rule(i));
+        }
+        return rules;
+    }
+
+    /**
+     * Assert that rules above the cap are spilled and read back identical, in order and by index
+     * @throws IOException when spilling
+     */
+    @Test
+    public void spilledRulesTest() throws IOException {
+        try (SpillingRuleList rules = fill(100000)) {
+            assertEquals(RULES, rules.size());
+            assertTrue(rules.getSpilled() > RULES / 2);
+            assertTrue(rules.getMemoryBytes() <= 100000);
+
+            final Iterator<Rule> iterator = rules.iterator();
+            for (int i = 0; i < RULES; i++) {
+                SonarQubeStub.assertSameRule(rule(i), iterator.next());
+            }
+            assertFalse(iterator.hasNext());
+            for (int i = RULES - 1; i >= 0; i -= 7) {
+                SonarQubeStub.assertSameRule(rule(i), rules.get(i));
+            }
+            assertNull(rules.get(RULES - 2).getDebt());
+        }
+    }
+
+    /**
+     * Assert that a profile written from spilled rules gives the same csv file
+     * @throws IOException when spilling
+     */
+    @Test
+    public void exportTest() throws IOException {
+        final List<Rule> expected = new ArrayList<>();
+        for (int i = 0; i < RULES; i++) {
+            expected.add(rule(i));
+        }
+        final String csv = new CsvExporter().export(new QualityProfile(expected));
+
+        try (QualityProfile profile = new QualityProfile(fill(50000))) {
+            assertEquals(csv, new CsvExporter().export(profile));
+            assertEquals(RULES, profile.getRules().length);
+            assertEquals(SonarQubeStub.severity("profile-a", 4321),
+                    profile.find(SonarQubeStub.ruleKey(4321)).getActiveSeverity());
+            SonarQubeStub.assertSameRule(rule(RULES - 1), profile.find(SonarQubeStub.ruleKey(RULES - 1)));
+        }
+    }
+
+    /**
+     * Assert that no rule is spilled without cap and that spilled rules are removed on close
+     * @throws IOException when spilling
+     */
+    @Test
+    public void closeTest() throws IOException {
+        try (SpillingRuleList rules = fill(0)) {
+            assertEquals(0, rules.getSpilled());
+        }
+
+        final SpillingRuleList rules = fill(500000);
+        assertTrue(rules.getSpilled() > 0);
+        rules.close();
+        SonarQubeStub.assertSameRule(rule(1), rules.get(1));
+        try {
+            rules.get(RULES - 1);
+            fail("Spilled rules should be removed");
+        } catch (UncheckedIOException e) {
+            assertEquals("Spilled rules are closed", e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package fr.sonar.plugins.scan.tests;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import fr.cnes.sonar.plugins.export.report.model.Rule;
+import fr.cnes.sonar.plugins.export.report.providers.RuleReader;
+import fr.cnes.sonar.plugins.export.utils.StringPool;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the StringPool class
+ * Also compare the memory taken by the repeated values of rules with and without pool.
+ * @author lequal
+ */
+public class StringPoolTest {
+
+    /**
+     * Number of rules of the fixture
+     */
+    private static final int RULES = 20000;
+    /**
+     * Repositories and languages of the fixture
+     */
+    private static final String[][] LANGUAGES = {
+        {"squid", "java", "Java"}, {"python", "py", "Python"}, {"cxx", "c++", "C++"},
+        {"javascript", "js", "JavaScript"}, {"common-java", "java", "Java"}
+    };
+    /**
+     * Severities of the fixture
+     */
+    private static final String[] SEVERITIES = {"INFO", "MINOR", "MAJOR", "CRITICAL", "BLOCKER"};
+    /**
+     * Types of the fixture
+     */
+    private static final String[] TYPES = {"CODE_SMELL", "BUG", "VULNERABILITY"};
+
+    /**
+     * Assert that equal values share their instance, up to the maximum size
+     */
+    @Test
+    public void sharingTest() {
+        final StringPool pool = new StringPool(2, "MAJOR");
+        assertSame("MAJOR", pool.get(new String("MAJOR")));
+        final String java = pool.get(new String("java"));
+        assertSame(java, pool.get(new String("java")));
+        pool.get("py");
+        // the pool is full, other values are given back as they are
+        final String js = new String("js");
+        assertSame(js, pool.get(js));
+        assertNotSame(js, pool.get(new String("js")));
+        assertSame("MAJOR", pool.get(new String("MAJOR")));
+        assertEquals(3, pool.size());
+        assertNull(pool.get(null));
+    }
+
+    /**
+     * Compare the memory taken by the repeated values of 20k rules read with and without pool
+     * @throws IOException on json error
+     */
+    @Test
+    public void retainedHeapTest() throws IOException {
+        final String json = fixture();
+        final List<Rule> plain = read(json, new StringPool(0));
+        final List<Rule> pooled = read(json, new StringPool(1024, "INFO", "MINOR", "MAJOR", "CRITICAL",
+                "BLOCKER", "CODE_SMELL", "BUG", "VULNERABILITY", "READY"));
+
+        final long plainBytes = retained(plain);
+        final long pooledBytes = retained(pooled);
+
+        for (int i = 0; i < RULES; i++) {
+            assertEquals(plain.get(i).getRepo(), pooled.get(i).getRepo());
+            assertEquals(plain.get(i).getLangName(), pooled.get(i).getLangName());
+            assertEquals(plain.get(i).getSeverity(), pooled.get(i).getSeverity());
+        }
+        assertSame(pooled.get(0).getLang(), pooled.get(RULES - 1).getLang());
+        assertTrue(pooledBytes * 100 < plainBytes);
+    }
+
+    /**
+     * Json array of the rules of the fixture
+     * @return the json
+     * @throws IOException on json error
+     */
+    private static String fixture() throws IOException {
+        final StringWriter output = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(output)) {
+            writer.beginArray();
+            for (int i = 0; i < RULES; i++) {
+                final String[] language = LANGUAGES[i % LANGUAGES.length];
+                writer.beginObject();
+                writer.name(RuleReader.KEY).value(language[0] + ":S" + i);
+                writer.name(RuleReader.REPO).value(language[0]);
+                writer.name(RuleReader.NAME).value("Rule " + i);
+                writer.name(RuleReader.SEVERITY).value(SEVERITIES[i % SEVERITIES.length]);
+                writer.name(RuleReader.TYPE).value(TYPES[i % TYPES.length]);
+                writer.name(RuleReader.LANG).value(language[1]);
+                writer.name(RuleReader.LANG_NAME).value(language[2]);
+                writer.name(RuleReader.STATUS).value("READY");
+                writer.endObject();
+            }
+            writer.endArray();
+        }
+        return output.toString();
+    }
+
+    /**
+     * Read the rules of the fixture
+     * @param json the fixture
+     * @param pool shared values
+     * @return the rules
+     * @throws IOException on json error
+     */
+    private static List<Rule> read(final String json, final StringPool pool) throws IOException {
+        final RuleReader ruleReader = new RuleReader(RuleReader.ALL_FIELDS, pool);
+        final List<Rule> rules = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                rules.add(ruleReader.read(reader));
+            }
+            reader.endArray();
+        }
+        return rules;
+    }
+
+    /**
+     * Estimate the memory taken by the distinct instances of the repeated values
+     * @param rules rules holding the values
+     * @return a size in bytes, 40 bytes per string and 2 per character
+     */
+    private static long retained(final List<Rule> rules) {
+        final Map<String, Boolean> instances = new IdentityHashMap<>();
+        for (Rule rule : rules) {
+            for (String value : new String[] {rule.getRepo(), rule.getLang(), rule.getLangName(),
+                    rule.getType(), rule.getSeverity(), rule.getStatus()}) {
+                instances.put(value, Boolean.TRUE);
+            }
+        }
+        long bytes = 0;
+        for (String value : instances.keySet()) {
+            bytes += 40 + 2L * value.length();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,135 @@
+package fr.sonar.plugins.scan.tests;
+
+import fr.cnes.sonar.plugins.export.report.exporters.ProfileWriter;
+import fr.cnes.sonar.plugins.export.report.exporters.XlsxExporter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test for the XlsxExporter class
+ * @author lequal
+ */
+public class XlsxExporterTest {
+
+    /**
+     * Number of rules of a large profile, more than the rows kept in memory by the workbook
+     */
+    private static final int LARGE_PROFILE = 5000;
+
+    /**
+     * Assert that each profile has its own sheet with its rules
+     * @throws IOException on writing error
+     */
+    @Test
+    public void sheetsTest() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final ProfileWriter writer = new XlsxExporter(true).newWriter(output);
+        for (String profile : new String[]{"profile-a", "profile-b"}) {
+            writer.startProfile(profile);
+            for (int i = 0; i < 250; i++) {
+                writer.write(SonarQubeStub.rule(profile, i));
+            }
+            writer.endProfile();
+        }
+        writer.finish();
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))) {
+            assertEquals(2, workbook.getNumberOfSheets());
+            final Sheet sheet = workbook.getSheet("profile-b");
+            assertEquals(250, sheet.getLastRowNum());
+            assertEquals("Key", sheet.getRow(0).getCell(0).getStringCellValue());
+            assertEquals("Description", sheet.getRow(0).getCell(8).getStringCellValue());
+            final Row row = sheet.getRow(11);
+            assertEquals(SonarQubeStub.ruleKey(10), row.getCell(0).getStringCellValue());
+            assertEquals(SonarQubeStub.severity("profile-b", 10), row.getCell(4).getStringCellValue());
+            assertEquals("Description of the rule number 10: a long text which is not used by all exports.",
+                    row.getCell(8).getStringCellValue());
+        }
+    }
+
+    /**
+     * Assert that profiles whose keys give the same sheet name have different sheets
+     * @throws IOException on writing error
+     */
+    @Test
+    public void sameSheetNamesTest() throws IOException {
+        final String longKey = "profile-with-a-key-longer-than-a-sheet-name";
+        final String[] profiles = {"profile:a", "profile/a", "PROFILE?A", longKey + "-1", longKey + "-2"};
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final ProfileWriter writer = new XlsxExporter().newWriter(output);
+        for (String profile : profiles) {
+            writer.startProfile(profile);
+            writer.write(SonarQubeStub.rule(profile, 0));
+            writer.endProfile();
+        }
+        writer.finish();
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))) {
+            assertEquals(profiles.length, workbook.getNumberOfSheets());
+            assertEquals("profile a", workbook.getSheetName(0));
+            assertEquals("profile a (2)", workbook.getSheetName(1));
+            assertEquals("PROFILE A (3)", workbook.getSheetName(2));
+            assertEquals(longKey.substring(0, 31), workbook.getSheetName(3));
+            assertEquals(longKey.substring(0, 27) + " (2)", workbook.getSheetName(4));
+        }
+    }
+
+    /**
+     * Assert that descriptions are not written by default
+     * @throws IOException on writing error
+     */
+    @Test
+    public void withoutDescriptionsTest() throws IOException {
+        final XlsxExporter exporter = new XlsxExporter();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final ProfileWriter writer = exporter.newWriter(output);
+        writer.startProfile("profile-a");
+        writer.write(SonarQubeStub.rule("profile-a", 0));
+        writer.endProfile();
+        writer.finish();
+
+        assertFalse(exporter.getFields().contains("htmlDesc"));
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))) {
+            final Sheet sheet = workbook.getSheetAt(0);
+            assertEquals(8, sheet.getRow(0).getLastCellNum());
+            assertNull(sheet.getRow(1).getCell(8));
+        }
+    }
+
+    /**
+     * Assert that a profile larger than the rows kept in memory is completely written
+     * The heap needed by large profiles is measured by XlsxHeapBenchmark.
+     * @throws IOException on writing error
+     */
+    @Test
+    public void largeProfileTest() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final ProfileWriter writer = new XlsxExporter(true).newWriter(output);
+        writer.startProfile("profile-a");
+        for (int i = 0; i < LARGE_PROFILE; i++) {
+            writer.write(SonarQubeStub.rule("profile-a", i));
+        }
+        writer.endProfile();
+        writer.finish();
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()))) {
+            final Sheet sheet = workbook.getSheetAt(0);
+            assertEquals(LARGE_PROFILE, sheet.getLastRowNum());
+            final int last = LARGE_PROFILE - 1;
+            assertEquals(SonarQubeStub.ruleKey(last), sheet.getRow(LARGE_PROFILE).getCell(0).getStringCellValue());
+            assertEquals("Description of the rule number " + last
+                    + ": a long text which is not used by all exports.",
+                    sheet.getRow(LARGE_PROFILE).getCell(8).getStringCellValue());
+        }
+    }
+}